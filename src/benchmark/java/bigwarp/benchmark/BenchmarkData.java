@@ -0,0 +1,136 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.benchmark;
+
+import java.util.Random;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import bigwarp.landmarks.LandmarkTableModel;
+import bigwarp.source.PlateauSphericalMaskRealRandomAccessible;
+import bigwarp.transforms.BigWarpTransform;
+import net.imglib2.RealPoint;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.InvertibleRealTransform;
+import net.imglib2.realtransform.RealTransform;
+
+/**
+ * Synthetic inputs shared by the benchmarks. Everything is seeded, so that runs are comparable.
+ */
+public class BenchmarkData
+{
+	public static final double SIZE = 256;
+
+	/**
+	 * The number of points transformed by one invocation of the per-point benchmarks.
+	 */
+	public static final int NUM_POINTS = 1024;
+
+	/**
+	 * A 3d thin plate spline with the given number of landmarks spread over a cube with side
+	 * {@link #SIZE}, each displaced by up to 5% of the side.
+	 *
+	 * @param numLandmarks the number of landmarks
+	 * @return the transform
+	 */
+	public static InvertibleRealTransform tps( final int numLandmarks )
+	{
+		final Random rand = new Random( 1 );
+		final LandmarkTableModel ltm = new LandmarkTableModel( 3 );
+		for ( int i = 0; i < numLandmarks; i++ )
+		{
+			final double[] mvg = new double[ 3 ];
+			final double[] tgt = new double[ 3 ];
+			for ( int d = 0; d < 3; d++ )
+			{
+				mvg[ d ] = SIZE * rand.nextDouble();
+				tgt[ d ] = mvg[ d ] + 0.05 * SIZE * ( rand.nextDouble() - 0.5 );
+			}
+			ltm.add( mvg, tgt );
+		}
+		return new BigWarpTransform( ltm ).getTransformation();
+	}
+
+	/**
+	 * A rotation by 30 degrees about the z axis through the center of the cube, with a small scaling.
+	 *
+	 * @return the transform
+	 */
+	public static AffineTransform3D similarity()
+	{
+		final double c = SIZE / 2;
+		final AffineTransform3D xfm = new AffineTransform3D();
+		xfm.translate( -c, -c, -c );
+		xfm.rotate( 2, Math.PI / 6 );
+		xfm.scale( 1.1 );
+		xfm.translate( c, c, c );
+		return xfm;
+	}
+
+	/**
+	 * A mask centered in the cube whose plateau and falloff both cover about a quarter of it.
+	 *
+	 * @return the mask
+	 */
+	public static PlateauSphericalMaskRealRandomAccessible mask()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible(
+				new RealPoint( SIZE / 2, SIZE / 2, SIZE / 2 ) );
+		mask.setRadius( SIZE / 4 );
+		mask.setSigma( SIZE / 4 );
+		return mask;
+	}
+
+	/**
+	 * Random points in the cube.
+	 *
+	 * @param n the number of points
+	 * @return the points, as n arrays of length 3
+	 */
+	public static double[][] points( final int n )
+	{
+		final Random rand = new Random( 2 );
+		final double[][] pts = new double[ n ][ 3 ];
+		for ( int i = 0; i < n; i++ )
+			for ( int d = 0; d < 3; d++ )
+				pts[ i ][ d ] = SIZE * rand.nextDouble();
+
+		return pts;
+	}
+
+	/**
+	 * Transforms every point, passing the results to the blackhole.
+	 *
+	 * @param xfm the transform
+	 * @param pts the points
+	 * @param out storage for a transformed point
+	 * @param bh the blackhole
+	 */
+	public static void apply( final RealTransform xfm, final double[][] pts, final double[] out, final Blackhole bh )
+	{
+		for ( int i = 0; i < pts.length; i++ )
+		{
+			xfm.apply( pts[ i ], out );
+			bh.consume( out[ 0 ] );
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.realtransform.BoundingBoxEstimation;
+import net.imglib2.realtransform.BoundingBoxEstimation.Method;
+import net.imglib2.realtransform.InvertibleRealTransform;
+
+/**
+ * Time to estimate the bounding box of a cube under a thin plate spline.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class BoundingBoxBenchmark
+{
+	@Param( { "CORNERS", "FACES", "VOLUME" } )
+	public Method method;
+
+	@Param( { "5", "20" } )
+	public int samplesPerDim;
+
+	private InvertibleRealTransform tps;
+
+	private BoundingBoxEstimation estimation;
+
+	private Interval interval;
+
+	@Setup
+	public void setup()
+	{
+		tps = BenchmarkData.tps( 100 );
+		estimation = new BoundingBoxEstimation( method, samplesPerDim );
+
+		final long max = ( long ) BenchmarkData.SIZE - 1;
+		interval = new FinalInterval( new long[] { 0, 0, 0 }, new long[] { max, max, max } );
+	}
+
+	@Benchmark
+	public Interval estimatePixelInterval()
+	{
+		return estimation.estimatePixelInterval( tps, interval );
+	}
+}
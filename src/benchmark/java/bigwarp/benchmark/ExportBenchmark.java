@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.export.ProgressWriter;
+import bdv.export.ProgressWriterNull;
+import bdv.ij.BigWarpToDeformationFieldPlugIn;
+import bigwarp.BigWarpExporter;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.FloatArray;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.realtransform.InvertibleRealTransform;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.realtransform.Scale3D;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Time to render a warped image into memory, and to compute a displacement field.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class ExportBenchmark
+{
+	@Param( { "1", "4" } )
+	public int nThreads;
+
+	private InvertibleRealTransform tps;
+
+	private RandomAccessible< FloatType > warped;
+
+	private RandomAccessibleInterval< FloatType > target;
+
+	private ProgressWriter progress;
+
+	@Setup
+	public void setup()
+	{
+		tps = BenchmarkData.tps( 100 );
+
+		// a random image, warped by the thin plate spline, with a singleton channel dimension
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( 128, 128, 64 );
+		final Random rand = new Random( 3 );
+		img.forEach( x -> x.set( rand.nextFloat() ) );
+		final RandomAccessible< FloatType > warped3d = RealViews.transform(
+				Views.interpolate( Views.extendZero( img ), new NLinearInterpolatorFactory<>() ), tps );
+		warped = Views.addDimension( warped3d );
+
+		// the copy permutes the channel and z dimensions
+		target = ArrayImgs.floats( 128, 128, 1, 64 );
+		progress = new ProgressWriterNull();
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval< FloatType > copyBySlice()
+	{
+		return BigWarpExporter.copyToImageStackBySlice( warped, target, target, nThreads, progress );
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval< FloatType > copyIterOrder()
+	{
+		return BigWarpExporter.copyToImageStackIterOrder( warped, target, target, nThreads, progress );
+	}
+
+	@Benchmark
+	public RandomAccessibleInterval< FloatType > copyByTiles()
+	{
+		return BigWarpExporter.copyToImageStackByTiles( warped, target, target, nThreads, progress );
+	}
+
+	@SuppressWarnings( "deprecation" )
+	@Benchmark
+	public RandomAccessibleInterval< FloatType > convertToDeformationField()
+	{
+		return BigWarpToDeformationFieldPlugIn.convertToDeformationField(
+				new long[] { 64, 64, 3, 32 }, tps, new Scale3D( 2, 2, 2 ), nThreads );
+	}
+}
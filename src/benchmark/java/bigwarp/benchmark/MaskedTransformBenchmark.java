@@ -0,0 +1,94 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.imglib2.realtransform.MaskedSimilarityTransform;
+import net.imglib2.realtransform.MaskedSimilarityTransform.Interpolators;
+import net.imglib2.realtransform.SpatiallyInterpolatedRealTransform;
+import net.imglib2.type.numeric.real.DoubleType;
+
+/**
+ * Time per point of the transforms that blend two transforms with a mask.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class MaskedTransformBenchmark
+{
+	private MaskedSimilarityTransform< DoubleType > maskedSimilarity;
+
+	private MaskedSimilarityTransform< DoubleType > maskedRotation;
+
+	private SpatiallyInterpolatedRealTransform< DoubleType > interpolated;
+
+	private double[][] pts;
+
+	private final double[] out = new double[ 3 ];
+
+	@Setup
+	public void setup()
+	{
+		maskedSimilarity = new MaskedSimilarityTransform<>( BenchmarkData.similarity(), BenchmarkData.mask(), Interpolators.SIMILARITY );
+		maskedRotation = new MaskedSimilarityTransform<>( BenchmarkData.similarity(), BenchmarkData.mask(), Interpolators.ROTATION );
+		interpolated = new SpatiallyInterpolatedRealTransform<>( BenchmarkData.tps( 100 ), BenchmarkData.similarity(), BenchmarkData.mask() );
+		pts = BenchmarkData.points( BenchmarkData.NUM_POINTS );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BenchmarkData.NUM_POINTS )
+	public void maskedSimilarity( final Blackhole bh )
+	{
+		BenchmarkData.apply( maskedSimilarity, pts, out, bh );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BenchmarkData.NUM_POINTS )
+	public void maskedRotation( final Blackhole bh )
+	{
+		BenchmarkData.apply( maskedRotation, pts, out, bh );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BenchmarkData.NUM_POINTS )
+	public void spatiallyInterpolated( final Blackhole bh )
+	{
+		BenchmarkData.apply( interpolated, pts, out, bh );
+	}
+}
@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.imglib2.realtransform.InvertibleRealTransform;
+
+/**
+ * Time per point of a thin plate spline and its iterative inverse.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class TpsBenchmark
+{
+	@Param( { "10", "100", "1000" } )
+	public int numLandmarks;
+
+	private InvertibleRealTransform tps;
+
+	private double[][] pts;
+
+	private double[][] warpedPts;
+
+	private final double[] out = new double[ 3 ];
+
+	@Setup
+	public void setup()
+	{
+		tps = BenchmarkData.tps( numLandmarks );
+		pts = BenchmarkData.points( BenchmarkData.NUM_POINTS );
+		warpedPts = new double[ pts.length ][ 3 ];
+		for ( int i = 0; i < pts.length; i++ )
+			tps.apply( pts[ i ], warpedPts[ i ] );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BenchmarkData.NUM_POINTS )
+	public void forward( final Blackhole bh )
+	{
+		BenchmarkData.apply( tps, pts, out, bh );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( BenchmarkData.NUM_POINTS )
+	public void inverse( final Blackhole bh )
+	{
+		for ( int i = 0; i < warpedPts.length; i++ )
+		{
+			tps.applyInverse( out, warpedPts[ i ] );
+			bh.consume( out[ 0 ] );
+		}
+	}
+}
@@ -32,6 +32,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -79,6 +80,7 @@ import bigwarp.BigWarp;
 import bigwarp.BigWarpData;
 import bigwarp.BigWarpInit;
 import bigwarp.source.SourceInfo;
+import bigwarp.source.TransformedSourceDiskCache;
 import bigwarp.transforms.NgffTransformations;
 import bigwarp.transforms.metadata.N5TransformMetadata;
 import bigwarp.transforms.metadata.N5TransformMetadataParser;
@@ -134,6 +136,9 @@ public class BigWarpInitDialog extends JFrame
 	private static final String imagesKey = "images";
 	private static final String movingKey = "moving";
 	private static final String transformsKey = "transforms";
+	private static final String fetchersKey = "fetchers";
+	private static final String prioritiesKey = "priorities";
+	private static final String diskCacheKey = "diskcache";
 
 	public static final String ImageJPrefix = "imagej://";
 
@@ -196,6 +201,42 @@ public class BigWarpInitDialog extends JFrame
 	}
 
 	public static < T extends NativeType<T> > BigWarp<?> runBigWarp( final String projectLandmarkPath, final String[] images, final String[] moving, final String[] transforms )
+	{
+		return runBigWarp( projectLandmarkPath, images, moving, transforms, 0, null );
+	}
+
+	/**
+	 * Runs BigWarp with the given images, and a given number of threads loading their blocks.
+	 *
+	 * @param projectLandmarkPath a project or landmarks file, may be null
+	 * @param images the image urls
+	 * @param moving whether the images are moving
+	 * @param transforms the transform urls of the images
+	 * @param numFetcherThreads the number of threads that load blocks, or 0 for the default
+	 * @param fetchPriorities the priority with which blocks of every image are loaded, may be null
+	 * @return the BigWarp instance
+	 */
+	public static < T extends NativeType<T> > BigWarp<?> runBigWarp( final String projectLandmarkPath, final String[] images, final String[] moving, final String[] transforms,
+			final int numFetcherThreads, final int[] fetchPriorities )
+	{
+		return runBigWarp( projectLandmarkPath, images, moving, transforms, numFetcherThreads, fetchPriorities, null );
+	}
+
+	/**
+	 * Runs BigWarp with the given images, and stores the cells of images with a transform
+	 * in a disk cache, so that they are not computed again in later sessions.
+	 *
+	 * @param projectLandmarkPath a project or landmarks file, may be null
+	 * @param images the image urls
+	 * @param moving whether the images are moving
+	 * @param transforms the transform urls of the images
+	 * @param numFetcherThreads the number of threads that load blocks, or 0 for the default
+	 * @param fetchPriorities the priority with which blocks of every image are loaded, may be null
+	 * @param diskCacheDirectory the cache directory, or null to keep cells in memory only
+	 * @return the BigWarp instance
+	 */
+	public static < T extends NativeType<T> > BigWarp<?> runBigWarp( final String projectLandmarkPath, final String[] images, final String[] moving, final String[] transforms,
+			final int numFetcherThreads, final int[] fetchPriorities, final File diskCacheDirectory )
 	{
 		final String projectLandmarkPathTrim = projectLandmarkPath == null ? null : projectLandmarkPath.trim();
 		final BigWarpData< T > data = BigWarpInit.initData();
@@ -204,7 +245,10 @@ public class BigWarpInitDialog extends JFrame
 		final boolean haveLandmarks = haveProjectLandmarkArg && projectLandmarkPathTrim.trim().endsWith(".csv");
 
 		final int nThreads = IJ.getInstance() != null ? Prefs.getThreads() : 1;
-		final BigWarpViewerOptions bwOpts = ( BigWarpViewerOptions ) BigWarpViewerOptions.options().numRenderingThreads( nThreads );
+		final BigWarpViewerOptions bwOpts = ( ( BigWarpViewerOptions ) BigWarpViewerOptions.options().numRenderingThreads( nThreads ) )
+				.numFetcherThreads( numFetcherThreads )
+				.transformedSourceDiskCache( diskCacheDirectory, TransformedSourceDiskCache.DEFAULT_MAX_BYTES );
+		data.configureDiskCache( bwOpts );
 
 		if( !haveProject )
 		{
@@ -215,6 +259,10 @@ public class BigWarpInitDialog extends JFrame
 				// TODO better messages for exceptions?
 				try
 				{
+					if( fetchPriorities != null && fetchPriorities.length > i )
+						bwOpts.fetchPriority( id, fetchPriorities[ i ] );
+
+					BigWarpData.configureSharedQueue( bwOpts );
 					final LinkedHashMap< Source< T >, SourceInfo > infos = BigWarpInit.createSources( data, images[ i ], id, moving[ i ].equals( "true" ) );
 
 					RealTransform transform = null;
@@ -1006,9 +1054,28 @@ public class BigWarpInitDialog extends JFrame
 		final String[] moving = Macro.getValue( args, movingKey, "" ).split( ",", -1 );
 		final String[] transforms = Macro.getValue( args, transformsKey, "" ).split( ",", -1 );
 
+		final int numFetcherThreads;
+		final int[] fetchPriorities;
+		try
+		{
+			numFetcherThreads = Integer.parseInt( Macro.getValue( args, fetchersKey, "0" ).trim() );
+			final String priorities = Macro.getValue( args, prioritiesKey, "" ).trim();
+			fetchPriorities = priorities.isEmpty() ? null
+					: Arrays.stream( priorities.split( "," ) ).mapToInt( p -> p.trim().isEmpty() ? 0 : Integer.parseInt( p.trim() ) ).toArray();
+		}
+		catch ( final NumberFormatException e )
+		{
+			System.err.println( "fetchers and priorities must be integers" );
+			return;
+		}
+
+		final String diskCache = Macro.getValue( args, diskCacheKey, "" ).trim();
+		final File diskCacheDirectory = diskCache.isEmpty() ? null : new File( diskCache );
+
 		if( !project.isEmpty())
 		{
-			runBigWarp( project, null, null, null );
+			BigWarpData.configureSharedQueue( BigWarpViewerOptions.options().numFetcherThreads( numFetcherThreads ) );
+			runBigWarp( project, null, null, null, numFetcherThreads, null, diskCacheDirectory );
 		}
 		else
 		{
@@ -1018,7 +1085,7 @@ public class BigWarpInitDialog extends JFrame
 				return;
 			}
 			// TODO fix transforms
-			runBigWarp( null, images, moving, transforms );
+			runBigWarp( null, images, moving, transforms, numFetcherThreads, fetchPriorities, diskCacheDirectory );
 		}
 
 //		System.out.println( "BigWarpInitDialog runMacro");
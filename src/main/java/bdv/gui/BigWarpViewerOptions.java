@@ -21,8 +21,13 @@
  */
 package bdv.gui;
 
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
 import bdv.viewer.ViewerOptions;
 import bdv.viewer.ViewerPanel;
+import bigwarp.source.TransformedSourceDiskCache;
 import bigwarp.ui.keymap.KeymapManager;
 
 import org.scijava.ui.behaviour.io.InputTriggerConfig;
@@ -66,6 +71,47 @@ public class BigWarpViewerOptions extends ViewerOptions
 		return this;
 	}
 
+	/**
+	 * Set the number of threads that load blocks of volatile sources.
+	 *
+	 * @param numFetcherThreads the number of threads, or 0 for the default
+	 * @return the new options
+	 */
+	public BigWarpViewerOptions numFetcherThreads( final int numFetcherThreads )
+	{
+		bwValues.numFetcherThreads = numFetcherThreads;
+		return this;
+	}
+
+	/**
+	 * Set the priority with which the blocks of a source are loaded. Sources
+	 * with priority 0 (the default) are loaded first.
+	 *
+	 * @param setupId the setup id of the source
+	 * @param priority the priority
+	 * @return the new options
+	 */
+	public BigWarpViewerOptions fetchPriority( final int setupId, final int priority )
+	{
+		bwValues.fetchPriorities.put( setupId, priority );
+		return this;
+	}
+
+	/**
+	 * Store the cells of sources with a cached fixed transform in a directory,
+	 * so that they are not computed again in later sessions.
+	 *
+	 * @param directory the cache directory, or null to keep cells in memory only
+	 * @param maxBytes the size budget of the cache
+	 * @return the new options
+	 */
+	public BigWarpViewerOptions transformedSourceDiskCache( final File directory, final long maxBytes )
+	{
+		bwValues.diskCacheDirectory = directory;
+		bwValues.diskCacheMaxBytes = maxBytes;
+		return this;
+	}
+
 	public BwValues getValues()
 	{
 		return bwValues;
@@ -89,6 +135,9 @@ public class BigWarpViewerOptions extends ViewerOptions
 	{
 		BigWarpViewerOptions out = new BigWarpViewerOptions();
 		out.bwKeymapManager( bwValues.keymapManager );
+		out.numFetcherThreads( bwValues.numFetcherThreads );
+		out.bwValues.fetchPriorities.putAll( bwValues.fetchPriorities );
+		out.transformedSourceDiskCache( bwValues.diskCacheDirectory, bwValues.diskCacheMaxBytes );
 
 		out.
 				width( values.getWidth() ).
@@ -120,6 +169,10 @@ public class BigWarpViewerOptions extends ViewerOptions
 		private KeymapManager keymapManager = null;
 		private BigWarpMessageAnimator messageAnimator = new BigWarpMessageAnimator( 1500, 0.01, 0.1 );
 		private InputTriggerConfig inputTriggerConfig = null;
+		private int numFetcherThreads = 0;
+		private final Map< Integer, Integer > fetchPriorities = new HashMap<>();
+		private File diskCacheDirectory = null;
+		private long diskCacheMaxBytes = TransformedSourceDiskCache.DEFAULT_MAX_BYTES;
 
 		public KeymapManager getKeymapManager()
 		{
@@ -130,5 +183,25 @@ public class BigWarpViewerOptions extends ViewerOptions
 		{
 			return inputTriggerConfig;
 		}
+
+		public int getNumFetcherThreads()
+		{
+			return numFetcherThreads;
+		}
+
+		public Map< Integer, Integer > getFetchPriorities()
+		{
+			return fetchPriorities;
+		}
+
+		public File getDiskCacheDirectory()
+		{
+			return diskCacheDirectory;
+		}
+
+		public long getDiskCacheMaxBytes()
+		{
+			return diskCacheMaxBytes;
+		}
 	}
 }
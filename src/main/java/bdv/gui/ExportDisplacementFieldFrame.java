@@ -27,6 +27,7 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.io.File;
+import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -40,6 +41,7 @@ import javax.swing.JFormattedTextField;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JSpinner;
 import javax.swing.JTextField;
 import javax.swing.SpinnerNumberModel;
@@ -53,10 +55,12 @@ import com.formdev.flatlaf.util.UIScale;
 
 import bdv.ij.ApplyBigwarpPlugin;
 import bdv.ij.BigWarpToDeformationFieldPlugIn;
+import bdv.export.ProgressWriter;
 import bdv.ij.BigWarpToDeformationFieldPlugIn.DeformationFieldExportParameters;
 import bdv.viewer.Source;
 import bigwarp.BigWarp;
 import bigwarp.BigWarpData;
+import bigwarp.ExportScheduler;
 import bigwarp.landmarks.LandmarkTableModel;
 import bigwarp.transforms.BigWarpTransform;
 import ij.IJ;
@@ -139,6 +143,10 @@ public class ExportDisplacementFieldFrame extends JFrame
 	private JComboBox< String > formatComboBox;
 	private JButton okBtn;
 	private JButton cancelBtn;
+	private JProgressBar progressBar;
+
+	// true while an export started from this frame runs, accessed on the event dispatch thread
+	private boolean exporting = false;
 
 	// inverse options
 	private JSpinner invMaxIterationsSpinner;
@@ -162,6 +170,13 @@ public class ExportDisplacementFieldFrame extends JFrame
 		this.ltm = ltm;
 
 		cancelCallback = x -> {
+			if( exporting )
+			{
+				// the frame closes when the export stops
+				ExportScheduler.getInstance().cancelAll();
+				return;
+			}
+
 			dispose();
 			setVisible( false );
 			Recorder.record = initialRecorderState;
@@ -169,10 +184,8 @@ public class ExportDisplacementFieldFrame extends JFrame
 
 		okayCallback = x -> {
 			macroRecord();
-			run();
 			Recorder.record = initialRecorderState;
-			dispose();
-			setVisible( false );
+			runWithProgress();
 		};
 
 		// attach to the n5Dataset text field, keep track of whether user changes it
@@ -318,6 +331,12 @@ public class ExportDisplacementFieldFrame extends JFrame
 		cbot.insets = new Insets( 2, 2, 2, 2 );
 		contentPanel.add( cancelBtn, cbot );
 
+		progressBar = new JProgressBar( 0, 100 );
+		progressBar.setVisible( false );
+		cGbc.gridy = 5;
+		cGbc.insets = new Insets( 2, 2, 10, 2 );
+		contentPanel.add( progressBar, cGbc );
+
 		final Container content = getContentPane();
 		content.add( contentPanel );
 
@@ -784,6 +803,62 @@ public class ExportDisplacementFieldFrame extends JFrame
 		}.start();
 	}
 
+	/**
+	 * Runs the export, and keeps this frame open while it runs to show the progress of all
+	 * running exports, and to cancel them.
+	 */
+	private void runWithProgress()
+	{
+		final DeformationFieldExportParameters params = getParams();
+		exporting = true;
+		okBtn.setEnabled( false );
+		cancelBtn.setText( "Cancel export" );
+		progressBar.setIndeterminate( true );
+		progressBar.setVisible( true );
+		pack();
+
+		final ExportScheduler scheduler = ExportScheduler.getInstance();
+		scheduler.setProgressWriter( new ProgressWriter()
+		{
+			@Override
+			public PrintStream out()
+			{
+				return System.out;
+			}
+
+			@Override
+			public PrintStream err()
+			{
+				return System.err;
+			}
+
+			@Override
+			public void setProgress( final double completionRatio )
+			{
+				SwingUtilities.invokeLater( () -> {
+					progressBar.setIndeterminate( false );
+					progressBar.setValue( ( int ) Math.round( 100 * completionRatio ) );
+				} );
+			}
+		} );
+
+		new Thread( () -> {
+			try
+			{
+				BigWarpToDeformationFieldPlugIn.runFromParameters( params, data, ltm, bwTransform );
+			}
+			finally
+			{
+				scheduler.setProgressWriter( null );
+				SwingUtilities.invokeLater( () -> {
+					exporting = false;
+					dispose();
+					setVisible( false );
+				} );
+			}
+		}, "bigwarp-export-transformation" ).start();
+	}
+
 	public String macroRecord()
 	{
 		if( !Recorder.record )
@@ -28,7 +28,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,7 +40,6 @@ import org.janelia.saalfeldlab.n5.RawCompression;
 import org.janelia.saalfeldlab.n5.XzCompression;
 import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
 import org.janelia.saalfeldlab.n5.ij.N5ScalePyramidExporter;
-import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.universe.N5Factory;
 import org.janelia.saalfeldlab.n5.universe.metadata.axes.Axis;
 import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.OmeNgffMetadata;
@@ -57,8 +55,11 @@ import bigwarp.BigWarp;
 import bigwarp.BigWarpData;
 import bigwarp.BigWarpExporter;
 import bigwarp.BigWarpInit;
+import bigwarp.ExportScheduler;
 import bigwarp.FieldOfView;
 import bigwarp.landmarks.LandmarkTableModel;
+import bigwarp.source.SourceInfo;
+import bigwarp.source.TransformedSourceDiskCache;
 import bigwarp.transforms.BigWarpTransform;
 import fiji.util.gui.GenericDialogPlus;
 import ij.IJ;
@@ -872,8 +873,7 @@ public class ApplyBigwarpPlugin implements PlugIn
 				continue;
 			}
 
-			final Double[] pt = landmarks.getFixedPoint( i );
-			if( Double.isInfinite( pt[ 0 ].doubleValue()) )
+			if( !landmarks.isFixedPoint( i ) )
 			{
 				continue;
 			}
@@ -899,13 +899,13 @@ public class ApplyBigwarpPlugin implements PlugIn
 				continue;
 			}
 
-			final Double[] pt = landmarks.getFixedPoint( i );
-			if( Double.isInfinite( pt[ 0 ].doubleValue()) )
+			final double[] pt = landmarks.getPointCopy( false, i );
+			if( Double.isInfinite( pt[ 0 ] ) )
 			{
 				continue;
 			}
 
-			ptList.add( pt );
+			ptList.add( Arrays.stream( pt ).boxed().toArray( Double[]::new ) );
 		}
 
 		return ptList;
@@ -1221,29 +1221,41 @@ public class ApplyBigwarpPlugin implements PlugIn
 				tgtSrc = bwData.getTargetSource(0).getSpimSource();
 		}
 
+		// estimate the field of view with the export threads
+		final BoundingBoxEstimation bboxEstThreaded = bboxEst.copy();
+		bboxEstThreaded.setNumThreads( nThreads );
+
 		final ProgressWriter progressWriter = new ProgressWriterIJ();
 		// Generate the properties needed to generate the transform from output pixel space
 		// to physical space
 		final double[] res = getResolution( bwData, resolutionOption, resolutionSpec );
 		final List<Interval> outputIntervalList = getPixelInterval(bwData, landmarks, invXfm, fieldOfViewOption,
-				fieldOfViewPointFilter, bboxEst, fovSpec, offsetSpec, res);
+				fieldOfViewPointFilter, bboxEstThreaded, fovSpec, offsetSpec, res);
 
 		final List<String> matchedPtNames = new ArrayList<>();
 		if( outputIntervalList.size() > 1 )
 			ApplyBigwarpPlugin.fillMatchedPointNames( matchedPtNames, landmarks, fieldOfViewPointFilter );
 
 		final double[] offset = getPhysicalOffset( fieldOfViewOption, offsetSpec, landmarks, invXfm,
-				fieldOfViewPointFilter, bboxEst, res, bwData.getMovingSource(0).getSpimSource(), tgtSrc );
+				fieldOfViewPointFilter, bboxEstThreaded, res, bwData.getMovingSource(0).getSpimSource(), tgtSrc );
 
 		if( writeOpts != null && writeOpts.n5Dataset != null && !writeOpts.n5Dataset.isEmpty())
 		{
 			final SourceAndConverter<T> src = bwData.getMovingSource(0);
 			final String unit = ApplyBigwarpPlugin.getUnit( bwData, resolutionOption );
-			runN5Export( bwData, src, fieldOfViewOption,
-					outputIntervalList.get( 0 ), interp,
-					offset, res, unit,
-					progressWriter, writeOpts,
-					Executors.newFixedThreadPool(nThreads));
+			final ExportScheduler.Job exec = ExportScheduler.getInstance().newJob( nThreads );
+			try
+			{
+				runN5Export( bwData, src, fieldOfViewOption,
+						outputIntervalList.get( 0 ), interp,
+						offset, res, unit,
+						progressWriter, writeOpts,
+						exec, exportResumeKey( bwData, src, landmarks, tranformTypeOption, outputIntervalList.get( 0 ), interp, offset, res ) );
+			}
+			finally
+			{
+				exec.shutdown();
+			}
 
 			return null;
 		}
@@ -1256,6 +1268,46 @@ public class ApplyBigwarpPlugin implements PlugIn
 		}
 	}
 
+	/**
+	 * Identifies an export by the source, the landmarks and the rendering parameters, so
+	 * that an interrupted export is only resumed when they are unchanged. The source is
+	 * identified by its URI and a stamp of its content, see
+	 * {@link TransformedSourceDiskCache#contentStamp(String)}. Returns null, that is, do not
+	 * resume, if there are no landmarks to describe the transformation or the source has no URI.
+	 */
+	private static <T> String exportResumeKey(
+			final BigWarpData<T> data,
+			final SourceAndConverter<T> src,
+			final LandmarkTableModel landmarks,
+			final String tranformTypeOption,
+			final Interval outputInterval,
+			final Interpolation interp,
+			final double[] offset,
+			final double[] resolution )
+	{
+		final SourceInfo info = data.getSourceInfo( src );
+		final String sourceUri = info == null ? null : info.getUri();
+		if( landmarks == null || sourceUri == null || sourceUri.isEmpty() )
+			return null;
+
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		src.getSpimSource().getSourceTransform( 0, 0, sourceTransform );
+		return BigWarpExporter.resumeKey(
+				landmarks.toJson().toString(),
+				tranformTypeOption,
+				src.getSpimSource().getName(),
+				sourceUri,
+				TransformedSourceDiskCache.contentStamp( sourceUri ),
+				src.getSpimSource().getSource( 0, 0 ).dimensionsAsLongArray(),
+				sourceTransform.getRowPackedCopy(),
+				info == null ? null : info.getTransformUri(),
+				Intervals.minAsLongArray( outputInterval ),
+				Intervals.maxAsLongArray( outputInterval ),
+				interp,
+				offset,
+				resolution );
+	}
+
 	public static <T> List<ImagePlus> runExport(
 			final BigWarpData<T> data,
 			final List<SourceAndConverter<T>> sources,
@@ -1407,7 +1459,7 @@ public class ApplyBigwarpPlugin implements PlugIn
 			final SourceAndConverter< S > originalMovingSource = data.getMovingSource( i );
 			final int movingSourceIndex = data.sources.indexOf( originalMovingSource );
 			@SuppressWarnings( "unchecked" )
-			final RealRandomAccessible< T > raiRaw = ( RealRandomAccessible< T > )sources.get( movingSourceIndex ).getSpimSource().getInterpolatedSource( 0, 0, interp );
+			final RealRandomAccessible< T > raiRaw = ( RealRandomAccessible< T > )WarpedSource.getExactInterpolatedSource( sources.get( movingSourceIndex ).getSpimSource(), 0, 0, interp );
 
 			// to pixel space
 			final AffineRandomAccessible< T, AffineGet > rai = RealViews.affine( raiRaw, pixelRenderToPhysical.inverse() );
@@ -1432,7 +1484,7 @@ public class ApplyBigwarpPlugin implements PlugIn
 
 			try
 			{
-				N5Utils.save( imgToWrite, n5, destDataset + "/s0", blockSize, compression, exec );
+				BigWarpExporter.saveByTiles( imgToWrite, n5, destDataset + "/s0", blockSize, compression, exec, BigWarpExporter.numThreads( exec ), null );
 				if( parser != null && metadata != null )
 					parser.writeMetadata( metadata, n5, destDataset );
 
@@ -1462,6 +1514,28 @@ public class ApplyBigwarpPlugin implements PlugIn
 			final WriteDestinationOptions writeOpts,
 			final ExecutorService exec )
 	{
+		runN5Export( data, sourceAndConverter, fieldOfViewOption, outputInterval, interp, offsetArg, resolutionArg, unit,
+				progressWriter, writeOpts, exec, null );
+	}
+
+	/**
+	 * Exports a source to an N5 dataset. If resumeKey is not null, an interrupted export
+	 * with the same key is continued, see {@link BigWarpExporter#saveByTiles}.
+	 */
+	public static <S,T extends NativeType<T> & NumericType<T>> void runN5Export(
+			final BigWarpData<S> data,
+			final SourceAndConverter<S> sourceAndConverter,
+			final String fieldOfViewOption,
+			final Interval outputInterval,
+			final Interpolation interp,
+			final double[] offsetArg,
+			final double[] resolutionArg,
+			final String unit,
+			final ProgressWriter progressWriter,
+			final WriteDestinationOptions writeOpts,
+			final ExecutorService exec,
+			final String resumeKey )
+	{
 
 		final int nd = BigWarp.detectNumDims(data.sources);
 		final double[] resolution = limit(nd, resolutionArg);
@@ -1541,7 +1615,7 @@ public class ApplyBigwarpPlugin implements PlugIn
 
 		try
 		{
-			N5Utils.save( imgToWrite, n5, destDataset + "/s0", blockSize, compression, exec );
+			BigWarpExporter.saveByTiles( imgToWrite, n5, destDataset + "/s0", blockSize, compression, exec, BigWarpExporter.numThreads( exec ), progressWriter, resumeKey );
 			if( parser != null && metadata != null )
 				parser.writeMetadata( metadata, n5, destDataset );
 
@@ -1618,7 +1692,8 @@ public class ApplyBigwarpPlugin implements PlugIn
 				new String[]{
 						BoundingBoxEstimation.Method.CORNERS.toString(),
 						BoundingBoxEstimation.Method.FACES.toString(),
-						BoundingBoxEstimation.Method.VOLUME.toString()},
+						BoundingBoxEstimation.Method.VOLUME.toString(),
+						BoundingBoxEstimation.Method.ADAPTIVE.toString()},
 			BoundingBoxEstimation.Method.FACES.toString());
 
 		gd.addNumericField( "samples per dimension", 5, 0 );
@@ -1781,6 +1856,7 @@ public class ApplyBigwarpPlugin implements PlugIn
 			interp = Interpolation.NLINEAR;
 
 		final BoundingBoxEstimation bboxEst = new BoundingBoxEstimation(BoundingBoxEstimation.Method.valueOf(bboxOption), bboxSamples );
+		bboxEst.setNumThreads( nThreads );
 
 		final List<ImagePlus> warpedIpList = apply(bigwarpdata, ltm, transformTypeOption,
 				fovOption, fovPointFilter, bboxEst,
@@ -23,18 +23,14 @@ package bdv.ij;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import javax.swing.JFrame;
 
@@ -63,6 +59,7 @@ import bdv.viewer.Source;
 import bigwarp.BigWarp;
 import bigwarp.BigWarpData;
 import bigwarp.BigWarpExporter;
+import bigwarp.ExportScheduler;
 import bigwarp.landmarks.LandmarkTableModel;
 import bigwarp.source.SourceInfo;
 import bigwarp.transforms.BigWarpTransform;
@@ -380,7 +377,15 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 			// make the "vector" axis the first dimension
 			// 2d displacement fields will have an extraneous singleton z-dimension
 			final RandomAccessibleInterval< FloatType > dfieldImpPerm = Views.dropSingletonDimensions( Views.moveAxis( dfield, 2, 0 ));
-			LoopBuilder.setImages( dfieldVirt, dfieldImpPerm ).multiThreaded( TaskExecutors.fixedThreadPool( nThreads ) ).forEachPixel( (x,y) -> { y.setReal(x.get()); });
+			final ExportScheduler.Job exec = ExportScheduler.getInstance().newJob( nThreads );
+			try
+			{
+				LoopBuilder.setImages( dfieldVirt, dfieldImpPerm ).multiThreaded( TaskExecutors.forExecutorServiceAndNumTasks( exec, nThreads ) ).forEachPixel( (x,y) -> { y.setReal(x.get()); });
+			}
+			finally
+			{
+				exec.shutdown();
+			}
 			dfieldIp = dfield.getImagePlus();
 		}
 
@@ -719,6 +724,8 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 		blockSize[ 0 ] = spatialBlockSize.length;
 		System.arraycopy( spatialBlockSize, 0, blockSize, 1, spatialBlockSize.length );
 
+		final String resumeKey = fieldResumeKey( ltm, bwXfm, data, dims, spacing, offset, dtype, splitAffine, flatten, inverse );
+
 		final N5Factory factory = new N5Factory().gsonBuilder( NgffTransformations.gsonBuilder() );
 		final N5Writer n5 = factory.openWriter( n5BasePath );
 
@@ -749,8 +756,12 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 
 			dfield = buildDisplacementField(dtype, transform, new FinalInterval(dims), spacing, offset);
 			if (format.equals(ExportDisplacementFieldFrame.FMT_SLICER)) {
-				final ThreadPoolExecutor exec = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-				SlicerTransformations.saveDisplacementField(n5, dataset, dfield, blockSize, compression, exec);
+				final ExportScheduler.Job exec = ExportScheduler.getInstance().newJob(nThreads);
+				try {
+					SlicerTransformations.saveDisplacementField(n5, dataset, dfield, blockSize, compression, exec, resumeKey);
+				} finally {
+					exec.shutdown();
+				}
 				SlicerTransformations.saveAffine(n5, dataset, affine);
 			} else if (format.equals(ExportDisplacementFieldFrame.FMT_N5)) {
 				// TODO Implement me
@@ -767,7 +778,7 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 
 			} else {
 				final DisplacementFieldCoordinateTransform<?> dfieldTform = NgffTransformations.save(n5, dataset, dfield, inputSpace, outputSpace, spacing, offset,
-						unit, blockSize, compression, nThreads);
+						unit, blockSize, compression, nThreads, resumeKey);
 
 				// the transform sequence needs to have a reference to whatever transform was imported, if requested
 				final CoordinateTransform[] ctList = refCt == null ? new CoordinateTransform[]{dfieldTform, ngffAffine}
@@ -784,8 +795,12 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 			dfield = buildDisplacementField(dtype, transform, new FinalInterval(dims), spacing, offset);
 
 			if (format.equals(ExportDisplacementFieldFrame.FMT_SLICER)) {
-				final ThreadPoolExecutor exec = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-				SlicerTransformations.saveDisplacementField(n5, dataset, dfield, blockSize, compression, exec);
+				final ExportScheduler.Job exec = ExportScheduler.getInstance().newJob(nThreads);
+				try {
+					SlicerTransformations.saveDisplacementField(n5, dataset, dfield, blockSize, compression, exec, resumeKey);
+				} finally {
+					exec.shutdown();
+				}
 
 				// for slicer, this affine represents the pixel to physical transformation
 				SlicerTransformations.saveAffine(n5, dataset, new ScaleAndTranslation(spacing, offset));
@@ -802,7 +817,7 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 
 			} else {
 				final DisplacementFieldCoordinateTransform<?> dfieldTform = NgffTransformations.save(n5, dataset, dfield, inputSpace, outputSpace, spacing, offset,
-						unit, blockSize, compression, nThreads);
+						unit, blockSize, compression, nThreads, resumeKey);
 
 				final CoordinateTransform<?> ngffTform;
 				if (refCt == null)
@@ -817,6 +832,41 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 		n5.close();
 	}
 
+	/**
+	 * Identifies a displacement field by the landmarks and parameters it is computed from,
+	 * so that an interrupted save is only resumed when they are unchanged. Returns null,
+	 * that is, do not resume, when the field depends on something not described here.
+	 */
+	private static String fieldResumeKey(
+			final LandmarkTableModel ltm,
+			final BigWarpTransform bwXfm,
+			final BigWarpData<?> data,
+			final long[] dims,
+			final double[] spacing,
+			final double[] offset,
+			final DTYPE dtype,
+			final boolean splitAffine,
+			final boolean flatten,
+			final boolean inverse )
+	{
+		if( ltm == null || bwXfm.isMasked() )
+			return null;
+
+		final List< String > transformUris = new ArrayList<>();
+		for ( final SourceInfo info : data.sourceInfos.values() )
+			if ( info.isMoving() )
+				transformUris.add( info.getTransformUri() );
+
+		return BigWarpExporter.resumeKey(
+				ltm.toJson().toString(),
+				bwXfm.getTransformType(),
+				bwXfm.getInverseTolerance(),
+				bwXfm.getInverseMaxIterations(),
+				transformUris,
+				dims, spacing, offset, dtype,
+				splitAffine, flatten, inverse );
+	}
+
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	private static <T extends NativeType<T> & RealType<T>> RandomAccessibleInterval<T> buildDisplacementField(DTYPE dtype,
 			RealTransform transform, Interval interval, double[] spacing, double[] offset) {
@@ -1147,7 +1197,7 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 			splitPoints[ i ] = splitPoints[ i - 1 ] + del;
 		}
 
-		final ExecutorService threadPool = Executors.newFixedThreadPool( nThreads );
+		final ExportScheduler.Job threadPool = ExportScheduler.getInstance().newJob( nThreads );
 		final LinkedList<Callable<Boolean>> jobs = new LinkedList<Callable<Boolean>>();
 
 		for( int i = 0; i < nThreads; i++ )
@@ -1200,8 +1250,6 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 			final List< Future< Boolean > > futures = threadPool.invokeAll( jobs );
 			for( final Future<Boolean> f : futures )
 					f.get();
-
-			threadPool.shutdown(); // wait for all jobs to finish
 		}
 		catch ( final InterruptedException e1 )
 		{
@@ -1211,6 +1259,10 @@ public class BigWarpToDeformationFieldPlugIn implements PlugIn
 		{
 			e.printStackTrace();
 		}
+		finally
+		{
+			threadPool.shutdown();
+		}
 	}
 
 	public static Compression getCompression( final String compressionArg )
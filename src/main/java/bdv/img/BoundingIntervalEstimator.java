@@ -0,0 +1,256 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bdv.img;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import bigwarp.ExportScheduler;
+import bigwarp.ExportScheduler.Priority;
+import bdv.viewer.Source;
+import net.imglib2.Interval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.BoundingBoxEstimation;
+import net.imglib2.realtransform.RealTransform;
+import net.imglib2.util.Intervals;
+
+/**
+ * Estimates the bounding intervals of all mipmap levels of a transformed source. All levels,
+ * and the faces of each level, are evaluated in parallel. The intervals are cached for every
+ * transformation, so that sources with the same transformation and geometry, like a source
+ * and its volatile version, are estimated once. The cache refers to transformations by a
+ * version number, so that it does not keep old transformations alive.
+ */
+final class BoundingIntervalEstimator
+{
+	private static final ExecutorService executor = ExportScheduler.getInstance().newBackgroundJob( "bounding box", 1, Priority.HIGH );
+
+	private static final int CACHE_SIZE = 32;
+
+	// version numbers of the transformations that are still referenced elsewhere, guarded by itself
+	private static final Map< Object, Long > versions = new WeakHashMap<>();
+
+	private static long nextVersion = 0;
+
+	// guarded by itself
+	private static final Map< Key, Interval[] > cache = new LinkedHashMap< Key, Interval[] >( 16, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry< Key, Interval[] > eldest )
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private BoundingIntervalEstimator()
+	{}
+
+	/**
+	 * Estimates the bounding intervals on the calling thread.
+	 *
+	 * @param source the source
+	 * @param xfm the transformation, only used to identify cached intervals
+	 * @param est the estimation
+	 * @param pixelTransform returns a new copy of the transformation of pixel coordinates of a mipmap level
+	 * @return the bounding interval of every mipmap level
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws ExecutionException if the transformation throws an exception
+	 */
+	static Interval[] estimate( final Source< ? > source, final Object xfm, final BoundingBoxEstimation est,
+			final IntFunction< RealTransform > pixelTransform ) throws InterruptedException, ExecutionException
+	{
+		final Key key = new Key( source, xfm, est );
+		final Interval[] cached = get( key );
+		if( cached != null )
+			return cached;
+
+		final int numLevels = source.getNumMipmapLevels();
+		final List< Callable< RealInterval > > tasks = new ArrayList<>();
+		final int[] firstTask = new int[ numLevels + 1 ];
+		for( int level = 0; level < numLevels; level++ )
+		{
+			final int l = level;
+			firstTask[ level ] = tasks.size();
+			tasks.addAll( est.estimationTasks( () -> pixelTransform.apply( l ), source.getSource( 0, level ) ) );
+		}
+		firstTask[ numLevels ] = tasks.size();
+
+		final List< Future< RealInterval > > results = BoundingBoxEstimation.sharedExecutor().invokeAll( tasks );
+		final Interval[] intervals = new Interval[ numLevels ];
+		for( int level = 0; level < numLevels; level++ )
+		{
+			RealInterval union = results.get( firstTask[ level ] ).get();
+			for( int i = firstTask[ level ] + 1; i < firstTask[ level + 1 ]; i++ )
+				union = Intervals.union( union, results.get( i ).get() );
+
+			intervals[ level ] = BoundingBoxEstimation.containingInterval( union );
+		}
+
+		synchronized( cache )
+		{
+			cache.put( key, intervals );
+		}
+		return intervals;
+	}
+
+	/**
+	 * Estimates the bounding intervals on a background thread, or immediately if they are cached.
+	 *
+	 * @param source the source
+	 * @param xfm the transformation, only used to identify cached intervals
+	 * @param est the estimation
+	 * @param pixelTransform returns a new copy of the transformation of pixel coordinates of a mipmap level
+	 * @param onDone called with the intervals when they are ready
+	 * @return the intervals of every mipmap level, cancelling interrupts the estimation
+	 */
+	static Future< Interval[] > estimateInBackground( final Source< ? > source, final Object xfm, final BoundingBoxEstimation est,
+			final IntFunction< RealTransform > pixelTransform, final Consumer< Interval[] > onDone )
+	{
+		final Interval[] cached = get( new Key( source, xfm, est ) );
+		if( cached != null )
+		{
+			onDone.accept( cached );
+			return CompletableFuture.completedFuture( cached );
+		}
+
+		return executor.submit( () -> {
+			final Interval[] intervals = estimate( source, xfm, est, pixelTransform );
+			onDone.accept( intervals );
+			return intervals;
+		} );
+	}
+
+	/**
+	 * Intervals to use until an estimate is ready: the previous intervals, grown by the
+	 * transformed corners of each level so that they are not smaller than a cheap estimate
+	 * of the new ones.
+	 *
+	 * @param source the source
+	 * @param previous the previous intervals, may be null
+	 * @param pixelTransform returns a new copy of the transformation of pixel coordinates of a mipmap level
+	 * @return the interim interval of every mipmap level
+	 */
+	static Interval[] interim( final Source< ? > source, final Interval[] previous, final IntFunction< RealTransform > pixelTransform )
+	{
+		final BoundingBoxEstimation corners = new BoundingBoxEstimation( BoundingBoxEstimation.Method.CORNERS );
+		final int numLevels = source.getNumMipmapLevels();
+		final Interval[] interim = new Interval[ numLevels ];
+		for( int level = 0; level < numLevels; level++ )
+		{
+			if( previous == null || previous[ level ] == null )
+				interim[ level ] = source.getSource( 0, level );
+			else
+				interim[ level ] = Intervals.union( previous[ level ],
+						corners.estimatePixelInterval( pixelTransform.apply( level ), source.getSource( 0, level ) ) );
+		}
+		return interim;
+	}
+
+	private static long version( final Object xfm )
+	{
+		synchronized( versions )
+		{
+			return versions.computeIfAbsent( xfm, x -> nextVersion++ );
+		}
+	}
+
+	private static Interval[] get( final Key key )
+	{
+		synchronized( cache )
+		{
+			return cache.get( key );
+		}
+	}
+
+	/**
+	 * Identifies a transformation, by its version number, the estimation parameters and the
+	 * geometry of the source.
+	 */
+	private static class Key
+	{
+		private final long version;
+
+		private final BoundingBoxEstimation.Method method;
+
+		private final int samplesPerDim;
+
+		private final double[] geometry;
+
+		private final int hash;
+
+		public Key( final Source< ? > source, final Object xfm, final BoundingBoxEstimation est )
+		{
+			this.version = version( xfm );
+			this.method = est.getMethod();
+			this.samplesPerDim = est.getSamplesPerDim();
+
+			final int numLevels = source.getNumMipmapLevels();
+			final AffineTransform3D srcTransform = new AffineTransform3D();
+			final List< Double > values = new ArrayList<>();
+			for( int level = 0; level < numLevels; level++ )
+			{
+				source.getSourceTransform( 0, level, srcTransform );
+				for( final double v : srcTransform.getRowPackedCopy() )
+					values.add( v );
+
+				final Interval itvl = source.getSource( 0, level );
+				for( int d = 0; d < itvl.numDimensions(); d++ )
+				{
+					values.add( ( double ) itvl.min( d ) );
+					values.add( ( double ) itvl.max( d ) );
+				}
+			}
+			geometry = values.stream().mapToDouble( Double::doubleValue ).toArray();
+			hash = 31 * ( 31 * Long.hashCode( version ) + method.hashCode() + samplesPerDim ) + Arrays.hashCode( geometry );
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if( !( o instanceof Key ) )
+				return false;
+
+			final Key k = ( Key ) o;
+			return version == k.version && method == k.method && samplesPerDim == k.samplesPerDim && Arrays.equals( geometry, k.geometry );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+	}
+}
@@ -21,6 +21,9 @@
  */
 package bdv.img;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
 import bdv.viewer.Interpolation;
@@ -67,7 +70,17 @@ public class RealTransformedSource < T > implements Source< T >, MipmapOrdering
 
 	private InvertibleRealTransform xfm;
 
-	private Interval[] boundingIntervalsPerLevel;
+	private volatile Interval[] boundingIntervalsPerLevel;
+
+	/**
+	 * If true, bounding intervals are estimated in the background.
+	 */
+	private boolean estimateBoundsInBackground = false;
+
+	private Future< Interval[] > boundingIntervalsTask;
+
+	// identifies the newest background estimate
+	private Object boundingIntervalsToken;
 
 	private boolean isTransformed;
 
@@ -121,12 +134,77 @@ public class RealTransformedSource < T > implements Source< T >, MipmapOrdering
 		updateBoundingIntervals();
 	}
 
-	protected void updateBoundingIntervals()
+	/**
+	 * Estimates the bounding intervals of all mipmap levels. In the background, the
+	 * previous intervals, grown by the transformed corners of the source, are used until
+	 * the estimate is ready.
+	 */
+	protected synchronized void updateBoundingIntervals()
 	{
-		for( int i = 0; i < getNumMipmapLevels(); i++ )
+		if( boundingIntervalsTask != null )
+			boundingIntervalsTask.cancel( true );
+
+		boundingIntervalsTask = null;
+		boundingIntervalsToken = null;
+
+		final int numLevels = getNumMipmapLevels();
+		if( xfm == null )
 		{
-			boundingIntervalsPerLevel[i] = estimateBoundingInterval(0, i);
+			final Interval[] intervals = new Interval[ numLevels ];
+			for( int i = 0; i < numLevels; i++ )
+				intervals[ i ] = source.getSource( 0, i );
+
+			boundingIntervalsPerLevel = intervals;
+			return;
 		}
+
+		// getSource can be called by multiple threads, so need ensure application of
+		// the transform is thread safe here by copying
+		final InvertibleRealTransform xfmToEstimate = xfm;
+		final BoundingBoxEstimation est = bboxEst.copy();
+		final IntFunction< RealTransform > pixelTransform = level -> xfmToEstimate.copy().inverse();
+		if( !estimateBoundsInBackground )
+		{
+			try
+			{
+				boundingIntervalsPerLevel = BoundingIntervalEstimator.estimate( source, xfmToEstimate, est, pixelTransform );
+			}
+			catch( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch( final ExecutionException e )
+			{
+				if( e.getCause() instanceof RuntimeException )
+					throw ( RuntimeException ) e.getCause();
+
+				throw new RuntimeException( e.getCause() );
+			}
+			return;
+		}
+
+		boundingIntervalsPerLevel = BoundingIntervalEstimator.interim( source, boundingIntervalsPerLevel, pixelTransform );
+
+		final Object token = new Object();
+		boundingIntervalsToken = token;
+		boundingIntervalsTask = BoundingIntervalEstimator.estimateInBackground( source, xfmToEstimate, est, pixelTransform, intervals -> {
+			synchronized( this )
+			{
+				if( boundingIntervalsToken == token )
+					boundingIntervalsPerLevel = intervals;
+			}
+		} );
+	}
+
+	/**
+	 * Estimate the bounding intervals on a background thread when the transform
+	 * changes, using the previous ones until then.
+	 *
+	 * @param estimateBoundsInBackground whether to estimate in the background
+	 */
+	public synchronized void setEstimateBoundsInBackground( final boolean estimateBoundsInBackground )
+	{
+		this.estimateBoundsInBackground = estimateBoundsInBackground;
 	}
 
 	public void setIsTransformed( boolean isTransformed )
@@ -177,20 +255,6 @@ public class RealTransformedSource < T > implements Source< T >, MipmapOrdering
 			return source.getSource( t, level );
 	}
 
-	private Interval estimateBoundingInterval( final int t, final int level )
-	{
-		if( xfm == null )
-		{
-			return source.getSource( t, level );
-		}
-		else
-		{
-			// getSource can be called by multiple threads, so need ensure application of
-			// the transform is thread safe here by copying
-			return bboxEst.estimatePixelInterval( xfm.copy().inverse(), source.getSource( t, level ) );
-		}
-	}
-
 	@Override
 	public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
 	{
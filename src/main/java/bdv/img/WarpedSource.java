@@ -21,29 +21,62 @@
  */
 package bdv.img;
 
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bigwarp.ExportScheduler;
+import bigwarp.ExportScheduler.Priority;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.render.DefaultMipmapOrdering;
 import bdv.viewer.render.MipmapOrdering;
 import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.BoundingBoxEstimation;
+import net.imglib2.realtransform.DisplacementGridTransform;
 import net.imglib2.realtransform.InvertibleRealTransform;
 import net.imglib2.realtransform.RealTransform;
 import net.imglib2.realtransform.RealTransformRealRandomAccessible;
 import net.imglib2.realtransform.RealTransformSequence;
 import net.imglib2.realtransform.RealViews;
+import net.imglib2.realtransform.SpatiallyInterpolatedRealTransform;
 import net.imglib2.realtransform.inverse.WrappedIterativeInvertibleRealTransform;
+import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 
 public class WarpedSource < T > implements Source< T >, MipmapOrdering
 {
+	private static final Logger logger = LoggerFactory.getLogger( WarpedSource.class );
+
+	/**
+	 * The largest number of nodes in the displacement grid of one mipmap level.
+	 * The grid spacing is increased if necessary.
+	 */
+	public static final long MAX_APPROXIMATION_NODES = 1 << 21;
+
+	private static final int numApproximationThreads = Runtime.getRuntime().availableProcessors();
+
+	private static final ExecutorService approximationWorkers =
+			ExportScheduler.getInstance().newBackgroundJob( "approximation workers", numApproximationThreads, Priority.HIGH );
+
+	private static final ExecutorService approximationExecutor =
+			ExportScheduler.getInstance().newBackgroundJob( "approximation", 1, Priority.HIGH );
 
 	public static < T > SourceAndConverter< T > wrap( final SourceAndConverter< T > wrap, final String name, int ndims )
 	{
@@ -68,16 +101,36 @@ public class WarpedSource < T > implements Source< T >, MipmapOrdering
 
 	private InvertibleRealTransform xfm;
 
-	private Interval[] boundingIntervalsPerLevel;
+	private volatile Interval[] boundingIntervalsPerLevel;
+
+	/**
+	 * If true, bounding intervals are estimated in the background.
+	 */
+	private boolean estimateBoundsInBackground = false;
+
+	private Future< Interval[] > boundingIntervalsTask;
+
+	// identifies the newest background estimate
+	private Object boundingIntervalsToken;
 
 	private boolean isTransformed;
 
 	private final Supplier< Boolean > boundingBoxCullingSupplier;
 
-	private final AffineTransform3D tmpSrcTransform;
-
 	private BoundingBoxEstimation bboxEst;
 
+	/**
+	 * Grid spacing in pixels of the approximation of the transform used for
+	 * rendering, no approximation if not positive.
+	 */
+	private double approximationSpacing;
+
+	private volatile RealTransform[] approximationsPerLevel;
+
+	private Future< ? > approximationTask;
+
+	private Consumer< RealInterval > approximationListener;
+
 	public WarpedSource( final Source< T > source, final String suffix )
 	{
 		this( source, suffix, null );
@@ -93,8 +146,6 @@ public class WarpedSource < T > implements Source< T >, MipmapOrdering
 		this.xfm = null;
 
 		bboxEst = new BoundingBoxEstimation( BoundingBoxEstimation.Method.FACES, 5 );
-		boundingIntervalsPerLevel = new Interval[source.getNumMipmapLevels()];
-		tmpSrcTransform = new AffineTransform3D();
 
 		sourceMipmapOrdering = MipmapOrdering.class.isInstance( source ) ?
 				( MipmapOrdering ) source : new DefaultMipmapOrdering( source );
@@ -119,20 +170,373 @@ public class WarpedSource < T > implements Source< T >, MipmapOrdering
 
 	public void updateTransform( final RealTransform xfm ) {
 
+		updateTransform( xfm, null );
+	}
+
+	/**
+	 * Sets a transform that equals the current one outside of a region, so that
+	 * the approximation only has to be resampled inside it.
+	 *
+	 * @param xfm the transform
+	 * @param changedRegion a box in global coordinates outside of which the transform did not change, null if unknown
+	 */
+	public void updateTransform( final RealTransform xfm, final RealInterval changedRegion ) {
+
 		if( xfm instanceof InvertibleRealTransform )
 			this.xfm = (InvertibleRealTransform)xfm;
 		else
 			this.xfm = new WrappedIterativeInvertibleRealTransform<>(xfm);
 
-		updateBoundingIntervals();
+		updateBoundingIntervals( changedRegion );
+		updateApproximation( changedRegion );
+	}
+
+	/**
+	 * Render with an approximation of the transform, made by interpolating its displacements
+	 * on a grid with the given spacing in pixels of each mipmap level. The grid
+	 * is rebuilt in the background whenever the transform changes, until it is ready the exact
+	 * transform is used. {@link #getExactInterpolatedSource} always uses the exact transform.
+	 *
+	 * @param spacing the grid spacing in pixels, approximation is disabled if not positive
+	 * @param listener called when the approximation for a mipmap level is ready, with the region in
+	 * global coordinates where it changed or null if it may have changed everywhere, may be null
+	 */
+	public synchronized void setApproximation( final double spacing, final Consumer< RealInterval > listener )
+	{
+		this.approximationSpacing = spacing;
+		this.approximationListener = listener;
+		updateApproximation();
+	}
+
+	public double getApproximationSpacing()
+	{
+		return approximationSpacing;
+	}
+
+	protected void updateApproximation()
+	{
+		updateApproximation( null );
+	}
+
+	protected synchronized void updateApproximation( final RealInterval changedRegion )
+	{
+		if( approximationTask != null )
+			approximationTask.cancel( true );
+
+		approximationTask = null;
+		if( approximationSpacing <= 0 || xfm == null )
+		{
+			approximationsPerLevel = null;
+			return;
+		}
+
+		// levels of the previous approximation can be resampled only where the transform changed
+		final RealTransform[] previous = changedRegion == null || approximationsPerLevel == null ? null : approximationsPerLevel.clone();
+		final RealTransform[] approximations = new RealTransform[ getNumMipmapLevels() ];
+		approximationsPerLevel = approximations;
+
+		final InvertibleRealTransform xfmToApproximate = xfm.copy();
+		final double spacing = approximationSpacing;
+		final Consumer< RealInterval > listener = approximationListener;
+		final Future< Interval[] > boundingIntervals = boundingIntervalsTask;
+		approximationTask = approximationExecutor.submit( () -> {
+			// the grids cover the bounding intervals, so wait for their estimate
+			final Interval[] intervals;
+			try
+			{
+				intervals = boundingIntervals == null ? boundingIntervalsPerLevel : boundingIntervals.get();
+			}
+			catch( final InterruptedException | CancellationException e )
+			{
+				return;
+			}
+			catch( final ExecutionException e )
+			{
+				logger.warn( "could not estimate the bounding box of " + getName(), e );
+				return;
+			}
+
+			// coarse levels are fast to build, and let rendering speed up sooner
+			for( int level = getNumMipmapLevels() - 1; level >= 0; level-- )
+			{
+				final RealTransform approximation;
+				final RealTransform previousApproximation = previous == null ? null : previous[ level ];
+				try
+				{
+					approximation = buildApproximation( xfmToApproximate, level, intervals[ level ], spacing, previousApproximation, changedRegion );
+				}
+				catch( final ExecutionException | RuntimeException e )
+				{
+					logger.warn( "could not approximate transform for " + getName(), e );
+					return;
+				}
+
+				if( approximation == null || Thread.currentThread().isInterrupted() )
+					return;
+
+				synchronized( this )
+				{
+					if( approximationsPerLevel != approximations )
+						return;
+
+					approximations[ level ] = approximation;
+				}
+
+				if( listener != null )
+					listener.accept( isUpdate( approximation, previousApproximation ) ? changedRegion : null );
+			}
+		});
+	}
+
+	private RealTransform buildApproximation( final InvertibleRealTransform xfm, final int level, final Interval itvl, final double spacing,
+			final RealTransform previous, final RealInterval changedRegion ) throws ExecutionException
+	{
+		if( itvl == null )
+			return null;
+
+		final AffineTransform3D srcTransform = new AffineTransform3D();
+		source.getSourceTransform( 0, level, srcTransform );
+
+		// the same transform getExactInterpolatedSource applies, in pixel coordinates
+		final RealTransform seq = pixelTransform( srcTransform, xfm );
+		final Function< RealInterval, RealTransform > local = localPixelTransforms( xfm, srcTransform, seq );
+
+		final int nd = itvl.numDimensions();
+		final double[] min = new double[ nd ];
+		final double[] max = new double[ nd ];
+		final double[] spacingArray = new double[ nd ];
+		for( int d = 0; d < nd; d++ )
+		{
+			min[ d ] = itvl.min( d );
+			max[ d ] = itvl.max( d );
+			spacingArray[ d ] = spacing;
+		}
+
+		// coarsen the grid until it is small enough
+		while( numNodes( min, max, spacingArray ) > MAX_APPROXIMATION_NODES )
+			for( int d = 0; d < nd; d++ )
+				spacingArray[ d ] *= 1.25;
+
+		if( previous instanceof DisplacementGridTransform &&
+				( ( DisplacementGridTransform ) previous ).hasGrid( min, spacingArray, DisplacementGridTransform.gridDimensions( min, max, spacingArray ) ) )
+		{
+			final double[] changedMin = new double[ nd ];
+			final double[] changedMax = new double[ nd ];
+			pixelBounds( changedRegion, srcTransform, changedMin, changedMax );
+			return ( ( DisplacementGridTransform ) previous ).update( seq, local, changedMin, changedMax, approximationWorkers, numApproximationThreads );
+		}
+
+		return DisplacementGridTransform.build( seq, local, min, max, spacingArray, approximationWorkers, numApproximationThreads );
+	}
+
+	private static RealTransformSequence pixelTransform( final AffineTransform3D srcTransform, final RealTransform xfm )
+	{
+		final RealTransformSequence seq = new RealTransformSequence();
+		seq.add( srcTransform );
+		seq.add( xfm );
+		seq.add( srcTransform.inverse() );
+		return seq;
+	}
+
+	/*
+	 * For a masked transform, maps a box in pixel coordinates to the pixel transform of
+	 * the one transform the mask selects over the box, or to seq if it selects both.
+	 * Returns null if the transform is not masked.
+	 */
+	private static Function< RealInterval, RealTransform > localPixelTransforms( final InvertibleRealTransform xfm,
+			final AffineTransform3D srcTransform, final RealTransform seq )
+	{
+		if ( !( xfm instanceof WrappedIterativeInvertibleRealTransform ) )
+			return null;
+
+		final RealTransform forward = ( ( WrappedIterativeInvertibleRealTransform< ? > ) xfm ).getTransform();
+		if ( !( forward instanceof SpatiallyInterpolatedRealTransform ) || forward.numSourceDimensions() != 3 )
+			return null;
+
+		final SpatiallyInterpolatedRealTransform< ? > interpolated = ( SpatiallyInterpolatedRealTransform< ? > ) forward;
+		final RealTransform seqA = pixelTransform( srcTransform, interpolated.getA() );
+		final RealTransform seqB = pixelTransform( srcTransform, interpolated.getB() );
+		return box -> {
+			final RealTransform simplified = interpolated.simplify( globalBounds( box, srcTransform ) );
+			if ( simplified == interpolated.getA() )
+				return seqA;
+			else if ( simplified == interpolated.getB() )
+				return seqB;
+			else
+				return seq;
+		};
+	}
+
+	/*
+	 * Bounds in global coordinates of a box in pixel coordinates.
+	 */
+	private static RealInterval globalBounds( final RealInterval box, final AffineTransform3D srcTransform )
+	{
+		final double[] corner = new double[ 3 ];
+		final double[] global = new double[ 3 ];
+		final double[] min = new double[ 3 ];
+		final double[] max = new double[ 3 ];
+		Arrays.fill( min, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		for( int c = 0; c < 8; c++ )
+		{
+			for( int d = 0; d < 3; d++ )
+				corner[ d ] = ( c & ( 1 << d ) ) == 0 ? box.realMin( d ) : box.realMax( d );
+
+			srcTransform.apply( corner, global );
+			for( int d = 0; d < 3; d++ )
+			{
+				min[ d ] = Math.min( min[ d ], global[ d ] );
+				max[ d ] = Math.max( max[ d ], global[ d ] );
+			}
+		}
+		return new FinalRealInterval( min, max );
+	}
+
+	/*
+	 * True if the approximation was made by resampling the previous one where the transform changed.
+	 */
+	private static boolean isUpdate( final RealTransform approximation, final RealTransform previous )
+	{
+		return previous instanceof DisplacementGridTransform && approximation instanceof DisplacementGridTransform &&
+				( ( DisplacementGridTransform ) previous ).hasGrid( ( DisplacementGridTransform ) approximation );
+	}
+
+	/*
+	 * Bounds in pixel coordinates of a box in global coordinates, whose missing dimensions are zero.
+	 */
+	private static void pixelBounds( final RealInterval region, final AffineTransform3D srcTransform, final double[] min, final double[] max )
+	{
+		final AffineTransform3D toPixel = srcTransform.inverse();
+		final int nr = region.numDimensions();
+		final double[] corner = new double[ 3 ];
+		final double[] pixel = new double[ 3 ];
+		Arrays.fill( min, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		for( int c = 0; c < 8; c++ )
+		{
+			for( int d = 0; d < 3; d++ )
+				corner[ d ] = d >= nr ? 0 : ( c & ( 1 << d ) ) == 0 ? region.realMin( d ) : region.realMax( d );
+
+			toPixel.apply( corner, pixel );
+			for( int d = 0; d < min.length; d++ )
+			{
+				min[ d ] = Math.min( min[ d ], pixel[ d ] );
+				max[ d ] = Math.max( max[ d ], pixel[ d ] );
+			}
+		}
+	}
+
+	private static long numNodes( final double[] min, final double[] max, final double[] spacing )
+	{
+		long n = 1;
+		for( int d = 0; d < min.length; d++ )
+			n *= 1 + (long)Math.ceil( ( max[ d ] - min[ d ] ) / spacing[ d ] );
+
+		return n;
 	}
 
 	protected void updateBoundingIntervals()
 	{
-		for( int i = 0; i < getNumMipmapLevels(); i++ )
+		updateBoundingIntervals( null );
+	}
+
+	/**
+	 * Estimates the bounding intervals of all mipmap levels. In the background, the
+	 * previous intervals, grown by the region where the transform changed or, if that is
+	 * unknown, by the transformed corners of the source, are used until the estimate is ready.
+	 *
+	 * @param changedRegion a box in global coordinates outside of which the transform did not change, null if unknown
+	 */
+	protected synchronized void updateBoundingIntervals( final RealInterval changedRegion )
+	{
+		if( boundingIntervalsTask != null )
+			boundingIntervalsTask.cancel( true );
+
+		boundingIntervalsTask = null;
+		boundingIntervalsToken = null;
+
+		final int numLevels = getNumMipmapLevels();
+		if( xfm == null )
+		{
+			final Interval[] intervals = new Interval[ numLevels ];
+			for( int i = 0; i < numLevels; i++ )
+				intervals[ i ] = source.getSource( 0, i );
+
+			boundingIntervalsPerLevel = intervals;
+			return;
+		}
+
+		final InvertibleRealTransform xfmToEstimate = xfm;
+		final BoundingBoxEstimation est = bboxEst.copy();
+		final IntFunction< RealTransform > pixelTransform = level -> inversePixelTransform( xfmToEstimate, level );
+		if( !estimateBoundsInBackground )
+		{
+			try
+			{
+				boundingIntervalsPerLevel = BoundingIntervalEstimator.estimate( source, xfmToEstimate, est, pixelTransform );
+			}
+			catch( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch( final ExecutionException e )
+			{
+				if( e.getCause() instanceof RuntimeException )
+					throw ( RuntimeException ) e.getCause();
+
+				throw new RuntimeException( e.getCause() );
+			}
+			return;
+		}
+
+		final Interval[] previous = boundingIntervalsPerLevel;
+		final Interval[] interim;
+		if( previous == null || changedRegion == null )
+			interim = BoundingIntervalEstimator.interim( source, previous, pixelTransform );
+		else
 		{
-			boundingIntervalsPerLevel[i] = estimateBoundingInterval(0, i);
+			interim = new Interval[ numLevels ];
+			for( int level = 0; level < numLevels; level++ )
+			{
+				if( previous[ level ] == null )
+				{
+					interim[ level ] = source.getSource( 0, level );
+					continue;
+				}
+
+				final AffineTransform3D srcTransform = new AffineTransform3D();
+				source.getSourceTransform( 0, level, srcTransform );
+				final int nd = previous[ level ].numDimensions();
+				final double[] min = new double[ nd ];
+				final double[] max = new double[ nd ];
+				pixelBounds( changedRegion, srcTransform, min, max );
+				interim[ level ] = Intervals.union( previous[ level ],
+						BoundingBoxEstimation.containingInterval( new FinalRealInterval( min, max ) ) );
+			}
 		}
+		boundingIntervalsPerLevel = interim;
+
+		final Object token = new Object();
+		boundingIntervalsToken = token;
+		boundingIntervalsTask = BoundingIntervalEstimator.estimateInBackground( source, xfmToEstimate, est, pixelTransform, intervals -> {
+			synchronized( this )
+			{
+				if( boundingIntervalsToken == token )
+					boundingIntervalsPerLevel = intervals;
+			}
+		} );
+	}
+
+	/**
+	 * Estimate the bounding intervals on a background thread when the transform
+	 * changes, using the previous ones until then.
+	 *
+	 * @param estimateBoundsInBackground whether to estimate in the background
+	 */
+	public synchronized void setEstimateBoundsInBackground( final boolean estimateBoundsInBackground )
+	{
+		this.estimateBoundsInBackground = estimateBoundsInBackground;
 	}
 
 	public void setIsTransformed( boolean isTransformed )
@@ -168,40 +572,64 @@ public class WarpedSource < T > implements Source< T >, MipmapOrdering
 		return source.getSource( t, level );
 	}
 
-	private Interval estimateBoundingInterval( final int t, final int level )
+	/*
+	 * A new copy of the inverse transform in pixel coordinates of a mipmap level.
+	 */
+	private RealTransform inversePixelTransform( final InvertibleRealTransform xfm, final int level )
 	{
-		if( xfm == null )
-		{
-			return source.getSource( t, level );
+		final AffineTransform3D srcTransform = new AffineTransform3D();
+		source.getSourceTransform( 0, level, srcTransform );
+
+		final InvertibleRealTransform xfmcopy = xfm.copy();
+		if( xfm instanceof WrappedIterativeInvertibleRealTransform) {
+			// TODO this should not be necessary - fix in WrappedIterativeInvertibleRealTransform
+			// workaround for now
+			@SuppressWarnings("rawtypes")
+			WrappedIterativeInvertibleRealTransform copy = (WrappedIterativeInvertibleRealTransform)xfmcopy;
+			copy.getOptimzer().setMaxStep(500);
 		}
-		else
-		{
-			// getSource can be called by multiple threads, so need ensure application of
-			// the transform is thread safe here by copying
-
-			source.getSourceTransform(t, level, tmpSrcTransform);
-			InvertibleRealTransform xfmcopy = xfm.copy();
-			if( xfm instanceof WrappedIterativeInvertibleRealTransform) {
-				// TODO this should not be necessary - fix in WrappedIterativeInvertibleRealTransform
-				// workaround for now
-				@SuppressWarnings("rawtypes")
-				WrappedIterativeInvertibleRealTransform copy = (WrappedIterativeInvertibleRealTransform)xfmcopy;
-				copy.getOptimzer().setMaxStep(500);
-			}
 
-			RealTransformSequence seq = new RealTransformSequence();
-			// build the inverse transform
-			seq.add(tmpSrcTransform);
-			seq.add(xfmcopy.inverse());
-			seq.add(tmpSrcTransform.inverse());
+		final RealTransformSequence seq = new RealTransformSequence();
+		// build the inverse transform
+		seq.add(srcTransform);
+		seq.add(xfmcopy.inverse());
+		seq.add(srcTransform.inverse());
+		return seq;
+	}
 
-			final Interval res = bboxEst.estimatePixelInterval( seq, source.getSource( t, level ) );
-			return res;
-		}
+	/**
+	 * Returns the interpolated source for the given source, using the exact transform if it is a
+	 * {@link WarpedSource} that renders with an approximation.
+	 *
+	 * @param <T> the type
+	 * @param src the source
+	 * @param t the time point
+	 * @param level the mipmap level
+	 * @param method the interpolation method
+	 * @return the interpolated source
+	 */
+	public static < T > RealRandomAccessible< T > getExactInterpolatedSource( final Source< T > src, final int t, final int level, final Interpolation method )
+	{
+		if( src instanceof WarpedSource )
+			return ( ( WarpedSource< T > ) src ).getExactInterpolatedSource( t, level, method );
+		else
+			return src.getInterpolatedSource( t, level, method );
 	}
 
 	@Override
 	public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	{
+		final RealTransform[] approximations = approximationsPerLevel;
+		if( isTransformed && approximations != null && approximations[ level ] != null )
+		{
+			return new RealTransformRealRandomAccessible< T, RealTransform >(
+					source.getInterpolatedSource( t, level, method ),
+					approximations[ level ].copy() );
+		}
+		return getExactInterpolatedSource( t, level, method );
+	}
+
+	public RealRandomAccessible< T > getExactInterpolatedSource( final int t, final int level, final Interpolation method )
 	{
 		final RealRandomAccessible<T> realSrc = source.getInterpolatedSource( t, level, method );
 		if( isTransformed && xfm != null )
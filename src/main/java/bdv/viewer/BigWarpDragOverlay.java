@@ -30,7 +30,7 @@ import java.awt.event.MouseMotionListener;
 import net.imglib2.RealPoint;
 import net.imglib2.realtransform.AffineTransform3D;
 import bigwarp.BigWarp;
-import bigwarp.BigWarp.SolveThread;
+import bigwarp.SolvePipeline;
 
 public class BigWarpDragOverlay
 {
@@ -55,7 +55,7 @@ public class BigWarpDragOverlay
 	
 	private Color baseColor;
 	
-	public BigWarpDragOverlay( final BigWarp<?> bw, final BigWarpViewerPanel viewer, final SolveThread solveThread )
+	public BigWarpDragOverlay( final BigWarp<?> bw, final BigWarpViewerPanel viewer, final SolvePipeline solvePipeline )
 	{
 		this.bw = bw;
 		this.viewer = viewer;
@@ -68,7 +68,7 @@ public class BigWarpDragOverlay
 		arad = viewer.getSettings().getSpotSize();
 		baseColor = viewer.getSettings().getSpotColor();
 
-		mouseListener = new WarpDragMouseListener( bw, viewer, solveThread );
+		mouseListener = new WarpDragMouseListener( bw, viewer, solvePipeline );
 	}
 	
 	public void reset()
@@ -117,15 +117,15 @@ public class BigWarpDragOverlay
 		private int index;
 		double[] targetPtArray = new double[ ndim ];
 
-		final private SolveThread solverThread;
+		final private SolvePipeline solvePipeline;
 
-		public WarpDragMouseListener( final BigWarp bw, final BigWarpViewerPanel thisViewer, SolveThread solverThread )
+		public WarpDragMouseListener( final BigWarp bw, final BigWarpViewerPanel thisViewer, SolvePipeline solvePipeline )
 		{
 			this.bw = bw;
 			setViewer( thisViewer );
 			thisViewer.getDisplay().addHandler( this );
 
-			this.solverThread = solverThread;
+			this.solvePipeline = solvePipeline;
 		}
 		
 		protected void setViewer( BigWarpViewerPanel thisViewer )
@@ -211,7 +211,7 @@ public class BigWarpDragOverlay
 				if( bw.isMovingDisplayTransformed() &&
 						bw.getLandmarkPanel().getTableModel().isActive( index ) )
 				{
-					solverThread.requestResolve( false, index, targetPtArray );
+					solvePipeline.requestResolve( false, index, targetPtArray );
 				}
 
 				thisViewer.requestRepaint();
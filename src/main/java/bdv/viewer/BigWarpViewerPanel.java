@@ -38,6 +38,8 @@ import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import net.imglib2.FinalInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.Translation3D;
 
@@ -76,6 +78,9 @@ public class BigWarpViewerPanel extends ViewerPanel
 	// root two over two
 	public static final double R2o2 = Math.sqrt( 2 ) / 2;
 
+	// screen pixels added around a repainted region, for rounding and interpolation
+	private static final int REPAINT_MARGIN = 2;
+
 	ViewerOptions options;
 
 	@SuppressWarnings("rawtypes")
@@ -238,6 +243,50 @@ public class BigWarpViewerPanel extends ViewerPanel
 			showMessage( "No update on drag" );
 	}
 
+	/**
+	 * Repaints the part of the screen that shows a box in global coordinates, or only
+	 * the overlays if the box is not visible.
+	 *
+	 * @param globalRegion the box, everything is repainted if null
+	 */
+	public void requestRepaintRegion( final RealInterval globalRegion )
+	{
+		if ( globalRegion == null )
+		{
+			requestRepaint();
+			return;
+		}
+
+		final AffineTransform3D viewerTransform = state().getViewerTransform();
+		final int nr = globalRegion.numDimensions();
+		final double[] corner = new double[ 3 ];
+		final double[] screen = new double[ 3 ];
+		final double[] min = new double[] { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		final double[] max = new double[] { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for ( int c = 0; c < 8; c++ )
+		{
+			for ( int d = 0; d < 3; d++ )
+				corner[ d ] = d >= nr ? 0 : ( c & ( 1 << d ) ) == 0 ? globalRegion.realMin( d ) : globalRegion.realMax( d );
+
+			viewerTransform.apply( corner, screen );
+			for ( int d = 0; d < 3; d++ )
+			{
+				min[ d ] = Math.min( min[ d ], screen[ d ] );
+				max[ d ] = Math.max( max[ d ], screen[ d ] );
+			}
+		}
+
+		// the rendered plane is z = 0 in screen coordinates
+		final long x0 = Math.max( 0, ( long ) Math.floor( min[ 0 ] ) - REPAINT_MARGIN );
+		final long y0 = Math.max( 0, ( long ) Math.floor( min[ 1 ] ) - REPAINT_MARGIN );
+		final long x1 = Math.min( getDisplay().getWidth() - 1, ( long ) Math.ceil( max[ 0 ] ) + REPAINT_MARGIN );
+		final long y1 = Math.min( getDisplay().getHeight() - 1, ( long ) Math.ceil( max[ 1 ] ) + REPAINT_MARGIN );
+		if ( min[ 2 ] > REPAINT_MARGIN || max[ 2 ] < -REPAINT_MARGIN || x0 > x1 || y0 > y1 )
+			getDisplay().repaint();
+		else
+			requestRepaint( new FinalInterval( new long[] { x0, y0 }, new long[] { x1, y1 } ) );
+	}
+
 	public void addOverlay( BigWarpOverlay overlay ){
 		this.overlay = overlay;
 	}
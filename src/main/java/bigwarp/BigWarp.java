@@ -50,7 +50,6 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.RejectedExecutionException;
 
 import javax.swing.ActionMap;
 import javax.swing.InputMap;
@@ -146,6 +145,7 @@ import bdv.viewer.animate.TranslationAnimator;
 import bdv.viewer.overlay.BigWarpMaskSphereOverlay;
 import bdv.viewer.overlay.BigWarpSourceOverlayRenderer;
 import bdv.viewer.overlay.MultiBoxOverlayRenderer;
+import bigwarp.landmarks.LandmarkPoints;
 import bigwarp.landmarks.LandmarkTableModel;
 import bigwarp.source.GridSource;
 import bigwarp.source.JacobianDeterminantSource;
@@ -174,9 +174,7 @@ import mpicbg.models.AbstractModel;
 import mpicbg.models.AffineModel2D;
 import mpicbg.models.AffineModel3D;
 import mpicbg.models.CoordinateTransform;
-import mpicbg.models.IllDefinedDataPointsException;
 import mpicbg.models.InvertibleCoordinateTransform;
-import mpicbg.models.NotEnoughDataPointsException;
 import mpicbg.models.RigidModel2D;
 import mpicbg.models.RigidModel3D;
 import mpicbg.models.SimilarityModel2D;
@@ -188,6 +186,7 @@ import mpicbg.spim.data.XmlIoSpimData;
 import mpicbg.spim.data.registration.ViewTransformAffine;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.display.RealARGBColorConverter;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -235,6 +234,8 @@ public class BigWarp< T >
 
 	protected final SourceInfoDialog sourceInfoDialog;
 
+	protected final FetchMetricsDialog fetchMetricsDialog;
+
 	protected final VisibilityAndGroupingDialog activeSourcesDialogP;
 
 	protected final VisibilityAndGroupingDialog activeSourcesDialogQ;
@@ -289,6 +290,9 @@ public class BigWarp< T >
 
 	protected InvertibleRealTransform currentTransform;
 
+	// grid spacing for approximate rendering of moving sources, exact if zero
+	protected double approximationSpacing = 0;
+
 	protected JTable landmarkTable;
 
 	protected LandmarkTableListener landmarkModellistener;
@@ -321,9 +325,11 @@ public class BigWarp< T >
 
 	protected final AbstractModel< ? >[] baseXfmList;
 
+	private final WarpMagnitudeBaselineFitter baselineFitter;
+
 	private final double[] ptBack;
 
-	private SolveThread solverThread;
+	private SolvePipeline solvePipeline;
 
 	private BigWarpTransform bwTransform;
 
@@ -419,6 +425,8 @@ public class BigWarp< T >
 
 		this.data = data;
 		this.options = options;
+		BigWarpData.configureSharedQueue( options );
+		data.configureDiskCache( options );
 
 		ptBack = new double[ 3 ];
 		if( options.values.is2D() )
@@ -436,6 +444,11 @@ public class BigWarp< T >
 
 		baseXfmList = new AbstractModel< ? >[ 3 ];
 		setupWarpMagBaselineOptions( baseXfmList, ndims );
+		baselineFitter = new WarpMagnitudeBaselineFitter( baseline -> {
+			warpMagSource.setBaseline( baseline );
+			getViewerFrameP().getViewerPanel().requestRepaint();
+			getViewerFrameQ().getViewerPanel().requestRepaint();
+		} );
 
 		fixedViewXfm = new AffineTransform3D();
 		viewerSettings = new BigWarpViewerSettings();
@@ -529,13 +542,31 @@ public class BigWarp< T >
 		bwTransform = new BigWarpTransform( landmarkModel );
 		bwTransform.initializeInverseParameters(data);
 
-		solverThread = new SolveThread( this );
-		solverThread.start();
+		solvePipeline = new SolvePipeline( this );
+		solvePipeline.addStage( s -> {
+			if ( s.isFull() )
+			{
+				// re-compute all warped points for non-active points
+				landmarkModel.resetWarpedPoints();
+				landmarkModel.updateAllWarpedPoints( s.getTransform().copy() );
+			}
+		} );
+		solvePipeline.addStage( s -> {
+			if ( warpMagSource != null )
+			{
+				warpMagSource.setWarp( s.getTransform() );
+				fitBaselineWarpMagModel();
+			}
+		} );
+		solvePipeline.addStage( s -> {
+			if ( jacDetSource != null )
+				updateJacobianTransformation( s.getTransform() );
+		} );
 
 		bboxOptions = new BoundingBoxEstimation( BoundingBoxEstimation.Method.FACES, 5 );
 
-		dragOverlayP = new BigWarpDragOverlay( this, viewerP, solverThread );
-		dragOverlayQ = new BigWarpDragOverlay( this, viewerQ, solverThread );
+		dragOverlayP = new BigWarpDragOverlay( this, viewerP, solvePipeline );
+		dragOverlayQ = new BigWarpDragOverlay( this, viewerQ, solvePipeline );
 		viewerP.addDragOverlay( dragOverlayP );
 		viewerQ.addDragOverlay( dragOverlayQ );
 
@@ -546,6 +577,7 @@ public class BigWarp< T >
 
 		helpDialog = new HelpDialog( landmarkFrame );
 		sourceInfoDialog = new SourceInfoDialog( landmarkFrame, data );
+		fetchMetricsDialog = new FetchMetricsDialog( landmarkFrame, data );
 
 		transformSelector = new TransformTypeSelectDialog( landmarkFrame, this );
 
@@ -1100,6 +1132,9 @@ public class BigWarp< T >
 
 		viewerFrameP.getViewerPanel().stop();
 		viewerFrameQ.getViewerPanel().stop();
+		baselineFitter.shutdown();
+		solvePipeline.shutdown();
+		stopAutosave();
 
 		viewerFrameP.dispose();
 		viewerFrameQ.dispose();
@@ -1213,6 +1248,10 @@ public class BigWarp< T >
 		exportWarpField.setText( "Export transformation..." );
 		fileMenu.add( exportWarpField );
 
+		final JMenuItem cancelExports = new JMenuItem( actionMap.get( BigWarpActions.CANCEL_EXPORTS ));
+		cancelExports.setText( "Cancel running exports" );
+		fileMenu.add( cancelExports );
+
 		final JMenu settingsMenu = new JMenu( "Settings" );
 		viewerMenuBar.add( settingsMenu );
 
@@ -1253,6 +1292,10 @@ public class BigWarp< T >
 		final JMenuItem miSrcInfo = new JMenuItem( actionMap.get( BigWarpActions.SHOW_SOURCE_INFO ) );
 		miSrcInfo.setText( "Show source information" );
 		helpMenu.add( miSrcInfo );
+
+		final JMenuItem miFetchMetrics = new JMenuItem( actionMap.get( BigWarpActions.SHOW_FETCH_METRICS ) );
+		miFetchMetrics.setText( "Show loading statistics" );
+		helpMenu.add( miFetchMetrics );
 	}
 
 	protected void setupImageJExportOption()
@@ -1266,6 +1309,10 @@ public class BigWarp< T >
 		final JMenuItem exportWarpField = new JMenuItem( actionMap.get( BigWarpActions.EXPORT_WARP ) );
 		exportWarpField.setText( "Export warp field" );
 		fileMenu.add( exportWarpField );
+
+		final JMenuItem cancelExports = new JMenuItem( actionMap.get( BigWarpActions.CANCEL_EXPORTS ) );
+		cancelExports.setText( "Cancel running exports" );
+		fileMenu.add( cancelExports );
 	}
 
 	public void exportAsImagePlus( boolean virtual )
@@ -1843,34 +1890,38 @@ public class BigWarp< T >
 
 		synchronized( landmarkModel )
 		{
-			final int N = landmarkModel.getRowCount();
-			for ( int n = 0; n < N; n++ )
+			final boolean useWarped = isMoving && isMovingDisplayTransformed();
+			final LandmarkPoints warpedPts = landmarkModel.getWarpedPointStore();
+			final LandmarkPoints lmPts = landmarkModel.getPointStore( isMoving && !useWarped );
+
+			// only landmarks within the selection radius are candidates
+			final double radius = Math.sqrt( radsq ) / scale;
+			for ( final int n : lmPts.withinRadius( pt, radius ) )
 			{
-				final Double[] lmpt;
-				if( isMoving && landmarkModel.isWarped( n ) && isMovingDisplayTransformed() )
-				{
-					lmpt = landmarkModel.getWarpedPoints().get( n );
-				}
-				else if( isMoving && isMovingDisplayTransformed() )
-				{
-					lmpt = landmarkModel.getPoints( false ).get( n );
-				}
-				else
-				{
-					lmpt = landmarkModel.getPoints( isMoving ).get( n );
-				}
+				if( useWarped && landmarkModel.isWarped( n ) )
+					continue;
 
-				dist = 0.0;
-				for ( int i = 0; i < landmarkModel.getNumdims(); i++ )
+				dist = lmPts.squaredDistance( n, pt ) * ( scale * scale );
+				if ( dist < radsq && ( dist < smallestDist || ( dist == smallestDist && n < bestIdx ) ) )
 				{
-					dist += ( pt[ i ] - lmpt[ i ] ) * ( pt[ i ] - lmpt[ i ] );
+					smallestDist = dist;
+					bestIdx = n;
 				}
+			}
 
-				dist *= ( scale * scale );
-				if ( dist < radsq && dist < smallestDist )
+			if( useWarped )
+			{
+				for ( final int n : warpedPts.withinRadius( pt, radius ) )
 				{
-					smallestDist = dist;
-					bestIdx = n;
+					if( !landmarkModel.isWarped( n ) )
+						continue;
+
+					dist = warpedPts.squaredDistance( n, pt ) * ( scale * scale );
+					if ( dist < radsq && ( dist < smallestDist || ( dist == smallestDist && n < bestIdx ) ) )
+					{
+						smallestDist = dist;
+						bestIdx = n;
+					}
 				}
 			}
 
@@ -2124,7 +2175,7 @@ public class BigWarp< T >
 		{
 			if ( BigWarp.this.landmarkModel.isWarped( row ) )
 			{
-				pt = LandmarkTableModel.toPrimitive( BigWarp.this.landmarkModel.getWarpedPoints().get( row ) );
+				pt = BigWarp.this.landmarkModel.getWarpedPointCopy( row );
 			}
 			else
 			{
@@ -2660,6 +2711,24 @@ public class BigWarp< T >
 		viewerQ.requestRepaint();
 	}
 
+	/**
+	 * Render the warp visualizations from the warp sampled on a lattice with the given
+	 * spacing, or from the exact warp if the spacing is zero.
+	 *
+	 * @param spacing the lattice spacing in pixels
+	 */
+	public void setWarpVisLatticeSpacing( final double spacing )
+	{
+		if ( gridSource != null )
+			gridSource.setLatticeSpacing( spacing );
+
+		if ( warpMagSource != null )
+			warpMagSource.setLatticeSpacing( spacing );
+
+		viewerP.requestRepaint();
+		viewerQ.requestRepaint();
+	}
+
 	public void setAutoSaver( final BigWarpAutoSaver autoSaver )
 	{
 		this.autoSaver = autoSaver;
@@ -2687,41 +2756,24 @@ public class BigWarp< T >
 		fitBaselineWarpMagModel();
 	}
 
+	/**
+	 * Requests a fit of the warp magnitude baseline model on a background thread, if the
+	 * warp magnitude is shown. Does nothing if the landmarks did not change since the last fit.
+	 */
 	protected void fitBaselineWarpMagModel()
 	{
-		if( warpMagSource != null )
-		{
-			final int numActive = landmarkModel.numActive();
-			if( numActive < 4 )
-				return;
-
-			final int ndims = landmarkModel.getNumdims();
-			final double[][] p = new double[ ndims ][ numActive ];
-			final double[][] q = new double[ ndims ][ numActive ];
-			final double[] w = new double[ numActive ];
-
-			landmarkModel.copyLandmarks( p, q );
-			Arrays.fill( w, 1.0 );
+		if( warpMagSource != null && isWarpMagnitudeShown() )
+			baselineFitter.requestFit( landmarkModel, baseXfmList[ baselineModelIndex ] );
+	}
 
-			try
-			{
-				final AbstractModel< ? > baseline = this.baseXfmList[ baselineModelIndex ];
-				baseline.fit( p, q, w );  // FITBASELINE
-				final WrappedCoordinateTransform baselineTransform = new WrappedCoordinateTransform(
-						(InvertibleCoordinateTransform)baseline, ndims );
-
-				// the transform to compare is the inverse (because we use it for rendering)
-				// so need to give the inverse transform for baseline as well
-				warpMagSource.setBaseline( baselineTransform.inverse() );
-			}
-			catch ( final IllDefinedDataPointsException | NotEnoughDataPointsException e )
-			{
-				e.printStackTrace();
-			}
+	private boolean isWarpMagnitudeShown()
+	{
+		final SourceInfo info = data.getSourceInfo( WARPMAG_SOURCE_ID );
+		if ( info == null || info.getSourceAndConverter() == null )
+			return false;
 
-			getViewerFrameP().getViewerPanel().requestRepaint();
-			getViewerFrameQ().getViewerPanel().requestRepaint();
-		}
+		final SourceAndConverter< ? > wmSac = info.getSourceAndConverter();
+		return viewerP.state().isSourceActive( wmSac ) || viewerQ.state().isSourceActive( wmSac );
 	}
 
 	public void setMovingSpimData( SpimData movingSpimData, File movingImageXml )
@@ -2812,6 +2864,7 @@ public class BigWarp< T >
 				synchronizeSources();
 			}
 			showSourceFused( viewerFrame, WARPMAG_SOURCE_ID );
+			fitBaselineWarpMagModel();
 
 			// estimate the max warp
 //			final WarpMagnitudeSource< ? > wmSrc = ( ( WarpMagnitudeSource< ? > ) sources.get( warpMagSourceIndex ).getSpimSource() );
@@ -2891,6 +2944,7 @@ public class BigWarp< T >
 		else // warp mag is invisible, turn it on
 		{
 			state.setSourceActive( wmSac, true );
+			fitBaselineWarpMagModel();
 
 			// estimate the max warp
 //			final WarpMagnitudeSource< ? > wmSrc = ( ( WarpMagnitudeSource< ? > ) sources.get( warpMagSourceIndex ).getSpimSource() );
@@ -2953,15 +3007,24 @@ public class BigWarp< T >
 		state.setDisplayMode(DisplayMode.FUSED);
 	}
 
-	private void setTransformationMovingSourceOnly( final InvertibleRealTransform transform )
+	/**
+	 * @param transform the transformation
+	 * @param changedRegion a box in global coordinates outside of which the transformation did not change, null if unknown
+	 */
+	void setTransformationMovingSourceOnly( final InvertibleRealTransform transform, final RealInterval changedRegion )
 	{
 		this.currentTransform = transform;
 		data.sourceInfos.values().forEach( sourceInfo -> {
-			setTransform( sourceInfo, transform );
+			setTransform( sourceInfo, transform, changedRegion );
 		} );
 	}
 
 	private void setTransform( final SourceInfo sourceInfo, final InvertibleRealTransform transform )
+	{
+		setTransform( sourceInfo, transform, null );
+	}
+
+	private void setTransform( final SourceInfo sourceInfo, final InvertibleRealTransform transform, final RealInterval changedRegion )
 	{
 		if ( sourceInfo.isMoving() )
 		{
@@ -2971,13 +3034,69 @@ public class BigWarp< T >
 
 			// the updateTransform method creates a copy of the transform
 			final SourceAndConverter< ? > sac = sourceInfo.getSourceAndConverter();
+			// rendering does not need exact bounding boxes, so the solver thread should not wait for them
 			final WarpedSource< ? > wsrc = ( WarpedSource< ? > ) sac.getSpimSource();
-			wsrc.updateTransform( transform );
+			updateApproximation( wsrc );
+			wsrc.setEstimateBoundsInBackground( true );
+			wsrc.updateTransform( transform, changedRegion );
 			if ( sac.asVolatile() != null )
-				( ( WarpedSource< ? > ) sourceInfo.getSourceAndConverter().asVolatile().getSpimSource() ).updateTransform( transform );
+			{
+				final WarpedSource< ? > vwsrc = ( WarpedSource< ? > ) sourceInfo.getSourceAndConverter().asVolatile().getSpimSource();
+				updateApproximation( vwsrc );
+				vwsrc.setEstimateBoundsInBackground( true );
+				vwsrc.updateTransform( transform, changedRegion );
+			}
 		}
 	}
 
+	private void updateApproximation( final WarpedSource< ? > wsrc )
+	{
+		if ( wsrc.getApproximationSpacing() != approximationSpacing )
+			wsrc.setApproximation( approximationSpacing, this::requestRepaint );
+	}
+
+	/**
+	 * Repaints both viewers after the transformation changed inside a region.
+	 *
+	 * @param changedRegion a box in global coordinates, or null if the transformation may have changed everywhere
+	 */
+	void requestRepaint( final RealInterval changedRegion )
+	{
+		// the warp magnitude is relative to a baseline fit to all landmarks, so it changes everywhere
+		final RealInterval region = isWarpMagnitudeShown() ? null : changedRegion;
+
+		// the moving viewer shows the fixed space only if the moving image is transformed
+		viewerP.requestRepaintRegion( isMovingDisplayTransformed() ? region : null );
+		viewerQ.requestRepaintRegion( region );
+	}
+
+	/**
+	 * Render moving sources with an approximation of the transformation that interpolates
+	 * its displacements on a grid, making rendering speed independent of the number of landmarks.
+	 * Exports always use the exact transformation.
+	 *
+	 * @param spacing the grid spacing in pixels, or zero to render with the exact transformation
+	 */
+	public void setApproximateRendering( final double spacing )
+	{
+		approximationSpacing = spacing;
+		data.sourceInfos.values().forEach( sourceInfo -> {
+			if ( sourceInfo.isMoving() )
+			{
+				final SourceAndConverter< ? > sac = sourceInfo.getSourceAndConverter();
+				updateApproximation( ( WarpedSource< ? > ) sac.getSpimSource() );
+				if ( sac.asVolatile() != null )
+					updateApproximation( ( WarpedSource< ? > ) sac.asVolatile().getSpimSource() );
+			}
+		} );
+		requestRepaint( null );
+	}
+
+	public double getApproximateRenderingSpacing()
+	{
+		return approximationSpacing;
+	}
+
 	public void updateSourceBoundingBoxEstimators()
 	{
 		data.sourceInfos.values().forEach( sourceInfo -> {
@@ -3023,20 +3142,6 @@ public class BigWarp< T >
 			jacDetSource.setTransform( null );
 	}
 
-	private void setTransformationAll( final InvertibleRealTransform transform )
-	{
-		setTransformationMovingSourceOnly( transform );
-
-		if( warpMagSource != null )
-		{
-			warpMagSource.setWarp( transform );
-			fitBaselineWarpMagModel();
-		}
-
-		if( jacDetSource != null )
-			updateJacobianTransformation(transform);
-	}
-
 	public boolean restimateTransformation()
 	{
 		if (landmarkModel.getActiveRowCount() < 4)
@@ -3051,7 +3156,7 @@ public class BigWarp< T >
 //		else
 //			landmarkModel.transferUpdatesToModel();
 
-		solverThread.requestResolve( true, -1, null );
+		solvePipeline.requestResolve( true, -1, null );
 
 		// display the warped version automatically if this is the first
 		// time the transform was computed
@@ -3486,7 +3591,7 @@ public class BigWarp< T >
 						thisViewer.doUpdateOnDrag() &&
 						BigWarp.this.landmarkModel.isActive( selectedPointIndex ) )
 				{
-					solverThread.requestResolve( isMoving, selectedPointIndex, ptarrayLoc );
+					solvePipeline.requestResolve( isMoving, selectedPointIndex, ptarrayLoc );
 				}
 				else
 				{
@@ -3722,6 +3827,11 @@ public class BigWarp< T >
 		return bwTransform;
 	}
 
+	public SolvePipeline getSolvePipeline()
+	{
+		return solvePipeline;
+	}
+
 	public BoundingBoxEstimation getBoxEstimation()
 	{
 		return bboxOptions;
@@ -3792,121 +3902,6 @@ public class BigWarp< T >
 //		return invXfm;
 //	}
 
-	public static class SolveThread extends Thread
-	{
-		private boolean pleaseResolve;
-
-		private BigWarp<?> bw;
-
-		private boolean isMoving;
-
-		private int index;
-
-		private double[] pt;
-
-		public SolveThread( final BigWarp<?> bw )
-		{
-			this.bw = bw;
-			pleaseResolve = false;
-		}
-
-		@Override
-		public void run()
-		{
-			while ( !isInterrupted() )
-			{
-				final boolean b;
-				synchronized ( this )
-				{
-					b = pleaseResolve;
-					pleaseResolve = false;
-				}
-				if ( b )
-				{
-					try
-					{
-						final InvertibleRealTransform invXfm = bw.bwTransform.getTransformation( index );
-
-						if ( invXfm == null )
-							return;
-
-						if ( index < 0 )
-						{
-							// reset active warped points
-							bw.landmarkModel.resetWarpedPoints();
-
-							// re-compute all warped points for non-active points
-							bw.landmarkModel.updateAllWarpedPoints( bw.currentTransform );
-
-							// update sources with the new transformation
-							bw.setTransformationAll( invXfm );
-							bw.fitBaselineWarpMagModel();
-						}
-						else
-						{
-							// update the transform and warped point
-//							bw.setTransformationMovingSourceOnly( invXfm );
-//							bw.data.updateEditableTransformation( invXfm );
-							bw.setTransformationAll( invXfm );
-						}
-
-						// update fixed point - but don't allow undo/redo
-						// and update warped point
-						// both for rendering purposes
-						if ( !isMoving )
-						{
-							bw.getLandmarkPanel().getTableModel().setPoint( index, isMoving, pt, false, bw.currentTransform );
-						}
-
-						/*
-						 * repaint both panels so that:
-						 * 1) new transform is displayed
-						 * 2) points are rendered
-						 */
-						bw.getViewerFrameP().getViewerPanel().requestRepaint();
-						bw.getViewerFrameQ().getViewerPanel().requestRepaint();
-
-//						bw.notifyTransformListeners();
-					}
-
-					catch ( final RejectedExecutionException e )
-					{
-						// this happens when the rendering threadpool
-						// is killed before the painter thread.
-					}
-				}
-
-				synchronized ( this )
-				{
-					try
-					{
-						if ( !pleaseResolve )
-							wait();
-					}
-					catch ( final InterruptedException e )
-					{
-						break;
-					}
-				}
-			}
-		}
-
-		public void requestResolve( final boolean isMoving, final int index, final double[] newpt )
-		{
-			synchronized ( this )
-			{
-				pleaseResolve = true;
-				this.isMoving = isMoving;
-				this.index = index;
-				if ( newpt != null )
-					this.pt = Arrays.copyOf( newpt, newpt.length );
-
-				notify();
-			}
-		}
-
-	}
-
 	/**
 	 * Saves landmarks to a new File in the user's bigwarp folder.
 	 */
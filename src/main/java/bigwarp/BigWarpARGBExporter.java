@@ -47,6 +47,7 @@ import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.view.MixedTransformView;
 import net.imglib2.view.Views;
 import bdv.export.ProgressWriter;
+import bdv.img.WarpedSource;
 import bdv.tools.brightness.ConverterSetup;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
@@ -118,7 +119,7 @@ public class BigWarpARGBExporter extends BigWarpExporter<ARGBType>
 
 		// in pixel space
 		@SuppressWarnings("unchecked")
-		final RealRandomAccessible<ARGBType> raiRaw = (RealRandomAccessible<ARGBType>)src.getInterpolatedSource(0, 0, interp);
+		final RealRandomAccessible<ARGBType> raiRaw = (RealRandomAccessible<ARGBType>)WarpedSource.getExactInterpolatedSource(src, 0, 0, interp);
 
 		// the transform from world to new pixel coordinates
 		final AffineTransform3D pixelToPhysical = pixelRenderToPhysical.copy().inverse();
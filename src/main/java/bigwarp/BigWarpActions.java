@@ -127,6 +127,8 @@ public class BigWarpActions extends Actions
 
 	public static final String SHOW_SOURCE_INFO = "show source info";
 
+	public static final String SHOW_FETCH_METRICS = "show fetch metrics";
+
 	// Warp visualization options
 	public static final String SHOW_WARPTYPE_DIALOG = "show warp vis dialog" ;
 	public static final String[] SHOW_WARPTYPE_DIALOG_KEYS = new String[]{ "U" };
@@ -249,6 +251,9 @@ public class BigWarpActions extends Actions
 	public static final String EXPORT_AFFINE = "print affine";
 	public static final String[] EXPORT_AFFINE_KEYS = new String[] { "F5" };
 
+	public static final String CANCEL_EXPORTS = "cancel exports";
+	public static final String[] CANCEL_EXPORTS_KEYS = new String[] { NOT_MAPPED };
+
 	public static final String CLEAR_MOVING = "table clear moving";
 	public static final String[] CLEAR_MOVING_KEYS = new String[] { "BACK_SPACE" };
 
@@ -351,6 +356,7 @@ public class BigWarpActions extends Actions
 			descriptions.add( SAVE_WARPED_XML, SAVE_WARPED_XML_KEYS, "Export moving image to BigDataViewer xml/h5." );
 			descriptions.add( EXPORT_WARP, EXPORT_WARP_KEYS, "Show the dialog to export the displacement field." );
 			descriptions.add( EXPORT_AFFINE, EXPORT_AFFINE_KEYS, "Print the affine transformation." );
+			descriptions.add( CANCEL_EXPORTS, CANCEL_EXPORTS_KEYS, "Cancel all running exports." );
 			descriptions.add( PRINT_TRANSFORM,PRINT_TRANSFORM_KEYS, "Prints the current transformation." );
 
 
@@ -447,6 +453,7 @@ public class BigWarpActions extends Actions
 			descriptions.add( SAVE_WARPED_XML, SAVE_WARPED_XML_KEYS, "Export moving image to BigDataViewer xml/h5." );
 			descriptions.add( EXPORT_WARP, EXPORT_WARP_KEYS, "Show the dialog to export the displacement field." );
 			descriptions.add( EXPORT_AFFINE, EXPORT_AFFINE_KEYS, "Print the affine transformation." );
+			descriptions.add( CANCEL_EXPORTS, CANCEL_EXPORTS_KEYS, "Cancel all running exports." );
 			descriptions.add( PRINT_TRANSFORM,PRINT_TRANSFORM_KEYS, "Prints the current transformation." );
 
 			// mask
@@ -503,6 +510,7 @@ public class BigWarpActions extends Actions
 		actions.runnableAction( () -> { bw.exportAsImagePlus( false ); }, EXPORT_IMAGE, EXPORT_IMAGE_KEYS );
 		actions.runnableAction( bw::exportWarpField, EXPORT_WARP, EXPORT_WARP_KEYS );
 		actions.runnableAction( () -> { bw.getBwTransform().printAffine(); }, EXPORT_AFFINE, EXPORT_AFFINE_KEYS );
+		actions.runnableAction( () -> { ExportScheduler.getInstance().cancelAll(); }, CANCEL_EXPORTS, CANCEL_EXPORTS_KEYS );
 
 
 		// dialogs
@@ -595,6 +603,7 @@ public class BigWarpActions extends Actions
 		actions.runnableAction( () -> { bw.exportAsImagePlus( false ); }, EXPORT_IMAGE, EXPORT_IMAGE_KEYS );
 		actions.runnableAction( bw::exportWarpField, EXPORT_WARP, EXPORT_WARP_KEYS );
 		actions.runnableAction( () -> { bw.getBwTransform().printAffine(); }, EXPORT_AFFINE, EXPORT_AFFINE_KEYS );
+		actions.runnableAction( () -> { ExportScheduler.getInstance().cancelAll(); }, CANCEL_EXPORTS, CANCEL_EXPORTS_KEYS );
 
 		// dialogs
 		actions.namedAction( new ToggleDialogAction( SHOW_HELP, bw.helpDialog ), SHOW_HELP_KEYS );
@@ -844,6 +853,7 @@ public class BigWarpActions extends Actions
 
 		new ToggleDialogAction( SHOW_HELP, bw.helpDialog ).put( actionMap );
 		new ToggleDialogAction( SHOW_SOURCE_INFO, bw.sourceInfoDialog ).put( actionMap );
+		new ToggleDialogAction( SHOW_FETCH_METRICS, bw.fetchMetricsDialog ).put( actionMap );
 
 		new SaveWarpedAction( bw ).put( actionMap );
 		new SaveWarpedXmlAction( bw ).put( actionMap );
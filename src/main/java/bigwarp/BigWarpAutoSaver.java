@@ -22,17 +22,26 @@
 package bigwarp;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
+import bigwarp.landmarks.LandmarkJournal;
 import bigwarp.landmarks.LandmarkTableModel;
 
 /**
- * Saves bigwarp landmarks to a file periodically,
- * but only if modification has occured since the last save.
+ * Saves bigwarp landmarks periodically, but only if modification has
+ * occured since the last save.
+ * <p>
+ * Edits are recorded in a {@link LandmarkJournal} as they happen, and
+ * compacted into a snapshot every period. When the auto saver stops, the
+ * landmarks are saved to a timestamped csv file in the autosave folder.
  *
  * @author John Bogovic
  *
@@ -45,6 +54,10 @@ public class BigWarpAutoSaver
 
 	transient final AutoSave saveTask;
 
+	transient private LandmarkJournal journal;
+
+	private static final Logger logger = LoggerFactory.getLogger( BigWarpAutoSaver.class );
+
 	final long period;
 
 	@SerializedName("location")
@@ -58,6 +71,9 @@ public class BigWarpAutoSaver
 		this.period = period;
 		timer = new Timer();
 		saveTask = new AutoSave();
+		if ( bw != null )
+			openJournal( bw.getBigwarpSettingsFolder() );
+
 		timer.schedule( saveTask, period, period );
 	}
 
@@ -70,6 +86,37 @@ public class BigWarpAutoSaver
 	{
 		saveTask.cancel();
 		timer.cancel();
+		closeJournal();
+	}
+
+	/**
+	 * Recovers landmarks of sessions that were not stopped, then starts a
+	 * journal in the given folder.
+	 */
+	private synchronized void openJournal( final File folder )
+	{
+		closeJournal();
+		if ( folder == null || bw.getLandmarkPanel() == null )
+			return;
+
+		LandmarkJournal.recover( folder );
+		try
+		{
+			journal = new LandmarkJournal( bw.getLandmarkPanel().getTableModel(), folder );
+		}
+		catch ( final IOException e )
+		{
+			logger.warn( "could not start landmark journal, saving full copies instead", e );
+		}
+	}
+
+	private synchronized void closeJournal()
+	{
+		if ( journal != null )
+		{
+			journal.close();
+			journal = null;
+		}
 	}
 
 	private class AutoSave extends TimerTask
@@ -77,6 +124,17 @@ public class BigWarpAutoSaver
 		@Override
 		public void run()
 		{
+			synchronized ( BigWarpAutoSaver.this )
+			{
+				if ( journal != null )
+				{
+					if ( journal.hasEditsSinceCompaction() )
+						journal.compact();
+
+					return;
+				}
+			}
+
 			final LandmarkTableModel ltm = bw.getLandmarkPanel().getTableModel();
 			if( ltm.isModifiedSinceSave() )
 			{
@@ -121,6 +179,9 @@ public class BigWarpAutoSaver
 
 		if ( exists && autoSaveFolder.isDirectory() )
 		{
+			if ( bw != null && !autoSaveFolder.equals( autoSaveDirectory ) )
+				openJournal( autoSaveFolder );
+
 			autoSaveDirectory = autoSaveFolder;
 			bw.warpVisDialog.getAutoSaveOptionsPanel().getAutoSaveFolderText().setText( autoSaveFolder.getAbsolutePath() );
 			bw.warpVisDialog.repaint();
@@ -21,17 +21,23 @@
  */
 package bigwarp;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import bdv.cache.CacheControl;
 import bdv.cache.SharedQueue;
 import bdv.gui.BigWarpViewerFrame;
+import bdv.gui.BigWarpViewerOptions;
 import bdv.img.WarpedSource;
 import bdv.tools.InitializeViewerState;
 import bdv.tools.brightness.ConverterSetup;
@@ -41,7 +47,9 @@ import bdv.viewer.ConverterSetups;
 import bdv.viewer.Source;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.SynchronizedViewerState;
+import bigwarp.loader.InstrumentedSharedQueue;
 import bigwarp.source.SourceInfo;
+import bigwarp.source.TransformedSourceDiskCache;
 import bigwarp.util.BigWarpUtils;
 import net.imglib2.realtransform.AffineGet;
 import net.imglib2.realtransform.AffineTransform3D;
@@ -63,7 +71,19 @@ public class BigWarpData< T >
 	
 	public boolean cacheFixedTransform = true;
 
-	private static SharedQueue sharedQueue;
+	/**
+	 * Stores the cells of sources with a cached fixed transform across sessions.
+	 * If null, they are kept in memory only.
+	 */
+	public TransformedSourceDiskCache transformedSourceDiskCache = null;
+
+	private static final Logger logger = LoggerFactory.getLogger( BigWarpData.class );
+
+	private static InstrumentedSharedQueue sharedQueue;
+
+	private static int numFetcherThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 );
+
+	private static final Map< Integer, Integer > fetchPriorities = new ConcurrentHashMap<>();
 
 	public BigWarpData()
 	{
@@ -123,14 +143,91 @@ public class BigWarpData< T >
 			this.cache = cache;
 	}
 	
-	public static SharedQueue getSharedQueue() {
+	public static synchronized InstrumentedSharedQueue getSharedQueue() {
 
 		if (sharedQueue == null)
-			sharedQueue = new SharedQueue(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+			sharedQueue = new InstrumentedSharedQueue(numFetcherThreads);
 
 		return sharedQueue;
 	}
 
+	/**
+	 * Returns the queue that loads the blocks of a source, with the priority
+	 * set by {@link #setFetchPriority}.
+	 *
+	 * @param setupId the setup id of the source
+	 * @return the queue
+	 */
+	public static SharedQueue getSharedQueue(final int setupId) {
+
+		return getSharedQueue().withPriorityOffset(fetchPriorities.getOrDefault(setupId, 0));
+	}
+
+	/**
+	 * Sets the number of threads of the shared queue. The queue is shared by all
+	 * sources, so once it was created the number can not be changed anymore.
+	 *
+	 * @param numThreads the number of fetcher threads
+	 * @return true if the shared queue will have the given number of threads
+	 */
+	public static synchronized boolean setNumFetcherThreads(final int numThreads) {
+
+		final int n = Math.max(1, numThreads);
+		if (sharedQueue != null && sharedQueue.getNumFetcherThreads() != n) {
+			logger.warn("the shared queue already loads blocks with " + sharedQueue.getNumFetcherThreads()
+					+ " threads, restart to use " + n);
+			return false;
+		}
+
+		numFetcherThreads = n;
+		return true;
+	}
+
+	/**
+	 * Sets the priority with which the blocks of a source are loaded, relative
+	 * to other sources. Sources with priority 0 (the default) are loaded
+	 * first, priorities only affect sources created afterwards.
+	 *
+	 * @param setupId the setup id of the source
+	 * @param priority the priority
+	 */
+	public static void setFetchPriority(final int setupId, final int priority) {
+
+		fetchPriorities.put(setupId, priority);
+	}
+
+	/**
+	 * Applies the fetcher thread count and source priorities of viewer options.
+	 *
+	 * @param options the options
+	 */
+	public static void configureSharedQueue(final BigWarpViewerOptions options) {
+
+		final BigWarpViewerOptions.BwValues values = options.getValues();
+		if (values.getNumFetcherThreads() > 0)
+			setNumFetcherThreads(values.getNumFetcherThreads());
+
+		values.getFetchPriorities().forEach(BigWarpData::setFetchPriority);
+	}
+
+	/**
+	 * Sets the disk cache of transformed sources from the options, if they name a cache
+	 * directory and this data has no cache in that directory yet. Only sources whose
+	 * transform is applied afterwards use it.
+	 *
+	 * @param options the options
+	 */
+	public void configureDiskCache(final BigWarpViewerOptions options) {
+
+		final BigWarpViewerOptions.BwValues values = options.getValues();
+		final File directory = values.getDiskCacheDirectory();
+		if (directory == null)
+			return;
+
+		if (transformedSourceDiskCache == null || !directory.equals(transformedSourceDiskCache.getDirectory()))
+			transformedSourceDiskCache = new TransformedSourceDiskCache(directory, values.getDiskCacheMaxBytes());
+	}
+
 	private static ArrayList<Integer> listOf( int[] x )
 	{
 		final ArrayList< Integer > out = new ArrayList<Integer>();
@@ -439,7 +536,7 @@ public class BigWarpData< T >
 					else
 						invTransform3D = invTransform;
 
-					newSac = BigWarpInit.cacheTransformedSource( this, i, sac, invTransform3D, getSharedQueue());
+					newSac = BigWarpInit.cacheTransformedSource( this, i, sac, invTransform3D, getSharedQueue(info.getId()));
 				}
 
 				// will need to reload transformation on export if the transform is cached
@@ -471,7 +568,7 @@ public class BigWarpData< T >
 			sourceForExport = newSac;
 			final InvertibleRealTransform invTransform = transform instanceof InvertibleRealTransform ? (InvertibleRealTransform)transform
 					: new WrappedIterativeInvertibleRealTransform(transform);
-			newSac = BigWarpInit.cacheTransformedSource(this, index, sac, invTransform, getSharedQueue());
+			newSac = BigWarpInit.cacheTransformedSource(this, index, sac, invTransform, getSharedQueue(info.getId()));
 		}
 
 		// will need to reload transformation on export if the transform is
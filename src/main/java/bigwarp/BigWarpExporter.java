@@ -21,14 +21,27 @@
  */
 package bigwarp;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,16 +69,20 @@ import net.imglib2.RealInterval;
 import net.imglib2.RealRandomAccessible;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.iterator.IntervalIterator;
 import net.imglib2.realtransform.AffineGet;
 import net.imglib2.realtransform.AffineRandomAccessible;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealTransform;
 import net.imglib2.realtransform.RealViews;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
 import net.imglib2.view.IntervalView;
 import net.imglib2.view.MixedTransformView;
 import net.imglib2.view.Views;
@@ -102,10 +119,28 @@ public abstract class BigWarpExporter <T>
 
 	protected ProgressWriter progress;
 
+	/**
+	 * How work is split across threads. SLICE splits the output into one slab per thread,
+	 * ITER interleaves pixels in iteration order, and TILES has threads take small tiles
+	 * of the output in turn, which keeps their memory accesses local.
+	 */
 	public enum ParallelizationPolicy {
-		SLICE, ITER
+		SLICE, ITER, TILES
 	}
 
+	/**
+	 * Default tile size for {@link ParallelizationPolicy#TILES}, the last element
+	 * is used for the remaining dimensions.
+	 */
+	public static final int[] DEFAULT_TILE_SIZE = new int[] { 64, 64, 16 };
+
+	/**
+	 * Attributes that record the progress of a resumable export to an N5 dataset.
+	 */
+	public static final String EXPORT_RESUME_KEY = "bigwarpExportResumeKey";
+
+	public static final String EXPORT_COMPLETED_KEY = "bigwarpExportCompletedBlocks";
+
 	public ParallelizationPolicy policy = ParallelizationPolicy.ITER;
 
 	private ImagePlus result;
@@ -261,7 +296,7 @@ public abstract class BigWarpExporter <T>
 	@SuppressWarnings("hiding")
 	public <T> RandomAccessibleInterval<T> exportSource( SourceAndConverter<T> src )
 	{
-		final RealRandomAccessible< T > raiRaw = src.getSpimSource().getInterpolatedSource( 0, 0, interp );
+		final RealRandomAccessible< T > raiRaw = WarpedSource.getExactInterpolatedSource( src.getSpimSource(), 0, 0, interp );
 
 		// apply the transformations
 		final AffineRandomAccessible< T, AffineGet > rai = RealViews.affine(
@@ -377,10 +412,347 @@ public abstract class BigWarpExporter <T>
 		final Img< T > target = factory.create( itvl );
 		if( policy == ParallelizationPolicy.ITER )
 			return copyToImageStackIterOrder( raible, itvl, target, nThreads, progress );
+		else if( policy == ParallelizationPolicy.TILES )
+			return copyToImageStackByTiles( raible, itvl, target, nThreads, progress );
 		else
 			return copyToImageStackBySlice( raible, itvl, target, nThreads, progress );
 	}
 
+	public static < T extends NumericType<T> > RandomAccessibleInterval<T> copyToImageStackByTiles(
+			final RandomAccessible< T > ra,
+			final Interval itvl,
+			final RandomAccessibleInterval<T> target,
+			final int nThreads,
+			final ProgressWriter progressWriter )
+	{
+		// image stacks order channels before slices
+		final MixedTransformView< T > raible = Views.permute( ra, 2, 3 );
+
+		final int[] tileSize = tileSize( target.numDimensions(), DEFAULT_TILE_SIZE );
+		final long[] numTiles = numTiles( target, tileSize );
+		final long N = Intervals.numElements( numTiles );
+		final AtomicLong nextTile = new AtomicLong();
+		final AtomicLong numDone = new AtomicLong();
+
+		final ExportScheduler.Job threadPool = ExportScheduler.getInstance().newJob( nThreads );
+		final ProgressWriter progress = threadPool.progressWriter( progressWriter );
+		progress.setProgress( 0.0 );
+		final LinkedList<Callable<Boolean>> jobs = new LinkedList<Callable<Boolean>>();
+		for( int i = 0; i < nThreads; i++ )
+		{
+			jobs.add( new Callable<Boolean>()
+			{
+				@Override
+				public Boolean call()
+				{
+					try
+					{
+						// one access per thread, so each thread has its own copy of the transform
+						final RandomAccess< T > access = raible.randomAccess();
+						long t;
+						while( ( t = nextTile.getAndIncrement() ) < N )
+						{
+							if( Thread.currentThread().isInterrupted() )
+								return false;
+
+							final Cursor< T > c = Views.flatIterable( Views.interval( target, getTile( target, tileSize, numTiles, t ) ) ).cursor();
+							while ( c.hasNext() )
+							{
+								c.fwd();
+								access.setPosition( c );
+								c.get().set( access.get() );
+							}
+							progress.setProgress( 1.0 * numDone.incrementAndGet() / N );
+						}
+						return true;
+					}
+					catch( final RuntimeException e )
+					{
+						// the other threads stop after their current tile
+						nextTile.set( N );
+						throw e;
+					}
+				}
+			});
+		}
+
+		boolean complete = true;
+		try
+		{
+			for( final Future< Boolean > f : threadPool.invokeAll( jobs ) )
+				complete &= f.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			progress.err().println( "Export failed: " + e.getCause() );
+			throw new RuntimeException( "rendering a tile failed", e.getCause() );
+		}
+		catch ( final InterruptedException | CancellationException e )
+		{
+			if( e instanceof InterruptedException )
+				Thread.currentThread().interrupt();
+
+			complete = false;
+		}
+		finally
+		{
+			threadPool.shutdown();
+		}
+
+		if( complete )
+			progress.setProgress( 1.0 );
+		else
+			progress.err().println( "Export was cancelled, the image is incomplete." );
+
+		return target;
+	}
+
+	/**
+	 * Renders an image block by block with nThreads threads, writing each block to an N5 dataset
+	 * as soon as it is done, so that only a few blocks are held in memory at once.
+	 *
+	 * @param <T> the image type
+	 * @param img the image
+	 * @param n5 the n5 writer
+	 * @param dataset the dataset to create
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @param exec runs the threads
+	 * @param nThreads the number of threads
+	 * @param progress the progress writer, may be null
+	 * @throws InterruptedException if interrupted
+	 * @throws ExecutionException if rendering or writing a block failed
+	 */
+	public static < T extends NativeType<T> > void saveByTiles(
+			final RandomAccessibleInterval<T> img,
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService exec,
+			final int nThreads,
+			final ProgressWriter progress ) throws InterruptedException, ExecutionException
+	{
+		saveByTiles( img, n5, dataset, blockSize, compression, exec, nThreads, progress, null );
+	}
+
+	/**
+	 * Renders an image block by block with nThreads threads, writing each block to an N5 dataset
+	 * as soon as it is done, so that only a few blocks are held in memory at once.
+	 * <p>
+	 * If a resume key is given, the blocks that are done are recorded in the dataset's attributes,
+	 * and a later call that writes to the same dataset with the same key, dimensions, block size,
+	 * and data type skips them. The key should describe everything that determines the image's
+	 * values, see {@link #resumeKey(Object...)}.
+	 *
+	 * @param <T> the image type
+	 * @param img the image
+	 * @param n5 the n5 writer
+	 * @param dataset the dataset to create
+	 * @param blockSize the block size
+	 * @param compression the compression
+	 * @param exec runs the threads
+	 * @param nThreads the number of threads
+	 * @param progress the progress writer, may be null
+	 * @param resumeKey identifies the image, to record progress and skip blocks written previously, or null
+	 * @throws InterruptedException if interrupted
+	 * @throws ExecutionException if rendering or writing a block failed
+	 */
+	public static < T extends NativeType<T> > void saveByTiles(
+			final RandomAccessibleInterval<T> img,
+			final N5Writer n5,
+			final String dataset,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService exec,
+			final int nThreads,
+			final ProgressWriter progress,
+			final String resumeKey ) throws InterruptedException, ExecutionException
+	{
+		final boolean resume = resumeKey != null;
+		final RandomAccessibleInterval<T> zeroMinImg = Views.zeroMin( img );
+		final T type = Util.getTypeFromInterval( zeroMinImg ).createVariable();
+		final DatasetAttributes attributes = new DatasetAttributes(
+				Intervals.dimensionsAsLongArray( zeroMinImg ), blockSize, N5Utils.dataType( type ), compression );
+
+		final long[] numBlocks = numTiles( zeroMinImg, blockSize );
+		final long N = Intervals.numElements( numBlocks );
+
+		final BitSet completed;
+		if( resume )
+		{
+			completed = completedBlocks( n5, dataset, attributes, resumeKey );
+			if( completed.isEmpty() )
+			{
+				// clear the progress of a different export before claiming the dataset for this one
+				n5.createDataset( dataset, attributes );
+				n5.setAttribute( dataset, EXPORT_COMPLETED_KEY, new long[ 0 ] );
+				n5.setAttribute( dataset, EXPORT_RESUME_KEY, resumeKey );
+			}
+			else
+				logger.info( "resuming export to " + dataset + ", " + completed.cardinality() + " of " + N + " blocks are done" );
+		}
+		else
+		{
+			completed = new BitSet();
+			n5.createDataset( dataset, attributes );
+		}
+
+		// report to the job too, so that the progress of all exports includes this one
+		final ProgressWriter progressWriter = exec instanceof ExportScheduler.Job ? ( ( ExportScheduler.Job ) exec ).progressWriter( progress ) : progress;
+		final long progressInterval = Math.max( 1, N / 100 );
+		final AtomicLong nextBlock = new AtomicLong();
+		final AtomicLong numDone = new AtomicLong( completed.cardinality() );
+
+		final ArrayList< Callable< Void > > jobs = new ArrayList<>();
+		for( int i = 0; i < nThreads; i++ )
+		{
+			jobs.add( () -> {
+				final long[] gridPosition = new long[ numBlocks.length ];
+				long b;
+				while( ( b = nextBlock.getAndIncrement() ) < N )
+				{
+					if( Thread.currentThread().isInterrupted() )
+						return null;
+
+					synchronized( completed )
+					{
+						if( completed.get( ( int ) b ) )
+							continue;
+					}
+
+					final Interval block = getTile( zeroMinImg, blockSize, numBlocks, b );
+					for( int d = 0; d < gridPosition.length; d++ )
+						gridPosition[ d ] = block.min( d ) / blockSize[ d ];
+
+					final Img< T > blockImg = new ArrayImgFactory<>( type ).create( block );
+					LoopBuilder.setImages( Views.zeroMin( Views.interval( zeroMinImg, block ) ), blockImg )
+						.forEachPixel( ( x, y ) -> y.set( x ) );
+
+					N5Utils.saveBlock( blockImg, n5, dataset, attributes, gridPosition );
+
+					final long n = numDone.incrementAndGet();
+					if( resume )
+					{
+						synchronized( completed )
+						{
+							completed.set( ( int ) b );
+							if( n % progressInterval == 0 )
+								n5.setAttribute( dataset, EXPORT_COMPLETED_KEY, completed.toLongArray() );
+						}
+					}
+
+					if( progressWriter != null )
+						progressWriter.setProgress( 1.0 * n / N );
+				}
+				return null;
+			});
+		}
+
+		for( final Future< Void > f : exec.invokeAll( jobs ) )
+			f.get();
+
+		if( resume )
+		{
+			synchronized( completed )
+			{
+				n5.setAttribute( dataset, EXPORT_COMPLETED_KEY, completed.toLongArray() );
+			}
+		}
+	}
+
+	/**
+	 * Returns the blocks recorded as written in a dataset, or an empty set if the
+	 * dataset does not exist or was written with different attributes or resume key.
+	 */
+	private static BitSet completedBlocks( final N5Writer n5, final String dataset, final DatasetAttributes attributes, final String resumeKey )
+	{
+		if( !n5.datasetExists( dataset ) )
+			return new BitSet();
+
+		final DatasetAttributes existing = n5.getDatasetAttributes( dataset );
+		if( !Arrays.equals( existing.getDimensions(), attributes.getDimensions() ) ||
+				!Arrays.equals( existing.getBlockSize(), attributes.getBlockSize() ) ||
+				existing.getDataType() != attributes.getDataType() ||
+				!resumeKey.equals( n5.getAttribute( dataset, EXPORT_RESUME_KEY, String.class ) ) )
+			return new BitSet();
+
+		final long[] completed = n5.getAttribute( dataset, EXPORT_COMPLETED_KEY, long[].class );
+		return completed == null ? new BitSet() : BitSet.valueOf( completed );
+	}
+
+	/**
+	 * Builds a key for {@link #saveByTiles} from the parameters of an export,
+	 * for example the serialized landmarks, the transform type, the output interval,
+	 * and the resolution. Arrays are compared by their contents.
+	 *
+	 * @param parameters the parameters that determine the exported image
+	 * @return a SHA-256 digest of the parameters
+	 */
+	public static String resumeKey( final Object... parameters )
+	{
+		final String description = Arrays.deepToString( parameters );
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( description.getBytes( StandardCharsets.UTF_8 ) );
+			final StringBuilder hex = new StringBuilder();
+			for( final byte b : digest )
+				hex.append( String.format( "%02x", b ) );
+
+			return hex.toString();
+		}
+		catch( final NoSuchAlgorithmException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	public static int numThreads( final ExecutorService exec )
+	{
+		if( exec instanceof ExportScheduler.Job )
+			return ( ( ExportScheduler.Job ) exec ).getParallelism();
+		else if( exec instanceof ThreadPoolExecutor )
+			return ( ( ThreadPoolExecutor ) exec ).getMaximumPoolSize();
+		else
+			return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static int[] tileSize( final int nd, final int[] tileSize )
+	{
+		final int[] out = new int[ nd ];
+		for( int d = 0; d < nd; d++ )
+			out[ d ] = tileSize[ Math.min( d, tileSize.length - 1 ) ];
+
+		return out;
+	}
+
+	private static long[] numTiles( final Interval itvl, final int[] tileSize )
+	{
+		final long[] numTiles = new long[ itvl.numDimensions() ];
+		for( int d = 0; d < numTiles.length; d++ )
+			numTiles[ d ] = ( itvl.dimension( d ) + tileSize[ d ] - 1 ) / tileSize[ d ];
+
+		return numTiles;
+	}
+
+	/**
+	 * Returns the i-th tile of the interval in flat iteration order, cropped to the interval.
+	 */
+	private static FinalInterval getTile( final Interval itvl, final int[] tileSize, final long[] numTiles, final long i )
+	{
+		final int nd = itvl.numDimensions();
+		final long[] min = new long[ nd ];
+		final long[] max = new long[ nd ];
+		long rem = i;
+		for( int d = 0; d < nd; d++ )
+		{
+			min[ d ] = itvl.min( d ) + ( rem % numTiles[ d ] ) * tileSize[ d ];
+			max[ d ] = Math.min( min[ d ] + tileSize[ d ] - 1, itvl.max( d ) );
+			rem /= numTiles[ d ];
+		}
+		return new FinalInterval( min, max );
+	}
+
 	public static < T extends NumericType<T> > RandomAccessibleInterval<T> copyToImageStackBySlice(
 			final RandomAccessible< T > raible,
 			final Interval itvl,
@@ -398,7 +770,7 @@ public abstract class BigWarpExporter <T>
 			final Interval itvl,
 			final RandomAccessibleInterval<T> target,
 			final int nThreads,
-			final ProgressWriter progress )
+			final ProgressWriter progressWriter )
 	{
 		// TODO I wish I didn't have to do this inside this method
 		final MixedTransformView< T > raible = Views.permute( ra, 2, 3 );
@@ -425,7 +797,9 @@ public abstract class BigWarpExporter <T>
 			splitPoints[ i ] = splitPoints[ i - 1 ] + del;
 		}
 
-		final ExecutorService threadPool = Executors.newFixedThreadPool( nThreads );
+		final ExportScheduler.Job threadPool = ExportScheduler.getInstance().newJob( nThreads );
+		final ProgressWriter progress = threadPool.progressWriter( progressWriter );
+		progress.setProgress( 0.0 );
 
 		final LinkedList<Callable<Boolean>> jobs = new LinkedList<Callable<Boolean>>();
 		for( int i = 0; i < nThreads; i++ )
@@ -472,13 +846,15 @@ public abstract class BigWarpExporter <T>
 		try
 		{
 			threadPool.invokeAll( jobs );
-			threadPool.shutdown(); // wait for all jobs to finish
-
 		}
 		catch ( final InterruptedException e1 )
 		{
 			e1.printStackTrace();
 		}
+		finally
+		{
+			threadPool.shutdown();
+		}
 
 		progress.setProgress(1.0);
 		return target;
@@ -501,14 +877,15 @@ public abstract class BigWarpExporter <T>
 			final Interval itvl,
 			final RandomAccessibleInterval<T> target,
 			final int nThreads,
-			final ProgressWriter progress )
+			final ProgressWriter progressWriter )
 	{
-		progress.setProgress(0.0);
 		// TODO I wish I didn't have to do this inside this method..
 		// 	Maybe I don't have to, and should do it where I call this instead?
 		final MixedTransformView< T > raible = Views.permute( ra, 2, 3 );
 
-		final ExecutorService threadPool = Executors.newFixedThreadPool( nThreads );
+		final ExportScheduler.Job threadPool = ExportScheduler.getInstance().newJob( nThreads );
+		final ProgressWriter progress = threadPool.progressWriter( progressWriter );
+		progress.setProgress( 0.0 );
 
 		final LinkedList<Callable<Boolean>> jobs = new LinkedList<Callable<Boolean>>();
 		for( int i = 0; i < nThreads; i++ )
@@ -554,13 +931,15 @@ public abstract class BigWarpExporter <T>
 		try
 		{
 			threadPool.invokeAll( jobs );
-			threadPool.shutdown(); // wait for all jobs to finish
-
 		}
 		catch ( final InterruptedException e1 )
 		{
 			e1.printStackTrace();
 		}
+		finally
+		{
+			threadPool.shutdown();
+		}
 
 		progress.setProgress(1.0);
 		return target;
@@ -88,6 +88,8 @@ import bigwarp.loader.ImagePlusLoader;
 import bigwarp.loader.Loader;
 import bigwarp.loader.XMLLoader;
 import bigwarp.source.SourceInfo;
+import bigwarp.source.TransformedCellLoader;
+import bigwarp.source.TransformedSourceDiskCache;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.io.FileInfo;
@@ -109,7 +111,6 @@ import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.cache.img.CellLoader;
 import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
 import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
-import net.imglib2.cache.img.SingleCellArrayImg;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.converter.Converter;
@@ -118,15 +119,11 @@ import net.imglib2.display.RealARGBColorConverter;
 import net.imglib2.display.ScaledARGBConverter;
 import net.imglib2.display.ScaledARGBConverter.ARGB;
 import net.imglib2.display.ScaledARGBConverter.VolatileARGB;
-import net.imglib2.img.cell.AbstractCellImg;
-import net.imglib2.interpolation.randomaccess.ClampingNLinearInterpolatorFactory;
-import net.imglib2.outofbounds.OutOfBoundsConstantValueFactory;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.BoundingBoxEstimation;
 import net.imglib2.realtransform.InvertibleRealTransform;
 import net.imglib2.realtransform.InvertibleRealTransformSequence;
 import net.imglib2.realtransform.RealTransform;
-import net.imglib2.realtransform.RealTransformRandomAccessible;
 import net.imglib2.realtransform.Translation;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
@@ -136,7 +133,6 @@ import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.volatiles.VolatileARGBType;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
-import net.imglib2.view.ExtendedRandomAccessibleInterval;
 import net.imglib2.view.IntervalView;
 import net.imglib2.view.Views;
 
@@ -562,7 +558,7 @@ public class BigWarpInit {
 			N5Metadata meta, ExecutorService exec ) throws URISyntaxException, IOException, SpimDataException
 	{
 
-		final SharedQueue sharedQueue = BigWarpData.getSharedQueue();
+		final SharedQueue sharedQueue = BigWarpData.getSharedQueue( setupId );
 		final URI encodedUri = N5URI.encodeAsUri( uri.trim() );
 		final LinkedHashMap< Source< T >, SourceInfo > sourceStateMap = new LinkedHashMap<>();
 		if ( encodedUri.isOpaque() )
@@ -710,7 +706,7 @@ public class BigWarpInit {
 	private static < T > LinkedHashMap< Source< T >, SourceInfo > createSources( final BigWarpData< T > bwdata, final boolean isMoving, final int setupId, final String rootPath, final String dataset, 
 			final AtomicReference< SpimData > returnMovingSpimData, ExecutorService exec )
 	{
-		final SharedQueue sharedQueue = new SharedQueue(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+		final SharedQueue sharedQueue = BigWarpData.getSharedQueue( setupId );
 		if ( rootPath.endsWith( "xml" ) )
 		{
 			SpimData spimData;
@@ -1140,6 +1136,12 @@ public class BigWarpInit {
 		final int[] defaultCellDimensions = new int[nd];
 		Arrays.fill(defaultCellDimensions, 64);
 
+		// cells computed in an earlier session are read from the disk cache, if any
+		final TransformedSourceDiskCache diskCache = data.transformedSourceDiskCache;
+		final String cacheKey = diskCache == null ? null : TransformedSourceDiskCache.key(info.getUri(), info.getTransformUri(), src, transform);
+		if (cacheKey != null)
+			diskCache.open(cacheKey, info.getUri());
+
 		// TODO handle time?
 		final RandomAccessibleInterval<T>[] mipmaps = new RandomAccessibleInterval[N];
 		final RandomAccessibleInterval<Volatile<T>>[] vmipmaps = new RandomAccessibleInterval[N];
@@ -1160,6 +1162,7 @@ public class BigWarpInit {
 
 			// compute the bounding box in physical coordinates
 			final BoundingBoxEstimation bbox = new BoundingBoxEstimation();
+			bbox.setNumThreads( Runtime.getRuntime().availableProcessors() );
 			final RealInterval targetInterval = bbox.estimateInterval(tformToPhysicalSpace.inverse(), img);
 			final Interval pixelInterval = BoundingBoxEstimation.containingInterval(targetInterval);
 
@@ -1174,25 +1177,23 @@ public class BigWarpInit {
 			tformToPixelSpace.add(transform.copy());
 			tformToPixelSpace.add(origScaleTform.inverse());
 
-			final RandomAccessibleInterval<T> raiTform = transform(img, pixelInterval, tformToPixelSpace);
+			// cells cover about one block of the source, whose blocks are prefetched per cell
+			final TransformedCellLoader<T> copier = new TransformedCellLoader<>(img, tformToPixelSpace);
+			final long[] dimensions = pixelInterval.dimensionsAsLongArray();
+			final int[] cellDimensions = TransformedCellLoader.cellDimensions(copier.getSourceBlockSize(), tformToPixelSpace,
+					dimensions, defaultCellDimensions);
 			final ReadOnlyCachedCellImgFactory cacheFactory = new ReadOnlyCachedCellImgFactory(
 					new ReadOnlyCachedCellImgOptions()
 							.volatileAccesses(true)
-							.cellDimensions(getCellDimensionsOrDefault(img, defaultCellDimensions)));
-
-			final CellLoader<T> copier = new CellLoader<T>() {
-				@Override
-				public void load(SingleCellArrayImg<T, ?> cell) throws Exception {
+							.cellDimensions(cellDimensions));
 
-					Views.flatIterable(Views.interval(Views.pair(raiTform, cell), cell)).forEach(
-							pair -> pair.getB().set(pair.getA()));
-				}
-			};
+			final CellLoader<T> loader = cacheKey == null ? copier
+					: diskCache.cellLoader(cacheKey, i, dimensions, cellDimensions, type, newSourceTform, copier);
 
 			final RandomAccessibleInterval<T> cachedTransformedMipmap = cacheFactory.create(
-					raiTform.dimensionsAsLongArray(),
+					dimensions,
 					type.copy(),
-					copier);
+					loader);
 			mipmaps[i] = cachedTransformedMipmap;
 
 			final int priority = N - 1 - i;
@@ -1219,36 +1220,6 @@ public class BigWarpInit {
 		return tsac;
 	}
 
-	@SuppressWarnings("rawtypes")
-	private static int[] getCellDimensionsOrDefault(final RandomAccessibleInterval<?> img,
-			final int[] defaultDimensions) {
-
-		// TODO need to unwrap views
-		if (img instanceof AbstractCellImg) {
-			return ((AbstractCellImg)img).getCellGrid().getCellDimensions();
-		} else {
-			return defaultDimensions;
-		}
-	}
-
-	private static <T extends NumericType<T> & NativeType<T>> RandomAccessibleInterval<T> transform(
-			final RandomAccessibleInterval<T> img,
-			final Interval targetInterval,
-			final RealTransform transform) {
-
-		final T background = img.getType().copy();
-		background.setZero();
-
-		return Views.interval(
-				new RealTransformRandomAccessible<>(
-						Views.interpolate(
-								new ExtendedRandomAccessibleInterval<>(img,
-										new OutOfBoundsConstantValueFactory<>(background)),
-								new ClampingNLinearInterpolatorFactory<>()),
-						transform),
-				targetInterval);
-	}
-
 	/**
 	 * Create {@link BigWarpData} from two {@link AbstractSpimData}.
 	 *
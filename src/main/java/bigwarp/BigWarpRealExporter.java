@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import bdv.export.ProgressWriter;
+import bdv.img.WarpedSource;
 import bdv.tools.brightness.ConverterSetup;
 import bdv.viewer.Interpolation;
 import bdv.viewer.Source;
@@ -161,7 +162,7 @@ public class BigWarpRealExporter< T extends RealType< T > & NativeType< T >  > e
 
 		// in pixel space
 		@SuppressWarnings("unchecked")
-		final RealRandomAccessible<T> raiRaw = (RealRandomAccessible<T>)src.getInterpolatedSource(0, 0, interp);
+		final RealRandomAccessible<T> raiRaw = (RealRandomAccessible<T>)WarpedSource.getExactInterpolatedSource(src, 0, 0, interp);
 
 		// the transform from world to new pixel coordinates
 		final AffineTransform3D pixelToPhysical = pixelRenderToPhysical.copy().inverse();
@@ -49,6 +49,7 @@ import com.google.gson.TypeAdapter;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
+import bdv.gui.BigWarpViewerOptions;
 import bdv.tools.bookmarks.Bookmarks;
 import bdv.tools.brightness.ConverterSetup;
 import bdv.tools.brightness.MinMaxGroup;
@@ -66,6 +67,7 @@ import bdv.viewer.state.ViewerState;
 import bdv.viewer.state.XmlIoViewerState;
 import bigwarp.landmarks.LandmarkTableModel;
 import bigwarp.source.SourceInfo;
+import bigwarp.source.TransformedSourceDiskCache;
 import bigwarp.transforms.BigWarpTransform;
 import bigwarp.transforms.NgffTransformations;
 import bigwarp.transforms.io.TransformWriterJson;
@@ -157,6 +159,15 @@ public class BigwarpSettings extends TypeAdapter< BigwarpSettings >
 		gson.toJson( bookmarks, Bookmarks.class, out );
 		out.name( "Autosave" );
 		gson.toJson( autoSaver, BigWarpAutoSaver.class, out );
+		final TransformedSourceDiskCache diskCache = bigWarp == null ? null : bigWarp.data.transformedSourceDiskCache;
+		if ( diskCache != null )
+		{
+			out.name( "DiskCache" );
+			out.beginObject();
+			out.name( "directory" ).value( diskCache.getDirectory().getAbsolutePath() );
+			out.name( "maxBytes" ).value( diskCache.getMaxBytes() );
+			out.endObject();
+		}
 		if ( landmarks != null )
 		{
 			out.name( "Transform" );
@@ -169,6 +180,16 @@ public class BigwarpSettings extends TypeAdapter< BigwarpSettings >
 	public BigwarpSettings read( final JsonReader in ) throws IOException
 	{
 		final JsonObject json = JsonParser.parseReader(in).getAsJsonObject();
+
+		// the disk cache is used when the transforms of the sources are applied
+		if( json.has("DiskCache"))
+		{
+			final JsonObject diskCache = json.get("DiskCache").getAsJsonObject();
+			bigWarp.data.configureDiskCache( BigWarpViewerOptions.options().transformedSourceDiskCache(
+					new File( diskCache.get("directory").getAsString() ),
+					diskCache.has("maxBytes") ? diskCache.get("maxBytes").getAsLong() : TransformedSourceDiskCache.DEFAULT_MAX_BYTES ) );
+		}
+
 		if( json.has("Sources"))
 		{
 			new BigWarpSourcesAdapter( bigWarp, overwriteSources ).fromJsonTree(json.get("Sources"));
@@ -0,0 +1,575 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bdv.export.ProgressWriter;
+
+/**
+ * Runs the work of all exports, and the background work of the viewers, on one
+ * process-wide pool of threads, so that they share a fixed parallelism budget
+ * instead of each creating its own threads.
+ * <p>
+ * Each export creates a {@link Job}, an {@link java.util.concurrent.ExecutorService}
+ * that runs at most a given number of tasks at once on the shared pool. Tasks of jobs
+ * with higher {@link Priority} run first, tasks of equal priority run in the order
+ * they were submitted. Shutting a job down does not affect the shared pool, and
+ * {@link Job#shutdownNow()} cancels the job's waiting tasks and interrupts its
+ * running ones. Long-lived background work uses jobs made by
+ * {@link #newBackgroundJob(String, int, Priority)}, which are not exports.
+ * <p>
+ * A task that submits tasks from the pool's threads runs them itself unless other
+ * threads of the pool pick them up, so nested jobs cannot deadlock the pool.
+ */
+public class ExportScheduler
+{
+	public enum Priority { LOW, NORMAL, HIGH }
+
+	private static ExportScheduler instance;
+
+	private final ThreadPoolExecutor pool;
+
+	private final List< Job > jobs = new CopyOnWriteArrayList<>();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private ProgressWriter progressWriter;
+
+	public ExportScheduler( final int parallelism )
+	{
+		final AtomicInteger threadCount = new AtomicInteger();
+		pool = new ThreadPoolExecutor( parallelism, parallelism, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+				r -> new Worker( this, r, "bigwarp-export-" + threadCount.incrementAndGet() ) );
+		pool.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * @return the scheduler shared by all exports
+	 */
+	public static synchronized ExportScheduler getInstance()
+	{
+		if ( instance == null )
+			instance = new ExportScheduler( Runtime.getRuntime().availableProcessors() );
+
+		return instance;
+	}
+
+	/**
+	 * Sets the maximum number of threads used by all jobs together.
+	 *
+	 * @param parallelism the number of threads
+	 */
+	public synchronized void setParallelism( final int parallelism )
+	{
+		final int n = Math.max( 1, parallelism );
+		if ( n > pool.getMaximumPoolSize() )
+		{
+			pool.setMaximumPoolSize( n );
+			pool.setCorePoolSize( n );
+		}
+		else
+		{
+			pool.setCorePoolSize( n );
+			pool.setMaximumPoolSize( n );
+		}
+
+		for ( final Job job : jobs )
+			job.dispatch();
+	}
+
+	public int getParallelism()
+	{
+		return pool.getMaximumPoolSize();
+	}
+
+	/**
+	 * Creates a job with normal priority.
+	 *
+	 * @param maxThreads the maximum number of tasks of the job that run at once
+	 * @return the job
+	 */
+	public Job newJob( final int maxThreads )
+	{
+		return newJob( "export", maxThreads, Priority.NORMAL );
+	}
+
+	/**
+	 * Creates a job. The job should be shut down when no more tasks will be submitted.
+	 *
+	 * @param name a name for the job
+	 * @param maxThreads the maximum number of tasks of the job that run at once
+	 * @param priority the priority of the job's tasks
+	 * @return the job
+	 */
+	public Job newJob( final String name, final int maxThreads, final Priority priority )
+	{
+		final Job job = new Job( name, Math.max( 1, maxThreads ), priority );
+		jobs.add( job );
+		return job;
+	}
+
+	/**
+	 * Creates a job for long-lived background work, such as rendering or solving, that
+	 * shares the parallelism budget with exports. Background jobs are not listed by
+	 * {@link #getJobs()}, do not count towards {@link #getProgress()}, and are not
+	 * cancelled by {@link #cancelAll()}.
+	 *
+	 * @param name a name for the job
+	 * @param maxThreads the maximum number of tasks of the job that run at once
+	 * @param priority the priority of the job's tasks
+	 * @return the job
+	 */
+	public Job newBackgroundJob( final String name, final int maxThreads, final Priority priority )
+	{
+		return new Job( name, Math.max( 1, maxThreads ), priority );
+	}
+
+	/**
+	 * @return the jobs that are not terminated
+	 */
+	public List< Job > getJobs()
+	{
+		return new ArrayList<>( jobs );
+	}
+
+	/**
+	 * Cancels all jobs.
+	 */
+	public void cancelAll()
+	{
+		for ( final Job job : jobs )
+			job.shutdownNow();
+	}
+
+	/**
+	 * Sets a progress writer that is passed the mean progress of all jobs whenever
+	 * the progress of a job changes.
+	 *
+	 * @param progressWriter the progress writer, may be null
+	 */
+	public void setProgressWriter( final ProgressWriter progressWriter )
+	{
+		this.progressWriter = progressWriter;
+	}
+
+	/**
+	 * @return the mean progress of all jobs that are not terminated, or 1 if there are none
+	 */
+	public double getProgress()
+	{
+		double sum = 0;
+		int n = 0;
+		for ( final Job job : jobs )
+		{
+			sum += job.getProgress();
+			n++;
+		}
+		return n == 0 ? 1.0 : sum / n;
+	}
+
+	private void progressChanged()
+	{
+		final ProgressWriter p = progressWriter;
+		if ( p != null )
+			p.setProgress( getProgress() );
+	}
+
+	/**
+	 * @return true if the current thread belongs to this scheduler's pool
+	 */
+	private boolean isWorkerThread()
+	{
+		final Thread t = Thread.currentThread();
+		return t instanceof Worker && ( ( Worker ) t ).scheduler == this;
+	}
+
+	private static class Worker extends Thread
+	{
+		private final ExportScheduler scheduler;
+
+		public Worker( final ExportScheduler scheduler, final Runnable r, final String name )
+		{
+			super( r, name );
+			this.scheduler = scheduler;
+			setDaemon( true );
+		}
+	}
+
+	private static class Task implements Runnable, Comparable< Task >
+	{
+		private final Job job;
+
+		private final Runnable command;
+
+		private final long seq;
+
+		public Task( final Job job, final Runnable command, final long seq )
+		{
+			this.job = job;
+			this.command = command;
+			this.seq = seq;
+		}
+
+		@Override
+		public void run()
+		{
+			job.run( this );
+		}
+
+		@Override
+		public int compareTo( final Task o )
+		{
+			final int c = o.job.priority.compareTo( job.priority );
+			return c != 0 ? c : Long.compare( seq, o.seq );
+		}
+	}
+
+	/**
+	 * The tasks of one export.
+	 */
+	public class Job extends AbstractExecutorService
+	{
+		private final String name;
+
+		private final int maxThreads;
+
+		private final Priority priority;
+
+		private final ArrayDeque< Runnable > pending = new ArrayDeque<>();
+
+		private final Set< Task > queued = new HashSet<>();
+
+		private final Set< Thread > running = new HashSet<>();
+
+		// tasks run by the threads that submitted them
+		private int numRunningHere = 0;
+
+		private boolean shutdown = false;
+
+		private volatile double progress = 0;
+
+		private Job( final String name, final int maxThreads, final Priority priority )
+		{
+			this.name = name;
+			this.maxThreads = maxThreads;
+			this.priority = priority;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public Priority getPriority()
+		{
+			return priority;
+		}
+
+		/**
+		 * @return the number of tasks of this job that run at once
+		 */
+		public int getParallelism()
+		{
+			return Math.min( maxThreads, ExportScheduler.this.getParallelism() );
+		}
+
+		public double getProgress()
+		{
+			return progress;
+		}
+
+		public void setProgress( final double progress )
+		{
+			this.progress = progress;
+			progressChanged();
+		}
+
+		/**
+		 * Returns a progress writer that records progress for this job, and passes it to
+		 * the given progress writer.
+		 *
+		 * @param progressWriter the progress writer, may be null
+		 * @return a progress writer
+		 */
+		public ProgressWriter progressWriter( final ProgressWriter progressWriter )
+		{
+			return new ProgressWriter()
+			{
+				@Override
+				public PrintStream out()
+				{
+					return progressWriter == null ? System.out : progressWriter.out();
+				}
+
+				@Override
+				public PrintStream err()
+				{
+					return progressWriter == null ? System.err : progressWriter.err();
+				}
+
+				@Override
+				public void setProgress( final double completionRatio )
+				{
+					Job.this.setProgress( completionRatio );
+					if ( progressWriter != null )
+						progressWriter.setProgress( completionRatio );
+				}
+			};
+		}
+
+		@Override
+		public void execute( final Runnable command )
+		{
+			synchronized ( this )
+			{
+				if ( shutdown )
+					throw new RejectedExecutionException( "job " + name + " is shut down" );
+
+				// a task that waits for the pool from the pool could wait forever, so run it here
+				if ( !isWorkerThread() )
+				{
+					pending.add( command );
+					dispatch();
+					return;
+				}
+			}
+			command.run();
+		}
+
+		/**
+		 * Like {@link AbstractExecutorService#invokeAll(Collection)}, except that when called
+		 * from a thread of the pool, the calling thread runs the tasks that no other
+		 * thread has started.
+		 */
+		@Override
+		public < T > List< Future< T > > invokeAll( final Collection< ? extends Callable< T > > tasks ) throws InterruptedException
+		{
+			if ( !isWorkerThread() )
+				return super.invokeAll( tasks );
+
+			final List< Future< T > > futures = new ArrayList<>( tasks.size() );
+			synchronized ( this )
+			{
+				if ( shutdown )
+					throw new RejectedExecutionException( "job " + name + " is shut down" );
+
+				for ( final Callable< T > task : tasks )
+				{
+					final FutureTask< T > f = new FutureTask<>( task );
+					futures.add( f );
+					pending.add( f );
+				}
+				dispatch();
+			}
+
+			try
+			{
+				for ( final Future< T > f : futures )
+					if ( unschedule( ( Runnable ) f ) )
+						runHere( ( Runnable ) f );
+
+				for ( final Future< T > f : futures )
+				{
+					try
+					{
+						f.get();
+					}
+					catch ( final ExecutionException | CancellationException e )
+					{
+						// reported by the future
+					}
+				}
+				return futures;
+			}
+			catch ( final InterruptedException e )
+			{
+				for ( final Future< T > f : futures )
+					f.cancel( true );
+
+				throw e;
+			}
+		}
+
+		/*
+		 * Removes a task that has not started so that the calling thread can run it,
+		 * returns false if it has started.
+		 */
+		private synchronized boolean unschedule( final Runnable command )
+		{
+			if ( pending.remove( command ) )
+			{
+				numRunningHere++;
+				return true;
+			}
+
+			for ( final Task task : queued )
+			{
+				if ( task.command == command )
+				{
+					queued.remove( task );
+					pool.remove( task );
+					numRunningHere++;
+					dispatch();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void runHere( final Runnable command )
+		{
+			try
+			{
+				command.run();
+			}
+			finally
+			{
+				synchronized ( this )
+				{
+					numRunningHere--;
+					checkTerminated();
+				}
+			}
+		}
+
+		private synchronized void dispatch()
+		{
+			while ( !pending.isEmpty() && queued.size() + running.size() < getParallelism() )
+			{
+				final Task task = new Task( this, pending.poll(), sequence.getAndIncrement() );
+				queued.add( task );
+				pool.execute( task );
+			}
+		}
+
+		private void run( final Task task )
+		{
+			synchronized ( this )
+			{
+				if ( !queued.remove( task ) )
+					return;
+
+				running.add( Thread.currentThread() );
+			}
+
+			try
+			{
+				task.command.run();
+			}
+			finally
+			{
+				synchronized ( this )
+				{
+					running.remove( Thread.currentThread() );
+					// clear an interrupt from shutdownNow so that it does not leak into the next task
+					Thread.interrupted();
+					dispatch();
+					checkTerminated();
+				}
+			}
+		}
+
+		private synchronized void checkTerminated()
+		{
+			if ( isTerminated() )
+			{
+				jobs.remove( this );
+				notifyAll();
+				progressChanged();
+			}
+		}
+
+		@Override
+		public synchronized void shutdown()
+		{
+			shutdown = true;
+			checkTerminated();
+		}
+
+		@Override
+		public synchronized List< Runnable > shutdownNow()
+		{
+			shutdown = true;
+			final List< Runnable > notRun = new ArrayList<>( pending );
+			pending.clear();
+			for ( final Task task : queued )
+			{
+				pool.remove( task );
+				notRun.add( task.command );
+			}
+			queued.clear();
+
+			for ( final Thread t : running )
+				t.interrupt();
+
+			checkTerminated();
+			return notRun;
+		}
+
+		@Override
+		public synchronized boolean isShutdown()
+		{
+			return shutdown;
+		}
+
+		@Override
+		public synchronized boolean isTerminated()
+		{
+			return shutdown && pending.isEmpty() && queued.isEmpty() && running.isEmpty() && numRunningHere == 0;
+		}
+
+		@Override
+		public synchronized boolean awaitTermination( final long timeout, final TimeUnit unit ) throws InterruptedException
+		{
+			final long end = System.nanoTime() + unit.toNanos( timeout );
+			while ( !isTerminated() )
+			{
+				final long remaining = end - System.nanoTime();
+				if ( remaining <= 0 )
+					return false;
+
+				TimeUnit.NANOSECONDS.timedWait( this, remaining );
+			}
+			return true;
+		}
+	}
+}
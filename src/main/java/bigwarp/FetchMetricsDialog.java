@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.Frame;
+
+import javax.swing.JDialog;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+
+import bigwarp.loader.InstrumentedSharedQueue;
+import bigwarp.source.TransformedSourceDiskCache;
+
+/**
+ * Shows the state of the queue that loads the blocks of volatile sources,
+ * updated while the dialog is visible.
+ */
+public class FetchMetricsDialog extends JDialog
+{
+	private static final long serialVersionUID = -2305519472870158562L;
+
+	private static final int UPDATE_MILLIS = 500;
+
+	private final BigWarpData< ? > bwData;
+
+	private final JTextArea textArea;
+
+	private final Timer timer;
+
+	/**
+	 * @param owner the parent frame
+	 * @param bwData the bigwarp data
+	 */
+	public FetchMetricsDialog( final Frame owner, final BigWarpData< ? > bwData )
+	{
+		super( owner, "Loading statistics", false );
+		this.bwData = bwData;
+
+		textArea = new JTextArea( 9, 40 );
+		textArea.setEditable( false );
+		textArea.setFont( new Font( Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize() ) );
+		getContentPane().add( textArea, BorderLayout.CENTER );
+
+		timer = new Timer( UPDATE_MILLIS, e -> update() );
+		update();
+		pack();
+		setDefaultCloseOperation( WindowConstants.HIDE_ON_CLOSE );
+	}
+
+	@Override
+	public void setVisible( final boolean visible )
+	{
+		if ( visible )
+		{
+			update();
+			timer.start();
+		}
+		else
+			timer.stop();
+
+		super.setVisible( visible );
+	}
+
+	private void update()
+	{
+		final InstrumentedSharedQueue queue = BigWarpData.getSharedQueue();
+		final InstrumentedSharedQueue.Metrics metrics = queue.getMetrics();
+
+		final StringBuilder text = new StringBuilder();
+		text.append( String.format( "fetcher threads : %d\n", queue.getNumFetcherThreads() ) );
+		text.append( String.format( "queued          : %d\n", metrics.queued ) );
+		text.append( String.format( "in flight       : %d\n", metrics.inFlight ) );
+		text.append( String.format( "completed       : %d\n", metrics.completed ) );
+		text.append( String.format( "failed          : %d\n", metrics.failed ) );
+		text.append( String.format( "mean wait       : %.1f ms\n", metrics.meanWaitMillis ) );
+		text.append( String.format( "mean fetch      : %.1f ms\n", metrics.meanFetchMillis ) );
+
+		final TransformedSourceDiskCache diskCache = bwData.transformedSourceDiskCache;
+		final long numRequests = diskCache == null ? 0 : diskCache.getNumHits() + diskCache.getNumMisses();
+		if ( numRequests > 0 )
+			text.append( String.format( "disk cache hits : %.1f %% of %d cells", 100.0 * diskCache.getNumHits() / numRequests, numRequests ) );
+		else
+			text.append( "disk cache hits : -" );
+
+		textArea.setText( text.toString() );
+	}
+}
@@ -0,0 +1,512 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bigwarp.ExportScheduler.Priority;
+import bigwarp.source.PlateauSphericalMaskRealRandomAccessible;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.InvertibleRealTransform;
+import net.imglib2.util.Intervals;
+
+/**
+ * Estimates the transformation on a background thread whenever the landmarks change,
+ * and updates everything derived from it.
+ * <p>
+ * Requests that arrive while a solve is running are merged, so only the newest state of
+ * the landmarks is solved. Requests for a full solve are never lost to later point
+ * requests, and point requests for different landmarks are merged into a full solve.
+ * Every solve gets a version number that increases monotonically. Its transformation is
+ * given to the moving sources on the solver thread, then the stages added with
+ * {@link #addStage(Consumer)} run in parallel. Runs of the same stage are serialized, so an
+ * older version never finishes a stage after a newer one, and a stage is skipped if a newer
+ * version was published before it started. The viewers are repainted once all stages of a version
+ * are done, unless a newer version exists by then. If the transformation is masked, only
+ * the region where the mask was nonzero since the last repaint is repainted.
+ */
+public class SolvePipeline
+{
+	private static final Logger logger = LoggerFactory.getLogger( SolvePipeline.class );
+
+	/**
+	 * A solved transformation and the request it answers.
+	 */
+	public static class Snapshot
+	{
+		private final long version;
+
+		private final InvertibleRealTransform transform;
+
+		private final boolean full;
+
+		private final RealInterval changedRegion;
+
+		public Snapshot( final long version, final InvertibleRealTransform transform, final boolean full, final RealInterval changedRegion )
+		{
+			this.version = version;
+			this.transform = transform;
+			this.full = full;
+			this.changedRegion = changedRegion;
+		}
+
+		public long getVersion()
+		{
+			return version;
+		}
+
+		public InvertibleRealTransform getTransform()
+		{
+			return transform;
+		}
+
+		/**
+		 * @return true if all landmarks were solved, false if only one landmark moved
+		 */
+		public boolean isFull()
+		{
+			return full;
+		}
+
+		/**
+		 * @return a box in global coordinates outside of which the transformation equals that of the
+		 *         previous version, or null if it may have changed everywhere
+		 */
+		public RealInterval getChangedRegion()
+		{
+			return changedRegion;
+		}
+	}
+
+	/**
+	 * What the pipeline solves, and where it publishes the solutions.
+	 */
+	interface Target
+	{
+		/**
+		 * @param index the index of the changed landmark, or -1 to solve all landmarks
+		 * @return the transformation, or null if there is none
+		 */
+		InvertibleRealTransform solve( int index );
+
+		/**
+		 * @return the mask of the transformation, or null if it is not masked
+		 */
+		PlateauSphericalMaskRealRandomAccessible getMask();
+
+		void setTransformation( InvertibleRealTransform transform, RealInterval changedRegion );
+
+		void setFixedPoint( int index, double[] pt, InvertibleRealTransform transform );
+
+		/**
+		 * @param region the region to repaint, or null to repaint everything
+		 */
+		void requestRepaint( RealInterval region );
+	}
+
+	/*
+	 * A stage, and the run of it for the newest version it was given. Runs are chained
+	 * so that they finish in order of version. The tail is accessed only by the solver thread.
+	 */
+	private static class Stage
+	{
+		private final Consumer< Snapshot > consumer;
+
+		private CompletableFuture< ? > tail = CompletableFuture.completedFuture( null );
+
+		public Stage( final Consumer< Snapshot > consumer )
+		{
+			this.consumer = consumer;
+		}
+	}
+
+	private static class PointRequest
+	{
+		private final boolean isMoving;
+
+		private final int index;
+
+		private final double[] pt;
+
+		public PointRequest( final boolean isMoving, final int index, final double[] pt )
+		{
+			this.isMoving = isMoving;
+			this.index = index;
+			this.pt = pt;
+		}
+	}
+
+	private final Target target;
+
+	private final Thread solverThread;
+
+	private final ExecutorService stageExecutor;
+
+	private final List< Stage > stages = new CopyOnWriteArrayList<>();
+
+	// pending requests, guarded by this
+	private boolean pendingFull = false;
+
+	private final LinkedHashMap< Integer, PointRequest > pendingPoints = new LinkedHashMap<>();
+
+	private long requestedVersion = 0;
+
+	private long publishedVersion = 0;
+
+	private long completedVersion = 0;
+
+	private volatile Snapshot snapshot;
+
+	/*
+	 * The union of the changed regions of versions published since the last repaint, or null
+	 * if one of them changed everywhere. Guarded by this.
+	 */
+	private boolean needsRepaint = false;
+
+	private RealInterval unpaintedRegion;
+
+	private long unpaintedVersion = 0;
+
+	// the mask of the previous solve, accessed only by the solver thread
+	private PlateauSphericalMaskRealRandomAccessible previousMask;
+
+	public SolvePipeline( final BigWarp< ? > bw )
+	{
+		this( target( bw ) );
+	}
+
+	SolvePipeline( final Target target )
+	{
+		this( target, defaultStageExecutor() );
+	}
+
+	/*
+	 * The stage executor is shut down with the pipeline.
+	 */
+	SolvePipeline( final Target target, final ExecutorService stageExecutor )
+	{
+		this.target = target;
+		this.stageExecutor = stageExecutor;
+
+		solverThread = new Thread( this::run, "bigwarp-solver" );
+		solverThread.setDaemon( true );
+		solverThread.start();
+	}
+
+	private static ExecutorService defaultStageExecutor()
+	{
+		final int numThreads = Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() - 1 ) );
+		return ExportScheduler.getInstance().newBackgroundJob( "solve stages", numThreads, Priority.HIGH );
+	}
+
+	private static Target target( final BigWarp< ? > bw )
+	{
+		return new Target()
+		{
+			@Override
+			public InvertibleRealTransform solve( final int index )
+			{
+				return bw.getBwTransform().getTransformation( index );
+			}
+
+			@Override
+			public PlateauSphericalMaskRealRandomAccessible getMask()
+			{
+				return bw.getBwTransform().getSphericalMask();
+			}
+
+			@Override
+			public void setTransformation( final InvertibleRealTransform transform, final RealInterval changedRegion )
+			{
+				bw.setTransformationMovingSourceOnly( transform, changedRegion );
+			}
+
+			@Override
+			public void setFixedPoint( final int index, final double[] pt, final InvertibleRealTransform transform )
+			{
+				// don't allow undo/redo
+				bw.getLandmarkPanel().getTableModel().setPoint( index, false, pt, false, transform );
+			}
+
+			@Override
+			public void requestRepaint( final RealInterval region )
+			{
+				bw.requestRepaint( region );
+			}
+		};
+	}
+
+	/**
+	 * Adds a stage that is run for every published version.
+	 *
+	 * @param stage the stage
+	 */
+	public void addStage( final Consumer< Snapshot > stage )
+	{
+		stages.add( new Stage( stage ) );
+	}
+
+	/**
+	 * Requests a solve.
+	 *
+	 * @param isMoving whether the changed point is a moving point
+	 * @param index the index of the changed landmark, or -1 to solve all landmarks
+	 * @param newpt the new position of the changed point, may be null
+	 * @return the version of the solve that will include this request
+	 */
+	public synchronized long requestResolve( final boolean isMoving, final int index, final double[] newpt )
+	{
+		if ( index < 0 )
+			pendingFull = true;
+		else
+			pendingPoints.put( index, new PointRequest( isMoving, index, newpt == null ? null : Arrays.copyOf( newpt, newpt.length ) ) );
+
+		notifyAll();
+		return ++requestedVersion;
+	}
+
+	/**
+	 * @return the newest published snapshot, or null if nothing was solved yet
+	 */
+	public Snapshot getSnapshot()
+	{
+		return snapshot;
+	}
+
+	public synchronized long getRequestedVersion()
+	{
+		return requestedVersion;
+	}
+
+	public synchronized long getPublishedVersion()
+	{
+		return publishedVersion;
+	}
+
+	/**
+	 * Waits until all stages of the given version, or of a newer one, are done.
+	 *
+	 * @param version the version
+	 * @param timeout the maximum time to wait
+	 * @param unit the unit of the timeout
+	 * @return true if the version was completed, false if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean awaitVersion( final long version, final long timeout, final TimeUnit unit ) throws InterruptedException
+	{
+		final long end = System.nanoTime() + unit.toNanos( timeout );
+		while ( completedVersion < version )
+		{
+			final long remaining = end - System.nanoTime();
+			if ( remaining <= 0 )
+				return false;
+
+			TimeUnit.NANOSECONDS.timedWait( this, remaining );
+		}
+		return true;
+	}
+
+	public void shutdown()
+	{
+		solverThread.interrupt();
+		stageExecutor.shutdownNow();
+	}
+
+	private void run()
+	{
+		while ( !Thread.currentThread().isInterrupted() )
+		{
+			final boolean full;
+			final List< PointRequest > points;
+			final long version;
+			synchronized ( this )
+			{
+				try
+				{
+					while ( !pendingFull && pendingPoints.isEmpty() )
+						wait();
+				}
+				catch ( final InterruptedException e )
+				{
+					break;
+				}
+
+				full = pendingFull || pendingPoints.size() > 1;
+				points = new ArrayList<>( pendingPoints.values() );
+				pendingFull = false;
+				pendingPoints.clear();
+				version = requestedVersion;
+			}
+
+			try
+			{
+				solve( version, full, points );
+			}
+			catch ( final RejectedExecutionException e )
+			{
+				// this happens when the rendering threadpool
+				// is killed before the painter thread.
+			}
+			catch ( final RuntimeException e )
+			{
+				logger.error( "solve failed", e );
+				complete( version );
+			}
+		}
+	}
+
+	private void solve( final long version, final boolean full, final List< PointRequest > points )
+	{
+		final InvertibleRealTransform invXfm = target.solve( full ? -1 : points.get( 0 ).index );
+		if ( invXfm == null )
+		{
+			complete( version );
+			return;
+		}
+
+		/*
+		 * Masked transformations are the identity where the mask is zero, so if this and the
+		 * previous version have the same mask, the transformation can only have changed where
+		 * the mask was nonzero since the previous version.
+		 */
+		final PlateauSphericalMaskRealRandomAccessible mask = target.getMask();
+		final RealInterval maskSupport = mask == null ? null : mask.takeChangedSupport();
+		final RealInterval changedRegion = mask != null && mask == previousMask ? maskSupport : null;
+		previousMask = mask;
+
+		// the moving sources and the edited points are part of the version itself
+		target.setTransformation( invXfm, changedRegion );
+
+		// update fixed point and warped point for rendering purposes
+		for ( final PointRequest p : points )
+			if ( !p.isMoving && p.pt != null )
+				target.setFixedPoint( p.index, p.pt, invXfm );
+
+		final Snapshot s = new Snapshot( version, invXfm, full, changedRegion );
+		synchronized ( this )
+		{
+			publishedVersion = version;
+			snapshot = s;
+
+			if ( !needsRepaint )
+				unpaintedRegion = changedRegion;
+			else if ( unpaintedRegion != null )
+				unpaintedRegion = changedRegion == null ? null : Intervals.union( unpaintedRegion, changedRegion );
+
+			needsRepaint = true;
+			unpaintedVersion = version;
+		}
+
+		final List< Stage > currentStages = new ArrayList<>( stages );
+		final CompletableFuture< ? >[] futures = new CompletableFuture< ? >[ currentStages.size() ];
+		int i = 0;
+		for ( final Stage stage : currentStages )
+		{
+			// failures are logged by runStage, and must not break the chain
+			stage.tail = stage.tail.handle( ( x, t ) -> null ).thenRunAsync( () -> runStage( stage.consumer, s ), stageExecutor );
+			futures[ i++ ] = stage.tail;
+		}
+
+		CompletableFuture.allOf( futures ).whenComplete( ( x, t ) -> {
+			if ( isCurrent( version ) )
+				repaint();
+
+			complete( version );
+		} );
+	}
+
+	/**
+	 * Repaints the regions changed by all versions published since the last repaint, which
+	 * includes versions that were superseded before their stages were done.
+	 */
+	private void repaint()
+	{
+		final RealInterval region;
+		final long repaintedVersion;
+		synchronized ( this )
+		{
+			if ( !needsRepaint )
+				return;
+
+			region = unpaintedRegion;
+			repaintedVersion = unpaintedVersion;
+		}
+
+		/*
+		 * repaint both panels so that:
+		 * 1) new transform is displayed
+		 * 2) points are rendered
+		 */
+		target.requestRepaint( region );
+
+		// versions published during the repaint keep their regions for the next one
+		synchronized ( this )
+		{
+			if ( unpaintedVersion == repaintedVersion )
+			{
+				needsRepaint = false;
+				unpaintedRegion = null;
+			}
+		}
+	}
+
+	private void runStage( final Consumer< Snapshot > stage, final Snapshot s )
+	{
+		if ( !isCurrent( s.getVersion() ) )
+			return;
+
+		try
+		{
+			stage.accept( s );
+		}
+		catch ( final RuntimeException e )
+		{
+			logger.error( "solve stage failed for version " + s.getVersion(), e );
+		}
+	}
+
+	private synchronized boolean isCurrent( final long version )
+	{
+		return publishedVersion == version;
+	}
+
+	private synchronized void complete( final long version )
+	{
+		if ( version > completedVersion )
+		{
+			completedVersion = version;
+			notifyAll();
+		}
+	}
+}
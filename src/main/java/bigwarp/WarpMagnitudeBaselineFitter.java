@@ -0,0 +1,185 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bigwarp.ExportScheduler.Priority;
+import bigwarp.landmarks.LandmarkTableModel;
+import bigwarp.transforms.WrappedCoordinateTransform;
+import mpicbg.models.AbstractModel;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.InvertibleCoordinateTransform;
+import mpicbg.models.NotEnoughDataPointsException;
+import net.imglib2.realtransform.RealTransform;
+
+/**
+ * Fits the baseline model of the warp magnitude visualization on a background thread.
+ * <p>
+ * Requests made while a fit is waiting to run are merged into that fit, and a fit is
+ * skipped if the active landmarks and the model are the same as for the previous one.
+ * A fit that is superseded by a newer request or cancelled while it runs is not published.
+ */
+public class WarpMagnitudeBaselineFitter
+{
+	private static final Logger logger = LoggerFactory.getLogger( WarpMagnitudeBaselineFitter.class );
+
+	private final Consumer< RealTransform > baselineConsumer;
+
+	private final ExecutorService executor;
+
+	private final AtomicBoolean pending = new AtomicBoolean();
+
+	// incremented by every request and cancel, a fit publishes only if it is unchanged
+	private final AtomicLong generation = new AtomicLong();
+
+	private volatile LandmarkTableModel landmarks;
+
+	private volatile AbstractModel< ? > model;
+
+	// the inputs of the last fit, only accessed from the executor
+	private AbstractModel< ? > lastModel;
+
+	private double[][] lastP;
+
+	private double[][] lastQ;
+
+	/**
+	 * @param baselineConsumer is passed the inverse of each fitted baseline
+	 */
+	public WarpMagnitudeBaselineFitter( final Consumer< RealTransform > baselineConsumer )
+	{
+		this( baselineConsumer, ExportScheduler.getInstance().newBackgroundJob( "baseline fit", 1, Priority.LOW ) );
+	}
+
+	/**
+	 * @param baselineConsumer is passed the inverse of each fitted baseline
+	 * @param executor runs the fits, one at a time
+	 */
+	WarpMagnitudeBaselineFitter( final Consumer< RealTransform > baselineConsumer, final ExecutorService executor )
+	{
+		this.baselineConsumer = baselineConsumer;
+		this.executor = executor;
+	}
+
+	/**
+	 * Requests a fit of the given model to the given landmarks. The model is copied
+	 * before it is fit.
+	 *
+	 * @param landmarks the landmarks
+	 * @param model the baseline model
+	 */
+	public void requestFit( final LandmarkTableModel landmarks, final AbstractModel< ? > model )
+	{
+		generation.incrementAndGet();
+		this.landmarks = landmarks;
+		this.model = model;
+		if ( pending.compareAndSet( false, true ) )
+			executor.execute( this::fit );
+	}
+
+	/**
+	 * Cancels the requested fits. A fit that is running is not published
+	 * after this returns.
+	 */
+	public synchronized void cancel()
+	{
+		generation.incrementAndGet();
+		landmarks = null;
+	}
+
+	private void fit()
+	{
+		pending.set( false );
+		final long fitGeneration = generation.get();
+		final LandmarkTableModel landmarks = this.landmarks;
+		final AbstractModel< ? > prototype = model;
+		if ( landmarks == null || prototype == null )
+			return;
+
+		// the landmarks can change while they are copied, unless the table model is locked
+		final int numActive;
+		final int ndims = landmarks.getNumdims();
+		final double[][] p;
+		final double[][] q;
+		synchronized ( landmarks )
+		{
+			numActive = landmarks.numActive();
+			if ( numActive < 4 )
+				return;
+
+			p = new double[ ndims ][ numActive ];
+			q = new double[ ndims ][ numActive ];
+			landmarks.copyLandmarks( p, q );
+		}
+
+		if ( prototype == lastModel && Arrays.deepEquals( p, lastP ) && Arrays.deepEquals( q, lastQ ) )
+			return;
+
+		final double[] w = new double[ numActive ];
+		Arrays.fill( w, 1.0 );
+
+		try
+		{
+			final AbstractModel< ? > baseline = prototype.copy();
+			baseline.fit( p, q, w );
+			final WrappedCoordinateTransform baselineTransform = new WrappedCoordinateTransform(
+					( InvertibleCoordinateTransform ) baseline, ndims );
+
+			// the transform to compare is the inverse (because we use it for rendering)
+			// so need to give the inverse transform for baseline as well
+			synchronized ( this )
+			{
+				// a newer request publishes its own fit
+				if ( generation.get() != fitGeneration )
+					return;
+
+				baselineConsumer.accept( baselineTransform.inverse() );
+			}
+
+			lastModel = prototype;
+			lastP = p;
+			lastQ = q;
+		}
+		catch ( final IllDefinedDataPointsException | NotEnoughDataPointsException e )
+		{
+			logger.warn( "could not fit the warp magnitude baseline", e );
+		}
+		catch ( final RuntimeException e )
+		{
+			logger.error( "warp magnitude baseline fit failed", e );
+		}
+	}
+
+	public void shutdown()
+	{
+		cancel();
+		executor.shutdownNow();
+	}
+}
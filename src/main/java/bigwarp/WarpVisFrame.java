@@ -105,6 +105,10 @@ public class WarpVisFrame extends JDialog
 	protected JLabel gridSpacingLabel;
 	protected JLabel gridWidthLabel;
 
+	// lattice for grid and warp magnitude
+	protected JSlider latticeSpacingSlider;
+	protected JLabel latticeSpacingLabel;
+
 	// inverse
 	final JSpinner toleranceSpinner;
 	final JSpinner maxIterSpinner;
@@ -113,6 +117,10 @@ public class WarpVisFrame extends JDialog
 	final JComboBox bboxMethodDropdown;
 	final JSpinner samplesPerDimSpinner;
 
+	// rendering
+	final JCheckBox approximateRenderingCheckbox;
+	final JSpinner approximationSpacingSpinner;
+
 	// mask
 	final MaskOptionsPanel maskOptionsPanel;
 
@@ -129,10 +137,16 @@ public class WarpVisFrame extends JDialog
 	public static final int maxGridSpacing = 400;
 	public static final int defaultGridSpacing = 100;
 
+	public static final int defaultApproximationSpacing = 16;
+
 	public static final int minGridWidth = 1;
 	public static final int maxGridWidth = 50;
 	public static final int defaultGridWidth = 5;
 
+	public static final int minLatticeSpacing = 0;
+	public static final int maxLatticeSpacing = 64;
+	public static final int defaultLatticeSpacing = 0;
+
 	public WarpVisFrame( final Frame owner, final BigWarp<?> bw )
 	{
 		super( owner, "Bigwarp options", false );
@@ -233,6 +247,12 @@ public class WarpVisFrame extends JDialog
 		gridWidthLabel = new JLabel("Grid Width", JLabel.CENTER);
 		gridSpacingLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
 		gridWidthLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+
+		// zero evaluates the warp at every pixel
+		latticeSpacingSlider = new JSlider( JSlider.HORIZONTAL, minLatticeSpacing, maxLatticeSpacing, defaultLatticeSpacing );
+		latticeSpacingSlider.setToolTipText( "Interpolate the warp between points of a lattice with this spacing, or evaluate it at every pixel if zero." );
+		latticeSpacingLabel = new JLabel("Lattice Spacing", JLabel.CENTER);
+		latticeSpacingLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
 		bigSpace = Box.createVerticalStrut( 20 );
 		smallSpace = Box.createVerticalStrut( 10 );
 
@@ -248,6 +268,8 @@ public class WarpVisFrame extends JDialog
 		typeOptionPanel.add( smallSpace );
 		typeOptionPanel.add( gridWidthLabel );
 		typeOptionPanel.add( gridWidthSlider );
+		typeOptionPanel.add( latticeSpacingLabel );
+		typeOptionPanel.add( latticeSpacingSlider );
 		typeOptionPanel.add( noOptionsLabel );
 
 		final JPanel inverseOptionsPanel = new JPanel();
@@ -313,7 +335,8 @@ public class WarpVisFrame extends JDialog
 		final String[] methodStrings = {
 				BoundingBoxEstimation.Method.CORNERS.toString(),
 				BoundingBoxEstimation.Method.FACES.toString(),
-				BoundingBoxEstimation.Method.VOLUME.toString() };
+				BoundingBoxEstimation.Method.VOLUME.toString(),
+				BoundingBoxEstimation.Method.ADAPTIVE.toString() };
 
 		bboxMethodDropdown = new JComboBox<>( methodStrings );
 		bboxMethodDropdown.setSelectedIndex(1);
@@ -348,6 +371,40 @@ public class WarpVisFrame extends JDialog
 		bboxPanel.add( samplerPerDimPanel, BorderLayout.SOUTH );
 
 
+		// rendering options
+		final JPanel renderingPanel = new JPanel();
+		renderingPanel.setLayout( new BorderLayout( 10, 10 ));
+
+		renderingPanel.setBorder( BorderFactory.createCompoundBorder(
+				BorderFactory.createEmptyBorder( 4, 2, 4, 2 ),
+				BorderFactory.createCompoundBorder(
+						BorderFactory.createTitledBorder(
+								BorderFactory.createEtchedBorder(),
+								"Rendering options" ),
+						BorderFactory.createEmptyBorder( 2, 2, 2, 2 ) ) ) );
+
+		final double approximationSpacing = bw.getApproximateRenderingSpacing();
+		approximateRenderingCheckbox = new JCheckBox( "Approximate moving image transform", approximationSpacing > 0 );
+		approximateRenderingCheckbox.setToolTipText( "Render with a transform interpolated on a grid. Exports always use the exact transform." );
+
+		final JPanel approximationSpacingPanel = new JPanel();
+		approximationSpacingSpinner = new JSpinner();
+		final SpinnerNumberModel approximationModel = new SpinnerNumberModel(
+				approximationSpacing > 0 ? approximationSpacing : defaultApproximationSpacing, 1.0, 256.0, 1.0 );
+		approximationSpacingSpinner.setModel( approximationModel );
+		approximationSpacingSpinner.setEnabled( approximationSpacing > 0 );
+		approximateRenderingCheckbox.addActionListener( e -> {
+			approximationSpacingSpinner.setEnabled( approximateRenderingCheckbox.isSelected() );
+			updateApproximateRendering();
+		} );
+		approximationSpacingSpinner.addChangeListener( e -> updateApproximateRendering() );
+		approximationSpacingPanel.add( new JLabel( "Grid spacing (pixels)", SwingConstants.CENTER ), BorderLayout.WEST );
+		approximationSpacingPanel.add( approximationSpacingSpinner, BorderLayout.EAST );
+
+		renderingPanel.add( approximateRenderingCheckbox, BorderLayout.NORTH );
+		renderingPanel.add( approximationSpacingPanel, BorderLayout.SOUTH );
+
+
 		// mask options
 		maskOptionsPanel = new MaskOptionsPanel( bw );
 		maskOptionsPanel.addActions();
@@ -405,16 +462,19 @@ public class WarpVisFrame extends JDialog
 		content.add( bboxPanel, gbcContent );
 
 		gbcContent.gridy = 6;
-		content.add( maskOptionsPanel, gbcContent );
+		content.add( renderingPanel, gbcContent );
 
 		gbcContent.gridy = 7;
+		content.add( maskOptionsPanel, gbcContent );
+
+		gbcContent.gridy = 8;
 		final JPanel toggle2DPanel = new JPanel(new MigLayout("", "[grow][][grow]"));
 		final JCheckBox toggle2D = new JCheckBox("Is 2D");
 		toggle2DPanel.add(toggle2D, "cell 1 0");
 		toggle2D.addActionListener(e ->  bw.changeDimensionality(toggle2D.isSelected()) );
 		content.add(toggle2DPanel, gbcContent);
 
-		gbcContent.gridy = 8;
+		gbcContent.gridy = 9;
 		content.add( getAutoSaveOptionsPanel(), gbcContent );
 
 		setDefaultCloseOperation( WindowConstants.HIDE_ON_CLOSE );
@@ -536,6 +596,22 @@ public class WarpVisFrame extends JDialog
 				WarpVisFrame.this.bw.setWarpGridWidth( gridWidthSlider.getValue() );
 			}
 		});
+
+		latticeSpacingSlider.addChangeListener( new ChangeListener()
+		{
+			@Override
+			public void stateChanged( ChangeEvent e )
+			{
+				if( e.getSource() != latticeSpacingSlider || latticeSpacingSlider.getValueIsAdjusting() ) return;
+
+				WarpVisFrame.this.bw.setWarpVisLatticeSpacing( latticeSpacingSlider.getValue() );
+			}
+		});
+	}
+
+	private void updateApproximateRendering()
+	{
+		bw.setApproximateRendering( approximateRenderingCheckbox.isSelected() ? ( Double ) approximationSpacingSpinner.getValue() : 0 );
 	}
 
 	private class VisOptUiListener implements ChangeListener
@@ -561,6 +637,12 @@ public class WarpVisFrame extends JDialog
 		gridWidthLabel.setVisible( isVisible );
 	}
 
+	private void setLatticeOptionsVisibility( boolean isVisible )
+	{
+		latticeSpacingSlider.setVisible( isVisible );
+		latticeSpacingLabel.setVisible( isVisible );
+	}
+
 	private void setMagOptionsVisibility( boolean isVisible )
 	{
 		// disable all options
@@ -576,18 +658,21 @@ public class WarpVisFrame extends JDialog
 			noOptionsLabel.setVisible( true );
 			setGridOptionsVisibility( false );
 			setMagOptionsVisibility( false );
+			setLatticeOptionsVisibility( false );
 		}
 		else if( setWarpGridButton.isSelected() )
 		{
 			noOptionsLabel.setVisible( false );
 			setGridOptionsVisibility( true );
 			setMagOptionsVisibility( false );
+			setLatticeOptionsVisibility( true );
 		}
 		else if( setWarpMagButton.isSelected() )
 		{
 			noOptionsLabel.setVisible( false );
 			setGridOptionsVisibility( false );
 			setMagOptionsVisibility( true );
+			setLatticeOptionsVisibility( true );
 		}
 		pack();
 	}
@@ -0,0 +1,556 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.landmarks;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+
+/**
+ * Records the edits of a {@link LandmarkTableModel} in an append-only
+ * journal, so that autosaving costs as much as the edits rather than the
+ * table.
+ * <p>
+ * Every session writes to its own directory, holding the latest snapshot of
+ * the table and a journal of the edits made since. Snapshots and journal
+ * records are written by a background thread, {@link #compact()} replaces
+ * both with a new snapshot. When the journal is closed, the table is saved
+ * to a timestamped csv file if it was edited. Sessions that were not closed
+ * are recovered the same way by {@link #recover(File)}.
+ */
+public class LandmarkJournal implements TableModelListener
+{
+	public static final String SESSION_PREFIX = "bigwarp_landmarks_session_";
+
+	private static final String SNAPSHOT_PREFIX = "snapshot_";
+
+	private static final String SNAPSHOT_SUFFIX = ".csv";
+
+	private static final String JOURNAL_PREFIX = "journal_";
+
+	private static final String JOURNAL_SUFFIX = ".log";
+
+	private static final String LOCK_FILE = "session.lock";
+
+	private static final String INSERT = "I";
+
+	private static final String UPDATE = "U";
+
+	private static final String DELETE = "D";
+
+	private static final String CLEAR = "C";
+
+	private static final Logger logger = LoggerFactory.getLogger( LandmarkJournal.class );
+
+	// closing another channel to a lock file may release its lock, so sessions of this process are never touched
+	private static final Set< File > openSessions = ConcurrentHashMap.newKeySet();
+
+	private final LandmarkTableModel ltm;
+
+	private final File directory;
+
+	private final File sessionDirectory;
+
+	private final RandomAccessFile lockFile;
+
+	private final FileLock lock;
+
+	private final ExecutorService writer;
+
+	// accessed by the writer thread only
+	private CSVWriter journalWriter;
+
+	private int generation = -1;
+
+	// guarded by ltm
+	private long numEdits = 0;
+
+	private long numEditsSinceCompaction = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Starts a journal of the edits of a table, whose current state is the
+	 * first snapshot.
+	 *
+	 * @param ltm the table
+	 * @param directory the autosave directory
+	 * @throws IOException if the session directory can not be created
+	 */
+	public LandmarkJournal( final LandmarkTableModel ltm, final File directory ) throws IOException
+	{
+		this.ltm = ltm;
+		this.directory = directory;
+
+		sessionDirectory = new File( directory, SESSION_PREFIX + timestamp() + "_" + Long.toHexString( System.nanoTime() ) );
+		if ( !sessionDirectory.mkdirs() )
+			throw new IOException( "could not create " + sessionDirectory );
+
+		openSessions.add( sessionDirectory.getAbsoluteFile() );
+		lockFile = new RandomAccessFile( new File( sessionDirectory, LOCK_FILE ), "rw" );
+		lock = lockFile.getChannel().lock();
+
+		writer = Executors.newSingleThreadExecutor( r -> {
+			final Thread t = new Thread( r, "bigwarp-landmark-journal" );
+			t.setDaemon( true );
+			return t;
+		} );
+
+		synchronized ( ltm )
+		{
+			ltm.addTableModelListener( this );
+			submitSnapshot();
+		}
+	}
+
+	public File getSessionDirectory()
+	{
+		return sessionDirectory;
+	}
+
+	/**
+	 * @return true if the table was edited since the last snapshot
+	 */
+	public boolean hasEditsSinceCompaction()
+	{
+		synchronized ( ltm )
+		{
+			return numEditsSinceCompaction > 0;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot and journal by a snapshot of the current table.
+	 * The table is copied on the calling thread, and written in the background.
+	 */
+	public void compact()
+	{
+		synchronized ( ltm )
+		{
+			if ( !closed )
+				submitSnapshot();
+		}
+	}
+
+	/**
+	 * Stops recording edits, waits for pending writes and saves the table to
+	 * a timestamped csv file in the autosave directory, if it was edited.
+	 *
+	 * @return the csv file, or null if the table was not edited
+	 */
+	public File close()
+	{
+		final boolean edited;
+		synchronized ( ltm )
+		{
+			if ( closed )
+				return null;
+
+			closed = true;
+			ltm.removeTableModelListener( this );
+			edited = numEdits > 0;
+			if ( edited )
+				submitSnapshot();
+		}
+
+		writer.shutdown();
+		try
+		{
+			writer.awaitTermination( 1, TimeUnit.MINUTES );
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		File saved = null;
+		try
+		{
+			if ( journalWriter != null )
+				journalWriter.close();
+
+			if ( edited )
+				saved = moveToAutosave( new File( sessionDirectory, SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX ), directory );
+
+			lock.release();
+			lockFile.close();
+			deleteSession( sessionDirectory );
+		}
+		catch ( final IOException e )
+		{
+			logger.warn( "could not close landmark journal " + sessionDirectory, e );
+		}
+		openSessions.remove( sessionDirectory.getAbsoluteFile() );
+		return saved;
+	}
+
+	@Override
+	public void tableChanged( final TableModelEvent e )
+	{
+		synchronized ( ltm )
+		{
+			if ( closed )
+				return;
+
+			final int numRows = ltm.getRowCount();
+			final int first = e.getFirstRow();
+			final int last = e.getLastRow();
+			final List< String[] > records = new ArrayList<>();
+			if ( first == TableModelEvent.HEADER_ROW || last == Integer.MAX_VALUE )
+			{
+				records.add( new String[] { CLEAR } );
+				for ( int i = 0; i < numRows; i++ )
+					records.add( record( INSERT, i ) );
+			}
+			else if ( e.getType() == TableModelEvent.INSERT )
+			{
+				for ( int i = first; i <= last && i < numRows; i++ )
+					records.add( record( INSERT, i ) );
+			}
+			else if ( e.getType() == TableModelEvent.DELETE )
+				records.add( new String[] { DELETE, Integer.toString( first ), Integer.toString( last ) } );
+			else
+			{
+				for ( int i = first; i <= last && i < numRows; i++ )
+					records.add( record( UPDATE, i ) );
+			}
+
+			if ( records.isEmpty() )
+				return;
+
+			numEdits++;
+			numEditsSinceCompaction++;
+			writer.submit( () -> {
+				try
+				{
+					journalWriter.writeAll( records );
+					journalWriter.flush();
+				}
+				catch ( final IOException ex )
+				{
+					logger.warn( "could not write landmark journal " + sessionDirectory, ex );
+				}
+			} );
+		}
+	}
+
+	/*
+	 * Must be called while holding the lock of ltm, so that snapshots and
+	 * journal records are submitted in the order of the edits.
+	 */
+	private void submitSnapshot()
+	{
+		final List< String[] > rows = new ArrayList<>( ltm.getRowCount() );
+		for ( int i = 0; i < ltm.getRowCount(); i++ )
+			rows.add( row( i ) );
+
+		numEditsSinceCompaction = 0;
+		writer.submit( () -> {
+			try
+			{
+				writeSnapshot( rows );
+			}
+			catch ( final IOException e )
+			{
+				logger.warn( "could not write landmark snapshot " + sessionDirectory, e );
+			}
+		} );
+	}
+
+	/*
+	 * Writes snapshot g+1 and starts journal g+1 before removing generation g,
+	 * so that the session can be recovered at any time.
+	 */
+	private void writeSnapshot( final List< String[] > rows ) throws IOException
+	{
+		final int next = generation + 1;
+		final File tmp = new File( sessionDirectory, SNAPSHOT_PREFIX + next + SNAPSHOT_SUFFIX + ".tmp" );
+		try ( final CSVWriter csvWriter = new CSVWriter( new FileWriter( tmp ) ) )
+		{
+			csvWriter.writeAll( rows );
+		}
+		Files.move( tmp.toPath(), new File( sessionDirectory, SNAPSHOT_PREFIX + next + SNAPSHOT_SUFFIX ).toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+
+		if ( journalWriter != null )
+			journalWriter.close();
+
+		journalWriter = new CSVWriter( new FileWriter( new File( sessionDirectory, JOURNAL_PREFIX + next + JOURNAL_SUFFIX ) ) );
+
+		if ( generation >= 0 )
+		{
+			new File( sessionDirectory, SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX ).delete();
+			new File( sessionDirectory, JOURNAL_PREFIX + generation + JOURNAL_SUFFIX ).delete();
+		}
+		generation = next;
+	}
+
+	private String[] record( final String type, final int i )
+	{
+		final String[] row = row( i );
+		final String[] record = new String[ row.length + 2 ];
+		record[ 0 ] = type;
+		record[ 1 ] = Integer.toString( i );
+		System.arraycopy( row, 0, record, 2, row.length );
+		return record;
+	}
+
+	/*
+	 * A row in the format of LandmarkTableModel.save.
+	 */
+	private String[] row( final int i )
+	{
+		final String[] row = new String[ ltm.getColumnCount() ];
+		for ( int c = 0; c < row.length; c++ )
+			row[ c ] = ltm.getValueAt( i, c ).toString();
+
+		return row;
+	}
+
+	/**
+	 * Applies journal records to the rows of a snapshot. Replay stops at the
+	 * first invalid record, which is the last one if a write was interrupted.
+	 *
+	 * @param rows the rows of the snapshot, modified in place
+	 * @param records the journal records
+	 * @return the rows
+	 */
+	public static List< String[] > replay( final List< String[] > rows, final List< String[] > records )
+	{
+		for ( final String[] record : records )
+		{
+			try
+			{
+				switch ( record[ 0 ] )
+				{
+				case CLEAR:
+					rows.clear();
+					break;
+				case INSERT:
+					rows.add( Integer.parseInt( record[ 1 ] ), row( record, rows ) );
+					break;
+				case UPDATE:
+					rows.set( Integer.parseInt( record[ 1 ] ), row( record, rows ) );
+					break;
+				case DELETE:
+					final int first = Integer.parseInt( record[ 1 ] );
+					for ( int i = Integer.parseInt( record[ 2 ] ); i >= first; i-- )
+						rows.remove( i );
+					break;
+				default:
+					return rows;
+				}
+			}
+			catch ( final RuntimeException e )
+			{
+				logger.warn( "stopped replaying landmark journal at an invalid record" );
+				return rows;
+			}
+		}
+		return rows;
+	}
+
+	/*
+	 * The row of an insert or update record, whose length must be that of a
+	 * row of a 2d or 3d table, and of the other rows.
+	 */
+	private static String[] row( final String[] record, final List< String[] > rows )
+	{
+		final int length = record.length - 2;
+		if ( ( length != 6 && length != 8 ) || ( !rows.isEmpty() && rows.get( 0 ).length != length ) )
+			throw new IllegalArgumentException( "invalid record length " + record.length );
+
+		return Arrays.copyOfRange( record, 2, record.length );
+	}
+
+	/**
+	 * Recovers the tables of sessions in an autosave directory that were not
+	 * closed, and are not open in another process. Every recovered table is
+	 * saved to a timestamped csv file in the directory.
+	 *
+	 * @param directory the autosave directory
+	 * @return the recovered csv files
+	 */
+	public static List< File > recover( final File directory )
+	{
+		final List< File > recovered = new ArrayList<>();
+		final File[] sessions = directory.listFiles( f -> f.isDirectory() && f.getName().startsWith( SESSION_PREFIX ) );
+		if ( sessions == null )
+			return recovered;
+
+		for ( final File session : sessions )
+		{
+			if ( openSessions.contains( session.getAbsoluteFile() ) )
+				continue;
+
+			try ( final RandomAccessFile lockFile = new RandomAccessFile( new File( session, LOCK_FILE ), "rw" ) )
+			{
+				final FileLock lock = lockFile.getChannel().tryLock();
+				if ( lock == null )
+					continue;
+
+				final List< String[] > rows = replay( session );
+				if ( rows != null && !rows.isEmpty() )
+				{
+					final File tmp = new File( session, "recovered" + SNAPSHOT_SUFFIX );
+					try ( final CSVWriter csvWriter = new CSVWriter( new FileWriter( tmp ) ) )
+					{
+						csvWriter.writeAll( rows );
+					}
+					final File saved = moveToAutosave( tmp, directory );
+					logger.info( "recovered landmarks of an unfinished session to " + saved );
+					recovered.add( saved );
+				}
+				lock.release();
+			}
+			catch ( final OverlappingFileLockException e )
+			{
+				continue;
+			}
+			catch ( final IOException | RuntimeException e )
+			{
+				logger.warn( "could not recover landmarks from " + session, e );
+				continue;
+			}
+			deleteSession( session );
+		}
+		return recovered;
+	}
+
+	/*
+	 * Replays the journal of the latest complete snapshot of a session,
+	 * returns null if there is none.
+	 */
+	private static List< String[] > replay( final File session ) throws IOException
+	{
+		int generation = -1;
+		final String[] names = session.list();
+		if ( names == null )
+			return null;
+
+		for ( final String name : names )
+		{
+			if ( name.startsWith( SNAPSHOT_PREFIX ) && name.endsWith( SNAPSHOT_SUFFIX ) )
+			{
+				try
+				{
+					generation = Math.max( generation, Integer.parseInt(
+							name.substring( SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length() ) ) );
+				}
+				catch ( final NumberFormatException e )
+				{}
+			}
+		}
+		if ( generation < 0 )
+			return null;
+
+		final List< String[] > rows = new ArrayList<>( readCsv( new File( session, SNAPSHOT_PREFIX + generation + SNAPSHOT_SUFFIX ) ) );
+		final File journal = new File( session, JOURNAL_PREFIX + generation + JOURNAL_SUFFIX );
+		if ( journal.exists() )
+			replay( rows, readRecords( journal ) );
+
+		return rows;
+	}
+
+	private static List< String[] > readCsv( final File f ) throws IOException
+	{
+		try ( final CSVReader reader = new CSVReader( new FileReader( f ) ) )
+		{
+			return reader.readAll();
+		}
+		catch ( final CsvException e )
+		{
+			throw new IOException( e );
+		}
+	}
+
+	/*
+	 * Reads the records of a journal up to the first that can not be parsed.
+	 */
+	private static List< String[] > readRecords( final File f )
+	{
+		final List< String[] > records = new ArrayList<>();
+		try ( final CSVReader reader = new CSVReader( new FileReader( f ) ) )
+		{
+			String[] record;
+			while ( ( record = reader.readNext() ) != null )
+				records.add( record );
+		}
+		catch ( final CsvException | IOException e )
+		{
+			logger.warn( "stopped reading landmark journal " + f + " at an invalid record" );
+		}
+		return records;
+	}
+
+	private static File moveToAutosave( final File csv, final File directory ) throws IOException
+	{
+		final String name = "bigwarp_landmarks_" + timestamp();
+		File target = new File( directory, name + ".csv" );
+		for ( int i = 1; target.exists(); i++ )
+			target = new File( directory, name + "_" + i + ".csv" );
+
+		Files.move( csv.toPath(), target.toPath() );
+		return target;
+	}
+
+	private static void deleteSession( final File session )
+	{
+		final File[] files = session.listFiles();
+		if ( files != null )
+			for ( final File f : files )
+				f.delete();
+
+		session.delete();
+	}
+
+	private static String timestamp()
+	{
+		return new SimpleDateFormat( "yyyyMMdd-HHmmss" ).format( Calendar.getInstance().getTime() );
+	}
+}
@@ -0,0 +1,479 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.landmarks;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A uniform hash grid over the finite points of a {@link LandmarkPoints} store, answering
+ * nearest neighbor and radius queries by visiting only the cells near the query.
+ * <p>
+ * The grid stores row indices, and is kept current by the store as points are set, inserted, or
+ * removed. Points with non-finite coordinates (unset or not yet warped) are not indexed.
+ * The cell size is chosen when the index is built such that cells hold about two points each.
+ */
+class LandmarkPointIndex
+{
+	private static final double POINTS_PER_CELL = 2.0;
+
+	private final LandmarkPoints points;
+
+	private final int ndims;
+
+	private final double[] origin;
+
+	private final double cellSize;
+
+	private final int builtSize;
+
+	private final HashMap< Long, Bucket > cells;
+
+	private final long[] minCell;
+
+	private final long[] maxCell;
+
+	private int numIndexed;
+
+	LandmarkPointIndex( final LandmarkPoints points )
+	{
+		this.points = points;
+		this.ndims = points.numDimensions();
+		builtSize = points.size();
+
+		origin = new double[ ndims ];
+		final double[] max = new double[ ndims ];
+		Arrays.fill( origin, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		int n = 0;
+		for ( int i = 0; i < builtSize; i++ )
+		{
+			if ( !isFinite( i ) )
+				continue;
+
+			for ( int d = 0; d < ndims; d++ )
+			{
+				final double x = points.get( i, d );
+				origin[ d ] = Math.min( origin[ d ], x );
+				max[ d ] = Math.max( max[ d ], x );
+			}
+			n++;
+		}
+
+		if ( n == 0 )
+			Arrays.fill( origin, 0 );
+
+		// the cell size that puts POINTS_PER_CELL points in a cell, ignoring flat dimensions
+		double volume = 1;
+		int nd = 0;
+		for ( int d = 0; d < ndims; d++ )
+		{
+			final double extent = max[ d ] - origin[ d ];
+			if ( extent > 0 )
+			{
+				volume *= extent;
+				nd++;
+			}
+		}
+
+		final double size = nd > 0 ? Math.pow( volume * POINTS_PER_CELL / n, 1.0 / nd ) : 1.0;
+		cellSize = size > 0 && Double.isFinite( size ) ? size : 1.0;
+
+		cells = new HashMap<>();
+		minCell = new long[ ndims ];
+		maxCell = new long[ ndims ];
+		Arrays.fill( minCell, Long.MAX_VALUE );
+		Arrays.fill( maxCell, Long.MIN_VALUE );
+		numIndexed = 0;
+
+		final long[] cell = new long[ ndims ];
+		for ( int i = 0; i < builtSize; i++ )
+		{
+			if ( isFinite( i ) )
+			{
+				cellOf( i, cell );
+				insert( i, cell );
+			}
+		}
+	}
+
+	/**
+	 * @return true if the store changed size so much since this index was built that it should be rebuilt
+	 */
+	boolean isStale()
+	{
+		final int n = points.size();
+		return n > 2 * builtSize + 16 || n < builtSize / 4;
+	}
+
+	/**
+	 * Called by the store after point i moved from oldPosition.
+	 */
+	void moved( final int i, final double[] oldPosition )
+	{
+		final long[] oldCell = cellOf( oldPosition );
+		final long[] newCell = isFinite( i ) ? cellOf( i, new long[ ndims ] ) : null;
+		if ( oldCell != null && newCell != null && Arrays.equals( oldCell, newCell ) )
+			return;
+
+		if ( oldCell != null )
+			remove( i, oldCell );
+
+		if ( newCell != null )
+			insert( i, newCell );
+	}
+
+	/**
+	 * Called by the store after a point was inserted at index i.
+	 */
+	void inserted( final int i )
+	{
+		if ( i < points.size() - 1 )
+			shift( i, 1 );
+
+		if ( isFinite( i ) )
+			insert( i, cellOf( i, new long[ ndims ] ) );
+	}
+
+	/**
+	 * Called by the store after the point at index i, previously at oldPosition, was removed.
+	 */
+	void removed( final int i, final double[] oldPosition )
+	{
+		final long[] oldCell = cellOf( oldPosition );
+		if ( oldCell != null )
+			remove( i, oldCell );
+
+		shift( i + 1, -1 );
+	}
+
+	/**
+	 * Returns the index of the point nearest to q. Among equally distant points, the one
+	 * with the smallest index is returned.
+	 *
+	 * @param q the query point
+	 * @return the index of the nearest point, or -1 if no point is indexed
+	 */
+	int nearest( final double[] q )
+	{
+		if ( numIndexed == 0 )
+			return -1;
+
+		final long[] center = cellOf( q );
+		if ( center == null )
+			return nearestLinear( q );
+
+		// the number of rings after which every indexed point was visited
+		long maxRing = 0;
+		for ( int d = 0; d < ndims; d++ )
+			maxRing = Math.max( maxRing, Math.max( center[ d ] - minCell[ d ], maxCell[ d ] - center[ d ] ) );
+
+		final Nearest best = new Nearest( q );
+		final long[] cell = new long[ ndims ];
+		long visited = 0;
+		for ( long r = 0; r <= maxRing; r++ )
+		{
+			// queries far from the points are cheaper to answer with a scan
+			visited += shellSize( r );
+			if ( visited > 2 * numIndexed )
+				return nearestLinear( q );
+
+			visitShell( center, r, cell, best );
+
+			// points in further rings are at least r cells away
+			final double bound = r * cellSize;
+			if ( best.index >= 0 && best.distance <= bound * bound )
+				break;
+		}
+		return best.index;
+	}
+
+	/**
+	 * Returns the indexes of all points within the given distance of q, in increasing order.
+	 *
+	 * @param q the query point
+	 * @param radius the distance
+	 * @return the indexes
+	 */
+	int[] withinRadius( final double[] q, final double radius )
+	{
+		final Bucket result = new Bucket();
+		if ( numIndexed == 0 )
+			return result.toArray();
+
+		final double r2 = radius * radius;
+		final long[] lo = new long[ ndims ];
+		final long[] hi = new long[ ndims ];
+		double numCells = 1;
+		for ( int d = 0; d < ndims; d++ )
+		{
+			lo[ d ] = Math.max( minCell[ d ], cell( q[ d ] - radius, d ) );
+			hi[ d ] = Math.min( maxCell[ d ], cell( q[ d ] + radius, d ) );
+			if ( hi[ d ] < lo[ d ] || !Double.isFinite( q[ d ] ) )
+				return result.toArray();
+
+			numCells *= ( hi[ d ] - lo[ d ] + 1 );
+		}
+
+		if ( numCells > 2 * numIndexed )
+		{
+			for ( int i = 0; i < points.size(); i++ )
+				if ( isFinite( i ) && points.squaredDistance( i, q ) <= r2 )
+					result.add( i );
+
+			return result.toArray();
+		}
+
+		final long[] cell = lo.clone();
+		while ( true )
+		{
+			final Bucket bucket = cells.get( key( cell ) );
+			if ( bucket != null )
+			{
+				for ( int j = 0; j < bucket.size; j++ )
+				{
+					final int i = bucket.data[ j ];
+					if ( points.squaredDistance( i, q ) <= r2 )
+						result.add( i );
+				}
+			}
+
+			int d = 0;
+			while ( d < ndims && ++cell[ d ] > hi[ d ] )
+			{
+				cell[ d ] = lo[ d ];
+				d++;
+			}
+			if ( d == ndims )
+				break;
+		}
+
+		// hash collisions can place a point in more than one visited bucket
+		final int[] out = result.toArray();
+		Arrays.sort( out );
+		int n = 0;
+		for ( int j = 0; j < out.length; j++ )
+			if ( n == 0 || out[ j ] != out[ n - 1 ] )
+				out[ n++ ] = out[ j ];
+
+		return Arrays.copyOf( out, n );
+	}
+
+	private int nearestLinear( final double[] q )
+	{
+		final Nearest best = new Nearest( q );
+		for ( int i = 0; i < points.size(); i++ )
+			if ( isFinite( i ) )
+				best.offer( i );
+
+		return best.index;
+	}
+
+	private void visitShell( final long[] center, final long r, final long[] cell, final Nearest best )
+	{
+		final long[] offset = new long[ ndims ];
+		Arrays.fill( offset, -r );
+		while ( true )
+		{
+			boolean onShell = false;
+			for ( int d = 0; d < ndims; d++ )
+			{
+				cell[ d ] = center[ d ] + offset[ d ];
+				onShell |= ( offset[ d ] == -r || offset[ d ] == r );
+			}
+
+			if ( onShell )
+			{
+				final Bucket bucket = cells.get( key( cell ) );
+				if ( bucket != null )
+					for ( int j = 0; j < bucket.size; j++ )
+						best.offer( bucket.data[ j ] );
+			}
+
+			int d = 0;
+			while ( d < ndims && ++offset[ d ] > r )
+			{
+				offset[ d ] = -r;
+				d++;
+			}
+			if ( d == ndims )
+				break;
+		}
+	}
+
+	private long shellSize( final long r )
+	{
+		if ( r == 0 )
+			return 1;
+
+		long outer = 1;
+		long inner = 1;
+		for ( int d = 0; d < ndims; d++ )
+		{
+			outer *= 2 * r + 1;
+			inner *= 2 * r - 1;
+		}
+		return outer - inner;
+	}
+
+	private void insert( final int i, final long[] cell )
+	{
+		cells.computeIfAbsent( key( cell ), k -> new Bucket() ).add( i );
+		for ( int d = 0; d < ndims; d++ )
+		{
+			minCell[ d ] = Math.min( minCell[ d ], cell[ d ] );
+			maxCell[ d ] = Math.max( maxCell[ d ], cell[ d ] );
+		}
+		numIndexed++;
+	}
+
+	private void remove( final int i, final long[] cell )
+	{
+		final Long key = key( cell );
+		final Bucket bucket = cells.get( key );
+		if ( bucket != null && bucket.remove( i ) )
+		{
+			numIndexed--;
+			if ( bucket.size == 0 )
+				cells.remove( key );
+		}
+	}
+
+	/**
+	 * Adds delta to every indexed row index that is at least start.
+	 */
+	private void shift( final int start, final int delta )
+	{
+		for ( final Bucket bucket : cells.values() )
+			for ( int j = 0; j < bucket.size; j++ )
+				if ( bucket.data[ j ] >= start )
+					bucket.data[ j ] += delta;
+	}
+
+	private boolean isFinite( final int i )
+	{
+		for ( int d = 0; d < ndims; d++ )
+			if ( !Double.isFinite( points.get( i, d ) ) )
+				return false;
+
+		return true;
+	}
+
+	private long cell( final double x, final int d )
+	{
+		return ( long ) Math.floor( ( x - origin[ d ] ) / cellSize );
+	}
+
+	private long[] cellOf( final int i, final long[] cell )
+	{
+		for ( int d = 0; d < ndims; d++ )
+			cell[ d ] = cell( points.get( i, d ), d );
+
+		return cell;
+	}
+
+	/**
+	 * @return the cell containing the position, or null if the position is not finite
+	 */
+	private long[] cellOf( final double[] position )
+	{
+		final long[] cell = new long[ ndims ];
+		for ( int d = 0; d < ndims; d++ )
+		{
+			if ( !Double.isFinite( position[ d ] ) )
+				return null;
+
+			cell[ d ] = cell( position[ d ], d );
+		}
+		return cell;
+	}
+
+	/*
+	 * Cells that collide share a bucket, which costs extra distance computations but
+	 * never changes query results.
+	 */
+	private static Long key( final long[] cell )
+	{
+		long h = 0;
+		for ( int d = 0; d < cell.length; d++ )
+			h = 31 * h + cell[ d ] * 0x9E3779B97F4A7C15L;
+
+		return h;
+	}
+
+	private class Nearest
+	{
+		final double[] q;
+
+		int index = -1;
+
+		double distance = Double.POSITIVE_INFINITY;
+
+		Nearest( final double[] q )
+		{
+			this.q = q;
+		}
+
+		void offer( final int i )
+		{
+			final double dist = points.squaredDistance( i, q );
+			if ( dist < distance || ( dist == distance && i < index ) )
+			{
+				distance = dist;
+				index = i;
+			}
+		}
+	}
+
+	private static class Bucket
+	{
+		int[] data = new int[ 4 ];
+
+		int size = 0;
+
+		void add( final int i )
+		{
+			if ( size == data.length )
+				data = Arrays.copyOf( data, 2 * size );
+
+			data[ size++ ] = i;
+		}
+
+		boolean remove( final int i )
+		{
+			for ( int j = 0; j < size; j++ )
+				if ( data[ j ] == i )
+				{
+					data[ j ] = data[ --size ];
+					return true;
+				}
+
+			return false;
+		}
+
+		int[] toArray()
+		{
+			return Arrays.copyOf( data, size );
+		}
+	}
+
+}
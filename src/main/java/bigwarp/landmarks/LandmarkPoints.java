@@ -0,0 +1,362 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.landmarks;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.RealLocalizable;
+
+/**
+ * Growable storage of points with primitive coordinates.
+ * <p>
+ * Coordinates are stored in one array per dimension, so the coordinates of all points
+ * along one dimension are contiguous. The arrays returned by {@link #column(int)} are the
+ * backing storage: their first {@link #size()} entries are valid, and only until the next
+ * time a point is added or removed.
+ * <p>
+ * Nearest neighbor and radius queries are answered by a {@link LandmarkPointIndex} that is
+ * built on the first query and then kept current as points change.
+ * <p>
+ * This class is not synchronized, {@link LandmarkTableModel} guards its point stores with
+ * its own lock.
+ */
+public class LandmarkPoints
+{
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final int ndims;
+
+	private double[][] data;
+
+	private int size;
+
+	private LandmarkPointIndex spatialIndex;
+
+	public LandmarkPoints( final int ndims )
+	{
+		this( ndims, DEFAULT_CAPACITY );
+	}
+
+	public LandmarkPoints( final int ndims, final int capacity )
+	{
+		this.ndims = ndims;
+		data = new double[ ndims ][ Math.max( capacity, 1 ) ];
+		size = 0;
+	}
+
+	public int numDimensions()
+	{
+		return ndims;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public void clear()
+	{
+		size = 0;
+		spatialIndex = null;
+	}
+
+	public void ensureCapacity( final int capacity )
+	{
+		final int current = data[ 0 ].length;
+		if ( capacity <= current )
+			return;
+
+		final int newCapacity = Math.max( capacity, current + ( current >> 1 ) );
+		for ( int d = 0; d < ndims; d++ )
+			data[ d ] = Arrays.copyOf( data[ d ], newCapacity );
+	}
+
+	/**
+	 * Appends a point.
+	 *
+	 * @param pt the point's coordinates
+	 */
+	public void add( final double[] pt )
+	{
+		add( size, pt );
+	}
+
+	/**
+	 * Inserts a point at the given index, shifting subsequent points.
+	 *
+	 * @param index the index
+	 * @param pt the point's coordinates
+	 */
+	public void add( final int index, final double[] pt )
+	{
+		insert( index );
+		for ( int d = 0; d < ndims; d++ )
+			data[ d ][ index ] = pt[ d ];
+
+		inserted( index );
+	}
+
+	/**
+	 * Inserts a point at the given index whose coordinates all have the given value.
+	 *
+	 * @param index the index
+	 * @param value the value of every coordinate
+	 */
+	public void add( final int index, final double value )
+	{
+		insert( index );
+		for ( int d = 0; d < ndims; d++ )
+			data[ d ][ index ] = value;
+
+		inserted( index );
+	}
+
+	private void insert( final int index )
+	{
+		if ( index < 0 || index > size )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+
+		ensureCapacity( size + 1 );
+		if ( index < size )
+			for ( int d = 0; d < ndims; d++ )
+				System.arraycopy( data[ d ], index, data[ d ], index + 1, size - index );
+
+		size++;
+	}
+
+	public void remove( final int index )
+	{
+		final double[] old = positionBeforeChange( index );
+		final int numMoved = size - index - 1;
+		if ( numMoved > 0 )
+			for ( int d = 0; d < ndims; d++ )
+				System.arraycopy( data[ d ], index + 1, data[ d ], index, numMoved );
+
+		size--;
+
+		if ( spatialIndex != null )
+			spatialIndex.removed( index, old );
+	}
+
+	public double get( final int index, final int d )
+	{
+		checkIndex( index );
+		return data[ d ][ index ];
+	}
+
+	public void set( final int index, final int d, final double value )
+	{
+		final double[] old = positionBeforeChange( index );
+		data[ d ][ index ] = value;
+		moved( index, old );
+	}
+
+	public void set( final int index, final double[] pt )
+	{
+		final double[] old = positionBeforeChange( index );
+		for ( int d = 0; d < ndims; d++ )
+			data[ d ][ index ] = pt[ d ];
+
+		moved( index, old );
+	}
+
+	/**
+	 * Copies the coordinates of a point into the destination, up to the length
+	 * of the destination.
+	 *
+	 * @param index the index
+	 * @param dest the destination
+	 */
+	public void localize( final int index, final double[] dest )
+	{
+		checkIndex( index );
+		for ( int d = 0; d < ndims && d < dest.length; d++ )
+			dest[ d ] = data[ d ][ index ];
+	}
+
+	public double[] get( final int index )
+	{
+		final double[] out = new double[ ndims ];
+		localize( index, out );
+		return out;
+	}
+
+	public Double[] getBoxed( final int index )
+	{
+		checkIndex( index );
+		final Double[] out = new Double[ ndims ];
+		for ( int d = 0; d < ndims; d++ )
+			out[ d ] = data[ d ][ index ];
+
+		return out;
+	}
+
+	/**
+	 * @param index the index
+	 * @return true if the first coordinate of the point is infinite, as it is for unset points
+	 */
+	public boolean isInfinite( final int index )
+	{
+		return Double.isInfinite( get( index, 0 ) );
+	}
+
+	public double squaredDistance( final int index, final double[] q )
+	{
+		checkIndex( index );
+		double dist = 0;
+		for ( int d = 0; d < ndims; d++ )
+		{
+			final double diff = data[ d ][ index ] - q[ d ];
+			dist += diff * diff;
+		}
+		return dist;
+	}
+
+	public double squaredDistance( final int index, final RealLocalizable q )
+	{
+		checkIndex( index );
+		double dist = 0;
+		for ( int d = 0; d < ndims; d++ )
+		{
+			final double diff = data[ d ][ index ] - q.getDoublePosition( d );
+			dist += diff * diff;
+		}
+		return dist;
+	}
+
+	/**
+	 * Returns the backing array of the given dimension without copying.
+	 *
+	 * @param d the dimension
+	 * @return the coordinates of all points along d, valid up to {@link #size()}
+	 */
+	public double[] column( final int d )
+	{
+		return data[ d ];
+	}
+
+	/**
+	 * A view of this store as a list of boxed points. Every call to get creates a new array,
+	 * and changes to the points are written back only through set.
+	 *
+	 * @return the list view
+	 */
+	public List< Double[] > asBoxedList()
+	{
+		return new AbstractList< Double[] >()
+		{
+			@Override
+			public Double[] get( final int index )
+			{
+				return getBoxed( index );
+			}
+
+			@Override
+			public Double[] set( final int index, final Double[] pt )
+			{
+				final Double[] old = getBoxed( index );
+				for ( int d = 0; d < ndims; d++ )
+					LandmarkPoints.this.set( index, d, pt[ d ] );
+
+				return old;
+			}
+
+			@Override
+			public int size()
+			{
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Returns the index of the point nearest to q, ignoring points with non-finite
+	 * coordinates. Among equally distant points, the one with the smallest index is returned.
+	 *
+	 * @param q the query point
+	 * @return the index of the nearest point, or -1 if there is none
+	 */
+	public int nearest( final double[] q )
+	{
+		return getIndex().nearest( q );
+	}
+
+	public int nearest( final RealLocalizable q )
+	{
+		final double[] pt = new double[ ndims ];
+		for ( int d = 0; d < ndims; d++ )
+			pt[ d ] = q.getDoublePosition( d );
+
+		return nearest( pt );
+	}
+
+	/**
+	 * Returns the indexes of all points within the given distance of q, in increasing order.
+	 *
+	 * @param q the query point
+	 * @param radius the distance
+	 * @return the indexes
+	 */
+	public int[] withinRadius( final double[] q, final double radius )
+	{
+		return getIndex().withinRadius( q, radius );
+	}
+
+	private LandmarkPointIndex getIndex()
+	{
+		if ( spatialIndex == null || spatialIndex.isStale() )
+			spatialIndex = new LandmarkPointIndex( this );
+
+		return spatialIndex;
+	}
+
+	private void inserted( final int i )
+	{
+		if ( spatialIndex != null )
+			spatialIndex.inserted( i );
+	}
+
+	private void moved( final int i, final double[] oldPosition )
+	{
+		if ( spatialIndex != null )
+			spatialIndex.moved( i, oldPosition );
+	}
+
+	/**
+	 * Checks the index, and returns the current position of the point if the spatial
+	 * index needs it to follow a change.
+	 */
+	private double[] positionBeforeChange( final int i )
+	{
+		checkIndex( i );
+		return spatialIndex != null ? get( i ) : null;
+	}
+
+	private void checkIndex( final int index )
+	{
+		if ( index < 0 || index >= size )
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+	}
+
+}
@@ -41,6 +41,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
@@ -52,10 +56,13 @@ import org.apache.commons.lang.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import bigwarp.ExportScheduler;
+import bigwarp.ExportScheduler.Priority;
 import bigwarp.landmarks.actions.AddPointEdit;
 import bigwarp.landmarks.actions.DeleteRowEdit;
 import bigwarp.landmarks.actions.LandmarkUndoManager;
 import bigwarp.landmarks.actions.ModifyPointEdit;
+import bigwarp.transforms.WarmStartIterativeInvertibleRealTransform;
 import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
 import net.imglib2.RealLocalizable;
 import net.imglib2.realtransform.InvertibleRealTransform;
@@ -107,8 +114,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 
 	protected ArrayList<String> 	names;
 	protected ArrayList<Boolean>	activeList;
-	protected ArrayList<Double[]>	movingPts;
-	protected ArrayList<Double[]>	targetPts;
+	protected LandmarkPoints movingPts;
+	protected LandmarkPoints targetPts;
 
 	// this list contains as many elemnts as the table, and
 	// contains a unique integer >= 0 if the row is active, or -1 otherwise
@@ -132,11 +139,17 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	protected ThinPlateR2LogRSplineKernelTransform estimatedXfm;
 
 	// keeps track of warped points so we don't always have to do it on the fly
-	protected ArrayList<Double[]> warpedPoints;
+	protected LandmarkPoints warpedPoints;
 
 
 	// inverse iterations
-	protected int maxInverseIterations = 500;
+	protected int maxInverseIterations = 1000;
+
+	// fewest rows per thread when updating warped points in parallel
+	protected static final int MIN_WARPED_POINTS_PER_THREAD = 16;
+
+	// updates warped points for all tables, created when first used
+	private static ExecutorService warpedPointWorkers;
 
 	// inverse threshold
 	protected double inverseThreshold = 0.5;
@@ -185,8 +198,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		activeList = new ArrayList<>();
 		tableIndexToActiveIndex = new ArrayList<>();
 
-		movingPts = new ArrayList<Double[]>();
-		targetPts = new ArrayList<Double[]>();
+		movingPts = new LandmarkPoints( ndims );
+		targetPts = new LandmarkPoints( ndims );
 
 		pointToOverride = new Double[ ndims ];
 		Arrays.fill( pointToOverride, Double.POSITIVE_INFINITY );
@@ -198,7 +211,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			columnNames = columnNames3d;
 		}
 
-		warpedPoints = new ArrayList<Double[]>();
+		warpedPoints = new LandmarkPoints( ndims );
 		doesPointHaveAndNeedWarp = new ArrayList<Boolean>();
 		movingDisplayPointUnreliable = new ArrayList<Boolean>();
 		indicesOfChangedPoints  = new ArrayList<Integer>();
@@ -242,8 +255,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			System.out.println("");
 			for( int d = 0; d < ndims; d++ )
 			{
-				System.out.print( " " + (movingPts.get( i )[ ndims + d ].doubleValue() - estimatedXfm.getSourceLandmarks()[ d ][ i ]) );
-				System.out.print( " " + (targetPts.get( i )[ ndims + d ].doubleValue() - estimatedXfm.getSourceLandmarks()[ d ][ i ]) );
+				System.out.print( " " + (movingPts.get( i, d ) - estimatedXfm.getSourceLandmarks()[ d ][ i ]) );
+				System.out.print( " " + (targetPts.get( i, d ) - estimatedXfm.getSourceLandmarks()[ d ][ i ]) );
 			}
 		}
 	}
@@ -273,7 +286,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		{
 			for( int d = 0; d < ndims; d++ )
 			{
-				if ( targetPts.get( i )[ d ].doubleValue() != estimatedXfm.getSourceLandmarks()[ d ][ i ] )
+				if ( targetPts.get( i, d ) != estimatedXfm.getSourceLandmarks()[ d ][ i ] )
 				{
 					System.out.println("Wrong for pt: " + i );
 					return false;
@@ -329,7 +342,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 
 	public void restorePendingUpdate( )
 	{
-		ArrayList< Double[] > pts;
+		LandmarkPoints pts;
 
 		int i = 0;
 		if( pointUpdatePendingMoving )
@@ -344,7 +357,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		}
 
 		for( int d = 0; d < ndims; d++ )
-			pts.get( i )[ d ] = pointToOverride[ d ];
+			pts.set( i, d, pointToOverride[ d ] );
 
 		activeList.set( i, true );
 		buildTableToActiveIndex();
@@ -383,13 +396,50 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		return columnNames[col];
 	}
 
-	public ArrayList<Double[]> getPoints( boolean moving ) {
+	/**
+	 * Returns a list view of the moving or target points. Every call to get
+	 * creates a new array, and changes to that array are not written to the
+	 * table; points change only through set.
+	 *
+	 * @param moving moving points if true, target points otherwise
+	 * @return the list view
+	 * @deprecated the returned points are copies, use {@link #getPointsCopy(boolean)}
+	 *             to read and {@link #setPoint} to write
+	 */
+	@Deprecated
+	public List<Double[]> getPoints( boolean moving ) {
+		if( moving )
+			return movingPts.asBoxedList();
+		else
+			return targetPts.asBoxedList();
+	}
+
+	/**
+	 * Returns the primitive storage of the moving or target points, without copying.
+	 * Callers must synchronize on this table while reading from it, and must not
+	 * change its size. The store is replaced when landmarks are loaded from a file.
+	 *
+	 * @param moving moving points if true, target points otherwise
+	 * @return the point storage
+	 */
+	public LandmarkPoints getPointStore( boolean moving ) {
 		if( moving )
 			return movingPts;
 		else
 			return targetPts;
 	}
 
+	/**
+	 * Returns the primitive storage of the warped points, without copying.
+	 * Callers must synchronize on this table while reading from it, and must not
+	 * change its size. The store is replaced when landmarks are loaded from a file.
+	 *
+	 * @return the warped point storage
+	 */
+	public LandmarkPoints getWarpedPointStore() {
+		return warpedPoints;
+	}
+
 
 	public ArrayList<String> getNames()
 	{
@@ -531,8 +581,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	public boolean isRowUnpaired( final int i )
 	{
 		for( int d = 0; d < ndims; d++ )
-			if( Double.isInfinite( movingPts.get( i )[ d ] ) ||
-				Double.isInfinite( targetPts.get( i )[ d ] ))
+			if( Double.isInfinite( movingPts.get( i, d ) ) ||
+				Double.isInfinite( targetPts.get( i, d ) ))
 					return true;
 
 		return false;
@@ -572,7 +622,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			for ( int i = lastAddedIndex; i < numRows; i++ )
 			{
 				// moving image
-				if ( Double.isInfinite( movingPts.get( i )[ 0 ] ) )
+				if ( movingPts.isInfinite( i ) )
 				{
 					pointUpdatePendingMoving = true;
 
@@ -584,7 +634,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 				}
 
 				// target image
-				if ( Double.isInfinite( targetPts.get( i )[ 0 ] ) )
+				if ( targetPts.isInfinite( i ) )
 				{
 					pointUpdatePendingMoving = true;
 
@@ -633,8 +683,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			if( pt == null )
 				return;
 
-			for ( int d = 0; d < ndims; d++ )
-				warpedPoints.get( i )[ d ] = pt[ d ];
+			warpedPoints.set( i, pt );
 
 			doesPointHaveAndNeedWarp.set( i, true );
 		}
@@ -651,7 +700,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 //				String s = "" + i + " : ";
 				s += String.format("%04d : ", i);
 				for ( int d = 0; d < ndims; d++ )
-					s += String.format("%f\t", warpedPoints.get( i )[ d ] );
+					s += String.format("%f\t", warpedPoints.get( i, d ) );
 
 				s+="\n";
 			}
@@ -659,9 +708,14 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		System.out.println( s );
 	}
 
-	public ArrayList< Double[] > getWarpedPoints()
+	/**
+	 * @return a list view of the warped points, see {@link #getPoints(boolean)}
+	 * @deprecated the returned points are copies, use {@link #getWarpedPointsCopy()}
+	 */
+	@Deprecated
+	public List< Double[] > getWarpedPoints()
 	{
-		return warpedPoints;
+		return warpedPoints.asBoxedList();
 	}
 
 	public ArrayList<Boolean> getChangedSinceWarp()
@@ -705,18 +759,12 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	private void addEmptyRow( int index )
 	{
 		synchronized(this) {
-			final Double[] movingPt = new Double[ ndims ];
-			final Double[] targetPt = new Double[ ndims ];
-
-			Arrays.fill( targetPt, Double.POSITIVE_INFINITY );
-			Arrays.fill( movingPt, Double.POSITIVE_INFINITY );
-
-			movingPts.add( index, movingPt );
-			targetPts.add( index, targetPt );
+			movingPts.add( index, Double.POSITIVE_INFINITY );
+			targetPts.add( index, Double.POSITIVE_INFINITY );
 
 			names.add( index, nextName( index ));
 			activeList.add( index, false );
-			warpedPoints.add( index, new Double[ ndims ] );
+			warpedPoints.add( index, Double.NaN );
 			doesPointHaveAndNeedWarp.add( index, false );
 			movingDisplayPointUnreliable.add( index, false );
 			tableIndexToActiveIndex.add( -1 );
@@ -813,13 +861,13 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 				else
 				{
 					if ( isMoving )
-						oldpt = toPrimitive( movingPts.get( index ) );
+						oldpt = movingPts.get( index );
 					else
-						oldpt = toPrimitive( targetPts.get( index ) );
+						oldpt = targetPts.get( index );
 				}
 			}
 
-			ArrayList< Double[] > pts;
+			LandmarkPoints pts;
 
 			/********************
 			 * Update the point *
@@ -830,12 +878,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			else
 				pts = targetPts;
 
-			// create a new point and add it
-			final Double[] exPts = new Double[ ndims ];
-			for( int i = 0; i < ndims; i++ ){
-				exPts[ i ] = pt[ i ];
-			}
-			pts.set( index, exPts );
+			pts.set( index, pt );
 
 			/************************************************
 			 * Determine if we have to update warped points *
@@ -885,9 +928,9 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	public void setLastPoint( int i, boolean isMoving )
 	{
 		if( isMoving )
-			lastPoint = toPrimitive( movingPts.get( i ) );
+			lastPoint = movingPts.get( i );
 		else
-			lastPoint = toPrimitive( targetPts.get( i ) );
+			lastPoint = targetPts.get( i );
 	}
 
 	public void resetLastPoint()
@@ -898,20 +941,111 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	/**
 	 * Looks through the table for points where there is a point in moving space but not fixed space.
 	 * For any such landmarks that are found, compute the inverse transform and add the result to the fixed points line.
+	 * <p>
+	 * The inverses are estimated in parallel, starting from the previous warped positions,
+	 * without holding the lock on this model. Results are published together at the end,
+	 * skipping any row whose moving point changed in the meantime.
 	 *
 	 *  @param xfm the new transformation
 	 */
 	public void updateAllWarpedPoints( final InvertibleRealTransform xfm )
 	{
+		if ( xfm == null )
+			return;
+
 		final InvertibleRealTransform xfmToUse;
 		if (xfm instanceof InvertibleWrapped2DTransformAs3D && ndims == 2)
 			xfmToUse = ((InvertibleWrapped2DTransformAs3D) xfm).transform;
 		else
 			xfmToUse = xfm;
 
-		for ( int i = 0; i < numRows; i++ )
-			if ( !isFixedPoint( i ) && isMovingPoint( i ) )
-				computeWarpedPoint( i, xfmToUse );
+		// snapshot the rows that need a warped point
+		final int[] rows;
+		final double[][] mvgPts;
+		final double[][] warped;
+		synchronized( this ) {
+			int n = 0;
+			final int[] candidates = new int[ numRows ];
+			for ( int i = 0; i < numRows; i++ )
+				if ( !isFixedPoint( i ) && isMovingPoint( i ) )
+					candidates[ n++ ] = i;
+
+			rows = Arrays.copyOf( candidates, n );
+			mvgPts = new double[ n ][];
+			warped = new double[ n ][];
+			for ( int k = 0; k < n; k++ )
+			{
+				mvgPts[ k ] = movingPts.get( rows[ k ] );
+				warped[ k ] = initialWarpedGuess( rows[ k ] );
+			}
+		}
+
+		final int n = rows.length;
+		if ( n == 0 )
+			return;
+
+		final boolean[] unreliable = new boolean[ n ];
+		final int nThreads = Math.max( 1, Math.min(
+				Runtime.getRuntime().availableProcessors(),
+				n / MIN_WARPED_POINTS_PER_THREAD ) );
+
+		if ( nThreads == 1 )
+			estimateWarpedPoints( copyForInverse( xfmToUse ), mvgPts, warped, unreliable, 0, n );
+		else
+		{
+			final ArrayList< Callable< Void > > jobs = new ArrayList<>();
+			for ( int t = 0; t < nThreads; t++ )
+			{
+				final int start = (int)( (long)n * t / nThreads );
+				final int end = (int)( (long)n * ( t + 1 ) / nThreads );
+				final InvertibleRealTransform xfmCopy = copyForInverse( xfmToUse );
+				jobs.add( () -> {
+					estimateWarpedPoints( xfmCopy, mvgPts, warped, unreliable, start, end );
+					return null;
+				});
+			}
+
+			try
+			{
+				for ( final Future< Void > f : warpedPointWorkers().invokeAll( jobs ) )
+					f.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch ( final ExecutionException e )
+			{
+				logger.error( "failed to update warped points", e );
+				return;
+			}
+		}
+
+		// publish
+		int numUnreliable = 0;
+		int firstUnreliable = -1;
+		synchronized( this ) {
+			for ( int k = 0; k < n; k++ )
+			{
+				final int i = rows[ k ];
+				if ( i >= numRows || isFixedPoint( i ) || movingPts.squaredDistance( i, mvgPts[ k ] ) != 0 )
+					continue;
+
+				movingDisplayPointUnreliable.set( i, unreliable[ k ] );
+				if ( unreliable[ k ] && numUnreliable++ == 0 )
+					firstUnreliable = i;
+
+				updateWarpedPoint( i, warped[ k ] );
+			}
+
+			if ( message != null && numUnreliable == 1 )
+				message.showMessage( String.format(
+					"Warning: location of moving point %s in warped space is innacurate", names.get( firstUnreliable )));
+			else if ( message != null && numUnreliable > 1 )
+				message.showMessage( String.format(
+					"Warning: locations of %d moving points in warped space are innacurate", numUnreliable ));
+		}
 	}
 
 	/**
@@ -939,24 +1073,15 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			// TODO Perhaps move this into its own thread. and expose the parameters for solving the inverse.
 			if ( !isFixedPoint( i ) && isMovingPoint( i ) && xfm != null )
 			{
-				final double[] tgt = toPrimitive( movingPts.get( i ) );
-
-				final double[] warpedPt = new double[ ndims ];
-				xfm.applyInverse( warpedPt, tgt );
-
-				if( xfm instanceof WrappedIterativeInvertibleRealTransform )
+				final double[] warpedPt = initialWarpedGuess( i );
+				if ( estimateWarpedPoint( xfm, movingPts.get( i ), warpedPt ) )
+					movingDisplayPointUnreliable.set( i, false );
+				else
 				{
-					final WrappedIterativeInvertibleRealTransform<?> inv = (WrappedIterativeInvertibleRealTransform<?>)xfm;
-					final double error = inv.getOptimzer().getError();
-
-					if( error > inverseThreshold )
-					{
-						movingDisplayPointUnreliable.set( i, true );
+					movingDisplayPointUnreliable.set( i, true );
+					if( message != null )
 						message.showMessage( String.format(
 							"Warning: location of moving point %s in warped space is innacurate", names.get( i )));
-					}
-					else
-						movingDisplayPointUnreliable.set( i, false );
 				}
 
 				// TODO should check for failure or non-convergence here
@@ -967,6 +1092,70 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		}
 	}
 
+	/*
+	 * The previous warped position if there is one, otherwise the moving point.
+	 */
+	private double[] initialWarpedGuess( final int i )
+	{
+		if ( doesPointHaveAndNeedWarp.get( i ) && !warpedPoints.isInfinite( i ) )
+			return warpedPoints.get( i );
+		else
+			return movingPts.get( i );
+	}
+
+	private void estimateWarpedPoints( final InvertibleRealTransform xfm, final double[][] mvgPts, final double[][] warped,
+			final boolean[] unreliable, final int start, final int end )
+	{
+		for ( int k = start; k < end; k++ )
+			unreliable[ k ] = !estimateWarpedPoint( xfm, mvgPts[ k ], warped[ k ] );
+	}
+
+	/**
+	 * Estimates the inverse of xfm at movingPt, starting from (and writing to) warpedPt.
+	 *
+	 * @return false if the inverse was estimated iteratively and did not reach the inverse threshold
+	 */
+	private boolean estimateWarpedPoint( final InvertibleRealTransform xfm, final double[] movingPt, final double[] warpedPt )
+	{
+		// rows are not spatially coherent, so start from the given guess
+		if( xfm instanceof WarmStartIterativeInvertibleRealTransform )
+			((WarmStartIterativeInvertibleRealTransform<?>)xfm).reset();
+
+		xfm.applyInverse( warpedPt, movingPt );
+		if( xfm instanceof WrappedIterativeInvertibleRealTransform )
+		{
+			final WrappedIterativeInvertibleRealTransform<?> inv = (WrappedIterativeInvertibleRealTransform<?>)xfm;
+			return inv.getOptimzer().getError() <= inverseThreshold;
+		}
+		return true;
+	}
+
+	/*
+	 * Copies of a WrappedIterativeInvertibleRealTransform do not keep their optimizer
+	 * settings, so set them as BigWarpTransform does, with this model's parameters.
+	 */
+	private InvertibleRealTransform copyForInverse( final InvertibleRealTransform xfm )
+	{
+		final InvertibleRealTransform copy = xfm.copy();
+		if( copy instanceof WrappedIterativeInvertibleRealTransform )
+		{
+			final WrappedIterativeInvertibleRealTransform<?> inv = (WrappedIterativeInvertibleRealTransform<?>)copy;
+			inv.getOptimzer().setMaxIters( maxInverseIterations );
+			inv.getOptimzer().setTolerance( inverseThreshold );
+			inv.getOptimzer().setBeta( 0.5 );
+			inv.getOptimzer().setMaxStep( 1000 );
+		}
+		return copy;
+	}
+
+	private static synchronized ExecutorService warpedPointWorkers()
+	{
+		if ( warpedPointWorkers == null )
+			warpedPointWorkers = ExportScheduler.getInstance().newBackgroundJob(
+					"warped points", Runtime.getRuntime().availableProcessors(), Priority.HIGH );
+		return warpedPointWorkers;
+	}
+
 	public void setMaxInverseIterations( final int maxIters )
 	{
 		maxInverseIterations = maxIters;
@@ -976,22 +1165,33 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	{
 		this.inverseThreshold = inverseThreshold;
 	}
+	/**
+	 * Returns the row whose moving or target point is nearest to the given point.
+	 *
+	 * @param pt the query point
+	 * @param isMoving query moving points if true, target points otherwise
+	 * @return the row index, or -1 if no row has a point
+	 */
 	public int getIndexNearestTo( double[] pt, boolean isMoving )
 	{
-		Double[] p;
-		double minDist = Double.MAX_VALUE;
-		int minIndex = -1;
-		for( int i = 0; i < numRows; i++ )
-		{
-			p = getPoint( isMoving, i );
-			final double thisdist = squaredDistance( p, pt );
-			if( thisdist < minDist )
-			{
-				minDist = thisdist;
-				minIndex = i;
-			}
+		synchronized( this ) {
+			return getPointStore( isMoving ).nearest( pt );
+		}
+	}
+
+	/**
+	 * Returns the rows whose moving or target points are within the given distance of a point.
+	 *
+	 * @param pt the query point
+	 * @param radius the distance
+	 * @param isMoving query moving points if true, target points otherwise
+	 * @return the row indexes in increasing order
+	 */
+	public int[] getIndicesWithin( double[] pt, double radius, boolean isMoving )
+	{
+		synchronized( this ) {
+			return getPointStore( isMoving ).withinRadius( pt, radius );
 		}
-		return minIndex;
 	}
 
 	public double squaredDistance( Double[] p, double[] q )
@@ -1006,20 +1206,9 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 
 	public int getIndexNearestTo( RealLocalizable pt, boolean isMoving )
 	{
-		Double[] p;
-		double minDist = Double.MAX_VALUE;
-		int minIndex = -1;
-		for( int i = 0; i < numRows; i++ )
-		{
-			p = getPoint( isMoving, i );
-			final double thisdist = squaredDistance( p, pt );
-			if( thisdist < minDist )
-			{
-				minDist = thisdist;
-				minIndex = i;
-			}
+		synchronized( this ) {
+			return getPointStore( isMoving ).nearest( pt );
 		}
-		return minIndex;
 	}
 
 	public double squaredDistance( Double[] p, RealLocalizable q )
@@ -1032,70 +1221,135 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		return dist;
 	}
 
+	/**
+	 * @param isMoving the moving point if true, the target point otherwise
+	 * @param index the row
+	 * @return a copy of the point
+	 * @deprecated changes to the returned array are not written to the table,
+	 *             use {@link #getPointCopy(boolean, int)} to read and {@link #setPoint} to write
+	 */
+	@Deprecated
 	public Double[] getPoint( boolean isMoving, int index )
 	{
 		if ( isMoving )
-			return movingPts.get( index );
+			return movingPts.getBoxed( index );
 		else
-			return targetPts.get( index );
+			return targetPts.getBoxed( index );
 	}
 
+	/**
+	 * @deprecated see {@link #getPoint(boolean, int)}
+	 */
+	@Deprecated
 	public Double[] getMovingPoint( int index )
 	{
-		return movingPts.get( index );
+		return movingPts.getBoxed( index );
 	}
 
+	/**
+	 * @deprecated see {@link #getPoint(boolean, int)}
+	 */
+	@Deprecated
 	public Double[] getFixedPoint( int index )
 	{
-		return targetPts.get( index );
+		return targetPts.getBoxed( index );
 	}
 
-	public ArrayList< Double[] > getMovingPoints()
+	/**
+	 * @deprecated see {@link #getPoints(boolean)}
+	 */
+	@Deprecated
+	public List< Double[] > getMovingPoints()
 	{
-		return movingPts;
+		return movingPts.asBoxedList();
 	}
 
-	public ArrayList< Double[] > getFixedPoints()
+	/**
+	 * @deprecated see {@link #getPoints(boolean)}
+	 */
+	@Deprecated
+	public List< Double[] > getFixedPoints()
 	{
-		return targetPts;
+		return targetPts.asBoxedList();
 	}
 
-	public ArrayList<double[]> getMovingPointsCopy()
+	/**
+	 * Returns a copy of a point, taken while holding the table lock.
+	 *
+	 * @param isMoving the moving point if true, the target point otherwise
+	 * @param index the row
+	 * @return the copy
+	 */
+	public double[] getPointCopy( boolean isMoving, int index )
 	{
-		final ArrayList< double[] > out = new ArrayList<double[]>();
-		for( final Double[] p : movingPts )
-		{
-			final double[] q = new double[ ndims ];
-			for( int d = 0; d < ndims; d++ )
-				q[d] = p[d];
+		synchronized( this ) {
+			return isMoving ? movingPts.get( index ) : targetPts.get( index );
+		}
+	}
 
-			out.add( q );
+	/**
+	 * Returns a copy of a warped point, taken while holding the table lock.
+	 *
+	 * @param index the row
+	 * @return the copy
+	 */
+	public double[] getWarpedPointCopy( int index )
+	{
+		synchronized( this ) {
+			return warpedPoints.get( index );
 		}
-		return out;
+	}
+
+	/**
+	 * Returns copies of the moving or target points, taken while holding the table lock.
+	 *
+	 * @param moving moving points if true, target points otherwise
+	 * @return the copies
+	 */
+	public ArrayList<double[]> getPointsCopy( boolean moving )
+	{
+		return copyPoints( moving ? movingPts : targetPts );
+	}
+
+	/**
+	 * Returns copies of the warped points, taken while holding the table lock.
+	 *
+	 * @return the copies
+	 */
+	public ArrayList<double[]> getWarpedPointsCopy()
+	{
+		return copyPoints( warpedPoints );
+	}
+
+	public ArrayList<double[]> getMovingPointsCopy()
+	{
+		return copyPoints( movingPts );
 	}
 
 	public ArrayList<double[]> getFixedPointsCopy()
 	{
-		final ArrayList< double[] > out = new ArrayList<double[]>();
-		for( final Double[] p : targetPts )
-		{
-			final double[] q = new double[ ndims ];
-			for( int d = 0; d < ndims; d++ )
-				q[d] = p[d];
+		return copyPoints( targetPts );
+	}
+
+	private ArrayList<double[]> copyPoints( final LandmarkPoints pts )
+	{
+		synchronized( this ) {
+			final ArrayList< double[] > out = new ArrayList<double[]>( pts.size() );
+			for( int i = 0; i < pts.size(); i++ )
+				out.add( pts.get( i ) );
 
-			out.add( q );
+			return out;
 		}
-		return out;
 	}
 
 	public boolean isMovingPoint( int index )
 	{
-		return !Double.isInfinite( movingPts.get( index )[ 0 ] );
+		return !movingPts.isInfinite( index );
 	}
 
 	public boolean isFixedPoint( int index )
 	{
-		return !Double.isInfinite( targetPts.get( index )[ 0 ] );
+		return !targetPts.isInfinite( index );
 	}
 
 	public boolean isFixedPoint( int index, boolean isMoving )
@@ -1284,29 +1538,24 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 				return;
 			}
 
-			int ndims = 3;
-			int expectedRowLength = 8;
+			// detect a file with 2d landmarks
+			// only check for the first row
+			final int ndims = rows.get( 0 ).length == 6 ? 2 : 3;
+			final int expectedRowLength = 2 * ndims + 2;
+			resetPointStores( ndims, rows.size() );
+
+			final double[] movingPt = new double[ ndims ];
+			final double[] targetPt = new double[ ndims ];
 
 			int i = 0;
 			for( final String[] row : rows )
 			{
-				// detect a file with 2d landmarks
-				if( i == 0 && // only check for the first row
-						row.length == 6 )
-				{
-					ndims = 2;
-					expectedRowLength = 6;
-				}
-
 				if( row.length != expectedRowLength  )
 					throw new IOException( "Invalid file - not enough columns" );
 
 				names.add( row[ 0 ] );
 				activeList.add( Boolean.parseBoolean( row[ 1 ]) );
 
-				final Double[] movingPt = new Double[ ndims ];
-				final Double[] targetPt = new Double[ ndims ];
-
 				int k = 2;
 				for( int d = 0; d < ndims; d++ )
 					movingPt[ d ] = Double.parseDouble( row[ k++ ]);
@@ -1325,7 +1574,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 					targetPts.add( targetPt );
 				}
 
-				warpedPoints.add( new Double[ ndims ] );
+				warpedPoints.add( i, Double.NaN );
 				doesPointHaveAndNeedWarp.add( false );
 				movingDisplayPointUnreliable.add( false );
 				i++;
@@ -1338,8 +1587,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	//		initTransformation();
 		}
 
-		for( int i = 0; i < numRows; i++ )
-			fireTableRowsInserted( i, i );
+		if( numRows > 0 )
+			fireTableRowsInserted( 0, numRows - 1 );
 
 	}
 
@@ -1348,6 +1597,17 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		return numActive;
 	}
 
+	/**
+	 * Replaces the point stores with empty stores of the given dimensionality,
+	 * sized for the expected number of rows. Must be called with an empty table.
+	 */
+	private void resetPointStores( final int ndims, final int capacity )
+	{
+		movingPts = new LandmarkPoints( ndims, capacity );
+		targetPts = new LandmarkPoints( ndims, capacity );
+		warpedPoints = new LandmarkPoints( ndims, capacity );
+	}
+
 	/**
 	 * Copies point values from this table into a destination array.
 	 * Checks whether the provided index exists, returns false if no
@@ -1363,11 +1623,10 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			if (index >= getRowCount())
 				return false;
 
-			for (int d = 0; (d < point.length) && d < ndims; d++)
-				if (moving)
-					point[d] = movingPts.get(index)[d];
-				else
-					point[d] = targetPts.get(index)[d];
+			if (moving)
+				movingPts.localize(index, point);
+			else
+				targetPts.localize(index, point);
 
 			return true;
 		}
@@ -1387,8 +1646,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			if (index >= movingPts.size())
 				return false;
 
-			for (int d = 0; (d < point.length) && d < ndims; d++)
-					point[d] = movingPts.get(index)[d];
+			movingPts.localize(index, point);
 
 			return true;
 		}
@@ -1408,8 +1666,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			if (index >= warpedPoints.size())
 				return false;
 
-			for (int d = 0; (d < point.length) && d < ndims; d++)
-					point[d] = warpedPoints.get(index)[d];
+			warpedPoints.localize(index, point);
 
 			return true;
 		}
@@ -1429,8 +1686,7 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			if (index >= targetPts.size())
 				return false;
 
-			for (int d = 0; (d < point.length) && d < ndims; d++)
-					point[d] = targetPts.get(index)[d];
+			targetPts.localize(index, point);
 
 			return true;
 		}
@@ -1439,24 +1695,21 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	public void copyMovingLandmarks(int tableIndex, double[][] destination) {
 		synchronized (this) {
 			for (int i = 0; i < this.numRows && i < destination.length; i++)
-				for (int d = 0; d < ndims && d < destination[i].length; d++)
-					destination[i][d] = movingPts.get(i)[d];
+				movingPts.localize(i, destination[i]);
 		}
 	}
 
 	public void copyWarpedMovingLandmarks(int tableIndex, double[][] destination) {
 		synchronized (this) {
 			for (int i = 0; i < this.numRows && i < destination.length; i++)
-				for (int d = 0; d < ndims && d < destination[i].length; d++)
-					destination[i][d] = warpedPoints.get(i)[d];
+				warpedPoints.localize(i, destination[i]);
 		}
 	}
 
 	public void copyTargetLandmarks(double[][] destination) {
 		synchronized (this) {
 			for (int i = 0; i < this.numRows && i < destination.length; i++)
-				for (int d = 0; d < ndims && d < destination[i].length; d++)
-					destination[i][d] = targetPts.get(i)[d];
+				targetPts.localize(i, destination[i]);
 		}
 	}
 
@@ -1473,8 +1726,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 				final int activeIndex = getActiveIndex( tableIndex );
 				for ( int d = 0; d < ndims; d++ )
 				{
-					movingLandmarks[ d ][ activeIndex ] = movingPts.get( tableIndex )[ d ];
-					targetLandmarks[ d ][ activeIndex ] = targetPts.get( tableIndex )[ d ];
+					movingLandmarks[ d ][ activeIndex ] = movingPts.get( tableIndex, d );
+					targetLandmarks[ d ][ activeIndex ] = targetPts.get( tableIndex, d );
 				}
 			}
 		}
@@ -1488,17 +1741,32 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 						targetLandmarks.length, targetLandmarks[0].length));
 
 		synchronized(this) {
-			int k = 0;
-			for ( int i = 0; i < this.numRows; i++ )
+			// copy whole columns if every row is active
+			if ( numActive == numRows )
+			{
+				for ( int d = 0; d < ndims; d++ )
+				{
+					System.arraycopy( movingPts.column( d ), 0, movingLandmarks[ d ], 0, numRows );
+					System.arraycopy( targetPts.column( d ), 0, targetLandmarks[ d ], 0, numRows );
+				}
+				return;
+			}
+
+			for ( int d = 0; d < ndims; d++ )
 			{
-				if ( activeList.get( i ) )
+				final double[] mvg = movingPts.column( d );
+				final double[] tgt = targetPts.column( d );
+				final double[] mvgDest = movingLandmarks[ d ];
+				final double[] tgtDest = targetLandmarks[ d ];
+				int k = 0;
+				for ( int i = 0; i < this.numRows; i++ )
 				{
-					for ( int d = 0; d < ndims; d++ )
+					if ( activeList.get( i ) )
 					{
-						movingLandmarks[ d ][ k ] = movingPts.get( i )[ d ];
-						targetLandmarks[ d ][ k ] = targetPts.get( i )[ d ];
+						mvgDest[ k ] = mvg[ i ];
+						tgtDest[ k ] = tgt[ i ];
+						k++;
 					}
-					k++;
 				}
 			}
 		}
@@ -1542,11 +1810,11 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 				int k = 2;
 				int j = 0;
 				while( j < ndims )
-					row[ k++ ] = movingPts.get( i )[ j++ ].toString();
+					row[ k++ ] = Double.toString( movingPts.get( i, j++ ) );
 
 				j = 0;
 				while( j < ndims )
-					row[ k++ ] = targetPts.get( i )[ j++ ].toString();
+					row[ k++ ] = Double.toString( targetPts.get( i, j++ ) );
 
 				rows.add( row );
 			}
@@ -1560,8 +1828,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 	{
 		final Gson gson = new GsonBuilder().serializeSpecialFloatingPointValues().create();
 		final JsonObject out = new JsonObject();
-		final JsonElement mvgPtsObj = gson.toJsonTree(getMovingPoints(), new TypeToken<List<Double[]> >() {}.getType());
-		final JsonElement fixedPtsObj = gson.toJsonTree(getFixedPoints(), new TypeToken<List<Double[]> >() {}.getType());
+		final JsonElement mvgPtsObj = gson.toJsonTree(getPointsCopy(true), new TypeToken<List<double[]> >() {}.getType());
+		final JsonElement fixedPtsObj = gson.toJsonTree(getPointsCopy(false), new TypeToken<List<double[]> >() {}.getType());
 		final JsonElement activeObj = gson.toJsonTree( activeList );
 		final JsonElement namesObj = gson.toJsonTree( names );
 
@@ -1605,28 +1873,28 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 
 			numRows = namesArr.size();
 			final int ndims = landmarks.get("numDimensions").getAsInt();
+			resetPointStores( ndims, numRows );
 
+			final double[] movingPt = new double[ ndims ];
+			final double[] targetPt = new double[ ndims ];
 			for( int i = 0; i < numRows; i++ )
 			{
 
 				names.add( namesArr.get(i).getAsString() );
 				activeList.add( activeArr.get(i).getAsBoolean() );
 
-				final JsonElement mvg = mvgArr.get( i );
-				final JsonElement fixed = fixedArr.get( i );
-				final Double[] movingPt = new Double[ ndims ];
-				final Double[] targetPt = new Double[ ndims ];
-
+				final JsonArray mvg = mvgArr.get( i ).getAsJsonArray();
+				final JsonArray fixed = fixedArr.get( i ).getAsJsonArray();
 				for( int d = 0; d < ndims; d++ )
 				{
-					movingPt[ d ] = mvg.getAsJsonArray().get(d).getAsDouble();
-					targetPt[ d ] = fixed.getAsJsonArray().get(d).getAsDouble();
+					movingPt[ d ] = mvg.get(d).getAsDouble();
+					targetPt[ d ] = fixed.get(d).getAsDouble();
 				}
 
 				movingPts.add( movingPt );
 				targetPts.add( targetPt );
 
-				warpedPoints.add( new Double[ ndims ] );
+				warpedPoints.add( i, Double.NaN );
 				doesPointHaveAndNeedWarp.add( false );
 				movingDisplayPointUnreliable.add( false );
 			}
@@ -1636,8 +1904,8 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			buildTableToActiveIndex();
 		}
 
-		for( int i = 0; i < numRows; i++ )
-			fireTableRowsInserted( i, i );
+		if( numRows > 0 )
+			fireTableRowsInserted( 0, numRows - 1 );
 	}
 
 	public static String print( Double[] d )
@@ -1671,13 +1939,11 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 			}
 			else if( col < 2 + ndims )
 			{
-				final Double[] thesePts = movingPts.get(row);
-				thesePts[ col - 2 ] = ((Double)value).doubleValue();
+				movingPts.set( row, col - 2, ((Double)value).doubleValue() );
 			}
 			else
 			{
-				final Double[] thesePts = targetPts.get(row);
-				thesePts[ col - ndims - 2 ] = ((Double)value).doubleValue();
+				targetPts.set( row, col - ndims - 2, ((Double)value).doubleValue() );
 			}
 
 		}
@@ -1695,9 +1961,9 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		else if ( columnIndex == ACTIVECOLUMN )
 			return activeList.get( rowIndex );
 		else if( columnIndex < 2 + ndims )
-			return movingPts.get( rowIndex )[ columnIndex - 2 ];
+			return movingPts.get( rowIndex, columnIndex - 2 );
 		else
-			return targetPts.get( rowIndex )[ columnIndex - ndims - 2 ];
+			return targetPts.get( rowIndex, columnIndex - ndims - 2 );
 	}
 
 	/**
@@ -1724,17 +1990,10 @@ public class LandmarkTableModel extends AbstractTableModel implements TransformL
 		final double[] tmp = new double[ ndims ];
 		for ( int i = 0; i < N; i++ )
 		{
-			final Double[] thisMoving = movingPts.get( i );
-			final Double[] thisTarget = targetPts.get( i );
-
-			for ( int d = 0; d < ndims; d++ )
-				tmp[ d ] = thisMoving[ d ];
-
+			movingPts.localize( i, tmp );
 			inv.add( tmp, false, null );
 
-			for ( int d = 0; d < ndims; d++ )
-				tmp[ d ] = thisTarget[ d ];
-
+			targetPts.localize( i, tmp );
 			inv.setPoint( i, true, tmp, null );
 		}
 
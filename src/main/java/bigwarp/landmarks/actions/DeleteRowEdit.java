@@ -36,8 +36,8 @@ public class DeleteRowEdit extends AbstractPointEdit
 		super( ltm );
 		this.index = index;
 		
-		movingPt = LandmarkTableModel.toPrimitive( ltm.getPoints( true ).get( index ) );
-		targetPt = LandmarkTableModel.toPrimitive( ltm.getPoints( false ).get( index ) );
+		movingPt = ltm.getPointStore( true ).get( index );
+		targetPt = ltm.getPointStore( false ).get( index );
 	}
 
 	@Override
@@ -0,0 +1,446 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.loader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import bdv.AbstractViewerSetupImgLoader;
+import bdv.ViewerImgLoader;
+import bdv.ViewerSetupImgLoader;
+import bdv.cache.CacheControl;
+import bdv.cache.SharedQueue;
+import bdv.util.MipmapTransforms;
+import bdv.util.volatiles.VolatileTypeMatcher;
+import bdv.util.volatiles.VolatileViews;
+import mpicbg.spim.data.generic.sequence.ImgLoaderHint;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions.CacheType;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.converter.Converters;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * A {@link ViewerImgLoader} that adds downsampled mipmap levels to a loader
+ * with a single resolution level, as {@link ImagePlusLoader} creates.
+ * <p>
+ * Levels are computed lazily by averaging blocks of the next finer level,
+ * and kept in cell caches of bounded size.
+ */
+public class DownsampledImgLoader implements ViewerImgLoader
+{
+	/**
+	 * Levels are added until no dimension is larger than this.
+	 */
+	public static final int MIN_LEVEL_SIZE = 256;
+
+	public static final int MAX_NUM_LEVELS = 8;
+
+	private static final int CELL_SIZE = 64;
+
+	/**
+	 * The number of cells that the cache of every level holds.
+	 */
+	private static final int MAX_CACHED_CELLS = 1024;
+
+	private final ViewerImgLoader imgLoader;
+
+	private final long[] dimensions;
+
+	private final double[][] resolutions;
+
+	private final SharedQueue queue;
+
+	private final HashMap< Integer, ViewerSetupImgLoader< ?, ? > > setupImgLoaders = new HashMap<>();
+
+	/**
+	 * @param imgLoader the loader of the full resolution images
+	 * @param dimensions the dimensions of the full resolution images
+	 * @param resolutions the downsampling factors of every level, see {@link #proposeResolutions}
+	 * @param queue the queue that loads the volatile levels
+	 */
+	public DownsampledImgLoader( final ViewerImgLoader imgLoader, final long[] dimensions, final double[][] resolutions,
+			final SharedQueue queue )
+	{
+		this.imgLoader = imgLoader;
+		this.dimensions = dimensions;
+		this.resolutions = resolutions;
+		this.queue = queue;
+	}
+
+	/**
+	 * Proposes the downsampling factors of a pyramid for an image. Every level
+	 * halves the dimensions whose voxel size is less than twice the smallest,
+	 * so anisotropic images become more isotropic first.
+	 *
+	 * @param dimensions the image dimensions
+	 * @param voxelSize the voxel size
+	 * @return the downsampling factors per level, starting with the full resolution
+	 */
+	public static double[][] proposeResolutions( final long[] dimensions, final double[] voxelSize )
+	{
+		final int nd = dimensions.length;
+		final long[] size = dimensions.clone();
+		final double[] factors = new double[ nd ];
+		Arrays.fill( factors, 1 );
+
+		final List< double[] > resolutions = new ArrayList<>();
+		resolutions.add( factors.clone() );
+		while ( resolutions.size() < MAX_NUM_LEVELS && Arrays.stream( size ).max().getAsLong() > MIN_LEVEL_SIZE )
+		{
+			double minVoxelSize = Double.MAX_VALUE;
+			for ( int d = 0; d < nd; d++ )
+				if ( size[ d ] > 1 )
+					minVoxelSize = Math.min( minVoxelSize, voxelSize[ d ] * factors[ d ] );
+
+			for ( int d = 0; d < nd; d++ )
+			{
+				if ( size[ d ] > 1 && voxelSize[ d ] * factors[ d ] < 2 * minVoxelSize )
+				{
+					factors[ d ] *= 2;
+					size[ d ] = ( size[ d ] + 1 ) / 2;
+				}
+			}
+			resolutions.add( factors.clone() );
+		}
+		return resolutions.toArray( new double[ 0 ][] );
+	}
+
+	@Override
+	public synchronized ViewerSetupImgLoader< ?, ? > getSetupImgLoader( final int setupId )
+	{
+		return setupImgLoaders.computeIfAbsent( setupId, id -> {
+			final ViewerSetupImgLoader< ?, ? > loader = imgLoader.getSetupImgLoader( id );
+			if ( !( loader.getImageType() instanceof NativeType ) )
+				return loader;
+
+			return createSetupImgLoader( loader );
+		} );
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private ViewerSetupImgLoader< ?, ? > createSetupImgLoader( final ViewerSetupImgLoader< ?, ? > loader )
+	{
+		return new DownsampledSetupImgLoader( loader );
+	}
+
+	@Override
+	public CacheControl getCacheControl()
+	{
+		return imgLoader.getCacheControl();
+	}
+
+	/**
+	 * Averages blocks of a source image into a target image.
+	 *
+	 * @param <T> the type
+	 * @param source the source image, with min at the origin
+	 * @param target the target image
+	 * @param factors the block size per dimension
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < T extends Type< T > > void downsample( final RandomAccessibleInterval< T > source,
+			final RandomAccessibleInterval< T > target, final int[] factors )
+	{
+		final T type = source.getType();
+		if ( type instanceof RealType )
+			downsample( source, target, factors, new RealAverage() );
+		else if ( type instanceof ARGBType )
+			downsample( source, target, factors, ( Average ) new ARGBAverage() );
+		else
+			downsample( source, target, factors, new FirstValue<>() );
+	}
+
+	private static < T extends Type< T > > void downsample( final RandomAccessibleInterval< T > source,
+			final RandomAccessibleInterval< T > target, final int[] factors, final Average< T > average )
+	{
+		final int nd = target.numDimensions();
+		final long[] pos = new long[ nd ];
+		final long[] blockMin = new long[ nd ];
+		final long[] blockMax = new long[ nd ];
+		final long[] blockPos = new long[ nd ];
+		final RandomAccess< T > ra = source.randomAccess();
+		final Cursor< T > c = Views.flatIterable( target ).localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.localize( pos );
+			for ( int d = 0; d < nd; d++ )
+			{
+				blockMin[ d ] = pos[ d ] * factors[ d ];
+				blockMax[ d ] = Math.min( blockMin[ d ] + factors[ d ] - 1, source.max( d ) );
+			}
+
+			average.reset();
+			System.arraycopy( blockMin, 0, blockPos, 0, nd );
+			while ( true )
+			{
+				ra.setPosition( blockPos );
+				average.add( ra.get() );
+
+				int d = 0;
+				for ( ; d < nd; d++ )
+				{
+					if ( blockPos[ d ] < blockMax[ d ] )
+					{
+						blockPos[ d ]++;
+						break;
+					}
+					blockPos[ d ] = blockMin[ d ];
+				}
+				if ( d == nd )
+					break;
+			}
+			average.get( c.get() );
+		}
+	}
+
+	private interface Average< T >
+	{
+		void reset();
+
+		void add( T value );
+
+		void get( T target );
+	}
+
+	private static class RealAverage< T extends RealType< T > > implements Average< T >
+	{
+		private double sum;
+
+		private int n;
+
+		@Override
+		public void reset()
+		{
+			sum = 0;
+			n = 0;
+		}
+
+		@Override
+		public void add( final T value )
+		{
+			sum += value.getRealDouble();
+			n++;
+		}
+
+		@Override
+		public void get( final T target )
+		{
+			target.setReal( sum / n );
+		}
+	}
+
+	private static class ARGBAverage implements Average< ARGBType >
+	{
+		private final long[] sums = new long[ 4 ];
+
+		private int n;
+
+		@Override
+		public void reset()
+		{
+			Arrays.fill( sums, 0 );
+			n = 0;
+		}
+
+		@Override
+		public void add( final ARGBType value )
+		{
+			final int argb = value.get();
+			sums[ 0 ] += ARGBType.alpha( argb );
+			sums[ 1 ] += ARGBType.red( argb );
+			sums[ 2 ] += ARGBType.green( argb );
+			sums[ 3 ] += ARGBType.blue( argb );
+			n++;
+		}
+
+		@Override
+		public void get( final ARGBType target )
+		{
+			target.set( ARGBType.rgba(
+					( int ) Math.round( ( double ) sums[ 1 ] / n ),
+					( int ) Math.round( ( double ) sums[ 2 ] / n ),
+					( int ) Math.round( ( double ) sums[ 3 ] / n ),
+					( int ) Math.round( ( double ) sums[ 0 ] / n ) ) );
+		}
+	}
+
+	private static class FirstValue< T extends Type< T > > implements Average< T >
+	{
+		private T first;
+
+		@Override
+		public void reset()
+		{
+			first = null;
+		}
+
+		@Override
+		public void add( final T value )
+		{
+			if ( first == null )
+				first = value.copy();
+		}
+
+		@Override
+		public void get( final T target )
+		{
+			target.set( first );
+		}
+	}
+
+	private class DownsampledSetupImgLoader< T extends NativeType< T >, V extends Volatile< T > & NativeType< V > >
+			extends AbstractViewerSetupImgLoader< T, V >
+	{
+		private final ViewerSetupImgLoader< T, ? > loader;
+
+		private final boolean sameVolatileType;
+
+		private final AffineTransform3D[] mipmapTransforms;
+
+		// images per timepoint and level
+		private final HashMap< Long, RandomAccessibleInterval< T > > images = new HashMap<>();
+
+		private final HashMap< Long, RandomAccessibleInterval< V > > volatileImages = new HashMap<>();
+
+		@SuppressWarnings( "unchecked" )
+		public DownsampledSetupImgLoader( final ViewerSetupImgLoader< T, ? > loader )
+		{
+			super( loader.getImageType(), ( V ) VolatileTypeMatcher.getVolatileTypeForType( loader.getImageType() ) );
+			this.loader = loader;
+			sameVolatileType = loader.getVolatileImageType().getClass().equals( volatileType.getClass() );
+
+			mipmapTransforms = new AffineTransform3D[ resolutions.length ];
+			for ( int level = 0; level < resolutions.length; level++ )
+				mipmapTransforms[ level ] = MipmapTransforms.getMipmapTransformDefault( resolutions[ level ] );
+		}
+
+		@Override
+		public synchronized RandomAccessibleInterval< T > getImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		{
+			if ( level == 0 )
+				return loader.getImage( timepointId, 0, hints );
+
+			final long key = key( timepointId, level );
+			RandomAccessibleInterval< T > img = images.get( key );
+			if ( img == null )
+			{
+				img = createLevel( getImage( timepointId, level - 1 ), level );
+				images.put( key, img );
+			}
+			return img;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		@Override
+		public synchronized RandomAccessibleInterval< V > getVolatileImage( final int timepointId, final int level, final ImgLoaderHint... hints )
+		{
+			if ( level == 0 && sameVolatileType )
+				return ( RandomAccessibleInterval< V > ) loader.getVolatileImage( timepointId, 0, hints );
+
+			final long key = key( timepointId, level );
+			RandomAccessibleInterval< V > img = volatileImages.get( key );
+			if ( img == null )
+			{
+				if ( level == 0 )
+				{
+					// the full resolution is in memory, so it is always valid
+					img = Converters.convert2( loader.getImage( timepointId, 0, hints ), ( a, b ) -> {
+						b.get().set( a );
+						b.setValid( true );
+					}, volatileType::createVariable );
+				}
+				else
+				{
+					final int priority = resolutions.length - 1 - level;
+					final CacheHints cacheHints = new CacheHints( LoadingStrategy.BUDGETED, priority, false );
+					img = ( RandomAccessibleInterval< V > ) VolatileViews.wrapAsVolatile(
+							( CachedCellImg< T, ? > ) getImage( timepointId, level ), queue, cacheHints );
+				}
+				volatileImages.put( key, img );
+			}
+			return img;
+		}
+
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		private RandomAccessibleInterval< T > createLevel( final RandomAccessibleInterval< T > finer, final int level )
+		{
+			final int nd = finer.numDimensions();
+			final int[] factors = new int[ nd ];
+			final long[] dims = new long[ nd ];
+			final int[] cellDimensions = new int[ nd ];
+			for ( int d = 0; d < nd; d++ )
+			{
+				factors[ d ] = ( int ) Math.round( resolutions[ level ][ d ] / resolutions[ level - 1 ][ d ] );
+				dims[ d ] = ( long ) Math.ceil( dimensions[ d ] / resolutions[ level ][ d ] );
+				cellDimensions[ d ] = dims[ d ] > 1 ? CELL_SIZE : 1;
+			}
+
+			final ReadOnlyCachedCellImgFactory factory = new ReadOnlyCachedCellImgFactory(
+					new ReadOnlyCachedCellImgOptions()
+							.volatileAccesses( true )
+							.cellDimensions( cellDimensions )
+							.cacheType( CacheType.BOUNDED )
+							.maxCacheSize( MAX_CACHED_CELLS ) );
+
+			return factory.create( dims, type.copy(), cell -> downsample( finer, ( RandomAccessibleInterval ) cell, factors ) );
+		}
+
+		private long key( final int timepointId, final int level )
+		{
+			return ( long ) timepointId * resolutions.length + level;
+		}
+
+		@Override
+		public double[][] getMipmapResolutions()
+		{
+			return resolutions;
+		}
+
+		@Override
+		public AffineTransform3D[] getMipmapTransforms()
+		{
+			return mipmapTransforms;
+		}
+
+		@Override
+		public int numMipmapLevels()
+		{
+			return resolutions.length;
+		}
+	}
+}
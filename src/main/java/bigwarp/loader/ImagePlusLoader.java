@@ -43,6 +43,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 
+import bdv.ViewerImgLoader;
 import bdv.img.imagestack.ImageStackImageLoader;
 import bdv.img.virtualstack.VirtualStackImageLoader;
 import bdv.spimdata.SequenceDescriptionMinimal;
@@ -88,6 +89,8 @@ public class ImagePlusLoader implements Loader {
 
 	private final String[] names;
 
+	private boolean multiscale = true;
+
 	public ImagePlusLoader(final ImagePlus imp) {
 
 		this(new ImagePlus[]{imp});
@@ -148,6 +151,17 @@ public class ImagePlusLoader implements Loader {
 		return isMultiChannel;
 	}
 
+	/**
+	 * Sets whether large images get lazily computed, downsampled mipmap levels.
+	 *
+	 * @param multiscale whether to add mipmap levels
+	 * @see DownsampledImgLoader
+	 */
+	public void setMultiscale(final boolean multiscale) {
+
+		this.multiscale = multiscale;
+	}
+
 	public HashMap<Integer, ColorSettings> getSetupSettings() {
 
 		return settingsMap;
@@ -284,6 +298,15 @@ public class ImagePlusLoader implements Loader {
 		SpimDataMinimal spimData = new SpimDataMinimal(basePath, seq, new ViewRegistrations(registrations));
 		WrapBasicImgLoader.wrapImgLoaderIfNecessary(spimData);
 
+		// zoomed out views and warped sources should not need full resolution voxels
+		if (multiscale && seq.getImgLoader() instanceof ViewerImgLoader) {
+			final long[] dimensions = new long[]{w, h, d};
+			final double[][] resolutions = DownsampledImgLoader.proposeResolutions(dimensions, new double[]{pw, ph, pd});
+			if (resolutions.length > 1)
+				seq.setImgLoader(new DownsampledImgLoader((ViewerImgLoader)seq.getImgLoader(), dimensions, resolutions,
+						BigWarpData.getSharedQueue(setupIdOffset)));
+		}
+
 		return spimData;
 	}
 
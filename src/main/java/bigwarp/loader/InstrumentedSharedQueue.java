@@ -0,0 +1,253 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.loader;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bdv.cache.SharedQueue;
+
+/**
+ * A {@link SharedQueue} that counts the block loads it runs and measures
+ * how long they wait and take.
+ * <p>
+ * Requests for blocks that are in memory never reach the queue, so the
+ * counts cover cache misses only.
+ * <p>
+ * Sources can be given a priority offset with {@link #withPriorityOffset}.
+ * The queue has separate levels for the priorities of the tasks and for the
+ * offsets, so tasks of a source with an offset keep their relative order.
+ */
+public class InstrumentedSharedQueue extends SharedQueue
+{
+	public static final int DEFAULT_NUM_PRIORITIES = 16;
+
+	public static final int DEFAULT_MAX_PRIORITY_OFFSET = 16;
+
+	private final int numFetcherThreads;
+
+	private final int numPriorities;
+
+	private final int maxPriorityOffset;
+
+	// tasks dropped from the prefetch queue are never run, so pending tasks are referenced weakly
+	private final Set< Task > queued = Collections.synchronizedSet( Collections.newSetFromMap( new WeakHashMap<>() ) );
+
+	private final ConcurrentHashMap< Integer, SharedQueue > offsetQueues = new ConcurrentHashMap<>();
+
+	private final AtomicLong inFlight = new AtomicLong();
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	private final AtomicLong fetchNanos = new AtomicLong();
+
+	/**
+	 * @param numFetcherThreads the number of threads that run the queued loads
+	 * @param numPriorities the number of priority levels of tasks
+	 * @param maxPriorityOffset the largest priority offset of a source
+	 */
+	public InstrumentedSharedQueue( final int numFetcherThreads, final int numPriorities, final int maxPriorityOffset )
+	{
+		super( numFetcherThreads, numPriorities + maxPriorityOffset );
+		this.numFetcherThreads = numFetcherThreads;
+		this.numPriorities = numPriorities;
+		this.maxPriorityOffset = maxPriorityOffset;
+	}
+
+	public InstrumentedSharedQueue( final int numFetcherThreads, final int numPriorities )
+	{
+		this( numFetcherThreads, numPriorities, DEFAULT_MAX_PRIORITY_OFFSET );
+	}
+
+	public InstrumentedSharedQueue( final int numFetcherThreads )
+	{
+		this( numFetcherThreads, DEFAULT_NUM_PRIORITIES );
+	}
+
+	@Override
+	public void put( final Callable< ? > element, final int priority, final boolean enqueueToFront )
+	{
+		put( element, priority, 0, enqueueToFront );
+	}
+
+	private void put( final Callable< ? > element, final int priority, final int priorityOffset, final boolean enqueueToFront )
+	{
+		final Task task = new Task( element );
+		queued.add( task );
+		super.put( task, clamp( priority, numPriorities - 1 ) + priorityOffset, enqueueToFront );
+	}
+
+	public int getNumFetcherThreads()
+	{
+		return numFetcherThreads;
+	}
+
+	public int getNumPriorityLevels()
+	{
+		return numPriorities;
+	}
+
+	public int getMaxPriorityOffset()
+	{
+		return maxPriorityOffset;
+	}
+
+	/**
+	 * Returns a queue that puts its tasks into this one, with a priority
+	 * offset. Priority 0 is loaded first, so sources with a larger offset
+	 * are loaded after those with a smaller one. Offsets are limited to
+	 * {@link #getMaxPriorityOffset()}.
+	 *
+	 * @param priorityOffset the offset added to the priority of every task
+	 * @return the queue
+	 */
+	public SharedQueue withPriorityOffset( final int priorityOffset )
+	{
+		final int offset = clamp( priorityOffset, maxPriorityOffset );
+		if ( offset == 0 )
+			return this;
+
+		return offsetQueues.computeIfAbsent( offset, OffsetQueue::new );
+	}
+
+	/**
+	 * @return the current counts and latencies
+	 */
+	public Metrics getMetrics()
+	{
+		final long numCompleted = completed.get();
+		final long numFailed = failed.get();
+		final long numRun = numCompleted + numFailed;
+		return new Metrics( queued.size(), inFlight.get(), numCompleted, numFailed,
+				numRun == 0 ? 0 : waitNanos.get() / 1e6 / numRun,
+				numRun == 0 ? 0 : fetchNanos.get() / 1e6 / numRun );
+	}
+
+	private static int clamp( final int value, final int max )
+	{
+		return Math.max( 0, Math.min( max, value ) );
+	}
+
+	/**
+	 * Forwards its tasks to the enclosing queue with a priority offset.
+	 * It has to be a {@link SharedQueue} to be given to sources, but does
+	 * not run tasks itself, so its fetcher thread is shut down right away.
+	 */
+	private class OffsetQueue extends SharedQueue
+	{
+		private final int priorityOffset;
+
+		public OffsetQueue( final int priorityOffset )
+		{
+			super( 1, 1 );
+			shutdown();
+			this.priorityOffset = priorityOffset;
+		}
+
+		@Override
+		public void put( final Callable< ? > element, final int priority, final boolean enqueueToFront )
+		{
+			InstrumentedSharedQueue.this.put( element, priority, priorityOffset, enqueueToFront );
+		}
+	}
+
+	private class Task implements Callable< Object >
+	{
+		private final Callable< ? > task;
+
+		private final long enqueueTime = System.nanoTime();
+
+		public Task( final Callable< ? > task )
+		{
+			this.task = task;
+		}
+
+		@Override
+		public Object call() throws Exception
+		{
+			final long start = System.nanoTime();
+			queued.remove( this );
+			inFlight.incrementAndGet();
+			waitNanos.addAndGet( start - enqueueTime );
+			boolean success = false;
+			try
+			{
+				final Object result = task.call();
+				success = true;
+				return result;
+			}
+			finally
+			{
+				fetchNanos.addAndGet( System.nanoTime() - start );
+				inFlight.decrementAndGet();
+				if ( success )
+					completed.incrementAndGet();
+				else
+					failed.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * A snapshot of the state of an {@link InstrumentedSharedQueue}.
+	 */
+	public static class Metrics
+	{
+		public final long queued;
+
+		public final long inFlight;
+
+		public final long completed;
+
+		public final long failed;
+
+		public final double meanWaitMillis;
+
+		public final double meanFetchMillis;
+
+		public Metrics( final long queued, final long inFlight, final long completed, final long failed,
+				final double meanWaitMillis, final double meanFetchMillis )
+		{
+			this.queued = queued;
+			this.inFlight = inFlight;
+			this.completed = completed;
+			this.failed = failed;
+			this.meanWaitMillis = meanWaitMillis;
+			this.meanFetchMillis = meanFetchMillis;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "queued: %d, in flight: %d, completed: %d, failed: %d, mean wait: %.1f ms, mean fetch: %.1f ms",
+					queued, inFlight, completed, failed, meanWaitMillis, meanFetchMillis );
+		}
+	}
+}
@@ -23,8 +23,8 @@ package bigwarp.scripts;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 
+import bigwarp.landmarks.LandmarkPoints;
 import bigwarp.landmarks.LandmarkTableModel;
 
 /**
@@ -75,10 +75,14 @@ public class RescaleLandmarks
 
 	public static void scaleLandmarks( LandmarkTableModel ltm, double[] scales, boolean isMoving )
 	{
-		ArrayList< Double[] > pts = ltm.getPoints( isMoving );
-		for( int i = 0; i < ltm.getRowCount(); i++ )
+		synchronized( ltm )
 		{
-			scale( pts.get(i), scales );
+			LandmarkPoints pts = ltm.getPointStore( isMoving );
+			for( int i = 0; i < ltm.getRowCount(); i++ )
+			{
+				for( int d = 0; d < pts.numDimensions(); d++ )
+					pts.set( i, d, pts.get( i, d ) * scales[ d ] );
+			}
 		}
 	}
 	
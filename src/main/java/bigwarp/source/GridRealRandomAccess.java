@@ -31,6 +31,7 @@ import net.imglib2.RealLocalizable;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.LatticeInterpolatedRealTransform;
 import net.imglib2.realtransform.RealTransform;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.RealType;
@@ -53,6 +54,12 @@ public class GridRealRandomAccess< T extends RealType<T>> extends AbstractRealLo
 	private double gridHalfWidth = gridWidth / 2.0;
 	
 	private boolean is2d = false;
+
+	private double latticeSpacing = 0;
+	private int latticeDimensions;
+
+	private final double[] pt;
+	private double[] warpRes;
 	
 	protected GridRealRandomAccess( double[] dimensions )
 	{
@@ -71,6 +78,9 @@ public class GridRealRandomAccess< T extends RealType<T>> extends AbstractRealLo
 		if( warp != null )
 			this.warp = warp.copy();
 
+		pt = new double[ dimensions.length ];
+		latticeDimensions = dimensions.length;
+
 		this.method = method;
 		is2d = ( dimensions.length == 2 || dimensions[2] == 0 );
 	}
@@ -118,33 +128,54 @@ public class GridRealRandomAccess< T extends RealType<T>> extends AbstractRealLo
 		this.method = method;
 	}
 
+	/**
+	 * Evaluate the warp of copies of this access on a lattice and interpolate between
+	 * lattice points, see {@link LatticeInterpolatedRealTransform}.
+	 *
+	 * @param spacing the lattice spacing, or zero to evaluate the warp at every point
+	 */
+	public void setLatticeSpacing( double spacing )
+	{
+		this.latticeSpacing = spacing;
+	}
+
+	/**
+	 * @param nd the number of leading dimensions the lattice interpolates
+	 */
+	public void setLatticeDimensions( int nd )
+	{
+		this.latticeDimensions = nd;
+	}
+
 	@Override
 	public T get() 
 	{
-		double[] mypt = new double[ this.numDimensions() ];
-		this.localize( mypt );
+		this.localize( pt );
 		
 		switch( method )
 		{
 		case LINE:
-			return getLine( mypt );
+			return getLine( pt );
 		default:
-			return getMod( mypt );
+			return getMod( pt );
 		}
 	}
 
-	private T getLine( double[] pt )
+	private double[] warp( double[] pt )
 	{
-		double[] warpRes;
-		if( warp != null )
-		{
+		if( warp == null )
+			return pt;
+
+		if( warpRes == null || warpRes.length != warp.numTargetDimensions() )
 			warpRes = new double[ warp.numTargetDimensions() ];
-			warp.apply( pt, warpRes );
-		}
-		else
-		{
-			warpRes = pt;
-		}
+
+		warp.apply( pt, warpRes );
+		return warpRes;
+	}
+
+	private T getLine( double[] pt )
+	{
+		final double[] warpRes = warp( pt );
 		int nd = warpRes.length;
 		if( is2d )
 			nd = 2;
@@ -177,30 +208,20 @@ public class GridRealRandomAccess< T extends RealType<T>> extends AbstractRealLo
 			
 		}
 
-		T out = value.copy();
 		if( val < gridWidth )
 		{
-			// we want out to have a peak value of 255
+			// we want value to have a peak value of 255
 			// Note: val takes a max value of gridHalfWidth
-			out.setReal( val * ( 255.0 / gridHalfWidth) );
+			value.setReal( val * ( 255.0 / gridHalfWidth) );
 		}else
-			out.setZero();
+			value.setZero();
 
-		return out;
+		return value;
 	}
 
 	private T getMod( double[] pt )
 	{
-		double[] warpRes;
-		if( warp != null )
-		{
-			warpRes = new double[ warp.numTargetDimensions() ];
-			warp.apply( pt, warpRes );
-		}
-		else
-		{
-			warpRes = pt;
-		}
+		final double[] warpRes = warp( pt );
 
 		double val = 0.0;
 		for( int d = 0; d < warpRes.length; d++ )
@@ -210,9 +231,8 @@ public class GridRealRandomAccess< T extends RealType<T>> extends AbstractRealLo
 
 			val += tmp;
 		}
-		T out = value.copy();
-		out.setReal( val );
-		return out;
+		value.setReal( val );
+		return value;
 	}
 
 	private boolean withinRad( double[] pt1, double[] pt2, double rad )
@@ -233,25 +253,18 @@ public class GridRealRandomAccess< T extends RealType<T>> extends AbstractRealLo
 	
 	public RealRandomAccess<T> copy() 
 	{
-		if( warp == null )
-		{
-			GridRealRandomAccess< T > ra =  new GridRealRandomAccess< T >( new double[ position.length ], value.copy(), 
-					null, this.method  );
-			ra.gridSpacing = this.gridSpacing;
-			ra.gridWidth = this.gridWidth;
-			ra.gridHalfWidth = this.gridHalfWidth;
-			return ra;
-		}
-		else
-		{
-			GridRealRandomAccess< T > ra = new GridRealRandomAccess< T >( new double[ position.length ], value.copy(), 
-					warp, this.method  );
-			ra.gridSpacing = this.gridSpacing;
-			ra.gridWidth = this.gridWidth;
-			ra.gridHalfWidth = this.gridHalfWidth;
-			return ra;
-		}
-
+		RealTransform copyWarp = warp;
+		if( warp != null && latticeSpacing > 0 && !( warp instanceof LatticeInterpolatedRealTransform ) )
+			copyWarp = new LatticeInterpolatedRealTransform( warp, latticeSpacing, latticeDimensions );
+
+		GridRealRandomAccess< T > ra = new GridRealRandomAccess< T >( new double[ position.length ], value.copy(), 
+				copyWarp, this.method  );
+		ra.gridSpacing = this.gridSpacing;
+		ra.gridWidth = this.gridWidth;
+		ra.gridHalfWidth = this.gridHalfWidth;
+		ra.latticeSpacing = this.latticeSpacing;
+		ra.latticeDimensions = this.latticeDimensions;
+		return ra;
 	}
 
 	public RealRandomAccess<T> copyRandomAccess() 
@@ -37,6 +37,10 @@ public class GridRealRandomAccessibleRealInterval<T extends RealType<T>> extends
 	{
 		super( interval );
 		ra = new GridRealRandomAccess< T >( new double[ interval.numDimensions() ], t, warp );
+
+		// a single slice does not need to be interpolated along z
+		if( interval.numDimensions() > 2 && interval.dimension( 2 ) <= 1 )
+			ra.setLatticeDimensions( 2 );
 	}
 
 	@Override
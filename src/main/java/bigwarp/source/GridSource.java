@@ -99,6 +99,17 @@ public class GridSource< T extends RealType< T >> implements Source< T >
 	{
 		gridImg.ra.warp = warp;
 	}
+
+	/**
+	 * Render from the warp sampled on a lattice with the given spacing (in pixels) and
+	 * interpolated in between, which is much cheaper for smooth warps.
+	 *
+	 * @param spacing the lattice spacing, or zero to evaluate the warp at every pixel
+	 */
+	public void setLatticeSpacing( double spacing )
+	{
+		gridImg.ra.setLatticeSpacing( spacing );
+	}
 	
 	@Override
 	public boolean isPresent( int t )
@@ -21,9 +21,7 @@
  */
 package bigwarp.source;
 
-import org.ejml.data.DMatrixRMaj;
-import org.ejml.dense.row.CommonOps_DDRM;
-
+import bigwarp.transforms.ThinPlateSplineJacobian;
 import net.imglib2.AbstractRealInterval;
 import net.imglib2.AbstractRealLocalizable;
 import net.imglib2.Interval;
@@ -33,12 +31,16 @@ import net.imglib2.RealLocalizable;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.RealRandomAccessibleRealInterval;
 import net.imglib2.realtransform.AffineTransform;
+import net.imglib2.realtransform.ThinplateSplineTransform;
 import net.imglib2.realtransform.inverse.DifferentiableRealTransform;
 import net.imglib2.type.numeric.RealType;
 
 public class JacobianDeterminantRandomAccess< T extends RealType<T>> extends AbstractRealLocalizable implements RealRandomAccess< T >
 {
 	protected DifferentiableRealTransform transform;
+
+	// analytic jacobian if the transform is a thin plate spline
+	private ThinPlateSplineJacobian tpsJacobian;
 	
 	private final T value;
 	private final double[] x;
@@ -63,6 +65,10 @@ public class JacobianDeterminantRandomAccess< T extends RealType<T>> extends Abs
 		if( transform != null)
 		{
 			this.transform = transform.copy();
+			if( transform instanceof ThinplateSplineTransform )
+				tpsJacobian = new ThinPlateSplineJacobian( ( ( ThinplateSplineTransform ) transform ).getKernelTransform() );
+			else
+				tpsJacobian = null;
 		}
 	}
 
@@ -81,14 +87,28 @@ public class JacobianDeterminantRandomAccess< T extends RealType<T>> extends Abs
 		localize( x3 );
 		System.arraycopy(x3, 0, x, 0, x.length);
 
+		if( tpsJacobian != null )
+		{
+			value.setReal( tpsJacobian.determinant( x ) );
+			return value;
+		}
+
 		final AffineTransform jacobian = transform.jacobian( x );
-		final DMatrixRMaj jacMtx = new DMatrixRMaj();
-		jacMtx.data = jacobian.getRowPackedCopy(); 
-		value.setReal( CommonOps_DDRM.det( jacMtx ) );
+		value.setReal( determinant( jacobian ) );
 
 		return value;
 	}
 
+	private static double determinant( final AffineTransform m )
+	{
+		if( m.numDimensions() == 2 )
+			return m.get( 0, 0 ) * m.get( 1, 1 ) - m.get( 0, 1 ) * m.get( 1, 0 );
+
+		return m.get( 0, 0 ) * ( m.get( 1, 1 ) * m.get( 2, 2 ) - m.get( 1, 2 ) * m.get( 2, 1 ) )
+				- m.get( 0, 1 ) * ( m.get( 1, 0 ) * m.get( 2, 2 ) - m.get( 1, 2 ) * m.get( 2, 0 ) )
+				+ m.get( 0, 2 ) * ( m.get( 1, 0 ) * m.get( 2, 1 ) - m.get( 1, 1 ) * m.get( 2, 0 ) );
+	}
+
 	public RealRandomAccess<T> copy() 
 	{
 		return new JacobianDeterminantRandomAccess<T>(new double[x.length], value.copy(), transform);
@@ -76,15 +76,9 @@ public class JacobianDeterminantSource< T extends RealType< T >> implements Sour
 	{
 		double maxVal = 0.0;
 		
-		int ndims = lm.getNumdims();
-		double[] pt = new double[ ndims ];
-		
-		for( Double[] movingPt : lm.getPoints( true ) )
+		for( double[] movingPt : lm.getPointsCopy( true ) )
 		{
-			for( int d = 0; d < ndims; d++ )
-				pt[ d ] = movingPt[ d ];
-			
-			jacDetImg.ra.setPosition(  pt );
+			jacDetImg.ra.setPosition(  movingPt );
 			double val = jacDetImg.ra.get().getRealDouble();
 			
 			if( val > maxVal )
@@ -38,7 +38,8 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 import mpicbg.spim.data.XmlHelpers;
 import net.imglib2.*;
-import net.imglib2.position.FunctionRealRandomAccessible;
+import net.imglib2.realtransform.BoundedRealMask;
+import net.imglib2.realtransform.RealMaskFunction;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.util.Intervals;
 import org.jdom2.Element;
@@ -49,12 +50,15 @@ import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
-public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAccessible< DoubleType >
+public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAccessible< DoubleType >, BoundedRealMask, RealMaskFunction
 {
-	transient private BiConsumer< RealLocalizable, DoubleType > pfun;
-	transient private FunctionRealRandomAccessible< DoubleType > rra;
 	transient private List<BigWarpMaskSphereOverlay> overlays;
 
+	transient private volatile Profile profile;
+
+	// the union of the supports since the last call to takeChangedSupport, guarded by this
+	transient private FinalRealInterval changedSupport;
+
 	private FalloffShape fallOffShape;
 
 	transient private int nd;
@@ -77,6 +81,16 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 	private static final double PIon2 = Math.PI / 2.0;
 	private static final double PI = Math.PI;
 
+	/**
+	 * The number of samples of the falloff in its lookup table.
+	 */
+	private static final int PROFILE_SIZE = 2048;
+
+	/**
+	 * The gaussian falloff is cut to zero this many of its standard deviations past the plateau.
+	 */
+	private static final double GAUSS_EXTENT = 8;
+
 	public static enum FalloffShape
 	{
 		COSINE( it -> new CosineFalloff( it ) ),
@@ -102,8 +116,6 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 		this.nd = center.numDimensions();
 		this.center = center;
 		fallOffShape = FalloffShape.COSINE;
-		pfun = fallOffShape.createFalloffFunction( this );
-		update();
 
 		setRadius( 8.0 );
 		setSigma ( 10.0 );
@@ -159,23 +171,36 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 		}
 	}
 
+	/**
+	 * Rebuilds the falloff lookup table. Called whenever the radius, sigma or shape change.
+	 */
 	private void update()
 	{
-		rra = new FunctionRealRandomAccessible<>( nd, getFalloffFunction(), DoubleType::new );
+		profile = new Profile( getFallOffShape(), plateauR2, sqrSigma );
+		supportChanged();
 	}
 
-	private BiConsumer< RealLocalizable, DoubleType > getFalloffFunction()
+	private synchronized void supportChanged()
 	{
-		if ( pfun == null )
+		if ( changedSupport != null )
+			changedSupport = Intervals.union( changedSupport, getSupport() );
+	}
+
+	private Profile profile()
+	{
+		// masks read by gson are not constructed, so build the table on first use
+		Profile p = profile;
+		if ( p == null )
 		{
-			pfun = fallOffShape.createFalloffFunction( this );
+			p = new Profile( getFallOffShape(), plateauR2, sqrSigma );
+			profile = p;
 		}
-		return pfun;
+		return p;
 	}
 
 	public FalloffShape getFallOffShape()
 	{
-		return fallOffShape;
+		return fallOffShape == null ? FalloffShape.COSINE : fallOffShape;
 	}
 
 	public void setFalloffShape( String type )
@@ -187,7 +212,6 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 	{
 
 		fallOffShape = shape;
-		pfun = shape.createFalloffFunction( this );
 		update();
 	}
 
@@ -200,6 +224,7 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 	{
 		plateauR = r;
 		plateauR2 = plateauR * plateauR ;
+		update();
 		if ( overlays != null )
 			overlays.stream().forEach( o -> o.setInnerRadius( plateauR ) );
 	}
@@ -208,6 +233,7 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 	{
 		plateauR2 = r2;
 		plateauR = Math.sqrt( plateauR2 );
+		update();
 		if ( overlays != null )
 			overlays.stream().forEach( o -> o.setInnerRadius( plateauR ) );
 	}
@@ -232,6 +258,7 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 
 		invSqrSigma = 1.0 / sqrSigma;
 		updateGaussSigma();
+		update();
 
 		if ( overlays != null )
 			overlays.stream().forEach( o -> o.setOuterRadiusDelta( this.sigma ));
@@ -252,6 +279,7 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 
 		invSqrSigma = 1.0 / sqrSigma;
 		updateGaussSigma();
+		update();
 		if ( overlays != null )
 			overlays.stream().forEach( o -> o.setOuterRadiusDelta( sigma ));
 	}
@@ -265,6 +293,7 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 	public void setCenter( RealLocalizable p )
 	{
 		p.localize( center );
+		supportChanged();
 		if ( overlays != null )
 			overlays.stream().forEach( o -> o.setCenter( p ) );
 	}
@@ -272,6 +301,7 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 	public void setCenter( double[] p )
 	{
 		center.setPosition( p );
+		supportChanged();
 		if ( overlays != null )
 			overlays.stream().forEach( o -> o.setCenter( p ) );
 	}
@@ -297,22 +327,121 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 		return dist;
 	}
 
+	/**
+	 * Returns the value of the mask at a point whose squared distance from the center is r2.
+	 *
+	 * @param r2 the squared distance
+	 * @return the value
+	 */
+	public double valueAtSquaredDistance( final double r2 )
+	{
+		return profile().value( r2 );
+	}
+
+	public double value( final double x, final double y )
+	{
+		final double dx = x - center.getDoublePosition( 0 );
+		final double dy = y - center.getDoublePosition( 1 );
+		return profile().value( dx * dx + dy * dy );
+	}
+
+	public double value( final double x, final double y, final double z )
+	{
+		final double dx = x - center.getDoublePosition( 0 );
+		final double dy = y - center.getDoublePosition( 1 );
+		final double dz = z - center.getDoublePosition( 2 );
+		return profile().value( dx * dx + dy * dy + dz * dz );
+	}
+
+	@Override
+	public double value( final double[] position )
+	{
+		double r2 = 0;
+		for ( int d = 0; d < center.numDimensions(); d++ )
+		{
+			final double x = position[ d ] - center.getDoublePosition( d );
+			r2 += x * x;
+		}
+		return profile().value( r2 );
+	}
+
+	@Override
+	public double value( final RealLocalizable position )
+	{
+		return profile().value( squaredDistance( center, position ) );
+	}
+
+	/**
+	 * The mask decreases with the distance from the center, so its bounds over an interval
+	 * are its values at the interval's nearest and farthest points.
+	 */
+	@Override
+	public void valueBounds( final RealInterval interval, final double[] minMax )
+	{
+		double near2 = 0;
+		double far2 = 0;
+		for ( int d = 0; d < center.numDimensions(); d++ )
+		{
+			final double c = center.getDoublePosition( d );
+			final double lo = interval.realMin( d ) - c;
+			final double hi = interval.realMax( d ) - c;
+			final double near = lo > 0 ? lo : ( hi < 0 ? -hi : 0 );
+			final double far = Math.max( Math.abs( lo ), Math.abs( hi ) );
+			near2 += near * near;
+			far2 += far * far;
+		}
+		minMax[ 0 ] = valueAtSquaredDistance( far2 );
+		minMax[ 1 ] = valueAtSquaredDistance( near2 );
+	}
+
+	/**
+	 * @return the smallest box outside of which the mask is zero
+	 */
+	public FinalRealInterval getSupport()
+	{
+		final double r = Math.sqrt( profile().outerR2 );
+		final int nd = center.numDimensions();
+		final double[] min = new double[ nd ];
+		final double[] max = new double[ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			min[ d ] = center.getDoublePosition( d ) - r;
+			max[ d ] = center.getDoublePosition( d ) + r;
+		}
+		return new FinalRealInterval( min, max );
+	}
+
+	/**
+	 * Returns a box outside of which the mask was zero ever since the last call, so
+	 * that whatever the mask weights can only have changed inside it. The first call
+	 * returns the current support.
+	 *
+	 * @return the box
+	 */
+	public synchronized RealInterval takeChangedSupport()
+	{
+		final FinalRealInterval current = getSupport();
+		final RealInterval changed = changedSupport == null ? current : Intervals.union( changedSupport, current );
+		changedSupport = current;
+		return changed;
+	}
+
 	@Override
 	public int numDimensions()
 	{
-		return rra.numDimensions();
+		return center.numDimensions();
 	}
 
 	@Override
 	public RealRandomAccess< DoubleType > realRandomAccess()
 	{
-		return rra.realRandomAccess();
+		return new MaskRealRandomAccess();
 	}
 
 	@Override
 	public RealRandomAccess< DoubleType > realRandomAccess( RealInterval interval )
 	{
-		return rra.realRandomAccess( interval );
+		return realRandomAccess();
 	}
 
 	@Override
@@ -376,6 +505,106 @@ public class PlateauSphericalMaskRealRandomAccessible implements RealRandomAcces
 		return ( 0.40535876907923957 * T + 0.03706937 );
 	}
 
+	/**
+	 * The falloff for one radius, sigma and shape, sampled as a function of the distance
+	 * past the plateau. Immutable, so that it can be replaced while other threads read it.
+	 */
+	private static final class Profile
+	{
+		private final double plateauR;
+
+		private final double plateauR2;
+
+		private final double outerR2;
+
+		private final double invStep;
+
+		private final double[] table;
+
+		public Profile( final FalloffShape shape, final double plateauR2, final double sqrSigma )
+		{
+			this.plateauR2 = plateauR2;
+			plateauR = Math.sqrt( plateauR2 );
+
+			final double sigma = Math.sqrt( sqrSigma );
+			final double gsig = gaussSigma( sigma );
+			final double extent = shape == FalloffShape.GAUSSIAN ? GAUSS_EXTENT * gsig : sigma;
+			final double outerR = plateauR + extent;
+			outerR2 = outerR * outerR;
+
+			table = new double[ PROFILE_SIZE + 1 ];
+			final double step = extent / PROFILE_SIZE;
+			invStep = extent > 0 ? 1.0 / step : 0;
+			for ( int i = 0; i <= PROFILE_SIZE; i++ )
+			{
+				final double t = i * step;
+				switch ( shape )
+				{
+				case GAUSSIAN:
+					table[ i ] = Math.exp( -0.5 * t * t / ( gsig * gsig ) );
+					break;
+				case LINEAR:
+					table[ i ] = 1 - t / sigma;
+					break;
+				default:
+					table[ i ] = 0.5 + 0.5 * Math.cos( t * PI / sigma );
+				}
+			}
+			if ( shape != FalloffShape.GAUSSIAN )
+				table[ PROFILE_SIZE ] = 0;
+		}
+
+		public double value( final double r2 )
+		{
+			if ( r2 <= plateauR2 )
+				return 1;
+			else if ( r2 >= outerR2 )
+				return 0;
+
+			final double s = ( Math.sqrt( r2 ) - plateauR ) * invStep;
+			final int i = ( int ) s;
+			if ( i >= PROFILE_SIZE )
+				return table[ PROFILE_SIZE ];
+
+			final double a = table[ i ];
+			return a + ( s - i ) * ( table[ i + 1 ] - a );
+		}
+	}
+
+	/**
+	 * Evaluates the mask at its position without allocating.
+	 */
+	private class MaskRealRandomAccess extends RealPoint implements RealRandomAccess< DoubleType >
+	{
+		private final DoubleType value = new DoubleType();
+
+		public MaskRealRandomAccess()
+		{
+			super( center.numDimensions() );
+		}
+
+		@Override
+		public DoubleType get()
+		{
+			value.set( profile().value( squaredDistance( this, center ) ) );
+			return value;
+		}
+
+		@Override
+		public DoubleType getType()
+		{
+			return value;
+		}
+
+		@Override
+		public MaskRealRandomAccess copy()
+		{
+			final MaskRealRandomAccess copy = new MaskRealRandomAccess();
+			copy.setPosition( this );
+			return copy;
+		}
+	}
+
 	public static class GaussianFalloff implements BiConsumer< RealLocalizable, DoubleType >
 	{
 
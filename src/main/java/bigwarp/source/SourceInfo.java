@@ -96,7 +96,7 @@ public class SourceInfo
 
 	public String getUri() {
 
-		return uriSupplier.get();
+		return uriSupplier == null ? null : uriSupplier.get();
 	}
 
 	public void setUriSupplier(final Supplier<String> getUri) {
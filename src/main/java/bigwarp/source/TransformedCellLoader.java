@@ -0,0 +1,406 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.source;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bigwarp.ExportScheduler;
+import bigwarp.ExportScheduler.Priority;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.interpolation.randomaccess.ClampingNLinearInterpolatorFactory;
+import net.imglib2.outofbounds.OutOfBoundsConstantValueFactory;
+import net.imglib2.realtransform.RealTransform;
+import net.imglib2.transform.integer.MixedTransform;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.ExtendedRandomAccessibleInterval;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.MixedTransformView;
+import net.imglib2.view.Views;
+
+/**
+ * Fills the cells of a cached, transformed image by interpolating a source
+ * image through a transform from cell to source pixel coordinates.
+ * <p>
+ * Before a cell is filled, the blocks of the source that its footprint
+ * covers are loaded in parallel, and the interpolated values are written
+ * directly into the cell's storage for the common scalar types.
+ */
+public class TransformedCellLoader< T extends NumericType< T > & NativeType< T > > implements CellLoader< T >
+{
+	private static final Logger logger = LoggerFactory.getLogger( TransformedCellLoader.class );
+
+	public static final int MIN_CELL_SIZE = 8;
+
+	public static final int MAX_CELL_SIZE = 256;
+
+	public static final long MAX_CELL_VOXELS = 128 * 128 * 128;
+
+	// more source blocks than this per cell are loaded on demand
+	private static final int MAX_PREFETCH_BLOCKS = 512;
+
+	private static final int numPrefetchThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() );
+
+	private static final ExecutorService prefetchExecutor =
+			ExportScheduler.getInstance().newBackgroundJob( "block prefetch", numPrefetchThreads, Priority.LOW );
+
+	private final RandomAccessibleInterval< T > source;
+
+	private final RealRandomAccessible< T > interpolated;
+
+	private final RealTransform transform;
+
+	private final int[] sourceBlockSize;
+
+	/**
+	 * @param source the source image
+	 * @param transform from cell pixel coordinates to source pixel coordinates
+	 */
+	public TransformedCellLoader( final RandomAccessibleInterval< T > source, final RealTransform transform )
+	{
+		this.source = source;
+		this.transform = transform;
+		sourceBlockSize = blockSize( source );
+
+		final T background = source.getType().copy();
+		background.setZero();
+		interpolated = Views.interpolate(
+				new ExtendedRandomAccessibleInterval<>( source, new OutOfBoundsConstantValueFactory<>( background ) ),
+				new ClampingNLinearInterpolatorFactory<>() );
+	}
+
+	/**
+	 * Returns the block size of an image that is a cell image, or a view of
+	 * one that only restricts, translates, permutes or adds dimensions, or
+	 * null otherwise.
+	 *
+	 * @param img the image
+	 * @return the block size, or null
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static int[] blockSize( final RandomAccessible< ? > img )
+	{
+		if ( img instanceof AbstractCellImg )
+			return ( ( AbstractCellImg ) img ).getCellGrid().getCellDimensions();
+
+		if ( img instanceof IntervalView )
+			return blockSize( ( ( IntervalView< ? > ) img ).getSource() );
+
+		if ( img instanceof MixedTransformView )
+		{
+			final MixedTransformView< ? > view = ( MixedTransformView< ? > ) img;
+			final int[] sourceBlock = blockSize( view.getSource() );
+			if ( sourceBlock == null )
+				return null;
+
+			// dimensions without a source dimension have a single slice per block
+			final int[] block = new int[ img.numDimensions() ];
+			Arrays.fill( block, 1 );
+
+			final MixedTransform t = view.getTransformToSource();
+			for ( int d = 0; d < sourceBlock.length; d++ )
+				if ( !t.getComponentZero( d ) )
+					block[ t.getComponentMapping( d ) ] = sourceBlock[ d ];
+
+			return block;
+		}
+		return null;
+	}
+
+	/**
+	 * Chooses cell dimensions whose footprint in the source covers about one
+	 * source block, from the local scale of the transform at the center of
+	 * the image.
+	 *
+	 * @param sourceBlockSize the block size of the source, or null
+	 * @param transform from cell pixel coordinates to source pixel coordinates
+	 * @param dimensions the dimensions of the cached image
+	 * @param defaultCellDimensions the cell dimensions if the source has no blocks
+	 * @return the cell dimensions
+	 */
+	public static int[] cellDimensions( final int[] sourceBlockSize, final RealTransform transform, final long[] dimensions,
+			final int[] defaultCellDimensions )
+	{
+		final int nd = dimensions.length;
+		if ( sourceBlockSize == null || sourceBlockSize.length != transform.numTargetDimensions() || nd != transform.numSourceDimensions() )
+			return defaultCellDimensions;
+
+		final double[] center = new double[ nd ];
+		for ( int d = 0; d < nd; d++ )
+			center[ d ] = 0.5 * ( dimensions[ d ] - 1 );
+
+		final double[][] jacobian = jacobian( transform, center, 4 );
+		final int[] cellDimensions = new int[ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			double size = MAX_CELL_SIZE;
+			for ( int s = 0; s < sourceBlockSize.length; s++ )
+			{
+				final double scale = Math.abs( jacobian[ s ][ d ] );
+				if ( scale > 1e-6 )
+					size = Math.min( size, sourceBlockSize[ s ] / scale );
+			}
+
+			final int powerOfTwo = Integer.highestOneBit( ( int ) Math.max( MIN_CELL_SIZE, Math.min( MAX_CELL_SIZE, size ) ) );
+			cellDimensions[ d ] = ( int ) Math.max( 1, Math.min( powerOfTwo, dimensions[ d ] ) );
+		}
+
+		while ( numVoxels( cellDimensions ) > MAX_CELL_VOXELS )
+		{
+			int largest = 0;
+			for ( int d = 1; d < nd; d++ )
+				if ( cellDimensions[ d ] > cellDimensions[ largest ] )
+					largest = d;
+
+			cellDimensions[ largest ] = Math.max( 1, cellDimensions[ largest ] / 2 );
+		}
+		return cellDimensions;
+	}
+
+	public int[] getSourceBlockSize()
+	{
+		return sourceBlockSize;
+	}
+
+	@Override
+	public void load( final SingleCellArrayImg< T, ? > cell ) throws Exception
+	{
+		final RealTransform xfm = transform.copy();
+		if ( sourceBlockSize != null )
+			prefetch( cell, xfm );
+
+		final int nd = cell.numDimensions();
+		final long[] min = cell.minAsLongArray();
+		final long[] max = cell.maxAsLongArray();
+		final long[] pos = min.clone();
+		final double[] p = new double[ nd ];
+		final double[] q = new double[ transform.numTargetDimensions() ];
+		final RealRandomAccess< T > access = interpolated.realRandomAccess();
+		final ValueWriter< T > writer = writer( cell );
+
+		for ( int i = 0; ; i++ )
+		{
+			for ( int d = 0; d < nd; d++ )
+				p[ d ] = pos[ d ];
+
+			xfm.apply( p, q );
+			access.setPosition( q );
+			writer.write( i, access.get() );
+
+			int d = 0;
+			for ( ; d < nd; d++ )
+			{
+				if ( pos[ d ] < max[ d ] )
+				{
+					pos[ d ]++;
+					break;
+				}
+				pos[ d ] = min[ d ];
+			}
+			if ( d == nd )
+				break;
+		}
+	}
+
+	/**
+	 * Loads the source blocks that the corners of a cell map into.
+	 */
+	private void prefetch( final SingleCellArrayImg< T, ? > cell, final RealTransform xfm )
+	{
+		final int nd = cell.numDimensions();
+		final int snd = source.numDimensions();
+		final long[] footprintMin = new long[ snd ];
+		final long[] footprintMax = new long[ snd ];
+		Arrays.fill( footprintMin, Long.MAX_VALUE );
+		Arrays.fill( footprintMax, Long.MIN_VALUE );
+
+		final double[] p = new double[ nd ];
+		final double[] q = new double[ snd ];
+		for ( int corner = 0; corner < ( 1 << nd ); corner++ )
+		{
+			for ( int d = 0; d < nd; d++ )
+				p[ d ] = ( corner & ( 1 << d ) ) == 0 ? cell.min( d ) : cell.max( d );
+
+			xfm.apply( p, q );
+			for ( int d = 0; d < snd; d++ )
+			{
+				// one more pixel for interpolation
+				footprintMin[ d ] = Math.min( footprintMin[ d ], ( long ) Math.floor( q[ d ] ) - 1 );
+				footprintMax[ d ] = Math.max( footprintMax[ d ], ( long ) Math.ceil( q[ d ] ) + 1 );
+			}
+		}
+
+		long numBlocks = 1;
+		final long[] numSteps = new long[ snd ];
+		for ( int d = 0; d < snd; d++ )
+		{
+			footprintMin[ d ] = Math.max( footprintMin[ d ], source.min( d ) );
+			footprintMax[ d ] = Math.min( footprintMax[ d ], source.max( d ) );
+			if ( footprintMin[ d ] > footprintMax[ d ] )
+				return;
+
+			// samples one block apart, and the max, touch every block of the footprint
+			numSteps[ d ] = ( footprintMax[ d ] - footprintMin[ d ] ) / sourceBlockSize[ d ] + 2;
+			numBlocks *= numSteps[ d ];
+		}
+
+		if ( numBlocks <= 1 || numBlocks > MAX_PREFETCH_BLOCKS )
+			return;
+
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( long b = 0; b < numBlocks; b++ )
+		{
+			final long[] position = new long[ snd ];
+			long rem = b;
+			for ( int d = 0; d < snd; d++ )
+			{
+				final long k = rem % numSteps[ d ];
+				rem /= numSteps[ d ];
+				position[ d ] = Math.min( footprintMin[ d ] + k * sourceBlockSize[ d ], footprintMax[ d ] );
+			}
+
+			tasks.add( () -> {
+				final RandomAccess< T > ra = source.randomAccess();
+				ra.setPosition( position );
+				ra.get();
+				return null;
+			} );
+		}
+
+		try
+		{
+			for ( final Future< Void > f : prefetchExecutor.invokeAll( tasks ) )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( final Exception e )
+		{
+			// the blocks are loaded again when the cell is filled
+			logger.debug( "could not prefetch source blocks", e );
+		}
+	}
+
+	private static double[][] jacobian( final RealTransform transform, final double[] p, final double step )
+	{
+		final int nd = p.length;
+		final double[] q0 = new double[ transform.numTargetDimensions() ];
+		final double[] q = new double[ q0.length ];
+		final double[] ps = p.clone();
+		transform.apply( p, q0 );
+
+		final double[][] jacobian = new double[ q0.length ][ nd ];
+		for ( int d = 0; d < nd; d++ )
+		{
+			ps[ d ] = p[ d ] + step;
+			transform.apply( ps, q );
+			ps[ d ] = p[ d ];
+			for ( int s = 0; s < q0.length; s++ )
+				jacobian[ s ][ d ] = ( q[ s ] - q0[ s ] ) / step;
+		}
+		return jacobian;
+	}
+
+	private static long numVoxels( final int[] dimensions )
+	{
+		long n = 1;
+		for ( final int s : dimensions )
+			n *= s;
+
+		return n;
+	}
+
+	private interface ValueWriter< T >
+	{
+		void write( int index, T value );
+	}
+
+	/*
+	 * Writes values straight into the storage array of a cell for the common
+	 * scalar types, or through a cursor in flat order otherwise.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private static < T extends NativeType< T > > ValueWriter< T > writer( final SingleCellArrayImg< T, ? > cell )
+	{
+		final T type = cell.getType();
+		final Object storage = ( ( ArrayDataAccess< ? > ) cell.update( null ) ).getCurrentStorageArray();
+		if ( type instanceof UnsignedByteType && storage instanceof byte[] )
+		{
+			final byte[] data = ( byte[] ) storage;
+			return ( ValueWriter< T > ) ( ValueWriter< UnsignedByteType > ) ( i, v ) -> data[ i ] = ( byte ) v.get();
+		}
+		else if ( type instanceof ByteType && storage instanceof byte[] )
+		{
+			final byte[] data = ( byte[] ) storage;
+			return ( ValueWriter< T > ) ( ValueWriter< ByteType > ) ( i, v ) -> data[ i ] = v.get();
+		}
+		else if ( type instanceof UnsignedShortType && storage instanceof short[] )
+		{
+			final short[] data = ( short[] ) storage;
+			return ( ValueWriter< T > ) ( ValueWriter< UnsignedShortType > ) ( i, v ) -> data[ i ] = ( short ) v.get();
+		}
+		else if ( type instanceof ShortType && storage instanceof short[] )
+		{
+			final short[] data = ( short[] ) storage;
+			return ( ValueWriter< T > ) ( ValueWriter< ShortType > ) ( i, v ) -> data[ i ] = v.get();
+		}
+		else if ( type instanceof FloatType && storage instanceof float[] )
+		{
+			final float[] data = ( float[] ) storage;
+			return ( ValueWriter< T > ) ( ValueWriter< FloatType > ) ( i, v ) -> data[ i ] = v.get();
+		}
+		else if ( type instanceof DoubleType && storage instanceof double[] )
+		{
+			final double[] data = ( double[] ) storage;
+			return ( ValueWriter< T > ) ( ValueWriter< DoubleType > ) ( i, v ) -> data[ i ] = v.get();
+		}
+
+		// the flat order of a cell is the order of the storage
+		final Cursor< T > c = Views.flatIterable( cell ).cursor();
+		return ( i, v ) -> c.next().set( v );
+	}
+}
@@ -0,0 +1,537 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bdv.viewer.Source;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealTransform;
+import net.imglib2.type.NativeType;
+
+/**
+ * A disk tier for the cells of transformed sources, stored in an N5 container
+ * with one group per source and transform, and one dataset per mipmap level.
+ * <p>
+ * Groups are keyed by a hash of the source URI, a stamp of its content and
+ * its geometry, and the URI and modification time of the transform, so a
+ * changed source or transform gets a new group. The content stamp of a local
+ * source covers every file of the source, including the chunks and attributes
+ * of N5 and Zarr datasets. Transforms without a local file are recognized by
+ * their values at fixed points instead. Groups that are no longer used are not
+ * removed when they are replaced, since other transforms of the same source may
+ * still use them; the least recently opened groups are removed when the
+ * container exceeds its size budget.
+ */
+public class TransformedSourceDiskCache
+{
+	private static final Logger logger = LoggerFactory.getLogger( TransformedSourceDiskCache.class );
+
+	public static final String SOURCE_URI_KEY = "sourceUri";
+
+	public static final String LAST_ACCESS_KEY = "lastAccess";
+
+	public static final String SOURCE_TRANSFORM_KEY = "sourceTransform";
+
+	// changes to the key or the layout of the cache must increment this
+	private static final int VERSION = 3;
+
+	private static final int NUM_FINGERPRINT_POINTS = 64;
+
+	/**
+	 * The default size budget, 4 GiB.
+	 */
+	public static final long DEFAULT_MAX_BYTES = 4L << 30;
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	private final N5FSWriter n5;
+
+	private final Set< String > openGroups = ConcurrentHashMap.newKeySet();
+
+	private final AtomicLong bytesSinceEviction = new AtomicLong();
+
+	private final AtomicLong numHits = new AtomicLong();
+
+	private final AtomicLong numMisses = new AtomicLong();
+
+	private final ExecutorService evictionExecutor;
+
+	/**
+	 * @param directory the cache directory
+	 * @param maxBytes the size budget of the cache
+	 */
+	public TransformedSourceDiskCache( final File directory, final long maxBytes )
+	{
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		n5 = new N5FSWriter( directory.getAbsolutePath() );
+		evictionExecutor = Executors.newSingleThreadExecutor( r -> {
+			final Thread t = new Thread( r, "bigwarp-disk-cache-eviction" );
+			t.setDaemon( true );
+			return t;
+		} );
+	}
+
+	/**
+	 * @return the default cache directory, ~/.bigwarp/transformed-source-cache
+	 */
+	public static File defaultDirectory()
+	{
+		return new File( System.getProperty( "user.home" ) + File.separator + ".bigwarp" + File.separator + "transformed-source-cache" );
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * @return the number of cells read from the cache
+	 */
+	public long getNumHits()
+	{
+		return numHits.get();
+	}
+
+	/**
+	 * @return the number of cells that were computed because they were not in the cache
+	 */
+	public long getNumMisses()
+	{
+		return numMisses.get();
+	}
+
+	/**
+	 * Returns the key of a transformed source whose transform has no URI, see
+	 * {@link #key(String, String, Source, RealTransform)}.
+	 *
+	 * @param sourceUri the URI of the source
+	 * @param src the source
+	 * @param transform the transform applied to the source
+	 * @return the key
+	 */
+	public static String key( final String sourceUri, final Source< ? > src, final RealTransform transform )
+	{
+		return key( sourceUri, null, src, transform );
+	}
+
+	/**
+	 * Returns the key of a transformed source, or null if the source has no
+	 * URI and can not be recognized when it is opened again. The key changes
+	 * when any file of a local source is written, see {@link #contentStamp}. If the transform
+	 * was read from a local file, it is identified by the file's URI and
+	 * modification time, otherwise by its values at fixed points of the source.
+	 *
+	 * @param sourceUri the URI of the source
+	 * @param transformUri the URI the transform was read from, may be null
+	 * @param src the source
+	 * @param transform the transform applied to the source
+	 * @return the key
+	 */
+	public static String key( final String sourceUri, final String transformUri, final Source< ? > src, final RealTransform transform )
+	{
+		if ( sourceUri == null || sourceUri.isEmpty() )
+			return null;
+
+		final StringBuilder description = new StringBuilder();
+		description.append( VERSION ).append( '\n' );
+		description.append( sourceUri ).append( '\n' );
+		description.append( contentStamp( sourceUri ) ).append( '\n' );
+		description.append( src.getType().getClass().getName() ).append( '\n' );
+
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		for ( int level = 0; level < src.getNumMipmapLevels(); level++ )
+		{
+			src.getSourceTransform( 0, level, sourceTransform );
+			description.append( Arrays.toString( src.getSource( 0, level ).dimensionsAsLongArray() ) );
+			description.append( Arrays.toString( sourceTransform.getRowPackedCopy() ) ).append( '\n' );
+		}
+
+		final long transformModified = transformUri == null || transformUri.isEmpty() ? 0 : transformLastModified( transformUri );
+		if ( transformModified > 0 )
+		{
+			description.append( transformUri ).append( '\n' );
+			description.append( transformModified ).append( '\n' );
+			return sha1( description.toString() );
+		}
+
+		// the values of the transform at fixed points of the source
+		final RandomAccessibleInterval< ? > img = src.getSource( 0, 0 );
+		src.getSourceTransform( 0, 0, sourceTransform );
+		final Random rand = new Random( 1 );
+		final double[] pixel = new double[ 3 ];
+		final double[] physical = new double[ 3 ];
+		final double[] p = new double[ transform.numSourceDimensions() ];
+		final double[] q = new double[ transform.numTargetDimensions() ];
+		for ( int i = 0; i < NUM_FINGERPRINT_POINTS; i++ )
+		{
+			for ( int d = 0; d < img.numDimensions() && d < 3; d++ )
+				pixel[ d ] = img.min( d ) + rand.nextDouble() * img.dimension( d );
+
+			sourceTransform.apply( pixel, physical );
+			System.arraycopy( physical, 0, p, 0, Math.min( 3, p.length ) );
+			transform.apply( p, q );
+			description.append( Arrays.toString( q ) );
+		}
+
+		return sha1( description.toString() );
+	}
+
+	/**
+	 * Opens the group of a transformed source and marks it as recently used.
+	 * Groups of other transforms of the same source are kept until they are
+	 * evicted by the size budget, see {@link #evict()}.
+	 *
+	 * @param key the key of the transformed source
+	 * @param sourceUri the URI of the source
+	 */
+	public synchronized void open( final String key, final String sourceUri )
+	{
+		try
+		{
+			n5.createGroup( key );
+			n5.setAttribute( key, SOURCE_URI_KEY, sourceUri );
+			n5.setAttribute( key, LAST_ACCESS_KEY, System.currentTimeMillis() );
+			openGroups.add( key );
+		}
+		catch ( final Exception e )
+		{
+			logger.warn( "could not open disk cache " + key, e );
+		}
+		evict();
+	}
+
+	/**
+	 * Returns a {@link CellLoader} that reads cells from the disk cache, and
+	 * computes and writes the cells that are not there. Returns the given
+	 * loader if the type can not be stored.
+	 *
+	 * @param <T> the type
+	 * @param key the key of the transformed source, see {@link #open}
+	 * @param level the mipmap level
+	 * @param dimensions the dimensions of the level
+	 * @param cellDimensions the cell dimensions of the level
+	 * @param type the type
+	 * @param sourceTransform the source transform of the level
+	 * @param loader computes cells
+	 * @return the cell loader
+	 */
+	public < T extends NativeType< T > > CellLoader< T > cellLoader( final String key, final int level,
+			final long[] dimensions, final int[] cellDimensions, final T type, final AffineTransform3D sourceTransform,
+			final CellLoader< T > loader )
+	{
+		final DataType dataType = N5Utils.dataType( type );
+		if ( dataType == null )
+			return loader;
+
+		final String dataset = key + "/s" + level;
+		final DatasetAttributes attributes = new DatasetAttributes( dimensions, cellDimensions, dataType, new RawCompression() );
+		final double[] sourceTransformValues = sourceTransform.getRowPackedCopy();
+		try
+		{
+			synchronized ( this )
+			{
+				if ( !matches( dataset, attributes, sourceTransformValues ) )
+				{
+					if ( n5.exists( dataset ) )
+						n5.remove( dataset );
+
+					n5.createDataset( dataset, attributes );
+					n5.setAttribute( dataset, SOURCE_TRANSFORM_KEY, sourceTransformValues );
+				}
+			}
+		}
+		catch ( final Exception e )
+		{
+			logger.warn( "could not create disk cache " + dataset, e );
+			return loader;
+		}
+
+		return cell -> {
+			final long[] gridPosition = new long[ dimensions.length ];
+			for ( int d = 0; d < gridPosition.length; d++ )
+				gridPosition[ d ] = cell.min( d ) / cellDimensions[ d ];
+
+			final Object storage = ( ( ArrayDataAccess< ? > ) cell.update( null ) ).getCurrentStorageArray();
+			final int length = Array.getLength( storage );
+			try
+			{
+				final DataBlock< ? > block = n5.readBlock( dataset, attributes, gridPosition );
+				if ( block != null && Array.getLength( block.getData() ) == length )
+				{
+					System.arraycopy( block.getData(), 0, storage, 0, length );
+					numHits.incrementAndGet();
+					return;
+				}
+			}
+			catch ( final Exception e )
+			{
+				logger.debug( "could not read cached block of " + dataset, e );
+			}
+
+			numMisses.incrementAndGet();
+			loader.load( cell );
+			try
+			{
+				N5Utils.saveBlock( cell, n5, dataset, attributes, gridPosition );
+				if ( bytesSinceEviction.addAndGet( ( long ) length * elementSize( storage ) ) > maxBytes / 8 )
+				{
+					bytesSinceEviction.set( 0 );
+					evictionExecutor.submit( this::evict );
+				}
+			}
+			catch ( final Exception e )
+			{
+				logger.warn( "could not write cached block of " + dataset, e );
+			}
+		};
+	}
+
+	/**
+	 * Removes the least recently opened groups, other than those opened by
+	 * this instance, until the cache fits its size budget.
+	 */
+	public synchronized void evict()
+	{
+		bytesSinceEviction.set( 0 );
+		try
+		{
+			final List< String > groups = new ArrayList<>( Arrays.asList( n5.list( "/" ) ) );
+			groups.sort( Comparator.comparingLong( this::lastAccess ) );
+
+			long total = 0;
+			final long[] sizes = new long[ groups.size() ];
+			for ( int i = 0; i < sizes.length; i++ )
+			{
+				sizes[ i ] = size( groups.get( i ) );
+				total += sizes[ i ];
+			}
+
+			for ( int i = 0; i < sizes.length && total > maxBytes; i++ )
+			{
+				if ( openGroups.contains( groups.get( i ) ) )
+					continue;
+
+				n5.remove( groups.get( i ) );
+				total -= sizes[ i ];
+			}
+		}
+		catch ( final Exception e )
+		{
+			logger.warn( "could not evict from disk cache " + directory, e );
+		}
+	}
+
+	private boolean matches( final String dataset, final DatasetAttributes attributes, final double[] sourceTransform )
+	{
+		if ( !n5.datasetExists( dataset ) )
+			return false;
+
+		final DatasetAttributes existing = n5.getDatasetAttributes( dataset );
+		return Arrays.equals( existing.getDimensions(), attributes.getDimensions() ) &&
+				Arrays.equals( existing.getBlockSize(), attributes.getBlockSize() ) &&
+				existing.getDataType() == attributes.getDataType() &&
+				Arrays.equals( sourceTransform, n5.getAttribute( dataset, SOURCE_TRANSFORM_KEY, double[].class ) );
+	}
+
+	private long lastAccess( final String group )
+	{
+		final Long lastAccess = n5.getAttribute( group, LAST_ACCESS_KEY, Long.class );
+		return lastAccess == null ? 0 : lastAccess;
+	}
+
+	private long size( final String group ) throws IOException
+	{
+		try ( Stream< Path > files = Files.walk( directory.toPath().resolve( group ) ) )
+		{
+			return files.filter( Files::isRegularFile ).mapToLong( f -> f.toFile().length() ).sum();
+		}
+	}
+
+	private static int elementSize( final Object array )
+	{
+		if ( array instanceof byte[] )
+			return 1;
+		else if ( array instanceof short[] || array instanceof char[] )
+			return 2;
+		else if ( array instanceof long[] || array instanceof double[] )
+			return 8;
+		else
+			return 4;
+	}
+
+	/**
+	 * Returns a stamp of the content of a local source, or an empty string if
+	 * the source is not stored locally. The stamp is the newest modification
+	 * time, the number and the total size of the files of the source, so
+	 * rewriting a chunk of an N5 or Zarr dataset, or its attributes, changes
+	 * the stamp even though the times of the container and dataset directories
+	 * only change when entries are added or removed.
+	 *
+	 * @param uri the URI of the source, may name a dataset as in root?dataset
+	 * @return the stamp
+	 */
+	public static String contentStamp( final String uri )
+	{
+		final File file = localFile( uri );
+		if ( file == null || !file.exists() )
+			return "";
+		else if ( !file.isDirectory() )
+			return file.lastModified() + ":" + file.length();
+
+		try ( Stream< Path > files = Files.walk( file.toPath() ) )
+		{
+			final long[] stamp = new long[ 3 ];
+			files.filter( Files::isRegularFile ).forEach( f -> {
+				final File g = f.toFile();
+				stamp[ 0 ] = Math.max( stamp[ 0 ], g.lastModified() );
+				stamp[ 1 ]++;
+				stamp[ 2 ] += g.length();
+			} );
+			return stamp[ 0 ] + ":" + stamp[ 1 ] + ":" + stamp[ 2 ];
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			return "";
+		}
+	}
+
+	/*
+	 * The modification time of a local transform, or 0 if the transform is not stored locally.
+	 * Transform URIs may name a group and attribute of a container, as in root?group#attribute,
+	 * in which case the newest file in the group counts, since a directory's time only changes
+	 * when entries are added or removed.
+	 */
+	private static long transformLastModified( final String transformUri )
+	{
+		final File file = localFile( transformUri );
+		if ( file == null || !file.exists() )
+			return 0;
+		else if ( !file.isDirectory() )
+			return file.lastModified();
+
+		try ( Stream< Path > files = Files.walk( file.toPath() ) )
+		{
+			return files.filter( Files::isRegularFile ).mapToLong( f -> f.toFile().lastModified() ).max().orElse( 0 );
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			return 0;
+		}
+	}
+
+	/*
+	 * The local file of a URI, or null if the URI is not local. URIs may name a group
+	 * or dataset of a container, as in root?group#attribute, in which case this is
+	 * the directory of the group.
+	 */
+	private static File localFile( final String uri )
+	{
+		final int query = uri.indexOf( '?' );
+		final int fragment = uri.indexOf( '#', query < 0 ? 0 : query );
+		final String root = uri.substring( 0, query >= 0 ? query : fragment >= 0 ? fragment : uri.length() );
+		final String group = query < 0 ? "" : uri.substring( query + 1, fragment >= 0 ? fragment : uri.length() );
+
+		final File rootFile = localRootFile( root );
+		if ( rootFile == null )
+			return null;
+
+		return group.isEmpty() ? rootFile : new File( rootFile, group );
+	}
+
+	/*
+	 * The local file of a URI without query or fragment, or null if the URI is not local.
+	 */
+	private static File localRootFile( final String uri )
+	{
+		try
+		{
+			final URI parsed = new URI( uri );
+			if ( "file".equals( parsed.getScheme() ) || parsed.getScheme() == null )
+				return new File( parsed.getPath() );
+			else if ( parsed.getScheme().length() == 1 )
+				return new File( uri ); // a windows drive letter
+			else
+				return null;
+		}
+		catch ( final Exception e )
+		{
+			return new File( uri );
+		}
+	}
+
+	private static String sha1( final String description )
+	{
+		try
+		{
+			final byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( description.getBytes( StandardCharsets.UTF_8 ) );
+			final StringBuilder hex = new StringBuilder();
+			for ( final byte b : digest )
+				hex.append( String.format( "%02x", b ) );
+
+			return hex.toString();
+		}
+		catch ( final NoSuchAlgorithmException e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+}
@@ -26,6 +26,7 @@ import net.imglib2.Localizable;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
 import net.imglib2.RealRandomAccess;
+import net.imglib2.realtransform.LatticeInterpolatedRealTransform;
 import net.imglib2.realtransform.RealTransform;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Util;
@@ -44,6 +45,9 @@ public class WarpMagnitudeRandomAccess< T extends RealType<T>> extends AbstractR
 	final RealPoint warpResPt;
 	final RealPoint baseResPt;
 
+	private double latticeSpacing = 0;
+	private int latticeDimensions;
+
 	protected WarpMagnitudeRandomAccess( double[] dimensions )
 	{
 		this( dimensions, null, null, null );
@@ -67,16 +71,35 @@ public class WarpMagnitudeRandomAccess< T extends RealType<T>> extends AbstractR
 
 		warpResPt = RealPoint.wrap( warpRes );
 		baseResPt = RealPoint.wrap( baseRes );
+		latticeDimensions = numDimensions();
+	}
+
+	/**
+	 * Evaluate the warp of copies of this access on a lattice and interpolate between
+	 * lattice points, see {@link LatticeInterpolatedRealTransform}.
+	 *
+	 * @param spacing the lattice spacing, or zero to evaluate the warp at every point
+	 */
+	public void setLatticeSpacing( double spacing )
+	{
+		this.latticeSpacing = spacing;
+	}
+
+	/**
+	 * @param nd the number of leading dimensions the lattice interpolates
+	 */
+	public void setLatticeDimensions( int nd )
+	{
+		this.latticeDimensions = nd;
 	}
 
 	@Override
 	public T get() 
 	{
-		T out = value.copy();
 		if( warp == null || baseline == null )
 		{
-			out.setZero();
-			return out;
+			value.setZero();
+			return value;
 		}
 
 		// apply the warp
@@ -89,9 +112,9 @@ public class WarpMagnitudeRandomAccess< T extends RealType<T>> extends AbstractR
 		for( int d = 0; d < warpRes.length; d++ )
 			dist += ( warpRes[ d ] - baseRes[ d ] ) * ( warpRes[ d ] - baseRes[ d ] );  
 
-		out.setReal( Math.sqrt( dist ));
+		value.setReal( Math.sqrt( dist ));
 
-		return out;
+		return value;
 	}
 	
 	private boolean withinRad( double[] pt1, double[] pt2, double rad )
@@ -106,8 +129,15 @@ public class WarpMagnitudeRandomAccess< T extends RealType<T>> extends AbstractR
 
 	public RealRandomAccess<T> copy() 
 	{
-		return new WarpMagnitudeRandomAccess< T >( new double[ position.length ], value.copy(), 
-				warp, baseline );
+		RealTransform copyWarp = warp;
+		if( warp != null && latticeSpacing > 0 && !( warp instanceof LatticeInterpolatedRealTransform ) )
+			copyWarp = new LatticeInterpolatedRealTransform( warp, latticeSpacing, latticeDimensions );
+
+		final WarpMagnitudeRandomAccess< T > ra = new WarpMagnitudeRandomAccess< T >( new double[ position.length ], value.copy(), 
+				copyWarp, baseline );
+		ra.latticeSpacing = latticeSpacing;
+		ra.latticeDimensions = latticeDimensions;
+		return ra;
 	}
 
 	public RealRandomAccess<T> copyRandomAccess() 
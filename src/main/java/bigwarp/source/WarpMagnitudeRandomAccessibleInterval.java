@@ -38,6 +38,10 @@ public class WarpMagnitudeRandomAccessibleInterval<T extends RealType<T>> extend
 	{
 		super( interval );
 		ra = new WarpMagnitudeRandomAccess< T >( new double[ interval.numDimensions() ], t, warp, base );
+
+		// a single slice does not need to be interpolated along z
+		if( interval.numDimensions() > 2 && interval.dimension( 2 ) <= 1 )
+			ra.setLatticeDimensions( 2 );
 	}
 
 	@Override
@@ -84,15 +84,9 @@ public class WarpMagnitudeSource< T extends RealType< T >> implements Source< T
 	{
 		double maxVal = 0.0;
 		
-		int ndims = lm.getNumdims();
-		double[] pt = new double[ ndims ];
-		
-		for( Double[] movingPt : lm.getPoints( true ) )
+		for( double[] movingPt : lm.getPointsCopy( true ) )
 		{
-			for( int d = 0; d < ndims; d++ )
-				pt[ d ] = movingPt[ d ];
-			
-			warpMagImg.ra.setPosition(  pt );
+			warpMagImg.ra.setPosition(  movingPt );
 			double val = warpMagImg.ra.get().getRealDouble();
 			
 			if( val > maxVal )
@@ -105,6 +99,17 @@ public class WarpMagnitudeSource< T extends RealType< T >> implements Source< T
 	{
 		warpMagImg.ra.warp = warp;
 	}
+
+	/**
+	 * Render from the warp sampled on a lattice with the given spacing (in pixels) and
+	 * interpolated in between, which is much cheaper for smooth warps.
+	 *
+	 * @param spacing the lattice spacing, or zero to evaluate the warp at every pixel
+	 */
+	public void setLatticeSpacing( double spacing )
+	{
+		warpMagImg.ra.setLatticeSpacing( spacing );
+	}
 	
 	public void setBaseline( RealTransform baseline )
 	{
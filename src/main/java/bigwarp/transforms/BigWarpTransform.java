@@ -88,6 +88,8 @@ public class BigWarpTransform
 
 	private int maxIterations = 1000;
 
+	private boolean warmStartInverse = true;
+
 	private RealRandomAccessible<? extends RealType<?>> lambdaRaw;
 
 	private RealRandomAccessible<? extends RealType<?>> lambda;
@@ -171,6 +173,19 @@ public class BigWarpTransform
 		return maskInterpolationType.equals( MASK_INTERP ) || maskInterpolationType.equals( ROT_MASK_INTERP ) || maskInterpolationType.equals( SIM_MASK_INTERP );
 	}
 
+	/**
+	 * Masked transformations are the identity wherever the mask is zero.
+	 *
+	 * @return the mask if the transformation is masked by a spherical mask, otherwise null
+	 */
+	public PlateauSphericalMaskRealRandomAccessible getSphericalMask()
+	{
+		if ( isMasked() && lambda instanceof PlateauSphericalMaskRealRandomAccessible )
+			return ( PlateauSphericalMaskRealRandomAccessible ) lambda;
+
+		return null;
+	}
+
 	public AbstractTransformSolver< ? > getSolver()
 	{
 		return solver;
@@ -180,7 +195,7 @@ public class BigWarpTransform
 	{
 		if ( transformType.equals( TPS ) )
 		{
-			solver = new TpsTransformSolver();
+			solver = new TpsTransformSolver( true );
 		}
 		else
 		{
@@ -213,6 +228,22 @@ public class BigWarpTransform
 		this.maxIterations = maxIterations;
 	}
 
+	/**
+	 * If true (the default), the inverse of a thin plate spline transformation starts
+	 * from the previous inverse, which speeds up evaluation along scanlines and blocks.
+	 *
+	 * @param warmStartInverse whether to warm start the inverse
+	 */
+	public void setWarmStartInverse( final boolean warmStartInverse )
+	{
+		this.warmStartInverse = warmStartInverse;
+	}
+
+	public boolean isWarmStartInverse()
+	{
+		return warmStartInverse;
+	}
+
 	public double getInverseTolerance()
 	{
 		return inverseTolerance;
@@ -271,11 +302,18 @@ public class BigWarpTransform
 		if( transformType.equals( TPS ))
 		{
 			final WrappedIterativeInvertibleRealTransform<?> tpsXfm = (WrappedIterativeInvertibleRealTransform< ? >) solver.solve( tableModel, index );
-			tpsXfm.getOptimzer().setMaxIters(maxIterations);
-			tpsXfm.getOptimzer().setTolerance(inverseTolerance);
-			tpsXfm.getOptimzer().setBeta(0.5);
-			tpsXfm.getOptimzer().setMaxStep(1000);
-			invXfm = tpsXfm;
+			if( warmStartInverse )
+			{
+				invXfm = WarmStartIterativeInvertibleRealTransform.wrap( tpsXfm, inverseTolerance, maxIterations, 0.5, 1000 );
+			}
+			else
+			{
+				tpsXfm.getOptimzer().setMaxIters(maxIterations);
+				tpsXfm.getOptimzer().setTolerance(inverseTolerance);
+				tpsXfm.getOptimzer().setBeta(0.5);
+				tpsXfm.getOptimzer().setMaxStep(1000);
+				invXfm = tpsXfm;
+			}
 		}
 		else
 		{
@@ -32,6 +32,7 @@ import mpicbg.models.RigidModel3D;
 import mpicbg.models.SimilarityModel2D;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealRandomAccessible;
+import net.imglib2.realtransform.AffineInterpolatorLookupTable;
 import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.InvertibleRealTransform;
@@ -112,12 +113,16 @@ public class MaskedSimRotTransformSolver<T extends RealType<T>> extends Abstract
 		{
 			final AffineTransform2D sim = new AffineTransform2D();
 			BigWarpTransform.affine2d( ( AbstractAffineModel2D ) interpSolver.getModel(), sim );
-			msim = new MaskedSimilarityTransform2D( sim, lambda, center, interp );
+			final MaskedSimilarityTransform2D msim2d = new MaskedSimilarityTransform2D( sim, lambda, center, interp );
+			msim2d.setLookupTableSteps( AffineInterpolatorLookupTable.DEFAULT_NUM_STEPS );
+			msim = msim2d;
 		}
 		else
 		{
 			final AffineTransform3D sim = BigWarpTransform.toAffine3D( ( AbstractAffineModel3D ) interpSolver.getModel() );
-			msim = new MaskedSimilarityTransform( sim, lambda, center, interp );
+			final MaskedSimilarityTransform msim3d = new MaskedSimilarityTransform( sim, lambda, center, interp );
+			msim3d.setLookupTableSteps( AffineInterpolatorLookupTable.DEFAULT_NUM_STEPS );
+			msim = msim3d;
 		}
 
 		final double[][] xfmTgt = transformPoints( msim, tgtPts );
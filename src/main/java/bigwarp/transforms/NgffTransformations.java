@@ -29,9 +29,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import org.janelia.saalfeldlab.n5.Compression;
 import org.janelia.saalfeldlab.n5.N5Exception;
@@ -58,6 +55,9 @@ import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.v05.transformations
 import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.v05.transformations.SequenceCoordinateTransform;
 import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.v05.transformations.TranslationCoordinateTransform;
 
+import bigwarp.BigWarpExporter;
+import bigwarp.ExportScheduler;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -334,16 +334,42 @@ public class NgffTransformations
 			final int[] blockSize,
 			final Compression compression,
 			final int nThreads )
+	{
+		return save( n5, dataset, dfield, inName, outName, spacing, offset, unit, blockSize, compression, nThreads, null );
+	}
+
+	/**
+	 * As {@link #save(N5Writer, String, RandomAccessibleInterval, String, String, double[], double[], String, int[], Compression, int)},
+	 * continuing an interrupted save with the same resumeKey if it is not null.
+	 */
+	public static < T extends NativeType< T > & RealType< T > > DisplacementFieldCoordinateTransform<?> save(
+			final N5Writer n5,
+			final String dataset,
+			final RandomAccessibleInterval< T > dfield,
+			final String inName,
+			final String outName,
+			final double[] spacing,
+			final double[] offset,
+			final String unit,
+			final int[] blockSize,
+			final Compression compression,
+			final int nThreads,
+			final String resumeKey )
 	{
 		final String[] axisNames = ( spacing.length == 2 ) ? new String[] { "x", "y" } : new String[] { "x", "y", "z"};
 		final CoordinateSystem inputCoordinates = new CoordinateSystem( inName, Axis.space( unit, axisNames ) );
 		final CoordinateSystem outputCoordinates = new CoordinateSystem( outName, Axis.space( unit, axisNames ) );
 
-		final ThreadPoolExecutor threadPool = new ThreadPoolExecutor( nThreads, nThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()	);
-		final DisplacementFieldCoordinateTransform<?> ngffDfield = saveDisplacementFieldNgff( n5, dataset, "/", inputCoordinates, outputCoordinates,
-				dfield, spacing, offset, blockSize, compression, threadPool );
-
-		return ngffDfield;
+		final ExportScheduler.Job threadPool = ExportScheduler.getInstance().newJob( nThreads );
+		try
+		{
+			return (DisplacementFieldCoordinateTransform<?>)saveFieldNgff( n5, dataset, "/", inputCoordinates, outputCoordinates,
+					TransformField.DISPLACEMENT, dfield, spacing, offset, blockSize, compression, threadPool, resumeKey );
+		}
+		finally
+		{
+			threadPool.shutdown();
+		}
 
 //		final DisplacementFieldCoordinateTransform ngffDfield = new DisplacementFieldCoordinateTransform( "", dataset, "linear" );
 //		return ngffDfield;
@@ -483,6 +509,25 @@ public class NgffTransformations
 			final Compression compression,
 			ExecutorService exec ) {
 
+		return saveFieldNgff( n5Writer, dataset, metadataDataset, inputCoordinates, outputCoordinates,
+				type, dfield, spacing, offset, blockSize, compression, exec, null );
+	}
+
+	public static final <T extends NativeType<T> & RealType<T>> CoordinateTransform<?> saveFieldNgff(
+			final N5Writer n5Writer,
+			final String dataset,
+			final String metadataDataset,
+			final CoordinateSystem inputCoordinates,
+			final CoordinateSystem outputCoordinates,
+			final TransformField type,
+			final RandomAccessibleInterval<T> dfield,
+			final double[] spacing,
+			final double[] offset,
+			final int[] blockSize,
+			final Compression compression,
+			ExecutorService exec,
+			final String resumeKey ) {
+
 		int[] vecBlkSz;
 		if( blockSize.length >= dfield.numDimensions() )
 			vecBlkSz = blockSize;
@@ -497,7 +542,7 @@ public class NgffTransformations
 
 		try
 		{
-			N5Utils.save(dfield, n5Writer, dataset, vecBlkSz, compression, exec);
+			BigWarpExporter.saveByTiles(dfield, n5Writer, dataset, vecBlkSz, compression, exec, BigWarpExporter.numThreads(exec), null, resumeKey);
 		}
 		catch ( final InterruptedException | ExecutionException e )
 		{
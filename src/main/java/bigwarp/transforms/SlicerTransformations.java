@@ -30,9 +30,9 @@ import org.janelia.saalfeldlab.n5.N5Exception;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5DisplacementField;
-import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.universe.N5Factory;
 
+import bigwarp.BigWarpExporter;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.realtransform.AffineGet;
 import net.imglib2.realtransform.AffineTransform2D;
@@ -68,6 +68,21 @@ public class SlicerTransformations
 			final Compression compression,
 			final ExecutorService exec ) {
 
+		saveDisplacementField( n5Writer, dataset, dfield, blockSize, compression, exec, null );
+	}
+
+	/*
+	 * As above, continuing an interrupted save with the same resumeKey if it is not null.
+	 */
+	public static final <T extends NativeType<T> & RealType<T>> void saveDisplacementField(
+			final N5Writer n5Writer,
+			final String dataset,
+			final RandomAccessibleInterval<T> dfield,
+			final int[] blockSize,
+			final Compression compression,
+			final ExecutorService exec,
+			final String resumeKey ) {
+
 		int[] vecBlkSz;
 		if( blockSize.length >= dfield.numDimensions() )
 			vecBlkSz = blockSize;
@@ -84,7 +99,7 @@ public class SlicerTransformations
 		final RandomAccessibleInterval< T > dfieldPerm = Views.moveAxis( dfield, 0, 3 );
 		try
 		{
-			N5Utils.save( dfieldPerm, n5Writer, dataset, vecBlkSz, compression, exec );
+			BigWarpExporter.saveByTiles( dfieldPerm, n5Writer, dataset, vecBlkSz, compression, exec, BigWarpExporter.numThreads( exec ), null, resumeKey );
 		}
 		catch ( final N5Exception e )
 		{
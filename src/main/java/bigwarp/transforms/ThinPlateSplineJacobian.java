@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.transforms;
+
+import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
+
+/**
+ * Computes the jacobian of a thin plate spline analytically, into a reused buffer.
+ * <p>
+ * The spline is y = x + Ax + b + sum_j w_j U( |x - p_j| ) with U(r) = r^2 log(r), so
+ * the distance to each landmark is computed once and shared by all partial derivatives.
+ * Instances are not thread safe, use {@link #copy()} to get one per thread.
+ */
+public class ThinPlateSplineJacobian
+{
+	// same as jitk
+	private static final double EPS = 1e-8;
+
+	private final int ndims;
+
+	private final int numLandmarks;
+
+	// ndims x numLandmarks
+	private final double[][] landmarks;
+
+	// ndims x numLandmarks
+	private final double[][] weights;
+
+	// the identity plus the affine part of the spline
+	private final double[][] linear;
+
+	private final double[][] jacobian;
+
+	private final double[] diff;
+
+	public ThinPlateSplineJacobian( final ThinPlateR2LogRSplineKernelTransform tps )
+	{
+		ndims = tps.getNumDims();
+		numLandmarks = tps.getNumLandmarks();
+		landmarks = tps.getSourceLandmarks();
+		weights = tps.getKnotWeights();
+
+		final double[][] affine = tps.getAffine();
+		linear = new double[ ndims ][ ndims ];
+		for ( int i = 0; i < ndims; i++ )
+			for ( int k = 0; k < ndims; k++ )
+				linear[ i ][ k ] = ( i == k ? 1 : 0 ) + ( affine == null ? 0 : affine[ i ][ k ] );
+
+		jacobian = new double[ ndims ][ ndims ];
+		diff = new double[ ndims ];
+	}
+
+	private ThinPlateSplineJacobian( final ThinPlateSplineJacobian other )
+	{
+		ndims = other.ndims;
+		numLandmarks = other.numLandmarks;
+		landmarks = other.landmarks;
+		weights = other.weights;
+		linear = other.linear;
+		jacobian = new double[ ndims ][ ndims ];
+		diff = new double[ ndims ];
+	}
+
+	public int numDimensions()
+	{
+		return ndims;
+	}
+
+	/**
+	 * Computes the jacobian at a point.
+	 *
+	 * @param x the point
+	 * @return the jacobian, jacobian[ i ][ k ] = dy_i / dx_k, overwritten by the next call
+	 */
+	public double[][] jacobian( final double[] x )
+	{
+		for ( int i = 0; i < ndims; i++ )
+			System.arraycopy( linear[ i ], 0, jacobian[ i ], 0, ndims );
+
+		if ( weights == null )
+			return jacobian;
+
+		for ( int j = 0; j < numLandmarks; j++ )
+		{
+			double r2 = 0;
+			for ( int k = 0; k < ndims; k++ )
+			{
+				diff[ k ] = x[ k ] - landmarks[ k ][ j ];
+				r2 += diff[ k ] * diff[ k ];
+			}
+
+			// d/dx_k r^2 log(r) = ( x_k - p_k )( 2 log(r) + 1 ), which vanishes at the landmark
+			if ( r2 <= EPS * EPS )
+				continue;
+
+			final double s = Math.log( r2 ) + 1;
+			for ( int i = 0; i < ndims; i++ )
+			{
+				final double ws = weights[ i ][ j ] * s;
+				final double[] row = jacobian[ i ];
+				for ( int k = 0; k < ndims; k++ )
+					row[ k ] += ws * diff[ k ];
+			}
+		}
+		return jacobian;
+	}
+
+	/**
+	 * @param x the point
+	 * @return the determinant of the jacobian at the point
+	 */
+	public double determinant( final double[] x )
+	{
+		return determinant( jacobian( x ), ndims );
+	}
+
+	/**
+	 * @param m a 2x2 or 3x3 matrix
+	 * @param n the size of the matrix
+	 * @return the determinant of m
+	 */
+	public static double determinant( final double[][] m, final int n )
+	{
+		if ( n == 2 )
+			return m[ 0 ][ 0 ] * m[ 1 ][ 1 ] - m[ 0 ][ 1 ] * m[ 1 ][ 0 ];
+
+		return m[ 0 ][ 0 ] * ( m[ 1 ][ 1 ] * m[ 2 ][ 2 ] - m[ 1 ][ 2 ] * m[ 2 ][ 1 ] )
+				- m[ 0 ][ 1 ] * ( m[ 1 ][ 0 ] * m[ 2 ][ 2 ] - m[ 1 ][ 2 ] * m[ 2 ][ 0 ] )
+				+ m[ 0 ][ 2 ] * ( m[ 1 ][ 0 ] * m[ 2 ][ 1 ] - m[ 1 ][ 1 ] * m[ 2 ][ 0 ] );
+	}
+
+	public ThinPlateSplineJacobian copy()
+	{
+		return new ThinPlateSplineJacobian( this );
+	}
+}
@@ -21,17 +21,615 @@
  */
 package bigwarp.transforms;
 
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
 import net.imglib2.realtransform.ThinplateSplineTransform;
 import net.imglib2.realtransform.inverse.WrappedIterativeInvertibleRealTransform;
 
+/**
+ * Estimates a thin plate spline from target space to moving space.
+ * <p>
+ * In incremental mode, the solver keeps the inverse of the kernel system of the previous call.
+ * If the landmarks differ from those of the previous call only by their moving space positions,
+ * or by a single landmark that moved in target space, was added, or was removed, the inverse
+ * is updated with a low-rank correction in O(n^2) rather than re-solving the full system in O(n^3).
+ * Every update is checked against its residual at the changed landmark, and the solver falls
+ * back to a full solve if the update was not accurate enough. {@link #getLastSolveType()}
+ * reports which path the last call took.
+ */
 public class TpsTransformSolver extends AbstractTransformSolver< WrappedIterativeInvertibleRealTransform< ? >>
 {
+	public static enum SolveType { FULL, DISPLACEMENT, MOVE, ADD, REMOVE };
+
+	private static final Logger logger = LoggerFactory.getLogger( TpsTransformSolver.class );
+
+	// same as jitk
+	private static final double EPS = 1e-8;
+
+	private static final double PIVOT_EPS = 1e-12;
+
+	private final boolean incremental;
+
+	private double tolerance = 1e-6;
+
+	private int maxUpdates = 256;
+
+	private SolveType lastSolveType;
+
+	private int numUpdates;
+
+	private int ndims;
+
+	private int n;
+
+	private double[][] srcPts;
+
+	private double[][] dstPts;
+
+	// inverse of the kernel system, row-major, affine part first then one row per landmark
+	private double[] minv;
+
+	// the solution of the kernel system, row-major, one column per dimension
+	private double[] weights;
+
+	public TpsTransformSolver()
+	{
+		this( false );
+	}
+
+	public TpsTransformSolver( final boolean incremental )
+	{
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental()
+	{
+		return incremental;
+	}
+
+	/**
+	 * Sets the accepted residual of an incremental update at the changed landmark,
+	 * relative to the magnitude of that landmark's coordinates.
+	 *
+	 * @param tolerance the relative tolerance
+	 */
+	public void setTolerance( final double tolerance )
+	{
+		this.tolerance = tolerance;
+	}
+
+	public double getTolerance()
+	{
+		return tolerance;
+	}
+
+	/**
+	 * Sets the number of consecutive incremental updates after which a full solve is forced,
+	 * bounding the accumulation of round-off error.
+	 *
+	 * @param maxUpdates the maximum number of updates
+	 */
+	public void setMaxUpdates( final int maxUpdates )
+	{
+		this.maxUpdates = maxUpdates;
+	}
+
+	public int getMaxUpdates()
+	{
+		return maxUpdates;
+	}
+
+	/**
+	 * @return how the most recent transformation was computed, or null if nothing was solved yet
+	 */
+	public SolveType getLastSolveType()
+	{
+		return lastSolveType;
+	}
+
+	/**
+	 * Discards the cached kernel system, so that the next call does a full solve.
+	 */
+	public synchronized void reset()
+	{
+		n = 0;
+		srcPts = null;
+		dstPts = null;
+		minv = null;
+		weights = null;
+		numUpdates = 0;
+	}
+
+	@Override
 	public WrappedIterativeInvertibleRealTransform<?> solve( final double[][] mvgPts, final double[][] tgtPts )
 	{
-		return new WrappedIterativeInvertibleRealTransform<ThinplateSplineTransform>( 
-				new ThinplateSplineTransform( 
-						new ThinPlateR2LogRSplineKernelTransform( tgtPts.length, tgtPts, mvgPts )));
+		final ThinPlateR2LogRSplineKernelTransform tps;
+		if ( incremental )
+			tps = solveIncremental( tgtPts, mvgPts );
+		else
+		{
+			tps = new ThinPlateR2LogRSplineKernelTransform( tgtPts.length, tgtPts, mvgPts );
+			lastSolveType = SolveType.FULL;
+		}
+
+		return new WrappedIterativeInvertibleRealTransform<ThinplateSplineTransform>( new ThinplateSplineTransform( tps ) );
+	}
+
+	private synchronized ThinPlateR2LogRSplineKernelTransform solveIncremental( final double[][] src, final double[][] dst )
+	{
+		ThinPlateR2LogRSplineKernelTransform tps = null;
+		if ( minv != null && numUpdates < maxUpdates )
+			tps = update( src, dst );
+
+		if ( tps == null )
+			tps = solveFull( src, dst );
+
+		logger.debug( "tps solve with {} landmarks: {}", n, lastSolveType );
+		return tps;
+	}
+
+	private ThinPlateR2LogRSplineKernelTransform solveFull( final double[][] src, final double[][] dst )
+	{
+		ndims = src.length;
+		n = src[ 0 ].length;
+		srcPts = copy( src );
+		dstPts = copy( dst );
+		numUpdates = 0;
+		lastSolveType = SolveType.FULL;
+
+		if ( n > 0 && invertKernelSystem() )
+		{
+			computeWeights();
+			final ThinPlateR2LogRSplineKernelTransform tps = build();
+			if ( isAccurate( tps, 0 ) && isAccurate( tps, n - 1 ) )
+				return tps;
+		}
+
+		// the kernel system could not be inverted accurately, let jitk solve it
+		minv = null;
+		weights = null;
+		return new ThinPlateR2LogRSplineKernelTransform( ndims, src, dst );
+	}
+
+	/**
+	 * Updates the cached solution if src and dst differ from the cached landmarks in a way
+	 * that allows it.
+	 *
+	 * @return the updated transformation, or null if a full solve is needed
+	 */
+	private ThinPlateR2LogRSplineKernelTransform update( final double[][] src, final double[][] dst )
+	{
+		if ( src.length != ndims )
+			return null;
+
+		final int m = src[ 0 ].length;
+		if ( m == n )
+		{
+			int moved = -1;
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( !equal( src, i, srcPts, i ) )
+				{
+					// more than one landmark moved in the target space
+					if ( moved >= 0 )
+						return null;
+
+					moved = i;
+				}
+			}
+
+			if ( moved < 0 )
+				return updateDisplacements( dst );
+
+			final double[] x = column( src, moved );
+			if ( !move( moved, x ) )
+				return null;
+
+			return finishUpdate( SolveType.MOVE, src, dst, moved );
+		}
+		else if ( m == n + 1 )
+		{
+			int added = n;
+			for ( int i = 0; i < n; i++ )
+				if ( !equal( src, i, srcPts, i ) || !equal( dst, i, dstPts, i ) )
+				{
+					added = i;
+					break;
+				}
+
+			for ( int i = added; i < n; i++ )
+				if ( !equal( src, i + 1, srcPts, i ) || !equal( dst, i + 1, dstPts, i ) )
+					return null;
+
+			if ( !add( added, column( src, added ) ) )
+				return null;
+
+			return finishUpdate( SolveType.ADD, src, dst, added );
+		}
+		else if ( m == n - 1 && m > 0 )
+		{
+			int removed = m;
+			for ( int i = 0; i < m; i++ )
+				if ( !equal( src, i, srcPts, i ) || !equal( dst, i, dstPts, i ) )
+				{
+					removed = i;
+					break;
+				}
+
+			for ( int i = removed; i < m; i++ )
+				if ( !equal( src, i, srcPts, i + 1 ) || !equal( dst, i, dstPts, i + 1 ) )
+					return null;
+
+			if ( !remove( removed ) )
+				return null;
+
+			return finishUpdate( SolveType.REMOVE, src, dst, Math.min( removed, m - 1 ) );
+		}
+
+		return null;
+	}
+
+	private ThinPlateR2LogRSplineKernelTransform finishUpdate( final SolveType type,
+			final double[][] src, final double[][] dst, final int changed )
+	{
+		n = src[ 0 ].length;
+		srcPts = copy( src );
+		dstPts = copy( dst );
+		computeWeights();
+
+		final ThinPlateR2LogRSplineKernelTransform tps = build();
+		if ( !isAccurate( tps, changed ) )
+			return null;
+
+		numUpdates++;
+		lastSolveType = type;
+		return tps;
+	}
+
+	/**
+	 * The kernel system does not depend on the moving space positions, so only
+	 * the solution needs to change, by the columns of the inverse for each changed landmark.
+	 */
+	private ThinPlateR2LogRSplineKernelTransform updateDisplacements( final double[][] dst )
+	{
+		final int sz = size();
+		final int k0 = ndims + 1;
+		final double[] delta = new double[ ndims ];
+		int changed = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			if ( equal( dst, i, dstPts, i ) )
+				continue;
+
+			for ( int d = 0; d < ndims; d++ )
+			{
+				delta[ d ] = dst[ d ][ i ] - dstPts[ d ][ i ];
+				dstPts[ d ][ i ] = dst[ d ][ i ];
+			}
+
+			final int p = k0 + i;
+			for ( int r = 0; r < sz; r++ )
+			{
+				final double mrp = minv[ r * sz + p ];
+				for ( int d = 0; d < ndims; d++ )
+					weights[ r * ndims + d ] += mrp * delta[ d ];
+			}
+			changed = i;
+		}
+
+		final ThinPlateR2LogRSplineKernelTransform tps = build();
+		if ( !isAccurate( tps, changed ) )
+			return null;
+
+		numUpdates++;
+		lastSolveType = SolveType.DISPLACEMENT;
+		return tps;
+	}
+
+	/**
+	 * Moves the target space position of landmark k to x, a symmetric rank-two update of the
+	 * kernel system applied to its inverse with the Woodbury identity.
+	 */
+	private boolean move( final int k, final double[] x )
+	{
+		final int sz = size();
+		final int p = ndims + 1 + k;
+
+		final double[] u = new double[ sz ];
+		final double[] uOld = new double[ sz ];
+		systemRow( x, k, u );
+		systemRow( column( srcPts, k ), k, uOld );
+		for ( int j = 0; j < sz; j++ )
+			u[ j ] -= uOld[ j ];
+
+		final double[] g = multiply( u );
+		final double[] m = new double[ sz ];
+		for ( int r = 0; r < sz; r++ )
+			m[ r ] = minv[ r * sz + p ];
+
+		final double a = 1 + g[ p ];
+		final double ug = dot( u, g );
+		final double mpp = m[ p ];
+		final double det = a * a - mpp * ug;
+		if ( !Double.isFinite( det ) || Math.abs( det ) < PIVOT_EPS )
+			return false;
+
+		for ( int r = 0; r < sz; r++ )
+		{
+			final int ri = r * sz;
+			for ( int s = 0; s < sz; s++ )
+				minv[ ri + s ] -= ( a * ( m[ r ] * g[ s ] + g[ r ] * m[ s ] ) - mpp * g[ r ] * g[ s ] - ug * m[ r ] * m[ s ] ) / det;
+		}
+		return true;
+	}
+
+	/**
+	 * Inserts a landmark at target space position x as landmark k, bordering the inverse of the
+	 * kernel system with the Schur complement of the new row.
+	 */
+	private boolean add( final int k, final double[] x )
+	{
+		final int sz = size();
+		final int p = ndims + 1 + k;
+
+		final double[] c = new double[ sz ];
+		systemRow( x, -1, c );
+		final double[] g = multiply( c );
+
+		double s = 0;
+		double mag = 0;
+		for ( int j = 0; j < sz; j++ )
+		{
+			s -= c[ j ] * g[ j ];
+			mag += Math.abs( c[ j ] * g[ j ] );
+		}
+
+		if ( !Double.isFinite( s ) || Math.abs( s ) <= PIVOT_EPS * mag )
+			return false;
+
+		final int nsz = sz + 1;
+		final double[] out = new double[ nsz * nsz ];
+		for ( int r = 0; r < sz; r++ )
+		{
+			final int rr = r < p ? r : r + 1;
+			for ( int t = 0; t < sz; t++ )
+			{
+				final int tt = t < p ? t : t + 1;
+				out[ rr * nsz + tt ] = minv[ r * sz + t ] + g[ r ] * g[ t ] / s;
+			}
+			out[ rr * nsz + p ] = -g[ r ] / s;
+			out[ p * nsz + rr ] = -g[ r ] / s;
+		}
+		out[ p * nsz + p ] = 1 / s;
+
+		minv = out;
+		return true;
+	}
+
+	/**
+	 * Removes landmark k, the inverse of the kernel system with row and column k removed
+	 * is the Schur complement of the corresponding entry of the current inverse.
+	 */
+	private boolean remove( final int k )
+	{
+		final int sz = size();
+		final int p = ndims + 1 + k;
+
+		final double mpp = minv[ p * sz + p ];
+		if ( !Double.isFinite( mpp ) || Math.abs( mpp ) < Double.MIN_NORMAL )
+			return false;
+
+		final double[] m = new double[ sz ];
+		for ( int r = 0; r < sz; r++ )
+			m[ r ] = minv[ r * sz + p ];
+
+		final int nsz = sz - 1;
+		final double[] out = new double[ nsz * nsz ];
+		for ( int r = 0; r < sz; r++ )
+		{
+			if ( r == p )
+				continue;
+
+			final int rr = r < p ? r : r - 1;
+			for ( int t = 0; t < sz; t++ )
+			{
+				if ( t == p )
+					continue;
+
+				final int tt = t < p ? t : t - 1;
+				out[ rr * nsz + tt ] = minv[ r * sz + t ] - m[ r ] * m[ t ] / mpp;
+			}
+		}
+
+		minv = out;
+		return true;
+	}
+
+	private boolean invertKernelSystem()
+	{
+		final int sz = size();
+		final int k0 = ndims + 1;
+		final DMatrixRMaj l = new DMatrixRMaj( sz, sz );
+		final double[] row = new double[ sz ];
+		for ( int i = 0; i < n; i++ )
+		{
+			systemRow( column( srcPts, i ), i, row );
+			for ( int j = 0; j < sz; j++ )
+			{
+				l.set( k0 + i, j, row[ j ] );
+				l.set( j, k0 + i, row[ j ] );
+			}
+		}
+
+		if ( !CommonOps_DDRM.invert( l ) )
+			return false;
+
+		minv = l.getData();
+		return true;
+	}
+
+	/**
+	 * The row of the kernel system for a landmark at target space position x with respect to the
+	 * current landmarks, where the kernel entry of landmark skip (if non-negative) is zero.
+	 */
+	private void systemRow( final double[] x, final int skip, final double[] row )
+	{
+		for ( int d = 0; d < ndims; d++ )
+			row[ d ] = x[ d ];
+
+		row[ ndims ] = 1;
+
+		final int k0 = ndims + 1;
+		for ( int i = 0; i < n; i++ )
+		{
+			if ( i == skip )
+			{
+				row[ k0 + i ] = 0;
+				continue;
+			}
+
+			double r2 = 0;
+			for ( int d = 0; d < ndims; d++ )
+			{
+				final double diff = x[ d ] - srcPts[ d ][ i ];
+				r2 += diff * diff;
+			}
+			row[ k0 + i ] = kernel( r2 );
+		}
+	}
+
+	/**
+	 * r^2 log(r) in terms of the squared distance, zero for coincident points as in jitk.
+	 */
+	private static double kernel( final double r2 )
+	{
+		if ( r2 > EPS * EPS )
+			return 0.5 * r2 * Math.log( r2 );
+		else
+			return 0;
+	}
+
+	private void computeWeights()
+	{
+		final int sz = size();
+		final int k0 = ndims + 1;
+		weights = new double[ sz * ndims ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final int p = k0 + i;
+			for ( int d = 0; d < ndims; d++ )
+			{
+				final double y = dstPts[ d ][ i ] - srcPts[ d ][ i ];
+				for ( int r = 0; r < sz; r++ )
+					weights[ r * ndims + d ] += minv[ r * sz + p ] * y;
+			}
+		}
+	}
+
+	/**
+	 * The tps computes y = x + Ax + b + sum_i w_i U( |x - p_i| ), so the solution of the kernel
+	 * system holds A (transposed), then b, then one knot weight per landmark and dimension.
+	 */
+	private ThinPlateR2LogRSplineKernelTransform build()
+	{
+		final double[][] aMatrix = new double[ ndims ][ ndims ];
+		final double[] bVector = new double[ ndims ];
+		for ( int d = 0; d < ndims; d++ )
+		{
+			for ( int j = 0; j < ndims; j++ )
+				aMatrix[ d ][ j ] = weights[ j * ndims + d ];
+
+			bVector[ d ] = weights[ ndims * ndims + d ];
+		}
+
+		final int k0 = ndims + 1;
+		final double[] knotWeights = new double[ n * ndims ];
+		for ( int i = 0; i < n; i++ )
+			for ( int d = 0; d < ndims; d++ )
+				knotWeights[ i * ndims + d ] = weights[ ( k0 + i ) * ndims + d ];
+
+		return new ThinPlateR2LogRSplineKernelTransform( copy( srcPts ), aMatrix, bVector, knotWeights );
+	}
+
+	/**
+	 * The tps interpolates its landmarks, so it should map landmark i exactly onto its moving position.
+	 */
+	private boolean isAccurate( final ThinPlateR2LogRSplineKernelTransform tps, final int i )
+	{
+		final double[] x = column( srcPts, i );
+		final double[] y = new double[ ndims ];
+		tps.apply( x, y );
+
+		double scale = 1;
+		for ( int d = 0; d < ndims; d++ )
+			scale = Math.max( scale, Math.max( Math.abs( x[ d ] ), Math.abs( dstPts[ d ][ i ] ) ) );
+
+		for ( int d = 0; d < ndims; d++ )
+			if ( !( Math.abs( y[ d ] - dstPts[ d ][ i ] ) <= tolerance * scale ) )
+				return false;
+
+		return true;
+	}
+
+	private double[] multiply( final double[] v )
+	{
+		final int sz = size();
+		final double[] out = new double[ sz ];
+		for ( int r = 0; r < sz; r++ )
+		{
+			final int ri = r * sz;
+			double sum = 0;
+			for ( int t = 0; t < sz; t++ )
+				sum += minv[ ri + t ] * v[ t ];
+
+			out[ r ] = sum;
+		}
+		return out;
+	}
+
+	private int size()
+	{
+		return n + ndims + 1;
+	}
+
+	private static double dot( final double[] a, final double[] b )
+	{
+		double sum = 0;
+		for ( int i = 0; i < a.length; i++ )
+			sum += a[ i ] * b[ i ];
+
+		return sum;
+	}
+
+	private static double[] column( final double[][] pts, final int i )
+	{
+		final double[] x = new double[ pts.length ];
+		for ( int d = 0; d < pts.length; d++ )
+			x[ d ] = pts[ d ][ i ];
+
+		return x;
+	}
+
+	private static boolean equal( final double[][] a, final int i, final double[][] b, final int j )
+	{
+		for ( int d = 0; d < a.length; d++ )
+			if ( a[ d ][ i ] != b[ d ][ j ] )
+				return false;
+
+		return true;
+	}
+
+	private static double[][] copy( final double[][] pts )
+	{
+		final double[][] out = new double[ pts.length ][];
+		for ( int d = 0; d < pts.length; d++ )
+			out[ d ] = pts[ d ].clone();
+
+		return out;
 	}
 
 }
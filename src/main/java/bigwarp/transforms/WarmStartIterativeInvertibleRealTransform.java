@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.transforms;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+import net.imglib2.realtransform.InverseRealTransform;
+import net.imglib2.realtransform.InvertibleRealTransform;
+import net.imglib2.realtransform.RealTransform;
+import net.imglib2.realtransform.inverse.WrappedIterativeInvertibleRealTransform;
+
+/**
+ * A {@link WrappedIterativeInvertibleRealTransform} that starts each inverse
+ * from the result of the previous one, offset by the change in target position.
+ * <p>
+ * Consecutive samples along a scanline or block are close to each other, so
+ * this typically converges in a few iterations. If it does not reach the
+ * tolerance, the inverse is estimated again from the caller's initial guess.
+ * <p>
+ * Copies keep the optimizer parameters, but not the previous result, so each
+ * thread should use its own copy.
+ *
+ * @param <T> the forward transform type
+ */
+public class WarmStartIterativeInvertibleRealTransform< T extends RealTransform > extends WrappedIterativeInvertibleRealTransform< T >
+{
+	private final double tolerance;
+
+	private final int maxIters;
+
+	private final double beta;
+
+	private final double maxStep;
+
+	private final double[] previousSource;
+
+	private final double[] previousTarget;
+
+	private final double[] coldGuess;
+
+	private final double[] tmpSource;
+
+	private final double[] tmpTarget;
+
+	private boolean hasPrevious;
+
+	public WarmStartIterativeInvertibleRealTransform( final T xfm, final double tolerance, final int maxIters, final double beta, final double maxStep )
+	{
+		super( xfm );
+		this.tolerance = tolerance;
+		this.maxIters = maxIters;
+		this.beta = beta;
+		this.maxStep = maxStep;
+
+		getOptimzer().setTolerance( tolerance );
+		getOptimzer().setMaxIters( maxIters );
+		getOptimzer().setBeta( beta );
+		getOptimzer().setMaxStep( maxStep );
+
+		previousSource = new double[ xfm.numSourceDimensions() ];
+		previousTarget = new double[ xfm.numTargetDimensions() ];
+		coldGuess = new double[ xfm.numSourceDimensions() ];
+		tmpSource = new double[ xfm.numSourceDimensions() ];
+		tmpTarget = new double[ xfm.numTargetDimensions() ];
+		hasPrevious = false;
+	}
+
+	public static < T extends RealTransform > WarmStartIterativeInvertibleRealTransform< T > wrap(
+			final WrappedIterativeInvertibleRealTransform< T > xfm,
+			final double tolerance, final int maxIters, final double beta, final double maxStep )
+	{
+		return new WarmStartIterativeInvertibleRealTransform<>( xfm.getTransform(), tolerance, maxIters, beta, maxStep );
+	}
+
+	/**
+	 * Forget the previous result, so the next inverse starts from the caller's guess.
+	 */
+	public void reset()
+	{
+		hasPrevious = false;
+	}
+
+	@Override
+	public void applyInverse( final double[] source, final double[] target )
+	{
+		// source and target may be the same array, as in RealTransformSequence
+		if ( target != tmpTarget )
+			System.arraycopy( target, 0, tmpTarget, 0, tmpTarget.length );
+
+		final int nd = previousSource.length;
+		if ( hasPrevious )
+		{
+			for ( int d = 0; d < nd; d++ )
+			{
+				coldGuess[ d ] = source[ d ];
+				source[ d ] = previousSource[ d ] + tmpTarget[ d ] - previousTarget[ d ];
+			}
+
+			super.applyInverse( source, tmpTarget );
+			if ( getOptimzer().getError() <= tolerance )
+			{
+				setPrevious( source, tmpTarget );
+				return;
+			}
+
+			System.arraycopy( coldGuess, 0, source, 0, nd );
+		}
+
+		super.applyInverse( source, tmpTarget );
+		if ( getOptimzer().getError() <= tolerance )
+			setPrevious( source, tmpTarget );
+		else
+			hasPrevious = false;
+	}
+
+	@Override
+	public void applyInverse( final RealPositionable source, final RealLocalizable target )
+	{
+		// start from the target position when cold, as InvertibleWrapped2DTransformAs3D does
+		target.localize( tmpTarget );
+		for ( int d = 0; d < tmpSource.length; d++ )
+			tmpSource[ d ] = d < tmpTarget.length ? tmpTarget[ d ] : 0;
+
+		applyInverse( tmpSource, tmpTarget );
+		source.setPosition( tmpSource );
+	}
+
+	private void setPrevious( final double[] source, final double[] target )
+	{
+		System.arraycopy( source, 0, previousSource, 0, previousSource.length );
+		System.arraycopy( target, 0, previousTarget, 0, previousTarget.length );
+		hasPrevious = true;
+	}
+
+	@Override
+	public InvertibleRealTransform inverse()
+	{
+		return new InverseRealTransform( this );
+	}
+
+	@Override
+	public WarmStartIterativeInvertibleRealTransform< T > copy()
+	{
+		@SuppressWarnings( "unchecked" )
+		final T xfmCopy = ( T ) getTransform().copy();
+		return new WarmStartIterativeInvertibleRealTransform<>( xfmCopy, tolerance, maxIters, beta, maxStep );
+	}
+
+}
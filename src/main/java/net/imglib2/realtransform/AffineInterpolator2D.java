@@ -0,0 +1,48 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+/**
+ * Interpolates between the identity (t=0) and a 2d affine transform (t=1).
+ * <p>
+ * {@link #get(double, AffineTransform2D)} writes into a transform owned by the caller and does
+ * not allocate, so it can be used for every point of an image. Implementations keep no scratch
+ * space, so an instance can be shared by threads.
+ */
+public abstract class AffineInterpolator2D implements AffineInterpolator
+{
+	/**
+	 * Sets out to the transform at t.
+	 *
+	 * @param t the interpolation parameter
+	 * @param out the transform to set
+	 */
+	public abstract void get( final double t, final AffineTransform2D out );
+
+	@Override
+	public AffineTransform2D get( final double t )
+	{
+		final AffineTransform2D out = new AffineTransform2D();
+		get( t, out );
+		return out;
+	}
+}
@@ -0,0 +1,55 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import bdv.viewer.animate.AbstractTransformAnimator;
+
+/**
+ * Interpolates between the identity (t=0) and a 3d affine transform (t=1).
+ * <p>
+ * {@link #get(double, AffineTransform3D)} writes into a transform owned by the caller and does
+ * not allocate, so it can be used for every point of an image. Implementations keep scratch
+ * space for it, so an instance must not be used by several threads at once.
+ */
+public abstract class AffineInterpolator3D extends AbstractTransformAnimator implements AffineInterpolator
+{
+	public AffineInterpolator3D()
+	{
+		super( 1 );
+	}
+
+	/**
+	 * Sets out to the transform at t.
+	 *
+	 * @param t the interpolation parameter
+	 * @param out the transform to set
+	 */
+	public abstract void get( final double t, final AffineTransform3D out );
+
+	@Override
+	public AffineTransform3D get( final double t )
+	{
+		final AffineTransform3D out = new AffineTransform3D();
+		get( t, out );
+		return out;
+	}
+}
@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+
+/**
+ * The transforms of an {@link AffineInterpolator} at evenly spaced t in [0,1],
+ * so that a transform at any t costs a table lookup instead of a matrix construction.
+ * <p>
+ * The transform at t is linearly interpolated between the two nearest entries, and t
+ * is clamped to [0,1]. The table is immutable, so it can be shared by threads and copies.
+ */
+public class AffineInterpolatorLookupTable
+{
+	public static final int DEFAULT_NUM_STEPS = 1024;
+
+	private final int nd;
+
+	private final int numSteps;
+
+	private final int stride;
+
+	// row-packed matrices
+	private final double[] table;
+
+	/**
+	 * @param interpolator the interpolator
+	 * @param nd the number of dimensions, 2 or 3
+	 * @param numSteps the number of intervals [0,1] is divided into
+	 */
+	public AffineInterpolatorLookupTable( final AffineInterpolator interpolator, final int nd, final int numSteps )
+	{
+		if ( nd != 2 && nd != 3 )
+			throw new IllegalArgumentException( "only 2d and 3d transforms are supported, got " + nd );
+
+		this.nd = nd;
+		this.numSteps = Math.max( 1, numSteps );
+		stride = nd * ( nd + 1 );
+		table = new double[ ( this.numSteps + 1 ) * stride ];
+		for ( int i = 0; i <= this.numSteps; i++ )
+			System.arraycopy( interpolator.get( ( double ) i / this.numSteps ).getRowPackedCopy(), 0, table, i * stride, stride );
+	}
+
+	public int numDimensions()
+	{
+		return nd;
+	}
+
+	public int getNumSteps()
+	{
+		return numSteps;
+	}
+
+	/**
+	 * Applies the transform at t. Source and target may be the same array.
+	 *
+	 * @param t the interpolation parameter
+	 * @param source the source point
+	 * @param target the target point
+	 */
+	public void apply( final double t, final double[] source, final double[] target )
+	{
+		final double s = Math.min( Math.max( t, 0 ), 1 ) * numSteps;
+		final int i = Math.min( ( int ) s, numSteps - 1 );
+		final double f = s - i;
+		final int a = i * stride;
+		if ( nd == 2 )
+		{
+			final double x = source[ 0 ];
+			final double y = source[ 1 ];
+			target[ 0 ] = m( a, 0, f ) * x + m( a, 1, f ) * y + m( a, 2, f );
+			target[ 1 ] = m( a, 3, f ) * x + m( a, 4, f ) * y + m( a, 5, f );
+		}
+		else
+		{
+			final double x = source[ 0 ];
+			final double y = source[ 1 ];
+			final double z = source[ 2 ];
+			target[ 0 ] = m( a, 0, f ) * x + m( a, 1, f ) * y + m( a, 2, f ) * z + m( a, 3, f );
+			target[ 1 ] = m( a, 4, f ) * x + m( a, 5, f ) * y + m( a, 6, f ) * z + m( a, 7, f );
+			target[ 2 ] = m( a, 8, f ) * x + m( a, 9, f ) * y + m( a, 10, f ) * z + m( a, 11, f );
+		}
+	}
+
+	/**
+	 * Applies the transform at t. Source and target may be the same object.
+	 *
+	 * @param t the interpolation parameter
+	 * @param source the source point
+	 * @param target the target point
+	 */
+	public void apply( final double t, final RealLocalizable source, final RealPositionable target )
+	{
+		final double s = Math.min( Math.max( t, 0 ), 1 ) * numSteps;
+		final int i = Math.min( ( int ) s, numSteps - 1 );
+		final double f = s - i;
+		final int a = i * stride;
+		if ( nd == 2 )
+		{
+			final double x = source.getDoublePosition( 0 );
+			final double y = source.getDoublePosition( 1 );
+			target.setPosition( m( a, 0, f ) * x + m( a, 1, f ) * y + m( a, 2, f ), 0 );
+			target.setPosition( m( a, 3, f ) * x + m( a, 4, f ) * y + m( a, 5, f ), 1 );
+		}
+		else
+		{
+			final double x = source.getDoublePosition( 0 );
+			final double y = source.getDoublePosition( 1 );
+			final double z = source.getDoublePosition( 2 );
+			target.setPosition( m( a, 0, f ) * x + m( a, 1, f ) * y + m( a, 2, f ) * z + m( a, 3, f ), 0 );
+			target.setPosition( m( a, 4, f ) * x + m( a, 5, f ) * y + m( a, 6, f ) * z + m( a, 7, f ), 1 );
+			target.setPosition( m( a, 8, f ) * x + m( a, 9, f ) * y + m( a, 10, f ) * z + m( a, 11, f ), 2 );
+		}
+	}
+
+	/**
+	 * Element k of the matrix a fraction f of the way from the entry at offset a to the next.
+	 */
+	private double m( final int a, final int k, final double f )
+	{
+		final double v = table[ a + k ];
+		return v + f * ( table[ a + stride + k ] - v );
+	}
+}
@@ -0,0 +1,40 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import net.imglib2.RealInterval;
+
+/**
+ * A mask that can bound its values over a region without sampling it, so that callers
+ * can tell where it is constant.
+ */
+public interface BoundedRealMask
+{
+	/**
+	 * Writes a lower bound of the mask's values in an interval to minMax[0], and an upper
+	 * bound to minMax[1]. The bounds are exact where the mask is constant over the interval.
+	 *
+	 * @param interval the interval
+	 * @param minMax storage for the bounds
+	 */
+	void valueBounds( RealInterval interval, double[] minMax );
+}
@@ -21,8 +21,18 @@
  */
 package net.imglib2.realtransform;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
-
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import bigwarp.ExportScheduler;
+import bigwarp.ExportScheduler.Priority;
 import net.imglib2.FinalInterval;
 import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
@@ -30,17 +40,29 @@ import net.imglib2.RealInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.iterator.IntervalIterator;
 import net.imglib2.iterator.RealIntervalIterator;
+import net.imglib2.util.Intervals;
 
 public class BoundingBoxEstimation {
 
-	public static enum Method { CORNERS, FACES, VOLUME };
+	/**
+	 * CORNERS transforms the corners of the interval, FACES and VOLUME sample
+	 * its faces or its volume on a regular grid, and ADAPTIVE samples the
+	 * faces coarsely and refines only where the extremum may still move.
+	 */
+	public static enum Method { CORNERS, FACES, VOLUME, ADAPTIVE };
 
 	private Method method;
 
 	private int samplesPerDim = 5;
 
+	private int numThreads = 1;
+
 	private double[] steps;
 
+	private ExecutorService executor;
+
+	private static ExecutorService sharedExecutor;
+
 	public BoundingBoxEstimation()
 	{
 		this( Method.FACES );
@@ -67,11 +89,63 @@ public class BoundingBoxEstimation {
 		this.method = method;
 	}
 
+	public Method getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * Sets the number of threads that estimates use. With more than one thread,
+	 * every thread transforms its samples with its own copy of the transform.
+	 *
+	 * @param numThreads the number of threads
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Sets the executor that runs parallel estimates. If none is set, they run on
+	 * {@link #sharedExecutor()}.
+	 *
+	 * @param executor the executor, may be null
+	 */
+	public void setExecutorService( final ExecutorService executor )
+	{
+		this.executor = executor;
+	}
+
+	/**
+	 * The executor that runs parallel estimates when no other executor is set, a
+	 * background job of the {@link ExportScheduler} created when it is first used.
+	 *
+	 * @return the shared executor
+	 */
+	public static synchronized ExecutorService sharedExecutor()
+	{
+		if ( sharedExecutor == null )
+			sharedExecutor = ExportScheduler.getInstance().newBackgroundJob(
+					"bounding box estimation", Runtime.getRuntime().availableProcessors(), Priority.HIGH );
+
+		return sharedExecutor;
+	}
+
 	public void setSamplesPerDim( int samplesPerDim )
 	{
 		this.samplesPerDim = samplesPerDim;
 	}
 
+	public int getSamplesPerDim()
+	{
+		return samplesPerDim;
+	}
+
 	public double[] setSamplesPerDim( final RealInterval itvl, int maxSamples )
 	{
 		steps = samplesPerDim( itvl, maxSamples );
@@ -97,6 +171,8 @@ public class BoundingBoxEstimation {
 	public RealInterval estimateInterval( RealTransform xfm, RealInterval interval )
 	{
 		steps = samplesPerDim( interval, samplesPerDim );
+		if( xfm != null && numThreads > 1 && method != Method.CORNERS )
+			return estimateParallel( xfm, interval );
 
 		switch( method )
 		{
@@ -104,6 +180,8 @@ public class BoundingBoxEstimation {
 			return cornersReal(xfm, interval);
 		case VOLUME:
 			return volumeReal(xfm, interval, steps );
+		case ADAPTIVE:
+			return adaptiveReal(xfm, interval, steps );
 		default:
 			return facesReal( xfm, interval, steps );
 		}
@@ -112,6 +190,8 @@ public class BoundingBoxEstimation {
 	public Interval estimatePixelInterval( RealTransform xfm, Interval interval )
 	{
 		steps = samplesPerDim( interval, samplesPerDim );
+		if( xfm != null && numThreads > 1 && method != Method.CORNERS )
+			return containingInterval( estimateParallel( xfm, interval ) );
 
 		switch( method )
 		{
@@ -119,14 +199,203 @@ public class BoundingBoxEstimation {
 			return corners(xfm, interval);
 		case VOLUME:
 			return volume(xfm, interval, steps );
+		case ADAPTIVE:
+			return adaptive(xfm, interval, steps );
 		default:
 			return faces( xfm, interval, steps );
 		}
 	}
 
+	/*
+	 * Runs the estimation tasks in at most numThreads groups on the executor.
+	 */
+	private RealInterval estimateParallel( final RealTransform xfm, final RealInterval interval )
+	{
+		final List< Callable< RealInterval > > tasks = estimationTasks( xfm::copy, interval );
+		final int numGroups = Math.min( numThreads, tasks.size() );
+		final List< Callable< RealInterval > > groups = new ArrayList<>();
+		for ( int g = 0; g < numGroups; g++ )
+		{
+			final int first = g;
+			groups.add( () -> {
+				RealInterval union = null;
+				for ( int i = first; i < tasks.size(); i += numGroups )
+					union = union == null ? tasks.get( i ).call() : Intervals.union( union, tasks.get( i ).call() );
+
+				return union;
+			} );
+		}
+
+		try
+		{
+			if ( numGroups == 1 )
+				return groups.get( 0 ).call();
+
+			RealInterval union = null;
+			for ( final Future< RealInterval > f : ( executor == null ? sharedExecutor() : executor ).invokeAll( groups ) )
+				union = union == null ? f.get() : Intervals.union( union, f.get() );
+
+			return union;
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			if ( e.getCause() instanceof RuntimeException )
+				throw ( RuntimeException ) e.getCause();
+
+			throw new RuntimeException( e.getCause() );
+		}
+		catch ( final RuntimeException e )
+		{
+			throw e;
+		}
+		catch ( final Exception e )
+		{
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * Splits the estimate of {@link #estimateInterval} into tasks that can run in parallel.
+	 * The estimate is the union of the tasks' results. Face based methods make
+	 * one task per face, VOLUME one slab of samples per thread.
+	 *
+	 * @param xfm supplies the transform, called once by every task
+	 * @param interval the interval
+	 * @return the tasks
+	 */
+	public List< Callable< RealInterval > > estimationTasks( final Supplier< RealTransform > xfm, final RealInterval interval )
+	{
+		final double[] taskSteps = samplesPerDim( interval, samplesPerDim );
+		final List< Callable< RealInterval > > tasks = new ArrayList<>();
+		switch( method )
+		{
+		case CORNERS:
+			tasks.add( () -> cornersReal( xfm.get(), interval ) );
+			break;
+		case VOLUME:
+			volumeTasks( xfm, interval, taskSteps, tasks );
+			break;
+		default:
+			// one task per face
+			final boolean adaptive = method == Method.ADAPTIVE;
+			final int nd = interval.numDimensions();
+			for( int i = 0; i < nd; i++ )
+			{
+				for( final double pos : new double[] { interval.realMin( i ), interval.realMax( i ) } )
+				{
+					final double[] faceMin = new double[ nd ];
+					final double[] faceMax = new double[ nd ];
+					subInterval( interval, pos, i, faceMin, faceMax );
+					final FinalRealInterval face = new FinalRealInterval( faceMin, faceMax );
+					if( adaptive )
+						tasks.add( () -> refine( xfm.get(), face, taskSteps ) );
+					else
+						tasks.add( () -> volumeReal( xfm.get(), face, taskSteps ) );
+				}
+			}
+		}
+		return tasks;
+	}
+
+	/*
+	 * Splits the samples of the volume into slabs along its last dimension
+	 * that has more than one sample.
+	 */
+	private void volumeTasks( final Supplier< RealTransform > xfm, final RealInterval interval, final double[] steps,
+			final List< Callable< RealInterval > > tasks )
+	{
+		final long[] numSamples = numSamples( interval, steps );
+		int dim = -1;
+		for( int d = 0; d < numSamples.length; d++ )
+			if( numSamples[ d ] > 1 )
+				dim = d;
+
+		final int numSlabs = dim < 0 ? 1 : ( int ) Math.min( numThreads, numSamples[ dim ] );
+		if( numSlabs == 1 )
+		{
+			tasks.add( () -> volumeReal( xfm.get(), interval, steps ) );
+			return;
+		}
+
+		final int slabDim = dim;
+		for( int t = 0; t < numSlabs; t++ )
+		{
+			final long start = numSamples[ slabDim ] * t / numSlabs;
+			final long end = numSamples[ slabDim ] * ( t + 1 ) / numSlabs;
+			tasks.add( () -> {
+				final int nd = interval.numDimensions();
+				final double[] min = new double[ nd ];
+				final double[] max = new double[ nd ];
+				Arrays.fill( min, Long.MAX_VALUE );
+				Arrays.fill( max, Long.MIN_VALUE );
+				minMaxGrid( xfm.get(), interval, steps, numSamples, slabDim, start, end, min, max );
+				return new FinalRealInterval( min, max );
+			} );
+		}
+	}
+
+	/*
+	 * The number of samples per dimension that a RealIntervalIterator takes.
+	 */
+	private static long[] numSamples( final RealInterval interval, final double[] steps )
+	{
+		final int nd = interval.numDimensions();
+		final long[] numSamples = new long[ nd ];
+		for( int d = 0; d < nd; d++ )
+			numSamples[ d ] = 1 + ( long ) Math.floor( ( interval.realMax( d ) - interval.realMin( d ) ) / steps[ d ] );
+
+		return numSamples;
+	}
+
+	/*
+	 * Samples the grid of a RealIntervalIterator, restricted to the samples
+	 * from start (inclusive) to end (exclusive) along one dimension.
+	 */
+	private static void minMaxGrid( final RealTransform xfm, final RealInterval interval, final double[] steps,
+			final long[] numSamples, final int dim, final long start, final long end,
+			final double[] min, final double[] max )
+	{
+		final int nd = interval.numDimensions();
+		final long[] lo = new long[ nd ];
+		final long[] hi = new long[ nd ];
+		for( int d = 0; d < nd; d++ )
+			hi[ d ] = numSamples[ d ] - 1;
+
+		lo[ dim ] = start;
+		hi[ dim ] = end - 1;
+
+		final double[] pt = new double[ nd ];
+		final double[] ptxfm = new double[ nd ];
+		final IntervalIterator it = new IntervalIterator( lo, hi );
+		while( it.hasNext() )
+		{
+			it.fwd();
+			for( int d = 0; d < nd; d++ )
+				pt[ d ] = interval.realMin( d ) + it.getLongPosition( d ) * steps[ d ];
+
+			xfm.apply( pt, ptxfm );
+			for( int d = 0; d < nd; d++ )
+			{
+				if( ptxfm[ d ] < min[ d ] )
+					min[ d ] = ptxfm[ d ];
+
+				if( ptxfm[ d ] > max[ d ] )
+					max[ d ] = ptxfm[ d ];
+			}
+		}
+	}
+
 	public BoundingBoxEstimation copy()
 	{
-		return new BoundingBoxEstimation(method, samplesPerDim);
+		final BoundingBoxEstimation copy = new BoundingBoxEstimation(method, samplesPerDim);
+		copy.setNumThreads( numThreads );
+		copy.setExecutorService( executor );
+		return copy;
 	}
 
 	/**
@@ -243,6 +512,266 @@ public class BoundingBoxEstimation {
 	{
 		return containingInterval( volumeReal( xfm, interval, steps ));
 	}
+
+	public static FinalInterval adaptive( RealTransform xfm, Interval interval, double[] steps )
+	{
+		return containingInterval( adaptiveReal( xfm, interval, steps ));
+	}
+
+	/**
+	 * Estimates the bounding box by adaptive refinement of every face of the
+	 * interval, see {@link #refine}.
+	 *
+	 * @param xfm the transform
+	 * @param interval the interval
+	 * @param steps the finest sample spacing
+	 * @return the estimate
+	 */
+	public static FinalRealInterval adaptiveReal( RealTransform xfm, RealInterval interval, double[] steps )
+	{
+		if( xfm == null )
+			return new FinalRealInterval( interval );
+
+		final int nd = interval.numDimensions();
+		final double[] min = new double[ nd ];
+		final double[] max = new double[ nd ];
+		Arrays.fill( min, Long.MAX_VALUE );
+		Arrays.fill( max, Long.MIN_VALUE );
+
+		final double[] faceMin = new double[ nd ];
+		final double[] faceMax = new double[ nd ];
+		for( int i = 0; i < nd; i++ )
+		{
+			for( final double pos : new double[] { interval.realMin( i ), interval.realMax( i ) } )
+			{
+				subInterval( interval, pos, i, faceMin, faceMax );
+				final RealInterval faceBox = refine( xfm, new FinalRealInterval( faceMin, faceMax ), steps );
+				for( int d = 0; d < nd; d++ )
+				{
+					min[ d ] = Math.min( min[ d ], faceBox.realMin( d ) );
+					max[ d ] = Math.max( max[ d ], faceBox.realMax( d ) );
+				}
+			}
+		}
+		return new FinalRealInterval( min, max );
+	}
+
+	/**
+	 * Estimates the bounding box of the transformed interval by sampling the
+	 * corners of a coarse grid of cells, and subdividing only the cells whose
+	 * transformed corners may still extend the current estimate. A cell may
+	 * extend it if, in some dimension, its extreme corner plus the spread of its
+	 * corners reaches past the estimate. Cells are not subdivided below the
+	 * given spacing, and unlike a regular grid the finest grid always includes
+	 * the max of the interval. For smooth transforms this needs a fraction of
+	 * the samples of {@link #volumeReal}.
+	 *
+	 * @param xfm the transform
+	 * @param interval the interval
+	 * @param steps the finest sample spacing
+	 * @return the estimate
+	 */
+	public static FinalRealInterval refine( final RealTransform xfm, final RealInterval interval, final double[] steps )
+	{
+		return new AdaptiveRefinement( xfm, interval, steps ).run();
+	}
+
+	/*
+	 * Cells are integer boxes on the finest grid, stored as { lo..., hi... }.
+	 * Transformed nodes are cached, since neighbouring cells share them.
+	 */
+	private static class AdaptiveRefinement
+	{
+		private final RealTransform xfm;
+
+		private final int nd;
+
+		private final double[] origin;
+
+		private final double[] spacing;
+
+		private final int[] numCells;
+
+		private final int[] strides;
+
+		private final double[] values;
+
+		private final boolean[] evaluated;
+
+		private final double[] min;
+
+		private final double[] max;
+
+		private final double[] pt;
+
+		private final double[] ptxfm;
+
+		private final double[] cellMin;
+
+		private final double[] cellMax;
+
+		AdaptiveRefinement( final RealTransform xfm, final RealInterval interval, final double[] steps )
+		{
+			this.xfm = xfm;
+			nd = interval.numDimensions();
+			origin = interval.minAsDoubleArray();
+			spacing = new double[ nd ];
+			numCells = new int[ nd ];
+			strides = new int[ nd ];
+			long numNodes = 1;
+			for( int d = 0; d < nd; d++ )
+			{
+				final double extent = interval.realMax( d ) - interval.realMin( d );
+				numCells[ d ] = extent > 0 ? ( int ) Math.max( 1, Math.ceil( extent / steps[ d ] ) ) : 0;
+				spacing[ d ] = numCells[ d ] > 0 ? extent / numCells[ d ] : 0;
+				strides[ d ] = ( int ) numNodes;
+				numNodes *= numCells[ d ] + 1;
+			}
+
+			if( numNodes * nd > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "too many samples: " + numNodes );
+
+			values = new double[ ( int ) numNodes * nd ];
+			evaluated = new boolean[ ( int ) numNodes ];
+			min = new double[ nd ];
+			max = new double[ nd ];
+			Arrays.fill( min, Double.POSITIVE_INFINITY );
+			Arrays.fill( max, Double.NEGATIVE_INFINITY );
+			pt = new double[ nd ];
+			ptxfm = new double[ nd ];
+			cellMin = new double[ nd ];
+			cellMax = new double[ nd ];
+		}
+
+		FinalRealInterval run()
+		{
+			final int[] root = new int[ 2 * nd ];
+			for( int d = 0; d < nd; d++ )
+				root[ nd + d ] = numCells[ d ];
+
+			cellBounds( root );
+
+			// the root is always split, so that features inside it can be found
+			final ArrayDeque< int[] > queue = new ArrayDeque<>();
+			split( root, queue );
+			while( !queue.isEmpty() )
+			{
+				final int[] cell = queue.poll();
+				if( mayExtend( cell ) )
+					split( cell, queue );
+			}
+			return new FinalRealInterval( min, max );
+		}
+
+		/*
+		 * Adds the children of a cell to the queue, evaluating their corners.
+		 */
+		private void split( final int[] cell, final ArrayDeque< int[] > queue )
+		{
+			int splitDims = 0;
+			for( int d = 0; d < nd; d++ )
+				if( cell[ nd + d ] - cell[ d ] > 1 )
+					splitDims |= 1 << d;
+
+			if( splitDims == 0 )
+				return;
+
+			for( int child = 0; child < ( 1 << nd ); child++ )
+			{
+				if( ( child & ~splitDims ) != 0 )
+					continue;
+
+				final int[] c = cell.clone();
+				for( int d = 0; d < nd; d++ )
+				{
+					if( ( splitDims & ( 1 << d ) ) == 0 )
+						continue;
+
+					final int mid = ( cell[ d ] + cell[ nd + d ] ) / 2;
+					if( ( child & ( 1 << d ) ) == 0 )
+						c[ nd + d ] = mid;
+					else
+						c[ d ] = mid;
+				}
+				cellBounds( c );
+				queue.add( c );
+			}
+		}
+
+		/*
+		 * True if the transformed corners of a cell, extended by their spread,
+		 * reach past the current estimate in some dimension.
+		 */
+		private boolean mayExtend( final int[] cell )
+		{
+			cellBounds( cell );
+			for( int d = 0; d < nd; d++ )
+			{
+				final double spread = cellMax[ d ] - cellMin[ d ];
+				if( cellMax[ d ] + spread > max[ d ] || cellMin[ d ] - spread < min[ d ] )
+					return true;
+			}
+			return false;
+		}
+
+		/*
+		 * Evaluates the corners of a cell into cellMin and cellMax.
+		 */
+		private void cellBounds( final int[] cell )
+		{
+			Arrays.fill( cellMin, Double.POSITIVE_INFINITY );
+			Arrays.fill( cellMax, Double.NEGATIVE_INFINITY );
+			for( int corner = 0; corner < ( 1 << nd ); corner++ )
+			{
+				int node = 0;
+				boolean duplicate = false;
+				for( int d = 0; d < nd; d++ )
+				{
+					if( ( corner & ( 1 << d ) ) == 0 )
+						node += cell[ d ] * strides[ d ];
+					else
+					{
+						duplicate |= cell[ nd + d ] == cell[ d ];
+						node += cell[ nd + d ] * strides[ d ];
+					}
+				}
+
+				if( duplicate )
+					continue;
+
+				evaluate( node );
+				for( int d = 0; d < nd; d++ )
+				{
+					final double v = values[ node * nd + d ];
+					cellMin[ d ] = Math.min( cellMin[ d ], v );
+					cellMax[ d ] = Math.max( cellMax[ d ], v );
+				}
+			}
+		}
+
+		private void evaluate( final int node )
+		{
+			if( evaluated[ node ] )
+				return;
+
+			int rem = node;
+			for( int d = 0; d < nd; d++ )
+			{
+				final int k = rem % ( numCells[ d ] + 1 );
+				rem /= numCells[ d ] + 1;
+				pt[ d ] = origin[ d ] + k * spacing[ d ];
+			}
+
+			xfm.apply( pt, ptxfm );
+			for( int d = 0; d < nd; d++ )
+			{
+				values[ node * nd + d ] = ptxfm[ d ];
+				min[ d ] = Math.min( min[ d ], ptxfm[ d ] );
+				max[ d ] = Math.max( max[ d ], ptxfm[ d ] );
+			}
+			evaluated[ node ] = true;
+		}
+	}
 	
 
 	public static RealInterval cornersReal( RealTransform xfm, RealInterval interval )
@@ -0,0 +1,456 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+
+/**
+ * Approximates a {@link RealTransform} by linear interpolation of its
+ * displacements, sampled on a regular grid.
+ * <p>
+ * Points outside the grid are transformed by the exact transform. Copies
+ * share the (immutable) grid.
+ */
+public class DisplacementGridTransform implements RealTransform
+{
+	// the number of nodes per dimension in the blocks that are sampled together
+	private static final int BLOCK_SIZE = 16;
+
+	private final int nd;
+
+	private final double[] origin;
+
+	private final double[] spacing;
+
+	private final int[] dims;
+
+	private final int[] strides;
+
+	// displacements per dimension, the first dimension varies fastest
+	private final float[][] displacements;
+
+	private final RealTransform exact;
+
+	private final int[] index;
+
+	private final double[] frac;
+
+	private final double[] displacement;
+
+	private final double[] tmpSource;
+
+	private final double[] tmpTarget;
+
+	private DisplacementGridTransform( final double[] origin, final double[] spacing, final int[] dims,
+			final float[][] displacements, final RealTransform exact )
+	{
+		this.nd = origin.length;
+		this.origin = origin;
+		this.spacing = spacing;
+		this.dims = dims;
+		this.displacements = displacements;
+		this.exact = exact;
+
+		strides = new int[ nd ];
+		strides[ 0 ] = 1;
+		for ( int d = 1; d < nd; d++ )
+			strides[ d ] = strides[ d - 1 ] * dims[ d - 1 ];
+
+		index = new int[ nd ];
+		frac = new double[ nd ];
+		displacement = new double[ nd ];
+		tmpSource = new double[ nd ];
+		tmpTarget = new double[ nd ];
+	}
+
+	/**
+	 * Samples the displacements of a transform on a grid that covers an interval.
+	 * <p>
+	 * Returns null if the calling thread is interrupted.
+	 *
+	 * @param xfm the transform, whose source and target dimensions must be equal
+	 * @param min the min of the interval
+	 * @param max the max of the interval
+	 * @param spacing the grid spacing
+	 * @param executor executes the sampling
+	 * @param numTasks the number of tasks to split the sampling into
+	 * @return the approximation
+	 * @throws ExecutionException if the transform throws an exception
+	 */
+	public static DisplacementGridTransform build( final RealTransform xfm, final double[] min, final double[] max,
+			final double[] spacing, final ExecutorService executor, final int numTasks ) throws ExecutionException
+	{
+		return build( xfm, null, min, max, spacing, executor, numTasks );
+	}
+
+	/**
+	 * Samples the displacements of a transform on a grid that covers an interval, using for
+	 * each block of nodes a transform that equals it in that block.
+	 * <p>
+	 * Returns null if the calling thread is interrupted.
+	 *
+	 * @param xfm the transform, whose source and target dimensions must be equal
+	 * @param local returns one of a few transforms that equals xfm in a box, may be null
+	 * @param min the min of the interval
+	 * @param max the max of the interval
+	 * @param spacing the grid spacing
+	 * @param executor executes the sampling
+	 * @param numTasks the number of tasks to split the sampling into
+	 * @return the approximation
+	 * @throws ExecutionException if the transform throws an exception
+	 */
+	public static DisplacementGridTransform build( final RealTransform xfm, final Function< RealInterval, RealTransform > local,
+			final double[] min, final double[] max, final double[] spacing, final ExecutorService executor, final int numTasks ) throws ExecutionException
+	{
+		final int nd = min.length;
+		final int[] dims = gridDimensions( min, max, spacing );
+		long numNodes = 1;
+		for ( int d = 0; d < nd; d++ )
+			numNodes *= dims[ d ];
+
+		if ( numNodes > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "too many grid nodes: " + numNodes );
+
+		final float[][] displacements = new float[ nd ][ ( int ) numNodes ];
+		final int[] hi = new int[ nd ];
+		for ( int d = 0; d < nd; d++ )
+			hi[ d ] = dims[ d ] - 1;
+
+		if ( !sample( xfm, local, min, spacing, dims, displacements, new int[ nd ], hi, executor, numTasks ) )
+			return null;
+
+		return new DisplacementGridTransform( min.clone(), spacing.clone(), dims, displacements, xfm.copy() );
+	}
+
+	/**
+	 * Approximates a transform that differs from the one this grid approximates only inside
+	 * a box, by sampling it at the nodes near the box and copying all other displacements.
+	 * <p>
+	 * Returns null if the calling thread is interrupted.
+	 *
+	 * @param xfm the transform
+	 * @param min the min of the box
+	 * @param max the max of the box
+	 * @param executor executes the sampling
+	 * @param numTasks the number of tasks to split the sampling into
+	 * @return the approximation
+	 * @throws ExecutionException if the transform throws an exception
+	 */
+	public DisplacementGridTransform update( final RealTransform xfm, final double[] min, final double[] max,
+			final ExecutorService executor, final int numTasks ) throws ExecutionException
+	{
+		return update( xfm, null, min, max, executor, numTasks );
+	}
+
+	/**
+	 * Like {@link #update(RealTransform, double[], double[], ExecutorService, int)}, using for
+	 * each block of nodes a transform that equals xfm in that block.
+	 *
+	 * @param xfm the transform
+	 * @param local returns one of a few transforms that equals xfm in a box, may be null
+	 * @param min the min of the box
+	 * @param max the max of the box
+	 * @param executor executes the sampling
+	 * @param numTasks the number of tasks to split the sampling into
+	 * @return the approximation
+	 * @throws ExecutionException if the transform throws an exception
+	 */
+	public DisplacementGridTransform update( final RealTransform xfm, final Function< RealInterval, RealTransform > local,
+			final double[] min, final double[] max, final ExecutorService executor, final int numTasks ) throws ExecutionException
+	{
+		final int[] lo = new int[ nd ];
+		final int[] hi = new int[ nd ];
+		boolean empty = false;
+		for ( int d = 0; d < nd; d++ )
+		{
+			lo[ d ] = ( int ) Math.max( 0, Math.floor( ( min[ d ] - origin[ d ] ) / spacing[ d ] ) );
+			hi[ d ] = ( int ) Math.min( dims[ d ] - 1, Math.ceil( ( max[ d ] - origin[ d ] ) / spacing[ d ] ) );
+			empty |= lo[ d ] > hi[ d ];
+		}
+
+		// the displacements are never modified, so unchanged ones can be shared
+		if ( empty )
+			return new DisplacementGridTransform( origin, spacing, dims, displacements, xfm.copy() );
+
+		final float[][] updated = new float[ nd ][];
+		for ( int d = 0; d < nd; d++ )
+			updated[ d ] = displacements[ d ].clone();
+
+		if ( !sample( xfm, local, origin, spacing, dims, updated, lo, hi, executor, numTasks ) )
+			return null;
+
+		return new DisplacementGridTransform( origin, spacing, dims, updated, xfm.copy() );
+	}
+
+	/**
+	 * @param origin the origin of a grid
+	 * @param spacing the spacing of a grid
+	 * @param dims the dimensions of a grid
+	 * @return true if the given grid has the same nodes as this one
+	 */
+	public boolean hasGrid( final double[] origin, final double[] spacing, final int[] dims )
+	{
+		return Arrays.equals( this.origin, origin ) && Arrays.equals( this.spacing, spacing ) && Arrays.equals( this.dims, dims );
+	}
+
+	/**
+	 * @param other another approximation
+	 * @return true if the other approximation has the same grid nodes as this one
+	 */
+	public boolean hasGrid( final DisplacementGridTransform other )
+	{
+		return hasGrid( other.origin, other.spacing, other.dims );
+	}
+
+	/**
+	 * @param min the min of an interval
+	 * @param max the max of an interval
+	 * @param spacing the grid spacing
+	 * @return the dimensions of the grid that {@link #build} makes for the interval
+	 */
+	public static int[] gridDimensions( final double[] min, final double[] max, final double[] spacing )
+	{
+		final int[] dims = new int[ min.length ];
+		for ( int d = 0; d < min.length; d++ )
+			dims[ d ] = 1 + Math.max( 0, ( int ) Math.ceil( ( max[ d ] - min[ d ] ) / spacing[ d ] ) );
+
+		return dims;
+	}
+
+	/*
+	 * Samples the displacements at the grid nodes from lo to hi (inclusive) in blocks,
+	 * returns false if interrupted. Each block is sampled with the transform that local
+	 * returns for its nodes' bounding box, or with xfm if local is null.
+	 */
+	private static boolean sample( final RealTransform xfm, final Function< RealInterval, RealTransform > local,
+			final double[] origin, final double[] spacing, final int[] dims, final float[][] displacements,
+			final int[] lo, final int[] hi, final ExecutorService executor, final int numTasks ) throws ExecutionException
+	{
+		final int nd = origin.length;
+		final int[] numBlocks = new int[ nd ];
+		final int[] strides = new int[ nd ];
+		long n = 1;
+		for ( int d = 0; d < nd; d++ )
+		{
+			numBlocks[ d ] = ( hi[ d ] - lo[ d ] + BLOCK_SIZE ) / BLOCK_SIZE;
+			strides[ d ] = d == 0 ? 1 : strides[ d - 1 ] * dims[ d - 1 ];
+			n *= numBlocks[ d ];
+		}
+
+		final long totalBlocks = n;
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int t = 0; t < numTasks; t++ )
+		{
+			final int firstBlock = t;
+			final RealTransform xfmCopy = xfm.copy();
+			tasks.add( () -> {
+				// the transforms local returns are shared, so each task samples copies of them
+				final Map< RealTransform, RealTransform > copies = new IdentityHashMap<>();
+				copies.put( xfm, xfmCopy );
+
+				final int[] blockMin = new int[ nd ];
+				final int[] blockMax = new int[ nd ];
+				final int[] k = new int[ nd ];
+				final double[] boxMin = new double[ nd ];
+				final double[] boxMax = new double[ nd ];
+				final double[] p = new double[ nd ];
+				final double[] q = new double[ nd ];
+				for ( long b = firstBlock; b < totalBlocks; b += numTasks )
+				{
+					if ( Thread.currentThread().isInterrupted() )
+						return null;
+
+					long rem = b;
+					for ( int d = 0; d < nd; d++ )
+					{
+						blockMin[ d ] = lo[ d ] + ( int ) ( rem % numBlocks[ d ] ) * BLOCK_SIZE;
+						blockMax[ d ] = Math.min( hi[ d ], blockMin[ d ] + BLOCK_SIZE - 1 );
+						boxMin[ d ] = origin[ d ] + spacing[ d ] * blockMin[ d ];
+						boxMax[ d ] = origin[ d ] + spacing[ d ] * blockMax[ d ];
+						rem /= numBlocks[ d ];
+					}
+
+					final RealTransform blockXfm = local == null ? xfmCopy
+							: copies.computeIfAbsent( local.apply( new FinalRealInterval( boxMin, boxMax ) ), RealTransform::copy );
+
+					System.arraycopy( blockMin, 0, k, 0, nd );
+					while ( true )
+					{
+						int offset = 0;
+						for ( int d = 0; d < nd; d++ )
+						{
+							p[ d ] = origin[ d ] + spacing[ d ] * k[ d ];
+							offset += k[ d ] * strides[ d ];
+						}
+
+						blockXfm.apply( p, q );
+						for ( int d = 0; d < nd; d++ )
+							displacements[ d ][ offset ] = ( float ) ( q[ d ] - p[ d ] );
+
+						int d = 0;
+						while ( d < nd && k[ d ] == blockMax[ d ] )
+						{
+							k[ d ] = blockMin[ d ];
+							d++;
+						}
+
+						if ( d == nd )
+							break;
+
+						k[ d ]++;
+					}
+				}
+				return null;
+			} );
+		}
+
+		try
+		{
+			for ( final Future< Void > f : executor.invokeAll( tasks ) )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		return !Thread.currentThread().isInterrupted();
+	}
+
+	public int[] getGridDimensions()
+	{
+		return dims.clone();
+	}
+
+	@Override
+	public int numSourceDimensions()
+	{
+		return nd;
+	}
+
+	@Override
+	public int numTargetDimensions()
+	{
+		return nd;
+	}
+
+	@Override
+	public void apply( final double[] source, final double[] target )
+	{
+		if ( !interpolate( source ) )
+		{
+			exact.apply( source, target );
+			return;
+		}
+
+		for ( int d = 0; d < nd; d++ )
+			target[ d ] = source[ d ] + displacement[ d ];
+	}
+
+	@Override
+	public void apply( final RealLocalizable source, final RealPositionable target )
+	{
+		source.localize( tmpSource );
+		apply( tmpSource, tmpTarget );
+		target.setPosition( tmpTarget );
+	}
+
+	/*
+	 * Interpolates the displacement at the given point into the displacement field,
+	 * returns false if the point is outside the grid.
+	 */
+	private boolean interpolate( final double[] source )
+	{
+		int base = 0;
+		for ( int d = 0; d < nd; d++ )
+		{
+			final double x = ( source[ d ] - origin[ d ] ) / spacing[ d ];
+			if ( dims[ d ] == 1 )
+			{
+				// a flat grid (e.g. for 2d images) is only valid on its plane
+				if ( Math.abs( x ) > 1e-9 )
+					return false;
+
+				index[ d ] = 0;
+				frac[ d ] = 0;
+			}
+			else
+			{
+				if ( !( x >= 0 && x <= dims[ d ] - 1 ) )
+					return false;
+
+				final int i = Math.min( ( int ) x, dims[ d ] - 2 );
+				index[ d ] = i;
+				frac[ d ] = x - i;
+			}
+			base += index[ d ] * strides[ d ];
+		}
+
+		for ( int d = 0; d < nd; d++ )
+			displacement[ d ] = 0;
+
+		for ( int corner = 0; corner < ( 1 << nd ); corner++ )
+		{
+			double w = 1;
+			int offset = base;
+			for ( int d = 0; d < nd && w != 0; d++ )
+			{
+				if ( ( corner & ( 1 << d ) ) != 0 )
+				{
+					w *= frac[ d ];
+					offset += strides[ d ];
+				}
+				else
+					w *= 1 - frac[ d ];
+			}
+
+			if ( w == 0 )
+				continue;
+
+			for ( int d = 0; d < nd; d++ )
+				displacement[ d ] += w * displacements[ d ][ offset ];
+		}
+		return true;
+	}
+
+	@Override
+	public DisplacementGridTransform copy()
+	{
+		return new DisplacementGridTransform( origin, spacing, dims, displacements, exact.copy() );
+	}
+
+}
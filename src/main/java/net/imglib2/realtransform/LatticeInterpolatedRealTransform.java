@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+
+/**
+ * Approximates a smooth {@link RealTransform} by evaluating it at the nodes of a regular
+ * lattice and interpolating multilinearly between them.
+ * <p>
+ * Only the corners of the lattice cell that contains the most recent point are kept, and
+ * a step to the next cell along the first dimension reuses the shared corners, so points
+ * visited in raster order cost about 2^(n-1) evaluations per cell instead of one per point.
+ * Dimensions past the first numLatticeDimensions are not interpolated, the transform is
+ * evaluated at their exact coordinate. Instances are not thread safe, use {@link #copy()}.
+ */
+public class LatticeInterpolatedRealTransform implements RealTransform
+{
+	private final RealTransform transform;
+
+	private final double spacing;
+
+	private final int nl;
+
+	private final int nc;
+
+	private final long[] cell;
+
+	private final double[] fixed;
+
+	private boolean valid = false;
+
+	// one row per corner, bit d of the corner index is its offset in dimension d
+	private final double[][] corners;
+
+	private final double[] weights;
+
+	private final double[] frac;
+
+	private final long[] newCell;
+
+	private final double[] cornerPos;
+
+	private final double[] src;
+
+	private final double[] tgt;
+
+	/**
+	 * @param transform the transform
+	 * @param spacing the distance between lattice nodes
+	 * @param numLatticeDimensions the number of leading dimensions to interpolate
+	 */
+	public LatticeInterpolatedRealTransform( final RealTransform transform, final double spacing, final int numLatticeDimensions )
+	{
+		this.transform = transform;
+		this.spacing = spacing;
+		final int ns = transform.numSourceDimensions();
+		nl = Math.max( 1, Math.min( numLatticeDimensions, ns ) );
+		nc = 1 << nl;
+
+		cell = new long[ nl ];
+		newCell = new long[ nl ];
+		frac = new double[ nl ];
+		fixed = new double[ ns ];
+		corners = new double[ nc ][ transform.numTargetDimensions() ];
+		weights = new double[ nc ];
+		cornerPos = new double[ ns ];
+		src = new double[ ns ];
+		tgt = new double[ transform.numTargetDimensions() ];
+	}
+
+	public RealTransform getTransform()
+	{
+		return transform;
+	}
+
+	public double getSpacing()
+	{
+		return spacing;
+	}
+
+	@Override
+	public int numSourceDimensions()
+	{
+		return transform.numSourceDimensions();
+	}
+
+	@Override
+	public int numTargetDimensions()
+	{
+		return transform.numTargetDimensions();
+	}
+
+	@Override
+	public void apply( final double[] source, final double[] target )
+	{
+		for ( int d = 0; d < nl; d++ )
+		{
+			final double s = source[ d ] / spacing;
+			final double f = Math.floor( s );
+			newCell[ d ] = ( long ) f;
+			frac[ d ] = s - f;
+		}
+		updateCorners( source );
+
+		for ( int c = 0; c < nc; c++ )
+		{
+			double w = 1;
+			for ( int d = 0; d < nl; d++ )
+				w *= ( c & ( 1 << d ) ) == 0 ? 1 - frac[ d ] : frac[ d ];
+			weights[ c ] = w;
+		}
+
+		for ( int i = 0; i < corners[ 0 ].length; i++ )
+		{
+			double v = 0;
+			for ( int c = 0; c < nc; c++ )
+				v += weights[ c ] * corners[ c ][ i ];
+			target[ i ] = v;
+		}
+	}
+
+	@Override
+	public void apply( final RealLocalizable source, final RealPositionable target )
+	{
+		source.localize( src );
+		apply( src, tgt );
+		target.setPosition( tgt );
+	}
+
+	private void updateCorners( final double[] source )
+	{
+		boolean sameFixed = valid;
+		for ( int d = nl; d < fixed.length && sameFixed; d++ )
+			sameFixed = source[ d ] == fixed[ d ];
+
+		if ( sameFixed )
+		{
+			boolean same = true;
+			boolean next = newCell[ 0 ] == cell[ 0 ] + 1;
+			for ( int d = 0; d < nl; d++ )
+			{
+				same &= newCell[ d ] == cell[ d ];
+				if ( d > 0 )
+					next &= newCell[ d ] == cell[ d ];
+			}
+
+			if ( same )
+				return;
+
+			if ( next )
+			{
+				// the upper corners of the previous cell are the lower corners of this one
+				for ( int c = 0; c < nc; c += 2 )
+				{
+					final double[] tmp = corners[ c ];
+					corners[ c ] = corners[ c + 1 ];
+					corners[ c + 1 ] = tmp;
+				}
+				cell[ 0 ]++;
+				evaluateCorners( 1 );
+				return;
+			}
+		}
+
+		System.arraycopy( newCell, 0, cell, 0, nl );
+		for ( int d = nl; d < fixed.length; d++ )
+			fixed[ d ] = source[ d ];
+
+		evaluateCorners( 0 );
+		evaluateCorners( 1 );
+		valid = true;
+	}
+
+	/**
+	 * Evaluates the corners whose offset in the first dimension is the given one.
+	 */
+	private void evaluateCorners( final int offset0 )
+	{
+		for ( int c = offset0; c < nc; c += 2 )
+		{
+			for ( int d = 0; d < nl; d++ )
+				cornerPos[ d ] = ( cell[ d ] + ( ( c >> d ) & 1 ) ) * spacing;
+			for ( int d = nl; d < cornerPos.length; d++ )
+				cornerPos[ d ] = fixed[ d ];
+
+			transform.apply( cornerPos, corners[ c ] );
+		}
+	}
+
+	@Override
+	public LatticeInterpolatedRealTransform copy()
+	{
+		return new LatticeInterpolatedRealTransform( transform.copy(), spacing, nl );
+	}
+}
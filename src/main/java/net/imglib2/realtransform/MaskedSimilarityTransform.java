@@ -21,7 +21,6 @@
  */
 package net.imglib2.realtransform;
 
-import bdv.viewer.animate.AbstractTransformAnimator;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPositionable;
 import net.imglib2.RealRandomAccess;
@@ -33,6 +32,10 @@ import net.imglib2.type.numeric.RealType;
  * <p>
  * Given a {@link RealRandomAccessible} "lambda", and a transformation "a", implements the transformation
  * lambda * a(x) + (1-lambda) * x for a point x.
+ * <p>
+ * An instance keeps an access to the mask, the current transform and an interpolator
+ * with scratch space, so it must not be used by several threads at once. Each
+ * {@link #copy()} has its own, so use a copy per thread.
  * 
  * @author John Bogovic
  *
@@ -46,12 +49,20 @@ public class MaskedSimilarityTransform<T extends RealType<T>> implements RealTra
 
 	private RealRandomAccess<T> lambdaAccess;
 
+	private RealMaskFunction lambdaFunction;
+
 	private final AffineTransform3D transform;
 
-	private final AbstractTransformAnimator interpolator;
+	private final AffineInterpolator3D interpolator;
 
 	private final double[] c;
 
+	private final Interpolators interp;
+
+	private final AffineTransform3D current = new AffineTransform3D();
+
+	private AffineInterpolatorLookupTable lookupTable;
+
 //	private final boolean flip;
 
 	public MaskedSimilarityTransform(final AffineTransform3D transform, final RealRandomAccessible<T> lambda ) {
@@ -76,7 +87,11 @@ public class MaskedSimilarityTransform<T extends RealType<T>> implements RealTra
 		this.transform = transform;
 		this.c = c;
 		this.lambda = lambda;
-		lambdaAccess = lambda.realRandomAccess();
+		this.interp = interp;
+		if( lambda instanceof RealMaskFunction )
+			lambdaFunction = (RealMaskFunction)lambda;
+		else
+			lambdaAccess = lambda.realRandomAccess();
 
 		if( interp ==  Interpolators.SIMILARITY )
 			interpolator = new SimilarityTransformInterpolator( transform, c );
@@ -96,24 +111,65 @@ public class MaskedSimilarityTransform<T extends RealType<T>> implements RealTra
 		return transform.numTargetDimensions();
 	}
 
+	/**
+	 * Use a lookup table of the interpolated transforms with the given number of steps,
+	 * instead of computing the transform for every point.
+	 *
+	 * @param numSteps the number of steps, or zero to compute every transform exactly
+	 */
+	public void setLookupTableSteps( final int numSteps ) {
+
+		lookupTable = numSteps > 0 ? new AffineInterpolatorLookupTable( interpolator, 3, numSteps ) : null;
+	}
+
 	@Override
 	public void apply(double[] source, double[] target) {
-		lambdaAccess.setPosition(source);
-		final double lam = lambdaAccess.get().getRealDouble();
-		interpolator.get( lam ).apply( source, target );
+		final double lam = lambda(source);
+		if( lookupTable != null )
+			lookupTable.apply( lam, source, target );
+		else
+		{
+			interpolator.get( lam, current );
+			current.apply( source, target );
+		}
 	}
 
 	@Override
 	public void apply(RealLocalizable source, RealPositionable target) {
+		final double lam = lambda(source);
+		if( lookupTable != null )
+			lookupTable.apply( lam, source, target );
+		else
+		{
+			interpolator.get( lam, current );
+			current.apply( source, target );
+		}
+	}
+
+	private double lambda(final double[] source) {
+
+		if( lambdaFunction != null )
+			return lambdaFunction.value(source);
+
+		lambdaAccess.setPosition(source);
+		return lambdaAccess.get().getRealDouble();
+	}
+
+	private double lambda(final RealLocalizable source) {
+
+		if( lambdaFunction != null )
+			return lambdaFunction.value(source);
+
 		lambdaAccess.setPosition(source);
-		final double lam = lambdaAccess.get().getRealDouble();
-		interpolator.get( lam ).apply( source, target );
+		return lambdaAccess.get().getRealDouble();
 	}
 
 	@Override
 	public RealTransform copy() {
 
-		return new MaskedSimilarityTransform<T>(transform.copy(), lambda, c );
+		final MaskedSimilarityTransform<T> copy = new MaskedSimilarityTransform<T>(transform.copy(), lambda, c, interp );
+		copy.lookupTable = lookupTable;
+		return copy;
 	}
 
 }
@@ -30,6 +30,9 @@ import net.imglib2.type.numeric.RealType;
 
 /**
  * Spatially-varying mask for a {@link RealTransform}.
+ * <p>
+ * An instance keeps an access to the mask and the current transform, so it must
+ * not be used by several threads at once; use a {@link #copy()} per thread.
  * 
  * @param <T>
  *            mask type
@@ -40,14 +43,20 @@ public class MaskedSimilarityTransform2D<T extends RealType<T>> implements RealT
 
 	private RealRandomAccess<T> lambdaAccess;
 
+	private RealMaskFunction lambdaFunction;
+
 	private final AffineTransform2D transform;
 
-	private final AffineInterpolator interpolator;
+	private final AffineInterpolator2D interpolator;
 
 	private final double[] c;
 	
 	private final Interpolators interp;
 
+	private final AffineTransform2D current = new AffineTransform2D();
+
+	private AffineInterpolatorLookupTable lookupTable;
+
 	public MaskedSimilarityTransform2D(final AffineTransform2D transform, final RealRandomAccessible<T> lambda) {
 
 		this(transform, lambda, new double[3], Interpolators.SIMILARITY);
@@ -75,7 +84,10 @@ public class MaskedSimilarityTransform2D<T extends RealType<T>> implements RealT
 		this.c = c;
 		this.lambda = lambda;
 		this.interp = interp;
-		lambdaAccess = lambda.realRandomAccess();
+		if (lambda instanceof RealMaskFunction)
+			lambdaFunction = (RealMaskFunction)lambda;
+		else
+			lambdaAccess = lambda.realRandomAccess();
 
 		if (interp == Interpolators.SIMILARITY)
 			interpolator = new SimilarityTransformInterpolator2D(transform, c);
@@ -95,28 +107,67 @@ public class MaskedSimilarityTransform2D<T extends RealType<T>> implements RealT
 		return transform.numTargetDimensions();
 	}
 
+	/**
+	 * Use a lookup table of the interpolated transforms with the given number of steps,
+	 * instead of computing the transform for every point.
+	 *
+	 * @param numSteps the number of steps, or zero to compute every transform exactly
+	 */
+	public void setLookupTableSteps(final int numSteps) {
+
+		lookupTable = numSteps > 0 ? new AffineInterpolatorLookupTable(interpolator, 2, numSteps) : null;
+	}
+
 	@Override
 	public void apply(double[] source, double[] target) {
 
+		final double lam = lambda(source);
+		if (lookupTable != null)
+			lookupTable.apply(lam, source, target);
+		else {
+			interpolator.get(lam, current);
+			current.apply(source, target);
+		}
+	}
+
+	@Override
+	public void apply(RealLocalizable source, RealPositionable target) {
+
+		final double lam = lambda(source);
+		if (lookupTable != null)
+			lookupTable.apply(lam, source, target);
+		else {
+			interpolator.get(lam, current);
+			current.apply(source, target);
+		}
+	}
+
+	private double lambda(final double[] source) {
+
+		if (lambdaFunction != null)
+			return lambdaFunction.value(source);
+
 		for (int i = 0; i < source.length; i++)
 			lambdaAccess.setPosition(source[i], i);
 
-		final double lam = lambdaAccess.get().getRealDouble();
-		interpolator.get(lam).apply(source, target);
+		return lambdaAccess.get().getRealDouble();
 	}
 
-	@Override
-	public void apply(RealLocalizable source, RealPositionable target) {
+	private double lambda(final RealLocalizable source) {
+
+		if (lambdaFunction != null)
+			return lambdaFunction.value(source);
 
 		lambdaAccess.setPosition(source);
-		final double lam = lambdaAccess.get().getRealDouble();
-		interpolator.get(lam).apply(source, target);
+		return lambdaAccess.get().getRealDouble();
 	}
 
 	@Override
 	public RealTransform copy() {
 
-		return new MaskedSimilarityTransform2D<T>(transform.copy(), lambda, c, interp);
+		final MaskedSimilarityTransform2D<T> copy = new MaskedSimilarityTransform2D<T>(transform.copy(), lambda, c, interp);
+		copy.lookupTable = lookupTable;
+		return copy;
 	}
 
 }
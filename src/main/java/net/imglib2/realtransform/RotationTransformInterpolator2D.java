@@ -40,20 +40,16 @@ import net.imglib2.realtransform.inverse.WrappedIterativeInvertibleRealTransform
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.LinAlgHelpers;
 
-public class RotationTransformInterpolator2D implements AffineInterpolator
+public class RotationTransformInterpolator2D extends AffineInterpolator2D
 {
 	private final double thtDiff;
 
-	private final AffineTransform2D tform;
-
 	private final double[] c;
 
 	private final double[] pDiff;
 
 	public RotationTransformInterpolator2D( final AffineTransform2D transform, final double[] c )
 	{
-		tform = new AffineTransform2D();
-
 		final AffineTransform2D transformEnd = new AffineTransform2D();
 		transformEnd.set( transform );
 		transformEnd.translate( -c[0], -c[1] );
@@ -64,34 +60,24 @@ public class RotationTransformInterpolator2D implements AffineInterpolator
 		this.c = new double[ 2 ];
 		System.arraycopy( c, 0, this.c, 0, 2 );
 
+		// the displacement of the center
 		pDiff = new double[ 2 ];
-		double[] tmp = new double[ 2 ];
-		AffineTransform2D t1 = get( 1 );
-		t1.apply( c, tmp );
 		transform.apply( c, pDiff );
-		LinAlgHelpers.subtract( pDiff, tmp, pDiff );
+		LinAlgHelpers.subtract( pDiff, this.c, pDiff );
 	}
 
-	public AffineTransform2D get( final double t )
+	@Override
+	public void get( final double t, final AffineTransform2D out )
 	{
-		// make identity
-		tform.set( 1.0, 0.0, 0.0, 0.0, 1.0, 0.0 );
-
 		// the rotation
-		final double thtCurrent = t * thtDiff;
-		tform.rotate( thtCurrent );
-
-		// the translation
-		final double[] pCurrent = new double[ 2 ];
-		final double[] pTgt = new double[ 2 ];
-		tform.apply( c, pCurrent );
-
-		LinAlgHelpers.scale( pDiff, t, pTgt );
-		LinAlgHelpers.add( pTgt, c, pTgt );
-		LinAlgHelpers.subtract( pTgt, pCurrent, pTgt );
-		tform.translate( pTgt );
-
-		return tform;
+		final double tht = t * thtDiff;
+		final double cos = Math.cos( tht );
+		final double sin = Math.sin( tht );
+
+		// the translation that moves the center by t times its displacement
+		final double tx = c[ 0 ] + t * pDiff[ 0 ] - ( cos * c[ 0 ] - sin * c[ 1 ] );
+		final double ty = c[ 1 ] + t * pDiff[ 1 ] - ( sin * c[ 0 ] + cos * c[ 1 ] );
+		out.set( cos, -sin, tx, sin, cos, ty );
 	}
 	
 	public static void main( String[] args ) throws IOException
@@ -130,11 +116,11 @@ public class RotationTransformInterpolator2D implements AffineInterpolator
 		final RealPoint x = new RealPoint( nd );
 		final RealPoint y = new RealPoint( nd );
 
-		x.setPosition( Arrays.stream( ltm.getFixedPoint( idx ) ).mapToDouble( Double::doubleValue ).toArray() );
+		x.setPosition( ltm.getPointCopy( false, idx ) );
 		xfm.apply( x, y );
 		System.out.println("est pt : " + y );
 
-		final double[] ytrue = Arrays.stream( ltm.getMovingPoint( idx ) ).mapToDouble( Double::doubleValue ).toArray();
+		final double[] ytrue = ltm.getPointCopy( true, idx );
 		System.out.println( "tru pt :" +  new RealPoint( ytrue ));
 
 	}
@@ -146,7 +132,7 @@ public class RotationTransformInterpolator2D implements AffineInterpolator
 		final RealPoint x = new RealPoint( nd );
 		final RealPoint y = new RealPoint( nd );
 
-		x.setPosition( Arrays.stream( ltm.getFixedPoint( idx ) ).mapToDouble( Double::doubleValue ).toArray() );
+		x.setPosition( ltm.getPointCopy( false, idx ) );
 
 		if( lambda != null )
 			System.out.println( "l(x): " + lambda.getAt( x ) );
@@ -156,7 +142,7 @@ public class RotationTransformInterpolator2D implements AffineInterpolator
 		xfm.apply( x, y );
 		System.out.println( y );
 
-		final double[] ytrue = Arrays.stream( ltm.getMovingPoint( idx ) ).mapToDouble( Double::doubleValue ).toArray();
+		final double[] ytrue = ltm.getPointCopy( true, idx );
 		System.out.println( "true pt :" +  Arrays.toString( ytrue ));
 	}
 	
@@ -24,9 +24,8 @@ package net.imglib2.realtransform;
 import net.imglib2.util.LinAlgHelpers;
 
 import bdv.util.Affine3DHelpers;
-import bdv.viewer.animate.AbstractTransformAnimator;
 
-public class SimilarityTransformInterpolator extends AbstractTransformAnimator
+public class SimilarityTransformInterpolator extends AffineInterpolator3D
 {
 	private final double[] qStart;
 
@@ -42,8 +41,18 @@ public class SimilarityTransformInterpolator extends AbstractTransformAnimator
 
 	private final double[] pDiff;
 
+	// scratch for get
+	private final double[] qDiffCurrent = new double[4];
+
+	private final double[] qCurrent = new double[4];
+
+	private final double[][] Rcurrent = new double[3][3];
+
+	private final double[] pCurrent = new double[3];
+
+	private final double[] pTgt = new double[3];
+
 	public SimilarityTransformInterpolator(final AffineTransform3D transform, final double[] p) {
-		super(1);
 		AffineTransform3D transformEnd = new AffineTransform3D();
 		transformEnd.set(transform);
 
@@ -75,39 +84,23 @@ public class SimilarityTransformInterpolator extends AbstractTransformAnimator
 	}
 	
 	@Override
-	public AffineTransform3D get(final double t) {
+	public void get(final double t, final AffineTransform3D out) {
 
-		final double[] qDiffCurrent = new double[4];
-		final double[] qCurrent = new double[4];
 		LinAlgHelpers.quaternionPower(qDiff, t, qDiffCurrent);
 		LinAlgHelpers.quaternionMultiply(qStart, qDiffCurrent, qCurrent);
 
-		final double alpha = Math.pow(scaleRate, t);
-		final double scaleCurrent = scaleStart * alpha;
-
-		final double[][] Rcurrent = new double[3][3];
+		final double scaleCurrent = scaleStart * Math.pow(scaleRate, t);
 		LinAlgHelpers.quaternionToR(qCurrent, Rcurrent);
+		out.set(
+				scaleCurrent * Rcurrent[0][0], scaleCurrent * Rcurrent[0][1], scaleCurrent * Rcurrent[0][2], 0,
+				scaleCurrent * Rcurrent[1][0], scaleCurrent * Rcurrent[1][1], scaleCurrent * Rcurrent[1][2], 0,
+				scaleCurrent * Rcurrent[2][0], scaleCurrent * Rcurrent[2][1], scaleCurrent * Rcurrent[2][2], 0);
 
-		final double[][] m = new double[3][4];
-		for (int r = 0; r < 3; ++r) {
-			for (int c = 0; c < 3; ++c)
-				m[r][c] = scaleCurrent * Rcurrent[r][c];
-		}
-
-		final AffineTransform3D transform = new AffineTransform3D();
-		transform.set(m);
-
-		double[] pCurrent = new double[3];
-		transform.apply(p, pCurrent);
-
-		double[] pTgt = new double[3];
+		out.apply(p, pCurrent);
 		LinAlgHelpers.scale( pDiff, t, pTgt );
 		LinAlgHelpers.add( p, pTgt, pTgt );
 		LinAlgHelpers.subtract( pTgt, pCurrent, pTgt );
-		transform.translate( pTgt );
-
-		return transform;
-
+		out.translate( pTgt );
 	}
 
 }
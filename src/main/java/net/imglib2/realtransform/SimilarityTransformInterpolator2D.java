@@ -27,12 +27,10 @@ import org.janelia.utility.geom.GeomUtils;
 
 import net.imglib2.util.LinAlgHelpers;
 
-public class SimilarityTransformInterpolator2D implements AffineInterpolator
+public class SimilarityTransformInterpolator2D extends AffineInterpolator2D
 {
 	private final double thtDiff;
 
-	private final AffineTransform2D tform;
-
 	private final double[] c;
 
 	private final double[] pDiff;
@@ -43,8 +41,6 @@ public class SimilarityTransformInterpolator2D implements AffineInterpolator
 
 	public SimilarityTransformInterpolator2D( final AffineTransform2D transform, final double[] c )
 	{
-		tform = new AffineTransform2D();
-
 		final AffineTransform2D transformEnd = new AffineTransform2D();
 		transformEnd.set( transform );
 		transformEnd.translate( -c[0], -c[1] );
@@ -57,36 +53,25 @@ public class SimilarityTransformInterpolator2D implements AffineInterpolator
 		this.c = new double[ 2 ];
 		System.arraycopy( c, 0, this.c, 0, 2 );
 
+		// the displacement of the center
 		pDiff = new double[ 2 ];
-		final double[] tmp = new double[ 2 ];
-		final AffineTransform2D t1 = get( 1 );
-		t1.apply( c, tmp );
 		transform.apply( c, pDiff );
-		LinAlgHelpers.subtract( pDiff, tmp, pDiff );
+		LinAlgHelpers.subtract( pDiff, this.c, pDiff );
 	}
 
-	public AffineTransform2D get( final double t )
+	@Override
+	public void get( final double t, final AffineTransform2D out )
 	{
-		// make identity
-		tform.set( 1.0, 0.0, 0.0, 0.0, 1.0, 0.0 );
-
-		// the rotation
-		tform.rotate( t * thtDiff );
-
-		// the scale
-		tform.scale( 1.0 + t * sDiff );
-
-		// the translation
-		final double[] pCurrent = new double[ 2 ];
-		final double[] pTgt = new double[ 2 ];
-		tform.apply( c, pCurrent );
-
-		LinAlgHelpers.scale( pDiff, t, pTgt );
-		LinAlgHelpers.add( c, pTgt, pTgt );
-		LinAlgHelpers.subtract( pTgt, pCurrent, pTgt );
-		tform.translate( pTgt );
-
-		return tform;
+		// the rotation and scale
+		final double tht = t * thtDiff;
+		final double s = 1.0 + t * sDiff;
+		final double m00 = s * Math.cos( tht );
+		final double m10 = s * Math.sin( tht );
+
+		// the translation that moves the center by t times its displacement
+		final double tx = c[ 0 ] + t * pDiff[ 0 ] - ( m00 * c[ 0 ] - m10 * c[ 1 ] );
+		final double ty = c[ 1 ] + t * pDiff[ 1 ] - ( m10 * c[ 0 ] + m00 * c[ 1 ] );
+		out.set( m00, -m10, tx, m10, m00, ty );
 	}
 
 	public static void main( String[] args )
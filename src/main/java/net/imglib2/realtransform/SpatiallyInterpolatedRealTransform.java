@@ -21,6 +21,7 @@
  */
 package net.imglib2.realtransform;
 
+import net.imglib2.RealInterval;
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
 import net.imglib2.RealPositionable;
@@ -33,6 +34,10 @@ import net.imglib2.type.numeric.RealType;
  * <p>
  * Given a {@link RealRandomAccessible} "lambda", and two transformations "a", and "b", implements the transformation
  * lambda * a(x) + (1-lambda) * b(x) for a point x.
+ * <p>
+ * Only "a" is evaluated where lambda is 1, and only "b" where lambda is 0. If lambda is a
+ * {@link BoundedRealMask}, {@link #simplify(RealInterval)} returns the one transform that
+ * applies over a whole interval, if there is one.
  *
  * @author John Bogovic
  *
@@ -44,6 +49,8 @@ public class SpatiallyInterpolatedRealTransform<T extends RealType<T>> implement
 
 	private RealRandomAccess<T> lambdaAccess;
 
+	private RealMaskFunction lambdaFunction;
+
 	private final RealTransform a;
 
 	private final RealTransform b;
@@ -64,7 +71,9 @@ public class SpatiallyInterpolatedRealTransform<T extends RealType<T>> implement
 		this.b = b;
 		this.lambda = lambda;
 
-		if( lambda != null )
+		if( lambda instanceof RealMaskFunction )
+			lambdaFunction = (RealMaskFunction)lambda;
+		else if( lambda != null )
 			lambdaAccess = lambda.realRandomAccess();
 
 		final int nd = a.numTargetDimensions();
@@ -89,16 +98,21 @@ public class SpatiallyInterpolatedRealTransform<T extends RealType<T>> implement
 	@Override
 	public void apply(double[] source, double[] target) {
 
+		final double am = lambda(source);
+		if (am == 1) {
+			a.apply(source, arrA);
+			System.arraycopy(arrA, 0, target, 0, arrA.length);
+			return;
+		} else if (am == 0) {
+			b.apply(source, arrB);
+			System.arraycopy(arrB, 0, target, 0, arrB.length);
+			return;
+		}
+
 		a.apply(source, arrA);
 		b.apply(source, arrB);
 
-//		lambdaAccess.setPosition(source);
-		for( int i = 0; i < numSourceDimensions(); i++ )
-			lambdaAccess.setPosition( source[ i ], i );
-
-		final double am = lambdaAccess.get().getRealDouble();
 		final double bm = (1 - am);
-
 		for (int i = 0; i < numTargetDimensions(); i++)
 			target[i] = am * arrA[i] + bm * arrB[i];
 	}
@@ -106,17 +120,83 @@ public class SpatiallyInterpolatedRealTransform<T extends RealType<T>> implement
 	@Override
 	public void apply(RealLocalizable source, RealPositionable target) {
 
+		final double am = lambda(source);
+		if (am == 1) {
+			a.apply(source, pa);
+			target.setPosition(pa);
+			return;
+		} else if (am == 0) {
+			b.apply(source, pb);
+			target.setPosition(pb);
+			return;
+		}
+
 		a.apply(source, pa);
 		b.apply(source, pb);
 
-		lambdaAccess.setPosition(source);
-		final double am = lambdaAccess.get().getRealDouble();
 		final double bm = (1 - am);
-
 		for (int i = 0; i < numTargetDimensions(); i++)
 			target.setPosition(am * pa.getDoublePosition(i) + bm * pb.getDoublePosition(i), i);
 	}
 
+	private double lambda(final double[] source) {
+
+		if (lambdaFunction != null)
+			return lambdaFunction.value(source);
+
+		for (int i = 0; i < numSourceDimensions(); i++)
+			lambdaAccess.setPosition(source[i], i);
+
+		return lambdaAccess.get().getRealDouble();
+	}
+
+	private double lambda(final RealLocalizable source) {
+
+		if (lambdaFunction != null)
+			return lambdaFunction.value(source);
+
+		lambdaAccess.setPosition(source);
+		return lambdaAccess.get().getRealDouble();
+	}
+
+	/**
+	 * Returns "a" if lambda is 1 everywhere in the interval, "b" if lambda is 0 everywhere in
+	 * the interval, and this transform otherwise, or if lambda is not a {@link BoundedRealMask}.
+	 * The transforms are not copied.
+	 *
+	 * @param interval the interval
+	 * @return a transform that equals this one in the interval
+	 */
+	public RealTransform simplify(final RealInterval interval) {
+
+		if (!(lambda instanceof BoundedRealMask))
+			return this;
+
+		final double[] minMax = new double[2];
+		((BoundedRealMask)lambda).valueBounds(interval, minMax);
+		if (minMax[0] == 1 && minMax[1] == 1)
+			return a;
+		else if (minMax[0] == 0 && minMax[1] == 0)
+			return b;
+		else
+			return this;
+	}
+
+	public RealTransform getA() {
+
+		return a;
+	}
+
+	public RealTransform getB() {
+
+		return b;
+	}
+
+	public RealRandomAccessible<T> getLambda() {
+
+		return lambda;
+	}
+
 	@Override
 	public RealTransform copy() {
 
@@ -22,15 +22,25 @@
 package bigwarp;
 
 import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.Test;
 
 import bdv.ij.ApplyBigwarpPlugin;
+import bdv.img.WarpedSource;
 import bdv.util.RandomAccessibleIntervalSource;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.BoundingBoxEstimation;
+import net.imglib2.realtransform.RealTransform;
 import net.imglib2.realtransform.Scale3D;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.util.ConstantUtils;
@@ -107,4 +117,154 @@ public class BBoxTests {
 		assertEquals("scale z max", 8 * 11 * 4, physicalInterval.realMax(2), EPS);
 	}
 
+	@Test
+	public void testFacesTasks() throws Exception
+	{
+		final AffineTransform3D xfm = new AffineTransform3D();
+		xfm.rotate( 0, 0.3 );
+		xfm.rotate( 2, 0.7 );
+		xfm.translate( 5, -3, 2 );
+
+		final BoundingBoxEstimation bboxFaces = new BoundingBoxEstimation( BoundingBoxEstimation.Method.FACES, 5 );
+		final RealInterval expected = bboxFaces.estimateInterval( xfm, itvl );
+
+		RealInterval union = null;
+		for ( final Callable< RealInterval > task : bboxFaces.estimationTasks( xfm::copy, itvl ) )
+		{
+			final RealInterval face = task.call();
+			union = union == null ? face : Intervals.union( union, face );
+		}
+
+		for ( int d = 0; d < 3; d++ )
+		{
+			assertEquals( "min " + d, expected.realMin( d ), union.realMin( d ), 1e-9 );
+			assertEquals( "max " + d, expected.realMax( d ), union.realMax( d ), 1e-9 );
+		}
+	}
+
+	@Test
+	public void testParallelEstimate()
+	{
+		final FinalInterval interval = new FinalInterval( new long[] { 100, 100, 40 } );
+		for ( final BoundingBoxEstimation.Method method : BoundingBoxEstimation.Method.values() )
+		{
+			final BoundingBoxEstimation bbox = new BoundingBoxEstimation( method, 20 );
+			final RealInterval serial = bbox.estimateInterval( new Bump( null ), interval );
+
+			bbox.setNumThreads( 4 );
+			final RealInterval parallel = bbox.estimateInterval( new Bump( null ), interval );
+
+			// fewer threads than tasks, on a given executor
+			final ExecutorService exec = Executors.newFixedThreadPool( 2 );
+			bbox.setNumThreads( 3 );
+			bbox.setExecutorService( exec );
+			final RealInterval grouped = bbox.estimateInterval( new Bump( null ), interval );
+			exec.shutdown();
+
+			for ( int d = 0; d < 3; d++ )
+			{
+				assertEquals( method + " min " + d, serial.realMin( d ), parallel.realMin( d ), 1e-9 );
+				assertEquals( method + " max " + d, serial.realMax( d ), parallel.realMax( d ), 1e-9 );
+				assertEquals( method + " grouped min " + d, serial.realMin( d ), grouped.realMin( d ), 1e-9 );
+				assertEquals( method + " grouped max " + d, serial.realMax( d ), grouped.realMax( d ), 1e-9 );
+			}
+		}
+	}
+
+	@Test
+	public void testAdaptive()
+	{
+		final FinalInterval interval = new FinalInterval( new long[] { 101, 101, 41 } );
+
+		final AtomicLong facesSamples = new AtomicLong();
+		final RealInterval faces = new BoundingBoxEstimation( BoundingBoxEstimation.Method.FACES, 100 )
+				.estimateInterval( new Bump( facesSamples ), interval );
+
+		final AtomicLong adaptiveSamples = new AtomicLong();
+		final RealInterval adaptive = new BoundingBoxEstimation( BoundingBoxEstimation.Method.ADAPTIVE, 100 )
+				.estimateInterval( new Bump( adaptiveSamples ), interval );
+
+		for ( int d = 0; d < 3; d++ )
+		{
+			assertEquals( "min " + d, faces.realMin( d ), adaptive.realMin( d ), 1e-6 );
+			assertEquals( "max " + d, faces.realMax( d ), adaptive.realMax( d ), 1e-6 );
+		}
+		assertTrue( "fewer samples", adaptiveSamples.get() < facesSamples.get() / 2 );
+	}
+
+	/**
+	 * A shear with a smooth bump, counting its samples.
+	 */
+	private static class Bump implements RealTransform
+	{
+		private final AtomicLong samples;
+
+		public Bump( final AtomicLong samples )
+		{
+			this.samples = samples;
+		}
+
+		@Override
+		public int numSourceDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public int numTargetDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public void apply( final double[] source, final double[] target )
+		{
+			if ( samples != null )
+				samples.incrementAndGet();
+
+			final double dx = source[ 0 ] - 37;
+			final double dy = source[ 1 ] - 61;
+			final double dz = source[ 2 ] - 20;
+			final double b = 30 * Math.exp( -( dx * dx + dy * dy + dz * dz ) / 400 );
+			target[ 0 ] = 1.1 * source[ 0 ] + 0.1 * source[ 1 ] + b;
+			target[ 1 ] = source[ 1 ] - 0.2 * source[ 2 ] + 0.5 * b;
+			target[ 2 ] = source[ 2 ] + 0.001 * source[ 0 ] * source[ 1 ] - b;
+		}
+
+		@Override
+		public void apply( final RealLocalizable source, final RealPositionable target )
+		{
+			final double[] s = new double[ 3 ];
+			final double[] t = new double[ 3 ];
+			source.localize( s );
+			apply( s, t );
+			target.setPosition( t );
+		}
+
+		@Override
+		public RealTransform copy()
+		{
+			return new Bump( samples );
+		}
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	@Test
+	public void testWarpedSourceBoundingBox()
+	{
+		final UnsignedByteType type = new UnsignedByteType();
+		final RandomAccessibleIntervalSource src = new RandomAccessibleIntervalSource(
+				ConstantUtils.constantRandomAccessibleInterval( type, itvl ), type, new AffineTransform3D(), "src" );
+
+		final WarpedSource< ? > ws = new WarpedSource<>( src, "warped" );
+		ws.setIsTransformed( true );
+
+		// the transform maps fixed to moving space, the bounding box is found through its inverse
+		ws.updateTransform( new Scale3D( 0.5, 0.25, 2 ) );
+		final Interval bbox = ws.getSource( 0, 0 );
+		assertEquals( "max x ", 78, bbox.max( 0 ) );
+		assertEquals( "max y ", 116, bbox.max( 1 ) );
+		assertEquals( "max z ", 10, bbox.max( 2 ) );
+	}
+
 }
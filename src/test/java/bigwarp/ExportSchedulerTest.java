@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bigwarp.ExportScheduler.Priority;
+
+public class ExportSchedulerTest
+{
+	@Test
+	public void testJobParallelism() throws InterruptedException
+	{
+		final ExportScheduler scheduler = new ExportScheduler( 4 );
+		final ExportScheduler.Job job = scheduler.newJob( 2 );
+		assertEquals( 2, BigWarpExporter.numThreads( job ) );
+		assertEquals( 4, BigWarpExporter.numThreads( scheduler.newJob( 8 ) ) );
+
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final List< Runnable > tasks = new ArrayList<>();
+		for ( int i = 0; i < 16; i++ )
+			tasks.add( () -> {
+				maxRunning.accumulateAndGet( running.incrementAndGet(), Math::max );
+				try
+				{
+					Thread.sleep( 5 );
+				}
+				catch ( final InterruptedException e ) {}
+				running.decrementAndGet();
+			} );
+
+		for ( final Runnable t : tasks )
+			job.execute( t );
+
+		job.shutdown();
+		assertTrue( job.awaitTermination( 10, TimeUnit.SECONDS ) );
+		assertTrue( "at most two tasks at once", maxRunning.get() <= 2 );
+		assertTrue( "terminated job is removed", !scheduler.getJobs().contains( job ) );
+	}
+
+	@Test
+	public void testPriority() throws InterruptedException
+	{
+		final ExportScheduler scheduler = new ExportScheduler( 1 );
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final ExportScheduler.Job blocker = scheduler.newJob( 1 );
+		blocker.execute( () -> {
+			started.countDown();
+			try
+			{
+				release.await();
+			}
+			catch ( final InterruptedException e ) {}
+		} );
+		started.await();
+
+		final List< String > order = Collections.synchronizedList( new ArrayList<>() );
+		final ExportScheduler.Job low = scheduler.newJob( "low", 1, Priority.LOW );
+		final ExportScheduler.Job high = scheduler.newJob( "high", 1, Priority.HIGH );
+		low.execute( () -> order.add( "low" ) );
+		high.execute( () -> order.add( "high" ) );
+		release.countDown();
+
+		for ( final ExportScheduler.Job job : new ExportScheduler.Job[] { blocker, low, high } )
+		{
+			job.shutdown();
+			assertTrue( job.awaitTermination( 10, TimeUnit.SECONDS ) );
+		}
+		assertEquals( "high", order.get( 0 ) );
+		assertEquals( "low", order.get( 1 ) );
+	}
+
+	@Test
+	public void testShutdownNow() throws InterruptedException
+	{
+		final ExportScheduler scheduler = new ExportScheduler( 2 );
+		final ExportScheduler.Job job = scheduler.newJob( 1 );
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final AtomicInteger interrupted = new AtomicInteger();
+		job.execute( () -> {
+			started.countDown();
+			try
+			{
+				Thread.sleep( 60000 );
+			}
+			catch ( final InterruptedException e )
+			{
+				interrupted.incrementAndGet();
+			}
+		} );
+		job.execute( () -> {} );
+		job.execute( () -> {} );
+		started.await();
+
+		assertEquals( "waiting tasks", 2, job.shutdownNow().size() );
+		assertTrue( job.awaitTermination( 10, TimeUnit.SECONDS ) );
+		assertEquals( "running task interrupted", 1, interrupted.get() );
+	}
+
+	@Test
+	public void testNestedInvokeAll() throws InterruptedException, ExecutionException
+	{
+		// every thread of the pool waits for nested tasks, which must not deadlock
+		final ExportScheduler scheduler = new ExportScheduler( 2 );
+		final ExportScheduler.Job outer = scheduler.newJob( 2 );
+		final ExportScheduler.Job inner = scheduler.newBackgroundJob( "inner", 2, Priority.HIGH );
+		final AtomicInteger count = new AtomicInteger();
+		final List< Callable< Integer > > outerTasks = new ArrayList<>();
+		for ( int i = 0; i < 4; i++ )
+			outerTasks.add( () -> {
+				final List< Callable< Void > > innerTasks = new ArrayList<>();
+				for ( int j = 0; j < 8; j++ )
+					innerTasks.add( () -> {
+						Thread.sleep( 1 );
+						count.incrementAndGet();
+						return null;
+					} );
+
+				for ( final Future< Void > f : inner.invokeAll( innerTasks ) )
+					f.get();
+
+				return innerTasks.size();
+			} );
+
+		int total = 0;
+		for ( final Future< Integer > f : outer.invokeAll( outerTasks ) )
+			total += f.get();
+
+		outer.shutdown();
+		assertTrue( outer.awaitTermination( 10, TimeUnit.SECONDS ) );
+		assertEquals( 32, total );
+		assertEquals( 32, count.get() );
+	}
+
+	@Test
+	public void testBackgroundJob() throws InterruptedException, ExecutionException
+	{
+		final ExportScheduler scheduler = new ExportScheduler( 2 );
+		final ExportScheduler.Job background = scheduler.newBackgroundJob( "background", 1, Priority.LOW );
+		final ExportScheduler.Job export = scheduler.newJob( 1 );
+		assertEquals( 1, scheduler.getJobs().size() );
+
+		scheduler.cancelAll();
+		assertTrue( export.isShutdown() );
+		assertTrue( "background jobs are not cancelled", !background.isShutdown() );
+		assertEquals( 3, ( int ) background.submit( () -> 3 ).get() );
+		background.shutdown();
+	}
+}
@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.Test;
+
+import bdv.export.ProgressWriterConsole;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypes.FloatArray;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+public class ExportTilesTest
+{
+	private static final FunctionRandomAccessible< FloatType > FUN = new FunctionRandomAccessible<>( 4,
+			( p, v ) -> v.setReal( p.getLongPosition( 0 ) + 100 * p.getLongPosition( 1 ) + 10000 * p.getLongPosition( 3 ) ),
+			FloatType::new );
+
+	@Test
+	public void testCopyByTiles()
+	{
+		// the copy permutes dimensions 2 and 3 of the input
+		final ArrayImg< FloatType, FloatArray > target = ArrayImgs.floats( 130, 70, 20, 1 );
+		BigWarpExporter.copyToImageStackByTiles( FUN, target, target, 3, new ProgressWriterConsole() );
+
+		final Cursor< FloatType > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			assertEquals( c.getLongPosition( 0 ) + 100 * c.getLongPosition( 1 ) + 10000 * c.getLongPosition( 2 ), c.get().get(), 0 );
+		}
+	}
+
+	@Test( expected = RuntimeException.class )
+	public void testCopyByTilesFailure()
+	{
+		final FunctionRandomAccessible< FloatType > failing = new FunctionRandomAccessible<>( 4, ( p, v ) -> {
+			if ( p.getLongPosition( 3 ) == 10 )
+				throw new IllegalStateException( "tile failed" );
+
+			v.setReal( 1 );
+		}, FloatType::new );
+
+		// a failed tile must not produce an incomplete stack silently
+		final ArrayImg< FloatType, FloatArray > target = ArrayImgs.floats( 130, 70, 20, 1 );
+		BigWarpExporter.copyToImageStackByTiles( failing, target, target, 3, new ProgressWriterConsole() );
+	}
+
+	@Test
+	public void testSaveByTiles() throws IOException, InterruptedException, ExecutionException
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-tiles" ).toFile();
+		dir.deleteOnExit();
+		final N5Writer n5 = new N5Factory().openWriter( new File( dir, "tiles.n5" ).getAbsolutePath() );
+
+		final RandomAccessibleInterval< FloatType > img = Views.interval( Views.hyperSlice( FUN, 2, 0 ), new FinalInterval( 50, 40, 9 ) );
+		final ExecutorService exec = Executors.newFixedThreadPool( 3 );
+		try
+		{
+			BigWarpExporter.saveByTiles( img, n5, "img", new int[] { 16, 16, 4 }, new GzipCompression(), exec, 3, null );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+
+		final RandomAccessibleInterval< FloatType > saved = N5Utils.open( n5, "img" );
+		final RandomAccess< FloatType > ra = saved.randomAccess();
+		final Cursor< FloatType > c = Views.flatIterable( img ).localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			ra.setPosition( c );
+			assertEquals( c.get().get(), ra.get().get(), 0 );
+		}
+		n5.remove();
+	}
+
+	@Test
+	public void testResumeSaveByTiles() throws IOException, InterruptedException, ExecutionException
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-tiles" ).toFile();
+		dir.deleteOnExit();
+		final N5Writer n5 = new N5Factory().openWriter( new File( dir, "resume.n5" ).getAbsolutePath() );
+
+		final RandomAccessibleInterval< FloatType > img = Views.interval( Views.hyperSlice( FUN, 2, 0 ), new FinalInterval( 32, 32, 1 ) );
+		final int[] blockSize = new int[] { 16, 16, 1 };
+		final String key = BigWarpExporter.resumeKey( "fun", blockSize );
+		final ExecutorService exec = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			BigWarpExporter.saveByTiles( img, n5, "img", blockSize, new GzipCompression(), exec, 2, null, key );
+
+			// overwrite the first two blocks with zeros, and mark only the first as not done
+			final DatasetAttributes attrs = n5.getDatasetAttributes( "img" );
+			N5Utils.saveBlock( ArrayImgs.floats( 16, 16, 1 ), n5, "img", attrs, new long[] { 0, 0, 0 } );
+			N5Utils.saveBlock( ArrayImgs.floats( 16, 16, 1 ), n5, "img", attrs, new long[] { 1, 0, 0 } );
+			final BitSet completed = new BitSet();
+			completed.set( 1, 4 );
+			n5.setAttribute( "img", BigWarpExporter.EXPORT_COMPLETED_KEY, completed.toLongArray() );
+
+			BigWarpExporter.saveByTiles( img, n5, "img", blockSize, new GzipCompression(), exec, 2, null, key );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+
+		final RandomAccess< FloatType > ra = N5Utils.< FloatType >open( n5, "img" ).randomAccess();
+		ra.setPosition( new long[] { 5, 5, 0 } );
+		assertEquals( "rewritten block", 505, ra.get().get(), 0 );
+		ra.setPosition( new long[] { 21, 5, 0 } );
+		assertEquals( "skipped block", 0, ra.get().get(), 0 );
+		ra.setPosition( new long[] { 21, 21, 0 } );
+		assertEquals( "completed block", 2121, ra.get().get(), 0 );
+		n5.remove();
+	}
+
+	@Test
+	public void testResumeKeyChange() throws IOException, InterruptedException, ExecutionException
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-tiles" ).toFile();
+		dir.deleteOnExit();
+		final N5Writer n5 = new N5Factory().openWriter( new File( dir, "rekey.n5" ).getAbsolutePath() );
+
+		final RandomAccessibleInterval< FloatType > img = Views.interval( Views.hyperSlice( FUN, 2, 0 ), new FinalInterval( 32, 32, 1 ) );
+		final int[] blockSize = new int[] { 16, 16, 1 };
+		final ExecutorService exec = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			BigWarpExporter.saveByTiles( img, n5, "img", blockSize, new GzipCompression(), exec, 2, null, BigWarpExporter.resumeKey( "old" ) );
+
+			// a different export to the same dataset must not inherit the old progress
+			final DatasetAttributes attrs = n5.getDatasetAttributes( "img" );
+			N5Utils.saveBlock( ArrayImgs.floats( 16, 16, 1 ), n5, "img", attrs, new long[] { 1, 0, 0 } );
+			BigWarpExporter.saveByTiles( img, n5, "img", blockSize, new GzipCompression(), exec, 2, null, BigWarpExporter.resumeKey( "new" ) );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+
+		assertEquals( 4, BitSet.valueOf( n5.getAttribute( "img", BigWarpExporter.EXPORT_COMPLETED_KEY, long[].class ) ).cardinality() );
+		final RandomAccess< FloatType > ra = N5Utils.< FloatType >open( n5, "img" ).randomAccess();
+		ra.setPosition( new long[] { 21, 5, 0 } );
+		assertEquals( "rewritten block", 521, ra.get().get(), 0 );
+		n5.remove();
+	}
+
+}
@@ -48,7 +48,7 @@ public class ExportTransformAsXmlTest
 
 		bw.setTransformType( TransformTypeSelectDialog.AFFINE );
 
-		new BigWarp.SolveThread( bw ).start(); IJ.wait( 100 );
+		bw.getSolvePipeline().requestResolve( true, -1, null ); IJ.wait( 100 );
 
 		final File warpedXml = bw.saveMovingImageXml( Class.class.getResource( "../../mri-stack-translated-bigWarp.xml" ).getFile() );
 
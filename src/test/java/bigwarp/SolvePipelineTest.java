@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bigwarp.source.PlateauSphericalMaskRealRandomAccessible;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.InvertibleRealTransform;
+
+public class SolvePipelineTest
+{
+	@Test
+	public void testRequestsAreCoalesced() throws InterruptedException
+	{
+		final TestTarget target = new TestTarget();
+		final SolvePipeline pipeline = new SolvePipeline( target );
+		try
+		{
+			final long first = pipeline.requestResolve( true, -1, null );
+			assertTrue( target.solving.await( 10, TimeUnit.SECONDS ) );
+
+			// while the first solve runs, a point moves twice
+			pipeline.requestResolve( true, 3, new double[] { 1, 2, 3 } );
+			final long last = pipeline.requestResolve( true, 3, new double[] { 2, 3, 4 } );
+			target.release.countDown();
+
+			assertTrue( pipeline.awaitVersion( last, 10, TimeUnit.SECONDS ) );
+			assertEquals( 1, first );
+			assertEquals( 3, last );
+			assertEquals( "one solve per state of the landmarks", 2, target.solved.size() );
+			assertEquals( -1, ( int ) target.solved.get( 0 ) );
+			assertEquals( "repeated point requests stay a point solve", 3, ( int ) target.solved.get( 1 ) );
+			assertEquals( last, pipeline.getSnapshot().getVersion() );
+			assertTrue( !pipeline.getSnapshot().isFull() );
+		}
+		finally
+		{
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	public void testPointRequestsAreMergedIntoFullSolve() throws InterruptedException
+	{
+		final TestTarget target = new TestTarget();
+		final SolvePipeline pipeline = new SolvePipeline( target );
+		try
+		{
+			pipeline.requestResolve( true, 0, new double[] { 0, 0, 0 } );
+			assertTrue( target.solving.await( 10, TimeUnit.SECONDS ) );
+
+			// different landmarks moved while solving
+			pipeline.requestResolve( true, 1, new double[] { 1, 2, 3 } );
+			final long last = pipeline.requestResolve( false, 2, new double[] { 2, 3, 4 } );
+			target.release.countDown();
+
+			assertTrue( pipeline.awaitVersion( last, 10, TimeUnit.SECONDS ) );
+			assertEquals( 2, target.solved.size() );
+			assertEquals( -1, ( int ) target.solved.get( 1 ) );
+			assertTrue( pipeline.getSnapshot().isFull() );
+			assertEquals( "the fixed point is still updated", 1, target.fixedPoints.size() );
+			assertEquals( 2, ( int ) target.fixedPoints.get( 0 ) );
+		}
+		finally
+		{
+			pipeline.shutdown();
+		}
+	}
+
+	@Test
+	public void testPublishedVersionsIncrease() throws InterruptedException
+	{
+		final TestTarget target = new TestTarget();
+		target.release.countDown();
+		final SolvePipeline pipeline = new SolvePipeline( target, Executors.newFixedThreadPool( 4 ) );
+		final List< Long > published = Collections.synchronizedList( new ArrayList<>() );
+		pipeline.addStage( s -> {
+			// older versions take longer, so they would finish last if runs overlapped
+			if ( s.getVersion() % 2 == 1 )
+			{
+				try
+				{
+					Thread.sleep( 20 );
+				}
+				catch ( final InterruptedException e ) {}
+			}
+			published.add( s.getVersion() );
+		} );
+
+		try
+		{
+			long last = 0;
+			for ( int i = 0; i < 20; i++ )
+			{
+				last = pipeline.requestResolve( true, -1, null );
+				Thread.sleep( 2 );
+			}
+
+			assertTrue( pipeline.awaitVersion( last, 10, TimeUnit.SECONDS ) );
+			assertEquals( last, pipeline.getPublishedVersion() );
+			assertEquals( "the newest version is published last", last, ( long ) published.get( published.size() - 1 ) );
+			for ( int i = 1; i < published.size(); i++ )
+				assertTrue( "versions published in order", published.get( i - 1 ) < published.get( i ) );
+		}
+		finally
+		{
+			pipeline.shutdown();
+		}
+	}
+
+	/**
+	 * Records what is solved, and blocks the first solve until released.
+	 */
+	private static class TestTarget implements SolvePipeline.Target
+	{
+		final CountDownLatch solving = new CountDownLatch( 1 );
+
+		final CountDownLatch release = new CountDownLatch( 1 );
+
+		final List< Integer > solved = Collections.synchronizedList( new ArrayList<>() );
+
+		final List< Integer > fixedPoints = Collections.synchronizedList( new ArrayList<>() );
+
+		@Override
+		public InvertibleRealTransform solve( final int index )
+		{
+			solved.add( index );
+			solving.countDown();
+			try
+			{
+				release.await();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+			return new AffineTransform3D();
+		}
+
+		@Override
+		public PlateauSphericalMaskRealRandomAccessible getMask()
+		{
+			return null;
+		}
+
+		@Override
+		public void setTransformation( final InvertibleRealTransform transform, final RealInterval changedRegion ) {}
+
+		@Override
+		public void setFixedPoint( final int index, final double[] pt, final InvertibleRealTransform transform )
+		{
+			fixedPoints.add( index );
+		}
+
+		@Override
+		public void requestRepaint( final RealInterval region ) {}
+	}
+}
@@ -0,0 +1,213 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import bigwarp.landmarks.LandmarkTableModel;
+import mpicbg.models.AffineModel2D;
+import net.imglib2.realtransform.AffineTransform2D;
+import net.imglib2.realtransform.RealTransform;
+
+public class WarpMagnitudeBaselineFitterTest
+{
+	@Test
+	public void testFitKnownAffine()
+	{
+		final AffineTransform2D affine = new AffineTransform2D();
+		affine.set( 1.2, 0.3, 10, -0.2, 0.9, -5 );
+		final LandmarkTableModel landmarks = landmarks( affine );
+
+		final List< RealTransform > published = new ArrayList<>();
+		final ManualExecutor executor = new ManualExecutor();
+		final WarpMagnitudeBaselineFitter fitter = new WarpMagnitudeBaselineFitter( published::add, executor );
+		fitter.requestFit( landmarks, new AffineModel2D() );
+		fitter.requestFit( landmarks, new AffineModel2D() );
+		executor.runAll();
+		assertEquals( "requests are merged", 1, published.size() );
+
+		// the baseline is published as the inverse, from target to moving space
+		final AffineTransform2D inverse = affine.inverse();
+		final Random rand = new Random( 3 );
+		final double[] p = new double[ 2 ];
+		final double[] expected = new double[ 2 ];
+		final double[] actual = new double[ 2 ];
+		for ( int i = 0; i < 20; i++ )
+		{
+			p[ 0 ] = 200 * rand.nextDouble() - 100;
+			p[ 1 ] = 200 * rand.nextDouble() - 100;
+			inverse.apply( p, expected );
+			published.get( 0 ).apply( p, actual );
+			assertArrayEquals( expected, actual, 1e-6 );
+		}
+	}
+
+	@Test
+	public void testSupersededFitIsNotPublished()
+	{
+		final AtomicReference< WarpMagnitudeBaselineFitter > fitterRef = new AtomicReference<>();
+		final AffineTransform2D affine = new AffineTransform2D();
+		affine.set( 1.2, 0.3, 10, -0.2, 0.9, -5 );
+		final LandmarkTableModel landmarks = new LandmarkTableModel( 2 )
+		{
+			private boolean first = true;
+
+			@Override
+			public void copyLandmarks( final double[][] movingLandmarks, final double[][] targetLandmarks )
+			{
+				super.copyLandmarks( movingLandmarks, targetLandmarks );
+
+				// a request arrives while the first fit runs
+				if ( first && fitterRef.get() != null )
+				{
+					first = false;
+					fitterRef.get().requestFit( this, new AffineModel2D() );
+				}
+			}
+		};
+		addLandmarks( landmarks, affine );
+
+		final List< RealTransform > published = new ArrayList<>();
+		final ManualExecutor executor = new ManualExecutor();
+		fitterRef.set( new WarpMagnitudeBaselineFitter( published::add, executor ) );
+		fitterRef.get().requestFit( landmarks, new AffineModel2D() );
+
+		executor.runNext();
+		assertEquals( "superseded fit", 0, published.size() );
+
+		executor.runAll();
+		assertEquals( "newer fit", 1, published.size() );
+	}
+
+	@Test
+	public void testCancelledFitIsNotPublished()
+	{
+		final AffineTransform2D affine = new AffineTransform2D();
+		affine.set( 1.2, 0.3, 10, -0.2, 0.9, -5 );
+		final LandmarkTableModel landmarks = landmarks( affine );
+
+		final List< RealTransform > published = new ArrayList<>();
+		final ManualExecutor executor = new ManualExecutor();
+		final WarpMagnitudeBaselineFitter fitter = new WarpMagnitudeBaselineFitter( published::add, executor );
+		fitter.requestFit( landmarks, new AffineModel2D() );
+		fitter.cancel();
+		executor.runAll();
+		assertEquals( "cancelled fit", 0, published.size() );
+
+		fitter.requestFit( landmarks, new AffineModel2D() );
+		executor.runAll();
+		assertEquals( "fit after cancel", 1, published.size() );
+	}
+
+	private static LandmarkTableModel landmarks( final AffineTransform2D affine )
+	{
+		final LandmarkTableModel landmarks = new LandmarkTableModel( 2 );
+		addLandmarks( landmarks, affine );
+		return landmarks;
+	}
+
+	/*
+	 * Adds moving points and their targets under the affine.
+	 */
+	private static void addLandmarks( final LandmarkTableModel landmarks, final AffineTransform2D affine )
+	{
+		final double[][] moving = new double[][] { { 0, 0 }, { 100, 0 }, { 0, 100 }, { 100, 100 }, { 30, 70 } };
+		for ( final double[] p : moving )
+		{
+			final double[] q = new double[ 2 ];
+			affine.apply( p, q );
+			landmarks.add( p, q );
+		}
+	}
+
+	/*
+	 * Runs tasks only when the test asks for it.
+	 */
+	private static class ManualExecutor extends AbstractExecutorService
+	{
+		private final Queue< Runnable > tasks = new ArrayDeque<>();
+
+		private boolean shutdown = false;
+
+		void runNext()
+		{
+			tasks.remove().run();
+		}
+
+		void runAll()
+		{
+			while ( !tasks.isEmpty() )
+				runNext();
+		}
+
+		@Override
+		public void execute( final Runnable command )
+		{
+			tasks.add( command );
+		}
+
+		@Override
+		public void shutdown()
+		{
+			shutdown = true;
+		}
+
+		@Override
+		public List< Runnable > shutdownNow()
+		{
+			shutdown = true;
+			final List< Runnable > remaining = new ArrayList<>( tasks );
+			tasks.clear();
+			return remaining;
+		}
+
+		@Override
+		public boolean isShutdown()
+		{
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated()
+		{
+			return shutdown && tasks.isEmpty();
+		}
+
+		@Override
+		public boolean awaitTermination( final long timeout, final TimeUnit unit )
+		{
+			return isTerminated();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.landmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LandmarkJournalTest
+{
+	@Test
+	public void testCloseSavesEdits() throws IOException
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-journal" ).toFile();
+		final LandmarkTableModel ltm = new LandmarkTableModel( 2 );
+		ltm.load( new File( "src/test/resources/testPoints.csv" ) );
+
+		final LandmarkJournal journal = new LandmarkJournal( ltm, dir );
+		ltm.add( new double[] { 1, 2 }, true );
+		ltm.setPoint( ltm.getRowCount() - 1, false, new double[] { 3, 4 }, null );
+		journal.compact();
+		ltm.deleteRow( 0 );
+		ltm.setIsActive( 1, false );
+		ltm.setPoint( 2, true, new double[] { 5, 6 }, null );
+
+		final File saved = journal.close();
+		assertNotNull( "saved", saved );
+		assertFalse( "session removed", journal.getSessionDirectory().exists() );
+		assertTableEquals( ltm, LandmarkTableModel.loadFromCsv( saved, false ) );
+	}
+
+	@Test
+	public void testRecover() throws IOException
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-journal" ).toFile();
+		final File session = new File( dir, LandmarkJournal.SESSION_PREFIX + "test" );
+		session.mkdir();
+		write( new File( session, "snapshot_0.csv" ),
+				"\"Pt-0\",\"true\",\"0.0\",\"0.0\",\"1.0\",\"1.0\"\n" +
+				"\"Pt-1\",\"true\",\"2.0\",\"2.0\",\"3.0\",\"3.0\"\n" );
+		// the last record was interrupted
+		write( new File( session, "journal_0.log" ),
+				"\"I\",\"1\",\"Pt-2\",\"false\",\"4.0\",\"4.0\",\"Infinity\",\"Infinity\"\n" +
+				"\"U\",\"1\",\"Pt-2\",\"true\",\"4.0\",\"4.0\",\"5.0\",\"5.0\"\n" +
+				"\"D\",\"0\",\"0\"\n" +
+				"\"U\",\"0\",\"Pt-2\",\"tr" );
+
+		final List< File > recovered = LandmarkJournal.recover( dir );
+		assertEquals( "recovered sessions", 1, recovered.size() );
+		assertFalse( "session removed", session.exists() );
+
+		final LandmarkTableModel ltm = LandmarkTableModel.loadFromCsv( recovered.get( 0 ), false );
+		assertEquals( "rows", 2, ltm.getRowCount() );
+		assertEquals( "first row", "Pt-2", ltm.getValueAt( 0, 0 ) );
+		assertEquals( "first row target", 5.0, ( Double ) ltm.getValueAt( 0, 4 ), 0 );
+		assertEquals( "second row", "Pt-1", ltm.getValueAt( 1, 0 ) );
+	}
+
+	private static void assertTableEquals( final LandmarkTableModel expected, final LandmarkTableModel actual )
+	{
+		assertEquals( "rows", expected.getRowCount(), actual.getRowCount() );
+		for ( int i = 0; i < expected.getRowCount(); i++ )
+			for ( int c = 0; c < expected.getColumnCount(); c++ )
+				assertEquals( "row " + i + " column " + c, expected.getValueAt( i, c ), actual.getValueAt( i, c ) );
+	}
+
+	private static void write( final File f, final String content ) throws IOException
+	{
+		Files.write( f.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+	}
+}
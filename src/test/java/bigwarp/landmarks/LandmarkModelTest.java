@@ -21,7 +21,10 @@
  */
 package bigwarp.landmarks;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -34,6 +37,7 @@ import org.junit.Test;
 
 import bdv.gui.BigWarpLandmarkPanel;
 import bigwarp.BigWarp;
+import net.imglib2.realtransform.AffineTransform2D;
 
 public class LandmarkModelTest
 {
@@ -130,6 +134,71 @@ public class LandmarkModelTest
 
 	}
 
+	@Test
+	public void testPointStorage()
+	{
+		final int nr = ltm.getRowCount();
+		assertEquals( "loaded moving point", 88.04054054054055, ltm.getPointCopy( true, 0 )[ 0 ], 0.0 );
+		assertEquals( "loaded target point", 482.2567567567568, ltm.getPointCopy( false, 3 )[ 1 ], 0.0 );
+
+		// copies are not written back
+		ltm.getPointCopy( true, 0 )[ 0 ] = -1.0;
+		ltm.getPointsCopy( false ).get( 3 )[ 1 ] = -1.0;
+		assertEquals( "moving point copy", 88.04054054054055, ltm.getPointStore( true ).get( 0, 0 ), 0.0 );
+		assertEquals( "target points copy", 482.2567567567568, ltm.getPointStore( false ).get( 3, 1 ), 0.0 );
+
+		// insert a row in the middle and delete it again
+		ltm.pointEdit( 2, new double[] { 1.0, 2.0 }, true, true, false, true, null );
+		assertEquals( "row count after insert", nr + 1, ltm.getRowCount() );
+		assertEquals( "inserted point", 2.0, ltm.getPointStore( true ).get( 2, 1 ), 0.0 );
+		assertEquals( "shifted point", 597.7702702702703, ltm.getPointStore( true ).get( 3, 0 ), 0.0 );
+		assertEquals( "inserted row is unpaired", true, ltm.isRowUnpaired( 2 ) );
+
+		ltm.deleteRow( 2 );
+		assertEquals( "row count after delete", nr, ltm.getRowCount() );
+		assertEquals( "point after delete", 639.7297297297298, ltm.getPointCopy( false, 2 )[ 0 ], 0.0 );
+
+		// writes through the list view are stored
+		ltm.getPoints( true ).set( 1, new Double[] { 5.0, 6.0 } );
+		assertEquals( "list view write", 6.0, ltm.getPointCopy( true, 1 )[ 1 ], 0.0 );
+
+		final double[][] mvg = new double[ 2 ][ ltm.numActive() ];
+		final double[][] tgt = new double[ 2 ][ ltm.numActive() ];
+		ltm.copyLandmarks( mvg, tgt );
+		assertEquals( "copied moving point", 5.0, mvg[ 0 ][ 1 ], 0.0 );
+		assertEquals( "copied target point", 222.72972972972974, tgt[ 1 ][ 4 ], 0.0 );
+
+		ltm.setIsActive( 1, false );
+		final double[][] mvgActive = new double[ 2 ][ ltm.numActive() ];
+		final double[][] tgtActive = new double[ 2 ][ ltm.numActive() ];
+		ltm.copyLandmarks( mvgActive, tgtActive );
+		assertEquals( "copied active moving point", 597.7702702702703, mvgActive[ 0 ][ 1 ], 0.0 );
+	}
+
+	@Test
+	public void testUpdateAllWarpedPoints()
+	{
+		final int nr = ltm.getRowCount();
+		final int numMovingOnly = 200;
+		for ( int i = 0; i < numMovingOnly; i++ )
+			ltm.add( new double[] { i, 2.0 * i }, true );
+
+		final AffineTransform2D xfm = new AffineTransform2D();
+		xfm.set( 1.1, 0.2, 5.0, -0.1, 0.9, -3.0 );
+		ltm.updateAllWarpedPoints( xfm );
+
+		final double[] expected = new double[ 2 ];
+		for ( int i = 0; i < nr; i++ )
+			assertFalse( "paired row not warped", ltm.isWarped( i ) );
+
+		for ( int i = nr; i < nr + numMovingOnly; i++ )
+		{
+			assertTrue( "moving only row warped", ltm.isWarped( i ) );
+			xfm.applyInverse( expected, ltm.getPointStore( true ).get( i ) );
+			assertArrayEquals( "warped point", expected, ltm.getWarpedPointStore().get( i ), 1e-9 );
+		}
+	}
+
 	@After
 	public void after()
 	{
@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.landmarks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LandmarkPointsTest
+{
+	@Test
+	public void testQueriesMatchLinearScan()
+	{
+		testQueries( 2 );
+		testQueries( 3 );
+	}
+
+	private static void testQueries( final int nd )
+	{
+		final Random rand = new Random( 11 );
+		final LandmarkPoints pts = new LandmarkPoints( nd );
+		for ( int iter = 0; iter < 5000; iter++ )
+		{
+			final int op = rand.nextInt( 10 );
+			if ( op < 4 || pts.size() < 5 )
+			{
+				final int i = rand.nextInt( pts.size() + 1 );
+				if ( rand.nextInt( 5 ) == 0 )
+					pts.add( i, Double.POSITIVE_INFINITY );
+				else
+					pts.add( i, randomPoint( rand, nd ) );
+			}
+			else if ( op < 6 )
+				pts.remove( rand.nextInt( pts.size() ) );
+			else if ( op < 8 )
+				pts.set( rand.nextInt( pts.size() ), randomPoint( rand, nd ) );
+			else
+			{
+				final double[] q = randomPoint( rand, nd );
+				assertEquals( "nearest", nearestLinear( pts, q ), pts.nearest( q ) );
+
+				final double radius = 100 * rand.nextDouble();
+				assertArrayEquals( "within radius", withinRadiusLinear( pts, q, radius ), pts.withinRadius( q, radius ) );
+			}
+		}
+	}
+
+	private static double[] randomPoint( final Random rand, final int nd )
+	{
+		final double[] p = new double[ nd ];
+		for ( int d = 0; d < nd; d++ )
+			p[ d ] = 1200 * rand.nextDouble() - 100;
+
+		return p;
+	}
+
+	private static int nearestLinear( final LandmarkPoints pts, final double[] q )
+	{
+		int best = -1;
+		double bestDist = Double.MAX_VALUE;
+		for ( int i = 0; i < pts.size(); i++ )
+		{
+			final double dist = pts.squaredDistance( i, q );
+			if ( dist < bestDist )
+			{
+				bestDist = dist;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private static int[] withinRadiusLinear( final LandmarkPoints pts, final double[] q, final double radius )
+	{
+		final int[] out = new int[ pts.size() ];
+		int n = 0;
+		for ( int i = 0; i < pts.size(); i++ )
+			if ( pts.squaredDistance( i, q ) <= radius * radius )
+				out[ n++ ] = i;
+
+		return Arrays.copyOf( out, n );
+	}
+
+}
@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.loader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class DownsampledImgLoaderTest
+{
+	@Test
+	public void testProposeResolutions()
+	{
+		final double[][] isotropic = DownsampledImgLoader.proposeResolutions( new long[] { 1024, 1024, 1 }, new double[] { 1, 1, 1 } );
+		assertEquals( "isotropic levels", 3, isotropic.length );
+		assertArrayEquals( "isotropic last level", new double[] { 4, 4, 1 }, isotropic[ 2 ], 0 );
+
+		final double[][] anisotropic = DownsampledImgLoader.proposeResolutions( new long[] { 1024, 1024, 300 }, new double[] { 1, 1, 4 } );
+		assertEquals( "anisotropic levels", 4, anisotropic.length );
+		assertArrayEquals( "anisotropic level 1", new double[] { 2, 2, 1 }, anisotropic[ 1 ], 0 );
+		assertArrayEquals( "anisotropic level 2", new double[] { 4, 4, 1 }, anisotropic[ 2 ], 0 );
+		assertArrayEquals( "anisotropic level 3", new double[] { 8, 8, 2 }, anisotropic[ 3 ], 0 );
+
+		assertEquals( "small image", 1, DownsampledImgLoader.proposeResolutions( new long[] { 200, 100, 50 }, new double[] { 1, 1, 1 } ).length );
+	}
+
+	@Test
+	public void testDownsample()
+	{
+		final ArrayImg< FloatType, FloatArray > source = ArrayImgs.floats( 5, 3 );
+		final Cursor< FloatType > c = source.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( c.getIntPosition( 0 ) + 10 * c.getIntPosition( 1 ) );
+		}
+
+		final ArrayImg< FloatType, FloatArray > target = ArrayImgs.floats( 3, 2 );
+		DownsampledImgLoader.downsample( source, target, new int[] { 2, 2 } );
+
+		// blocks at the max edges are clipped
+		final RandomAccess< FloatType > ra = target.randomAccess();
+		assertEquals( 5.5, ra.setPositionAndGet( 0, 0 ).get(), 1e-6 );
+		assertEquals( 9, ra.setPositionAndGet( 2, 0 ).get(), 1e-6 );
+		assertEquals( 20.5, ra.setPositionAndGet( 0, 1 ).get(), 1e-6 );
+		assertEquals( 24, ra.setPositionAndGet( 2, 1 ).get(), 1e-6 );
+	}
+}
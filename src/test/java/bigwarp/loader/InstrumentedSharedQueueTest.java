@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import bdv.cache.SharedQueue;
+
+public class InstrumentedSharedQueueTest
+{
+	@Test
+	public void testMetrics() throws InterruptedException
+	{
+		final InstrumentedSharedQueue queue = new InstrumentedSharedQueue( 2, 4 );
+		final SharedQueue lowPriority = queue.withPriorityOffset( 2 );
+		assertSame( "offset queues are reused", lowPriority, queue.withPriorityOffset( 2 ) );
+		assertSame( "no offset", queue, queue.withPriorityOffset( 0 ) );
+
+		final int n = 8;
+		final CountDownLatch done = new CountDownLatch( n + 1 );
+		for ( int i = 0; i < n; i++ )
+		{
+			( i % 2 == 0 ? queue : lowPriority ).put( () -> {
+				Thread.sleep( 5 );
+				done.countDown();
+				return null;
+			}, 1, false );
+		}
+		queue.put( () -> {
+			done.countDown();
+			throw new IllegalStateException();
+		}, 10, true );
+
+		assertTrue( "tasks run", done.await( 10, TimeUnit.SECONDS ) );
+
+		// the counts are updated after a task returns
+		InstrumentedSharedQueue.Metrics metrics = queue.getMetrics();
+		for ( int i = 0; i < 100 && metrics.completed + metrics.failed < n + 1; i++ )
+		{
+			Thread.sleep( 10 );
+			metrics = queue.getMetrics();
+		}
+
+		assertEquals( "completed", n, metrics.completed );
+		assertEquals( "failed", 1, metrics.failed );
+		assertEquals( "in flight", 0, metrics.inFlight );
+		assertEquals( "queued", 0, metrics.queued );
+		assertTrue( "fetch latency", metrics.meanFetchMillis > 0 );
+	}
+
+	@Test
+	public void testOffsetKeepsOrder() throws InterruptedException
+	{
+		final InstrumentedSharedQueue queue = new InstrumentedSharedQueue( 1, 4, 8 );
+		final SharedQueue lowPriority = queue.withPriorityOffset( 6 );
+
+		// hold the only fetcher thread while the tasks are queued
+		final CountDownLatch started = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		queue.put( () -> {
+			started.countDown();
+			release.await();
+			return null;
+		}, 0, false );
+		assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+		final List< String > order = Collections.synchronizedList( new ArrayList<>() );
+		final CountDownLatch done = new CountDownLatch( 3 );
+		lowPriority.put( () -> {
+			order.add( "offset fine" );
+			done.countDown();
+			return null;
+		}, 3, false );
+		lowPriority.put( () -> {
+			order.add( "offset coarse" );
+			done.countDown();
+			return null;
+		}, 0, false );
+		queue.put( () -> {
+			order.add( "fine" );
+			done.countDown();
+			return null;
+		}, 3, false );
+
+		release.countDown();
+		assertTrue( "tasks run", done.await( 10, TimeUnit.SECONDS ) );
+		assertEquals( Arrays.asList( "fine", "offset coarse", "offset fine" ), order );
+	}
+}
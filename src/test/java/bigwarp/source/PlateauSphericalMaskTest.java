@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.source;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+import bigwarp.source.PlateauSphericalMaskRealRandomAccessible.FalloffShape;
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.type.numeric.real.DoubleType;
+
+public class PlateauSphericalMaskTest
+{
+	@Test
+	public void testValueMatchesFalloff()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible( new RealPoint( 10, 20, 30 ) );
+		mask.setRadius( 12 );
+		mask.setSigma( 7 );
+
+		final RealPoint p = new RealPoint( 3 );
+		final DoubleType expected = new DoubleType();
+		final RealRandomAccess< DoubleType > access = mask.realRandomAccess();
+		for ( final FalloffShape shape : FalloffShape.values() )
+		{
+			mask.setFalloffShape( shape );
+			final BiConsumer< RealLocalizable, DoubleType > falloff = shape.createFalloffFunction( mask );
+			for ( double x = 0; x < 40; x += 0.37 )
+			{
+				p.setPosition( new double[] { 10 + x, 20 + 0.3 * x, 30 - 0.2 * x } );
+				falloff.accept( p, expected );
+
+				assertEquals( shape + " at " + x, expected.get(), mask.value( p ), 1e-5 );
+				assertEquals( shape + " at " + x, expected.get(), mask.value( p.positionAsDoubleArray() ), 1e-5 );
+				assertEquals( shape + " at " + x, expected.get(),
+						mask.value( p.getDoublePosition( 0 ), p.getDoublePosition( 1 ), p.getDoublePosition( 2 ) ), 1e-5 );
+
+				access.setPosition( p );
+				assertEquals( shape + " at " + x, expected.get(), access.get().get(), 1e-5 );
+			}
+		}
+	}
+
+	@Test
+	public void testUpdates()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible( new RealPoint( 0, 0 ) );
+		mask.setFalloffShape( FalloffShape.LINEAR );
+		mask.setRadius( 5 );
+		mask.setSigma( 10 );
+		assertEquals( 1.0, mask.value( 5, 0 ), 1e-9 );
+		assertEquals( 0.5, mask.value( 10, 0 ), 1e-9 );
+		assertEquals( 0.0, mask.value( 15, 0 ), 1e-9 );
+
+		mask.setSquaredRadius( 100 );
+		assertEquals( 1.0, mask.value( 0, 10 ), 1e-9 );
+		assertEquals( 0.5, mask.value( 0, 15 ), 1e-9 );
+
+		mask.setCenter( new double[] { 100, 0 } );
+		assertEquals( 0.0, mask.value( 0, 15 ), 1e-9 );
+		assertEquals( 1.0, mask.value( 100, 10 ), 1e-9 );
+	}
+
+	@Test
+	public void testChangedSupport()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible( new RealPoint( 10, 20, 30 ) );
+		mask.setFalloffShape( FalloffShape.LINEAR );
+		mask.setRadius( 5 );
+		mask.setSigma( 3 );
+
+		RealInterval support = mask.takeChangedSupport();
+		assertArrayEquals( new double[] { 2, 12, 22 }, support.minAsDoubleArray(), 1e-9 );
+		assertArrayEquals( new double[] { 18, 28, 38 }, support.maxAsDoubleArray(), 1e-9 );
+
+		// a moved mask changes the transformation where it was and where it is
+		mask.setCenter( new double[] { 40, 20, 30 } );
+		support = mask.takeChangedSupport();
+		assertArrayEquals( new double[] { 2, 12, 22 }, support.minAsDoubleArray(), 1e-9 );
+		assertArrayEquals( new double[] { 48, 28, 38 }, support.maxAsDoubleArray(), 1e-9 );
+
+		mask.setRadius( 1 );
+		support = mask.takeChangedSupport();
+		assertArrayEquals( new double[] { 32, 12, 22 }, support.minAsDoubleArray(), 1e-9 );
+		assertArrayEquals( new double[] { 48, 28, 38 }, support.maxAsDoubleArray(), 1e-9 );
+
+		// outside the support the mask is zero
+		assertEquals( 0, mask.value( new double[] { 44.01, 20, 30 } ), 0 );
+		assertEquals( 0, mask.takeChangedSupport().realMax( 0 ) - 44, 1e-9 );
+	}
+
+}
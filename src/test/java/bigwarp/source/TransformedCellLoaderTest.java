@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.source;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.Scale3D;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+public class TransformedCellLoaderTest
+{
+	@Test
+	public void testBlockSize()
+	{
+		final Img< UnsignedShortType > cells = new CellImgFactory<>( new UnsignedShortType(), 32, 16, 8 ).create( 100, 100, 100 );
+		assertArrayEquals( "cell img", new int[] { 32, 16, 8 }, TransformedCellLoader.blockSize( cells ) );
+		assertArrayEquals( "interval", new int[] { 32, 16, 8 }, TransformedCellLoader.blockSize( Views.interval( cells, new long[] { 10, 10, 10 }, new long[] { 50, 50, 50 } ) ) );
+		assertArrayEquals( "permuted", new int[] { 8, 16, 32 }, TransformedCellLoader.blockSize( Views.permute( cells, 0, 2 ) ) );
+
+		final Img< UnsignedShortType > cells2d = new CellImgFactory<>( new UnsignedShortType(), 64, 32 ).create( 100, 100 );
+		assertArrayEquals( "added dimension", new int[] { 64, 32, 1 }, TransformedCellLoader.blockSize( Views.addDimension( cells2d, 0, 0 ) ) );
+
+		assertNull( "array img", TransformedCellLoader.blockSize( ArrayImgs.unsignedShorts( 10, 10, 10 ) ) );
+	}
+
+	@Test
+	public void testCellDimensions()
+	{
+		final long[] dimensions = new long[] { 1000, 1000, 1000 };
+		final int[] defaultDimensions = new int[] { 64, 64, 64 };
+		assertArrayEquals( "no blocks", defaultDimensions, TransformedCellLoader.cellDimensions( null, new Scale3D( 1, 1, 1 ), dimensions, defaultDimensions ) );
+
+		// output pixels are half the size of source pixels in x
+		assertArrayEquals( "scaled", new int[] { 128, 64, 32 },
+				TransformedCellLoader.cellDimensions( new int[] { 64, 64, 64 }, new Scale3D( 0.5, 1, 2 ), dimensions, defaultDimensions ) );
+	}
+
+	@Test
+	public void testLoad()
+	{
+		final Img< UnsignedShortType > source = new CellImgFactory<>( new UnsignedShortType(), 8 ).create( 20, 20, 20 );
+		final Cursor< UnsignedShortType > c = source.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( c.getIntPosition( 0 ) + 20 * c.getIntPosition( 1 ) + 400 * c.getIntPosition( 2 ) );
+		}
+
+		final AffineTransform3D xfm = new AffineTransform3D();
+		xfm.set( 2, 0, 0, 1, 0, 1, 0, 2, 0, 0, 1, 3 );
+		final TransformedCellLoader< UnsignedShortType > loader = new TransformedCellLoader<>( source, xfm );
+		final RandomAccessibleInterval< UnsignedShortType > cached = new ReadOnlyCachedCellImgFactory(
+				new ReadOnlyCachedCellImgOptions().cellDimensions( 4, 5, 6 ) )
+				.create( new long[] { 9, 17, 16 }, new UnsignedShortType(), loader );
+
+		final RandomAccess< UnsignedShortType > ra = cached.randomAccess();
+		for ( int z = 0; z < 16; z++ )
+			for ( int y = 0; y < 17; y++ )
+				for ( int x = 0; x < 9; x++ )
+				{
+					ra.setPosition( new int[] { x, y, z } );
+					final int sx = 2 * x + 1;
+					final int sy = y + 2;
+					final int sz = z + 3;
+					final int expected = sx < 20 && sy < 20 && sz < 20 ? sx + 20 * sy + 400 * sz : 0;
+					assertEquals( "value at " + x + " " + y + " " + z, expected, ra.get().get() );
+				}
+	}
+}
@@ -0,0 +1,164 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bdv.util.RandomAccessibleIntervalSource;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.Translation3D;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.ConstantUtils;
+
+public class TransformedSourceDiskCacheTest
+{
+	@Test
+	public void testKey()
+	{
+		final FloatType type = new FloatType();
+		final RandomAccessibleIntervalSource< FloatType > src = new RandomAccessibleIntervalSource<>(
+				ConstantUtils.constantRandomAccessibleInterval( type, new FinalInterval( 20, 10, 5 ) ), type, new AffineTransform3D(), "src" );
+
+		final String key = TransformedSourceDiskCache.key( "/data/img.tif", src, new Translation3D( 1, 2, 3 ) );
+		assertEquals( "same transform", key, TransformedSourceDiskCache.key( "/data/img.tif", src, new Translation3D( 1, 2, 3 ) ) );
+		assertNotEquals( "other transform", key, TransformedSourceDiskCache.key( "/data/img.tif", src, new Translation3D( 1, 2, 4 ) ) );
+		assertNotEquals( "other uri", key, TransformedSourceDiskCache.key( "/data/other.tif", src, new Translation3D( 1, 2, 3 ) ) );
+		assertNull( "no uri", TransformedSourceDiskCache.key( null, src, new Translation3D( 1, 2, 3 ) ) );
+	}
+
+	@Test
+	public void testKeyOfTransformFile() throws Exception
+	{
+		final FloatType type = new FloatType();
+		final RandomAccessibleIntervalSource< FloatType > src = new RandomAccessibleIntervalSource<>(
+				ConstantUtils.constantRandomAccessibleInterval( type, new FinalInterval( 20, 10, 5 ) ), type, new AffineTransform3D(), "src" );
+
+		final File transformFile = File.createTempFile( "transform", ".json" );
+		transformFile.deleteOnExit();
+		transformFile.setLastModified( 1000000000000L );
+		final String transformUri = transformFile.getAbsolutePath();
+
+		// a transform read from a file is recognized by the file, not by its values
+		final String key = TransformedSourceDiskCache.key( "/data/img.tif", transformUri, src, new Translation3D( 1, 2, 3 ) );
+		assertEquals( "same file", key, TransformedSourceDiskCache.key( "/data/img.tif", transformUri, src, new Translation3D( 1, 2, 4 ) ) );
+		assertNotEquals( "no file", key, TransformedSourceDiskCache.key( "/data/img.tif", src, new Translation3D( 1, 2, 3 ) ) );
+
+		transformFile.setLastModified( 1000000001000L );
+		assertNotEquals( "modified file", key, TransformedSourceDiskCache.key( "/data/img.tif", transformUri, src, new Translation3D( 1, 2, 3 ) ) );
+	}
+
+	@Test
+	public void testKeyOfRewrittenDataset() throws Exception
+	{
+		final FloatType type = new FloatType();
+		final RandomAccessibleIntervalSource< FloatType > src = new RandomAccessibleIntervalSource<>(
+				ConstantUtils.constantRandomAccessibleInterval( type, new FinalInterval( 20, 10, 5 ) ), type, new AffineTransform3D(), "src" );
+
+		final File container = Files.createTempDirectory( "bigwarp-source" ).toFile();
+		final File chunk = new File( container, "s0/0/0/0" );
+		chunk.getParentFile().mkdirs();
+		Files.write( new File( container, "s0/attributes.json" ).toPath(), "{}".getBytes() );
+		Files.write( chunk.toPath(), new byte[] { 1, 2, 3 } );
+		chunk.setLastModified( 1000000000000L );
+		final String sourceUri = container.getAbsolutePath() + "?s0";
+
+		final String key = TransformedSourceDiskCache.key( sourceUri, src, new Translation3D( 1, 2, 3 ) );
+		assertEquals( "unchanged", key, TransformedSourceDiskCache.key( sourceUri, src, new Translation3D( 1, 2, 3 ) ) );
+
+		// rewriting a chunk in place does not change the time of its directories
+		Files.write( chunk.toPath(), new byte[] { 4, 5, 6 } );
+		chunk.setLastModified( 1000000001000L );
+		assertNotEquals( "rewritten chunk", key, TransformedSourceDiskCache.key( sourceUri, src, new Translation3D( 1, 2, 3 ) ) );
+	}
+
+	@Test
+	public void testTransformsOfOneSourceAreKept() throws Exception
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-disk-cache" ).toFile();
+		new TransformedSourceDiskCache( dir, Long.MAX_VALUE ).open( "first", "/data/img.tif" );
+		new TransformedSourceDiskCache( dir, Long.MAX_VALUE ).open( "second", "/data/img.tif" );
+		assertTrue( "first transform kept", new File( dir, "first" ).isDirectory() );
+		assertTrue( "second transform kept", new File( dir, "second" ).isDirectory() );
+	}
+
+	@Test
+	public void testCellsAreReloaded() throws Exception
+	{
+		final File dir = Files.createTempDirectory( "bigwarp-disk-cache" ).toFile();
+		final long[] dimensions = new long[] { 50, 40, 3 };
+		final int[] cellDimensions = new int[] { 16, 16, 16 };
+
+		final AtomicInteger numComputed = new AtomicInteger();
+		final CellLoader< FloatType > compute = cell -> {
+			numComputed.incrementAndGet();
+			final Cursor< FloatType > c = cell.localizingCursor();
+			while ( c.hasNext() )
+			{
+				c.fwd();
+				c.get().set( c.getIntPosition( 0 ) + 100 * c.getIntPosition( 1 ) + 10000 * c.getIntPosition( 2 ) );
+			}
+		};
+
+		final float[] first = readAll( new TransformedSourceDiskCache( dir, Long.MAX_VALUE ), dimensions, cellDimensions, compute );
+		final int numCells = numComputed.get();
+		assertEquals( "cells", 12, numCells );
+
+		// a new session reads all cells from disk
+		final float[] second = readAll( new TransformedSourceDiskCache( dir, Long.MAX_VALUE ), dimensions, cellDimensions, compute );
+		assertEquals( "no cells computed", numCells, numComputed.get() );
+		for ( int i = 0; i < first.length; i++ )
+			assertEquals( first[ i ], second[ i ], 0 );
+	}
+
+	private static float[] readAll( final TransformedSourceDiskCache cache, final long[] dimensions, final int[] cellDimensions,
+			final CellLoader< FloatType > compute )
+	{
+		cache.open( "key", "/data/img.tif" );
+		final CellLoader< FloatType > loader = cache.cellLoader( "key", 0, dimensions, cellDimensions, new FloatType(),
+				new AffineTransform3D(), compute );
+
+		final Img< FloatType > img = new ReadOnlyCachedCellImgFactory( new ReadOnlyCachedCellImgOptions().cellDimensions( cellDimensions ) )
+				.create( dimensions, new FloatType(), loader );
+
+		final float[] values = new float[ ( int ) ( dimensions[ 0 ] * dimensions[ 1 ] * dimensions[ 2 ] ) ];
+		int i = 0;
+		for ( final FloatType t : img )
+			values[ i++ ] = t.get();
+
+		return values;
+	}
+}
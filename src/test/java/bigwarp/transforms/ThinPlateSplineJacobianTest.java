@@ -0,0 +1,93 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.transforms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
+import net.imglib2.realtransform.AffineTransform;
+import net.imglib2.realtransform.ThinplateSplineTransform;
+
+public class ThinPlateSplineJacobianTest
+{
+	@Test
+	public void testJacobian()
+	{
+		final Random rand = new Random( 11 );
+		for ( int nd = 2; nd <= 3; nd++ )
+		{
+			final int n = 25;
+			final double[][] tgt = new double[ nd ][ n ];
+			final double[][] mvg = new double[ nd ][ n ];
+			for ( int d = 0; d < nd; d++ )
+				for ( int i = 0; i < n; i++ )
+				{
+					tgt[ d ][ i ] = 100 * rand.nextDouble();
+					mvg[ d ][ i ] = 1.1 * tgt[ d ][ i ] + 5 * rand.nextGaussian();
+				}
+
+			final ThinPlateR2LogRSplineKernelTransform kernel = new ThinPlateR2LogRSplineKernelTransform( nd, tgt, mvg );
+			final ThinplateSplineTransform tps = new ThinplateSplineTransform( kernel );
+			final ThinPlateSplineJacobian jac = new ThinPlateSplineJacobian( kernel ).copy();
+
+			final double[] x = new double[ nd ];
+			final double[] y0 = new double[ nd ];
+			final double[] y1 = new double[ nd ];
+			final double h = 1e-5;
+			for ( int t = 0; t < 100; t++ )
+			{
+				for ( int d = 0; d < nd; d++ )
+					x[ d ] = 120 * rand.nextDouble() - 10;
+
+				// at a landmark too
+				if ( t == 0 )
+					for ( int d = 0; d < nd; d++ )
+						x[ d ] = tgt[ d ][ 0 ];
+
+				final double[][] j = jac.jacobian( x );
+				for ( int k = 0; k < nd; k++ )
+				{
+					final double xk = x[ k ];
+					x[ k ] = xk + h;
+					tps.apply( x, y1 );
+					x[ k ] = xk - h;
+					tps.apply( x, y0 );
+					x[ k ] = xk;
+					for ( int i = 0; i < nd; i++ )
+						assertEquals( "d" + i + "/d" + k, ( y1[ i ] - y0[ i ] ) / ( 2 * h ), j[ i ][ k ], 1e-4 );
+				}
+
+				final AffineTransform expected = tps.jacobian( x );
+				final double[][] m = new double[ nd ][ nd ];
+				for ( int i = 0; i < nd; i++ )
+					for ( int k = 0; k < nd; k++ )
+						m[ i ][ k ] = expected.get( i, k );
+
+				assertEquals( "det", ThinPlateSplineJacobian.determinant( m, nd ), jac.determinant( x ), 1e-6 );
+			}
+		}
+	}
+}
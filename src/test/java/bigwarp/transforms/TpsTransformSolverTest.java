@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.transforms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import bigwarp.transforms.TpsTransformSolver.SolveType;
+import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
+import net.imglib2.realtransform.ThinplateSplineTransform;
+
+public class TpsTransformSolverTest
+{
+	private static final double EPS = 1e-6;
+
+	@Test
+	public void testIncrementalUpdates()
+	{
+		final Random rand = new Random( 7 );
+		final int nd = 3;
+		final int n = 40;
+
+		double[][] tgt = new double[ nd ][ n ];
+		double[][] mvg = new double[ nd ][ n ];
+		for ( int d = 0; d < nd; d++ )
+			for ( int i = 0; i < n; i++ )
+			{
+				tgt[ d ][ i ] = 100 * rand.nextDouble();
+				mvg[ d ][ i ] = tgt[ d ][ i ] + 5 * rand.nextGaussian();
+			}
+
+		final TpsTransformSolver solver = new TpsTransformSolver( true );
+		check( "initial", solver, mvg, tgt, SolveType.FULL );
+
+		tgt = copy( tgt );
+		tgt[ 0 ][ 5 ] += 3;
+		check( "move target point", solver, mvg, tgt, SolveType.MOVE );
+
+		mvg = copy( mvg );
+		mvg[ 1 ][ 7 ] -= 4;
+		check( "move moving point", solver, mvg, tgt, SolveType.DISPLACEMENT );
+
+		final double[] p = new double[] { 20, 30, 40 };
+		tgt = insert( tgt, 10, p );
+		mvg = insert( mvg, 10, new double[] { 22, 31, 39 } );
+		check( "add point", solver, mvg, tgt, SolveType.ADD );
+
+		tgt = delete( tgt, 3 );
+		mvg = delete( mvg, 3 );
+		check( "remove point", solver, mvg, tgt, SolveType.REMOVE );
+
+		tgt = copy( tgt );
+		tgt[ 2 ][ 1 ] += 1;
+		tgt[ 2 ][ 2 ] += 1;
+		check( "move two target points", solver, mvg, tgt, SolveType.FULL );
+	}
+
+	private static void check( final String msg, final TpsTransformSolver solver, final double[][] mvg, final double[][] tgt, final SolveType expected )
+	{
+		final ThinplateSplineTransform result = ( ThinplateSplineTransform ) solver.solve( mvg, tgt ).getTransform();
+		assertEquals( msg + " solve type", expected, solver.getLastSolveType() );
+
+		final ThinplateSplineTransform full = new ThinplateSplineTransform(
+				new ThinPlateR2LogRSplineKernelTransform( tgt.length, tgt, mvg ) );
+
+		final Random rand = new Random( 1 );
+		final double[] x = new double[ tgt.length ];
+		final double[] y = new double[ tgt.length ];
+		final double[] yFull = new double[ tgt.length ];
+		for ( int i = 0; i < 100; i++ )
+		{
+			for ( int d = 0; d < x.length; d++ )
+				x[ d ] = 100 * rand.nextDouble();
+
+			result.apply( x, y );
+			full.apply( x, yFull );
+			for ( int d = 0; d < x.length; d++ )
+				assertEquals( msg, yFull[ d ], y[ d ], EPS );
+		}
+	}
+
+	private static double[][] copy( final double[][] pts )
+	{
+		final double[][] out = new double[ pts.length ][];
+		for ( int d = 0; d < pts.length; d++ )
+			out[ d ] = pts[ d ].clone();
+
+		return out;
+	}
+
+	private static double[][] insert( final double[][] pts, final int i, final double[] p )
+	{
+		final int n = pts[ 0 ].length;
+		final double[][] out = new double[ pts.length ][ n + 1 ];
+		for ( int d = 0; d < pts.length; d++ )
+		{
+			System.arraycopy( pts[ d ], 0, out[ d ], 0, i );
+			out[ d ][ i ] = p[ d ];
+			System.arraycopy( pts[ d ], i, out[ d ], i + 1, n - i );
+		}
+		return out;
+	}
+
+	private static double[][] delete( final double[][] pts, final int i )
+	{
+		final int n = pts[ 0 ].length;
+		final double[][] out = new double[ pts.length ][ n - 1 ];
+		for ( int d = 0; d < pts.length; d++ )
+		{
+			System.arraycopy( pts[ d ], 0, out[ d ], 0, i );
+			System.arraycopy( pts[ d ], i + 1, out[ d ], i, n - i - 1 );
+		}
+		return out;
+	}
+
+}
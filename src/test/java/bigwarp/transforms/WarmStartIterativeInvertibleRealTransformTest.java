@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package bigwarp.transforms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import jitk.spline.ThinPlateR2LogRSplineKernelTransform;
+import net.imglib2.realtransform.RealTransform;
+import net.imglib2.realtransform.RealTransformSequence;
+import net.imglib2.realtransform.ThinplateSplineTransform;
+import net.imglib2.realtransform.Translation2D;
+
+public class WarmStartIterativeInvertibleRealTransformTest
+{
+	@Test
+	public void testScanlineInverse()
+	{
+		final Random rand = new Random( 3 );
+		final int nd = 2;
+		final int n = 20;
+		final double[][] tgt = new double[ nd ][ n ];
+		final double[][] mvg = new double[ nd ][ n ];
+		for ( int d = 0; d < nd; d++ )
+			for ( int i = 0; i < n; i++ )
+			{
+				tgt[ d ][ i ] = 100 * rand.nextDouble();
+				mvg[ d ][ i ] = tgt[ d ][ i ] + 4 * rand.nextGaussian();
+			}
+
+		final ThinplateSplineTransform tps = new ThinplateSplineTransform( new ThinPlateR2LogRSplineKernelTransform( nd, tgt, mvg ) );
+		final double tolerance = 1e-3;
+		final WarmStartIterativeInvertibleRealTransform< RealTransform > xfm = new WarmStartIterativeInvertibleRealTransform<>( tps, tolerance, 1000, 0.5, 1000 );
+		final RealTransform inv = xfm.copy().inverse();
+
+		final double[] p = new double[ nd ];
+		final double[] q = new double[ nd ];
+		final double[] r = new double[ nd ];
+		for ( int y = 0; y < 100; y += 10 )
+			for ( int x = 0; x < 100; x++ )
+			{
+				p[ 0 ] = x;
+				p[ 1 ] = y;
+				inv.apply( p, q );
+				tps.apply( q, r );
+				assertEquals( "x", p[ 0 ], r[ 0 ], 2 * tolerance );
+				assertEquals( "y", p[ 1 ], r[ 1 ], 2 * tolerance );
+			}
+
+		// a jump far from the previous sample
+		p[ 0 ] = -500;
+		p[ 1 ] = 800;
+		inv.apply( p, q );
+		tps.apply( q, r );
+		assertEquals( "x after jump", p[ 0 ], r[ 0 ], 2 * tolerance );
+		assertEquals( "y after jump", p[ 1 ], r[ 1 ], 2 * tolerance );
+	}
+
+	@Test
+	public void testInverseInSequence()
+	{
+		final Random rand = new Random( 5 );
+		final ThinplateSplineTransform tps = randomTps( rand, 2, 20 );
+		final double tolerance = 1e-3;
+		final WarmStartIterativeInvertibleRealTransform< RealTransform > xfm = new WarmStartIterativeInvertibleRealTransform<>( tps, tolerance, 1000, 0.5, 1000 );
+
+		// the sequence passes the same array as source and target to its transforms
+		final Translation2D offset = new Translation2D( 3, -2 );
+		final RealTransformSequence seq = new RealTransformSequence();
+		seq.add( offset );
+		seq.add( xfm.inverse() );
+		seq.add( offset.inverse() );
+
+		final double[] p = new double[ 2 ];
+		final double[] q = new double[ 2 ];
+		final double[] r = new double[ 2 ];
+		for ( int x = 0; x < 100; x += 5 )
+		{
+			p[ 0 ] = x;
+			p[ 1 ] = 50;
+			seq.apply( p, q );
+
+			// tps( q + offset ) == p + offset
+			r[ 0 ] = q[ 0 ] + 3;
+			r[ 1 ] = q[ 1 ] - 2;
+			tps.apply( r, r );
+			assertEquals( "x", p[ 0 ] + 3, r[ 0 ], 2 * tolerance );
+			assertEquals( "y", p[ 1 ] - 2, r[ 1 ], 2 * tolerance );
+		}
+	}
+
+	private static ThinplateSplineTransform randomTps( final Random rand, final int nd, final int n )
+	{
+		final double[][] tgt = new double[ nd ][ n ];
+		final double[][] mvg = new double[ nd ][ n ];
+		for ( int d = 0; d < nd; d++ )
+			for ( int i = 0; i < n; i++ )
+			{
+				tgt[ d ][ i ] = 100 * rand.nextDouble();
+				mvg[ d ][ i ] = tgt[ d ][ i ] + 4 * rand.nextGaussian();
+			}
+
+		return new ThinplateSplineTransform( new ThinPlateR2LogRSplineKernelTransform( nd, tgt, mvg ) );
+	}
+}
@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+
+public class DisplacementGridTransformTest
+{
+	@Test
+	public void testAffineIsReproduced() throws ExecutionException
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set( 1.1, 0.1, 0.0, 5.0,
+				-0.2, 0.9, 0.05, -3.0,
+				0.0, 0.1, 1.2, 2.0 );
+
+		final ExecutorService exec = Executors.newFixedThreadPool( 2 );
+		final DisplacementGridTransform approx;
+		try
+		{
+			approx = DisplacementGridTransform.build( affine,
+					new double[] { 0, 0, 0 }, new double[] { 100, 50, 0 },
+					new double[] { 8, 8, 8 }, exec, 3 );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+		assertArrayEquals( "grid dimensions", new int[] { 14, 8, 1 }, approx.getGridDimensions() );
+
+		// linear interpolation of an affine displacement is exact inside the grid,
+		// and the exact transform is used outside
+		final Random rand = new Random( 5 );
+		final double[] p = new double[ 3 ];
+		final double[] expected = new double[ 3 ];
+		final double[] actual = new double[ 3 ];
+		for ( int i = 0; i < 1000; i++ )
+		{
+			p[ 0 ] = 140 * rand.nextDouble() - 20;
+			p[ 1 ] = 80 * rand.nextDouble() - 15;
+			p[ 2 ] = i % 2 == 0 ? 0 : 10 * rand.nextDouble() - 5;
+			affine.apply( p, expected );
+			approx.copy().apply( p, actual );
+			for ( int d = 0; d < 3; d++ )
+				assertEquals( expected[ d ], actual[ d ], 1e-4 );
+		}
+	}
+
+	@Test
+	public void testUpdateMatchesBuild() throws ExecutionException
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set( 1.1, 0.1, 0.0, 5.0,
+				-0.2, 0.9, 0.05, -3.0,
+				0.0, 0.1, 1.2, 2.0 );
+
+		// equal to the affine except inside [20,40]x[10,30]x[-1,1]
+		final double[] min = new double[] { 20, 10, -1 };
+		final double[] max = new double[] { 40, 30, 1 };
+		final RealTransformSequence changed = new RealTransformSequence();
+		changed.add( new LocalBump( min, max ) );
+		changed.add( affine );
+
+		final double[] gridMin = new double[] { 0, 0, 0 };
+		final double[] gridMax = new double[] { 100, 50, 0 };
+		final double[] spacing = new double[] { 8, 8, 8 };
+		final ExecutorService exec = Executors.newFixedThreadPool( 2 );
+		final DisplacementGridTransform updated;
+		final DisplacementGridTransform rebuilt;
+		try
+		{
+			final DisplacementGridTransform approx = DisplacementGridTransform.build( affine, gridMin, gridMax, spacing, exec, 3 );
+			assertTrue( approx.hasGrid( gridMin, spacing, DisplacementGridTransform.gridDimensions( gridMin, gridMax, spacing ) ) );
+
+			updated = approx.update( changed, min, max, exec, 3 );
+			rebuilt = DisplacementGridTransform.build( changed, gridMin, gridMax, spacing, exec, 3 );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+
+		final Random rand = new Random( 7 );
+		final double[] p = new double[ 3 ];
+		final double[] expected = new double[ 3 ];
+		final double[] actual = new double[ 3 ];
+		for ( int i = 0; i < 1000; i++ )
+		{
+			p[ 0 ] = 100 * rand.nextDouble();
+			p[ 1 ] = 50 * rand.nextDouble();
+			rebuilt.apply( p, expected );
+			updated.apply( p, actual );
+			assertArrayEquals( expected, actual, 1e-9 );
+		}
+	}
+
+	@Test
+	public void testLocalTransforms() throws ExecutionException
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set( 1.1, 0.1, 0.0, 5.0,
+				-0.2, 0.9, 0.05, -3.0,
+				0.0, 0.1, 1.2, 2.0 );
+
+		// equal to the affine except inside [20,40]x[10,30]x[-1,1]
+		final double[] min = new double[] { 20, 10, -1 };
+		final double[] max = new double[] { 40, 30, 1 };
+		final RealTransformSequence changed = new RealTransformSequence();
+		changed.add( new LocalBump( min, max ) );
+		changed.add( affine );
+
+		final AtomicInteger numAffine = new AtomicInteger();
+		final double[] gridMin = new double[] { 0, 0, 0 };
+		final double[] gridMax = new double[] { 100, 50, 0 };
+		final double[] spacing = new double[] { 2, 2, 2 };
+		final ExecutorService exec = Executors.newFixedThreadPool( 2 );
+		final DisplacementGridTransform local;
+		final DisplacementGridTransform exact;
+		try
+		{
+			local = DisplacementGridTransform.build( changed, box -> {
+				if ( intersects( box, min, max ) )
+					return changed;
+
+				numAffine.incrementAndGet();
+				return affine;
+			}, gridMin, gridMax, spacing, exec, 3 );
+			exact = DisplacementGridTransform.build( changed, gridMin, gridMax, spacing, exec, 3 );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+		assertTrue( "blocks away from the bump use the affine", numAffine.get() > 0 );
+
+		final Random rand = new Random( 11 );
+		final double[] p = new double[ 3 ];
+		final double[] expected = new double[ 3 ];
+		final double[] actual = new double[ 3 ];
+		for ( int i = 0; i < 1000; i++ )
+		{
+			p[ 0 ] = 100 * rand.nextDouble();
+			p[ 1 ] = 50 * rand.nextDouble();
+			exact.apply( p, expected );
+			local.apply( p, actual );
+			assertArrayEquals( expected, actual, 1e-9 );
+		}
+	}
+
+	private static boolean intersects( final RealInterval box, final double[] min, final double[] max )
+	{
+		for ( int d = 0; d < min.length; d++ )
+			if ( box.realMax( d ) < min[ d ] || box.realMin( d ) > max[ d ] )
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Shifts points inside a box by an amount that is zero on its boundary.
+	 */
+	private static class LocalBump implements RealTransform
+	{
+		private final double[] min;
+
+		private final double[] max;
+
+		public LocalBump( final double[] min, final double[] max )
+		{
+			this.min = min;
+			this.max = max;
+		}
+
+		@Override
+		public int numSourceDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public int numTargetDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public void apply( final double[] source, final double[] target )
+		{
+			double w = 1;
+			for ( int d = 0; d < 2; d++ )
+				w *= Math.max( 0, Math.sin( Math.PI * ( source[ d ] - min[ d ] ) / ( max[ d ] - min[ d ] ) ) );
+
+			if ( source[ 0 ] < min[ 0 ] || source[ 0 ] > max[ 0 ] || source[ 1 ] < min[ 1 ] || source[ 1 ] > max[ 1 ] )
+				w = 0;
+
+			target[ 0 ] = source[ 0 ] + 3 * w;
+			target[ 1 ] = source[ 1 ] - 2 * w;
+			target[ 2 ] = source[ 2 ];
+		}
+
+		@Override
+		public void apply( final RealLocalizable source, final RealPositionable target )
+		{
+			final double[] p = new double[ 3 ];
+			source.localize( p );
+			apply( p, p );
+			target.setPosition( p );
+		}
+
+		@Override
+		public RealTransform copy()
+		{
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class LatticeInterpolatedRealTransformTest
+{
+	@Test
+	public void testInterpolation()
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set(
+				1.1, 0.2, -0.1, 5,
+				-0.3, 0.9, 0.05, -2,
+				0.1, 0.0, 1.2, 1 );
+
+		// affine transforms are interpolated exactly, whatever the order of the points
+		final LatticeInterpolatedRealTransform lattice = new LatticeInterpolatedRealTransform( affine, 8, 3 );
+		final double[] p = new double[ 3 ];
+		final double[] expected = new double[ 3 ];
+		final double[] actual = new double[ 3 ];
+		for ( double z = -3; z < 10; z += 2.5 )
+			for ( double y = -10; y < 20; y += 1.7 )
+				for ( double x = -10; x < 40; x += 0.9 )
+				{
+					p[ 0 ] = x;
+					p[ 1 ] = y;
+					p[ 2 ] = z;
+					affine.apply( p, expected );
+					lattice.apply( p, actual );
+					assertArrayEquals( expected, actual, 1e-9 );
+
+					// in place
+					lattice.apply( p, p );
+					assertArrayEquals( expected, p, 1e-9 );
+				}
+
+		// only x and y are interpolated, z is evaluated exactly
+		final LatticeInterpolatedRealTransform lattice2 = new LatticeInterpolatedRealTransform( affine, 16, 2 ).copy();
+		for ( double x = 40; x > -10; x -= 3.1 )
+		{
+			p[ 0 ] = x;
+			p[ 1 ] = 0.5 * x;
+			p[ 2 ] = 0.1 * x;
+			affine.apply( p, expected );
+			lattice2.apply( p, actual );
+			assertArrayEquals( expected, actual, 1e-9 );
+		}
+	}
+}
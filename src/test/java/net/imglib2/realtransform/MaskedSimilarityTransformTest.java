@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import bigwarp.source.PlateauSphericalMaskRealRandomAccessible;
+import net.imglib2.RealPoint;
+import net.imglib2.realtransform.MaskedSimilarityTransform.Interpolators;
+import net.imglib2.type.numeric.real.DoubleType;
+
+public class MaskedSimilarityTransformTest
+{
+	@Test
+	public void testInterpolatorIntoExisting()
+	{
+		final AffineTransform3D sim = similarity();
+		final double[] c = new double[] { 50, 50, 50 };
+		final AffineInterpolator3D[] interpolators = new AffineInterpolator3D[] {
+				new SimilarityTransformInterpolator( sim, c ),
+				new RotationTransformInterpolator( sim, c ) };
+
+		final AffineTransform3D out = new AffineTransform3D();
+		for ( final AffineInterpolator3D interpolator : interpolators )
+		{
+			for ( final double t : new double[] { 0, 0.25, 0.7, 1 } )
+			{
+				final AffineTransform3D expected = interpolator.get( t );
+				interpolator.get( t, out );
+				assertArrayEquals( expected.getRowPackedCopy(), out.getRowPackedCopy(), 1e-12 );
+			}
+		}
+	}
+
+	@Test
+	public void testLookupTable()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible( new RealPoint( 50, 50, 50 ) );
+		mask.setRadius( 20 );
+		mask.setSigma( 40 );
+
+		final double[] c = new double[] { 50, 50, 50 };
+		final Random rand = new Random( 7 );
+		final double[] p = new double[ 3 ];
+		final double[] expected = new double[ 3 ];
+		final double[] actual = new double[ 3 ];
+		for ( final Interpolators interp : Interpolators.values() )
+		{
+			final MaskedSimilarityTransform< DoubleType > exact = new MaskedSimilarityTransform<>( similarity(), mask, c, interp );
+			final MaskedSimilarityTransform< DoubleType > table = new MaskedSimilarityTransform<>( similarity(), mask, c, interp );
+			table.setLookupTableSteps( AffineInterpolatorLookupTable.DEFAULT_NUM_STEPS );
+			final RealTransform tableCopy = table.copy();
+
+			for ( int i = 0; i < 1000; i++ )
+			{
+				for ( int d = 0; d < 3; d++ )
+					p[ d ] = 150 * rand.nextDouble() - 25;
+
+				exact.apply( p, expected );
+				table.apply( p, actual );
+				assertArrayEquals( expected, actual, 1e-4 );
+
+				tableCopy.apply( p, actual );
+				assertArrayEquals( expected, actual, 1e-4 );
+
+				// in place
+				System.arraycopy( p, 0, actual, 0, 3 );
+				table.apply( actual, actual );
+				assertArrayEquals( expected, actual, 1e-4 );
+			}
+		}
+	}
+
+	@Test
+	public void testInterpolator2D()
+	{
+		final AffineTransform2D sim = new AffineTransform2D();
+		sim.rotate( 0.6 );
+		sim.scale( 1.2 );
+		sim.translate( 10, -5 );
+
+		final AffineTransform2D rot = new AffineTransform2D();
+		rot.rotate( 0.6 );
+		rot.translate( 10, -5 );
+
+		final double[] c = new double[] { 50, 50 };
+		final double[] identity = new AffineTransform2D().getRowPackedCopy();
+		final AffineTransform2D out = new AffineTransform2D();
+		final AffineInterpolator2D[] interpolators = new AffineInterpolator2D[] {
+				new SimilarityTransformInterpolator2D( sim, c ),
+				new RotationTransformInterpolator2D( rot, c ) };
+		final AffineTransform2D[] ends = new AffineTransform2D[] { sim, rot };
+
+		for ( int i = 0; i < interpolators.length; i++ )
+		{
+			interpolators[ i ].get( 0, out );
+			assertArrayEquals( identity, out.getRowPackedCopy(), 1e-9 );
+
+			interpolators[ i ].get( 1, out );
+			assertArrayEquals( ends[ i ].getRowPackedCopy(), out.getRowPackedCopy(), 1e-9 );
+		}
+	}
+
+	@Test
+	public void testLookupTable2D()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible( new RealPoint( 50, 50 ) );
+		mask.setRadius( 20 );
+		mask.setSigma( 40 );
+
+		final AffineTransform2D sim = new AffineTransform2D();
+		sim.rotate( 0.6 );
+		sim.scale( 1.2 );
+		sim.translate( 10, -5 );
+
+		final double[] c = new double[] { 50, 50 };
+		final Random rand = new Random( 7 );
+		final double[] p = new double[ 2 ];
+		final double[] expected = new double[ 2 ];
+		final double[] actual = new double[ 2 ];
+		for ( final Interpolators interp : Interpolators.values() )
+		{
+			final MaskedSimilarityTransform2D< DoubleType > exact = new MaskedSimilarityTransform2D<>( sim, mask, c, interp );
+			final MaskedSimilarityTransform2D< DoubleType > table = new MaskedSimilarityTransform2D<>( sim, mask, c, interp );
+			table.setLookupTableSteps( AffineInterpolatorLookupTable.DEFAULT_NUM_STEPS );
+
+			for ( int i = 0; i < 1000; i++ )
+			{
+				for ( int d = 0; d < 2; d++ )
+					p[ d ] = 150 * rand.nextDouble() - 25;
+
+				exact.apply( p, expected );
+				table.apply( p, actual );
+				assertArrayEquals( expected, actual, 1e-4 );
+			}
+		}
+	}
+
+	private static AffineTransform3D similarity()
+	{
+		final AffineTransform3D sim = new AffineTransform3D();
+		sim.rotate( 2, 0.6 );
+		sim.rotate( 0, 0.2 );
+		sim.scale( 1.2 );
+		sim.translate( 10, -5, 3 );
+		return sim;
+	}
+}
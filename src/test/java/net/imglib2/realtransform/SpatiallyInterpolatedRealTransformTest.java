@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * BigWarp plugin for Fiji.
+ * %%
+ * Copyright (C) 2015 - 2025 Howard Hughes Medical Institute.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+package net.imglib2.realtransform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import bigwarp.source.PlateauSphericalMaskRealRandomAccessible;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.type.numeric.real.DoubleType;
+
+public class SpatiallyInterpolatedRealTransformTest
+{
+	@Test
+	public void testApplyAndSimplify()
+	{
+		final PlateauSphericalMaskRealRandomAccessible mask = new PlateauSphericalMaskRealRandomAccessible( new RealPoint( 0, 0, 0 ) );
+		mask.setRadius( 10 );
+		mask.setSigma( 10 );
+
+		final Translation3D a = new Translation3D( 1, 2, 3 );
+		final Scale3D b = new Scale3D( 2, 2, 2 );
+		final SpatiallyInterpolatedRealTransform< DoubleType > xfm = new SpatiallyInterpolatedRealTransform<>( a, b, mask );
+
+		final double[] out = new double[ 3 ];
+		final RealPoint outPt = new RealPoint( 3 );
+		for ( final double x : new double[] { 0, 5, 12, 15, 19, 25 } )
+		{
+			final double[] p = new double[] { x, 0, 0 };
+			final double lam = mask.valueAtSquaredDistance( x * x );
+			final double[] expected = new double[] {
+					lam * ( x + 1 ) + ( 1 - lam ) * 2 * x,
+					lam * 2,
+					lam * 3 };
+
+			xfm.apply( p, out );
+			assertArrayEquals( expected, out, 1e-9 );
+
+			xfm.apply( RealPoint.wrap( p ), outPt );
+			assertArrayEquals( expected, outPt.positionAsDoubleArray(), 1e-9 );
+
+			// in place
+			xfm.apply( p, p );
+			assertArrayEquals( expected, p, 1e-9 );
+		}
+
+		assertSame( "inside the plateau", a, xfm.simplify( new FinalRealInterval( new double[] { -5, -5, -5 }, new double[] { 5, 5, 5 } ) ) );
+		assertSame( "outside the falloff", b, xfm.simplify( new FinalRealInterval( new double[] { 20, -5, -5 }, new double[] { 30, 5, 5 } ) ) );
+		assertSame( "across the falloff", xfm, xfm.simplify( new FinalRealInterval( new double[] { 5, -5, -5 }, new double[] { 30, 5, 5 } ) ) );
+	}
+}